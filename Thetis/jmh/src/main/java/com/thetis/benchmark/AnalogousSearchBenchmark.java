@@ -0,0 +1,59 @@
+package com.thetis.benchmark;
+
+import com.thetis.loader.IndexWriter;
+import com.thetis.search.AnalogousSearch;
+import com.thetis.search.Result;
+import com.thetis.structures.table.Table;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Scoring of tables by analogous search
+ * The single table benchmark measures the scoring of one table including the fixed cost of a search
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class AnalogousSearchBenchmark
+{
+    @Param({"JACCARD_TYPES", "EMBEDDINGS_ANG"})
+    public AnalogousSearch.EntitySimilarity similarity;
+
+    private AnalogousSearch search;
+    private Table<String> query;
+    private Set<String> allTables, singleTable;
+
+    @Setup(Level.Trial)
+    public void setup(IndexedCorpus corpus)
+    {
+        IndexWriter indexWriter = corpus.indexWriter;
+        this.search = new AnalogousSearch(indexWriter.getEntityLinker(), indexWriter.getEntityTable(), indexWriter.getEntityTableLinker(),
+                indexWriter.getEmbeddingsIndex(), 10, 1, this.similarity, false, false, false, false, false,
+                AnalogousSearch.SimilarityMeasure.EUCLIDEAN);
+        this.search.setLinkedTables(indexWriter.getLinkedTables());
+        this.query = corpus.corpus.query(2, 3, new Random(7));
+        this.allTables = corpus.corpus.getTables().stream().map(t -> t.getFileName().toString()).collect(Collectors.toSet());
+        this.singleTable = Set.of(corpus.corpus.getTables().get(0).getFileName().toString());
+    }
+
+    @Benchmark
+    public Result searchCorpus()
+    {
+        this.search.setCorpus(this.allTables);
+        return this.search.search(this.query);
+    }
+
+    @Benchmark
+    public Result searchTable()
+    {
+        this.search.setCorpus(this.singleTable);
+        return this.search.search(this.query);
+    }
+}
@@ -0,0 +1,45 @@
+package com.thetis.benchmark;
+
+import com.thetis.utilities.HungarianAlgorithm;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alignment of query entities to table columns
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class HungarianAlgorithmBenchmark
+{
+    @Param({"5", "20", "50"})
+    public int size;
+
+    private double[][] costs;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        Random random = new Random(42);
+        this.costs = new double[this.size][this.size];
+
+        for (int row = 0; row < this.size; row++)
+        {
+            for (int column = 0; column < this.size; column++)
+            {
+                this.costs[row][column] = random.nextDouble();
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] execute()
+    {
+        return new HungarianAlgorithm(this.costs).execute();
+    }
+}
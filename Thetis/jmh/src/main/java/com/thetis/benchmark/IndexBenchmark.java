@@ -0,0 +1,48 @@
+package com.thetis.benchmark;
+
+import com.thetis.commands.parser.TableParser;
+import com.thetis.loader.IndexReader;
+import com.thetis.tables.JsonTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity linking, HNSW lookup, table parsing, and index loading
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IndexBenchmark
+{
+    @Benchmark
+    public String entityLinkingMapTo(IndexedCorpus corpus)
+    {
+        return corpus.indexWriter.getEntityLinker().mapTo(corpus.sampledMentions[corpus.next()]);
+    }
+
+    @Benchmark
+    public Set<String> hnswFind(IndexedCorpus corpus)
+    {
+        return corpus.indexWriter.getHNSW().find(corpus.sampledEntities[corpus.next()]);
+    }
+
+    @Benchmark
+    public JsonTable tableParserParse(IndexedCorpus corpus)
+    {
+        return TableParser.parse(corpus.corpus.getTables().get(corpus.next() % corpus.corpus.getTables().size()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public IndexReader indexReaderPerformIO(IndexedCorpus corpus) throws IOException
+    {
+        IndexReader indexReader = new IndexReader(corpus.corpus.getIndexDirectory(), true, false, corpus.corpus.getEmbeddingsDB());
+        indexReader.performIO();
+        return indexReader;
+    }
+}
@@ -0,0 +1,56 @@
+package com.thetis.benchmark;
+
+import com.thetis.loader.IndexWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Benchmark state of a synthetic corpus indexed with the IndexWriter
+ * Entities and mentions are sampled up front, so sampling is not part of the measured time
+ */
+@State(Scope.Benchmark)
+public class IndexedCorpus
+{
+    private static final int SAMPLES = 1024;
+
+    @Param({"1000"})
+    public int tables;
+
+    @Param({"20000"})
+    public int entities;
+
+    public SyntheticCorpus corpus;
+    public IndexWriter indexWriter;
+    public String[] sampledEntities = new String[SAMPLES], sampledMentions = new String[SAMPLES];
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        Random random = new Random(7);
+        this.corpus = new SyntheticCorpus(this.tables, 20, 4, this.entities, 200, 42);
+        this.indexWriter = this.corpus.index();
+
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            this.sampledEntities[i] = this.corpus.entity(random);
+            this.sampledMentions[i] = this.corpus.mention(random);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        this.corpus.close();
+    }
+
+    /**
+     * @return Index of the next sampled entity or mention
+     */
+    public int next()
+    {
+        return this.next = (this.next + 1) % SAMPLES;
+    }
+}
@@ -0,0 +1,57 @@
+package com.thetis.benchmark;
+
+import com.thetis.loader.IndexWriter;
+import com.thetis.store.lsh.HashFunction;
+import com.thetis.store.lsh.SetLSHIndex;
+import com.thetis.store.lsh.VectorLSHIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of the tables sharing a bucket with an entity in the LSH indexes of entity types and embeddings
+ * The LSH index of entity types is built with min-hash signatures from both permutations and hash functions
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class LSHBenchmark
+{
+    private static final int SIGNATURE_SIZE = 32, BAND_SIZE = 8, BUCKET_COUNT = 128;
+    private static final HashFunction HASH = (obj, keys) -> Math.floorMod(obj.hashCode(), keys);
+
+    @Param({"PERMUTATIONS", "HASHING"})
+    private SetLSHIndex.MinHash minHash;
+
+    private SetLSHIndex typesLSH;
+    private VectorLSHIndex vectorsLSH;
+
+    @Setup(Level.Trial)
+    public void setup(IndexedCorpus corpus)
+    {
+        IndexWriter indexWriter = corpus.indexWriter;
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.typesLSH = new SetLSHIndex(corpus.corpus.getNeo4j(), SetLSHIndex.EntitySet.TYPES, SIGNATURE_SIZE, BAND_SIZE, 1,
+                corpus.corpus.linkedTables(), HASH, SIGNATURE_SIZE / BAND_SIZE, BUCKET_COUNT, threads, new Random(42),
+                indexWriter.getEntityLinker(), indexWriter.getEntityTable(), false, this.minHash);
+        this.vectorsLSH = new VectorLSHIndex(SIGNATURE_SIZE / BAND_SIZE, BUCKET_COUNT, SIGNATURE_SIZE, BAND_SIZE, corpus.corpus.linkedTables(),
+                threads, indexWriter.getEntityLinker(), HASH, new Random(42), indexWriter.getEmbeddingsIndex(), false);
+    }
+
+    @Benchmark
+    public Set<String> typesSearch(IndexedCorpus corpus)
+    {
+        return this.typesLSH.search(corpus.sampledEntities[corpus.next()]);
+    }
+
+    @Benchmark
+    public Set<String> vectorsSearch(IndexedCorpus corpus)
+    {
+        return this.vectorsLSH.search(corpus.sampledEntities[corpus.next()]);
+    }
+}
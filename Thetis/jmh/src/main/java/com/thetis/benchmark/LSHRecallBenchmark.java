@@ -0,0 +1,191 @@
+package com.thetis.benchmark;
+
+import com.thetis.loader.IndexWriter;
+import com.thetis.similarity.SimilarityKernel;
+import com.thetis.similarity.SimilarityKernels;
+import com.thetis.store.lsh.BucketIndex;
+import com.thetis.store.lsh.HashFunction;
+import com.thetis.store.lsh.LSHIndex;
+import com.thetis.store.lsh.SetLSHIndex;
+import com.thetis.store.lsh.VectorLSHIndex;
+import com.thetis.structures.Id;
+import com.thetis.structures.PairNonComparable;
+import com.thetis.structures.table.Table;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recall, bucket memory, and latency of multi-probe LSH search for different numbers of bucket groups
+ * The ground truth of a query entity is the tables of its nearest entities by exact Jaccard similarity of types or cosine similarity of embeddings
+ * Recall and bucket memory are computed once per trial and reported as auxiliary counters next to the search time
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class LSHRecallBenchmark
+{
+    private static final int BAND_SIZE = 8, BUCKET_COUNT = 1024, QUERIES = 64, NEAREST = 10;
+    private static final HashFunction HASH = (obj, keys) -> Math.floorMod(obj.hashCode(), keys);
+
+    public enum Measure {TYPES, EMBEDDINGS}
+
+    @Param({"TYPES", "EMBEDDINGS"})
+    public Measure measure;
+
+    @Param({"2", "4", "8"})
+    public int groups;
+
+    @Param({"0", "1", "2", "4"})
+    public int probes;
+
+    private LSHIndex<String, String> index;
+    private String[] queries;
+    private double recall;
+    private long bucketBytes;
+    private int next = 0;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Quality
+    {
+        public double recall;
+        public long bucketBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup(IndexedCorpus corpus)
+    {
+        IndexWriter indexWriter = corpus.indexWriter;
+        Set<PairNonComparable<String, Table<String>>> tables = corpus.corpus.linkedTables();
+        int threads = Runtime.getRuntime().availableProcessors(), signatureSize = this.groups * BAND_SIZE;
+        BucketIndex<Id, String> buckets;
+
+        if (this.measure == Measure.TYPES)
+        {
+            SetLSHIndex typesLSH = new SetLSHIndex(corpus.corpus.getNeo4j(), SetLSHIndex.EntitySet.TYPES, signatureSize, BAND_SIZE, 1, tables,
+                    HASH, this.groups, BUCKET_COUNT, threads, new Random(42), indexWriter.getEntityLinker(), indexWriter.getEntityTable(), false,
+                    SetLSHIndex.MinHash.HASHING);
+            this.index = typesLSH;
+            buckets = typesLSH;
+        }
+
+        else
+        {
+            VectorLSHIndex vectorsLSH = new VectorLSHIndex(this.groups, BUCKET_COUNT, signatureSize, BAND_SIZE, tables, threads,
+                    indexWriter.getEntityLinker(), HASH, new Random(42), indexWriter.getEmbeddingsIndex(), false);
+            this.index = vectorsLSH;
+            buckets = vectorsLSH;
+        }
+
+        Map<String, Set<String>> entityTables = entityTables(tables);
+        Map<String, Set<String>> types = new HashMap<>();
+        Map<String, float[]> embeddings = new HashMap<>();
+
+        for (String entity : entityTables.keySet())
+        {
+            types.put(entity, new HashSet<>(corpus.corpus.getNeo4j().searchTypes(entity)));
+            Id entityId = indexWriter.getEntityLinker().kgUriLookup(entity);
+            float[] embedding = entityId != null ? indexWriter.getEmbeddingsIndex().findPrimitive(entityId) : null;
+
+            if (embedding != null)
+            {
+                embeddings.put(entity, embedding);
+            }
+        }
+        this.queries = Arrays.copyOf(corpus.sampledEntities, QUERIES);
+        this.bucketBytes = buckets.memory();
+        this.recall = 0;
+
+        for (String query : this.queries)
+        {
+            Set<String> truth = new HashSet<>();
+            Set<String> found = this.index.search(query, 1, this.probes);
+
+            for (String neighbour : nearest(query, entityTables.keySet(), types, embeddings))
+            {
+                truth.addAll(entityTables.get(neighbour));
+            }
+
+            this.recall += truth.stream().filter(found::contains).count() / (double) Math.max(1, truth.size());
+        }
+
+        this.recall /= this.queries.length;
+    }
+
+    private static Map<String, Set<String>> entityTables(Set<PairNonComparable<String, Table<String>>> tables)
+    {
+        Map<String, Set<String>> entityTables = new HashMap<>();
+
+        for (PairNonComparable<String, Table<String>> table : tables)
+        {
+            Table<String> t = table.getSecond();
+
+            for (int row = 0; row < t.rowCount(); row++)
+            {
+                for (String entity : t.getRow(row))
+                {
+                    if (entity != null)
+                    {
+                        entityTables.computeIfAbsent(entity, e -> new HashSet<>()).add(table.getFirst());
+                    }
+                }
+            }
+        }
+
+        return entityTables;
+    }
+
+    /**
+     * Exact nearest entities of a query entity, not including the query entity itself
+     */
+    private List<String> nearest(String query, Set<String> entities, Map<String, Set<String>> types, Map<String, float[]> embeddings)
+    {
+        List<PairNonComparable<String, Double>> similarities = new ArrayList<>(entities.size());
+
+        for (String entity : entities)
+        {
+            if (!entity.equals(query))
+            {
+                double similarity = this.measure == Measure.TYPES ? jaccard(types.get(query), types.get(entity)) :
+                        cosine(embeddings.get(query), embeddings.get(entity));
+                similarities.add(new PairNonComparable<>(entity, similarity));
+            }
+        }
+
+        similarities.sort(Comparator.comparingDouble(p -> -p.getSecond()));
+        return similarities.stream().limit(NEAREST).map(PairNonComparable::getFirst).toList();
+    }
+
+    private static double jaccard(Set<String> types1, Set<String> types2)
+    {
+        long intersection = types1.stream().filter(types2::contains).count();
+        return intersection / (double) Math.max(1, types1.size() + types2.size() - intersection);
+    }
+
+    private static double cosine(float[] embedding1, float[] embedding2)
+    {
+        if (embedding1 == null || embedding2 == null)
+        {
+            return -1;
+        }
+
+        SimilarityKernel kernel = SimilarityKernels.get();
+        double norms = Math.sqrt(kernel.dot(embedding1, 0, embedding1, 0, embedding1.length) * kernel.dot(embedding2, 0, embedding2, 0, embedding2.length));
+        return norms > 0 ? kernel.dot(embedding1, 0, embedding2, 0, embedding1.length) / norms : -1;
+    }
+
+    @Benchmark
+    public Set<String> search(Quality quality)
+    {
+        quality.recall = this.recall;
+        quality.bucketBytes = this.bucketBytes;
+        this.next = (this.next + 1) % this.queries.length;
+
+        return this.index.search(this.queries[this.next], 1, this.probes);
+    }
+}
@@ -0,0 +1,114 @@
+package com.thetis.benchmark;
+
+import com.thetis.similarity.JaccardSimilarity;
+import com.thetis.structures.graph.Type;
+import com.thetis.utilities.Utils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity similarity functions of types and embeddings
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class SimilarityBenchmark
+{
+    private static final int TYPE_COUNT = 500;
+
+    @Param({"5", "20"})
+    public int types;
+
+    @Param({"200"})
+    public int dimension;
+
+    private Set<Type> types1, types2;
+    private int[] typeIds1, typeIds2;
+    private double[] weights;
+    private List<Double> embedding1, embedding2;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        Random random = new Random(42);
+        Zipf zipf = new Zipf(TYPE_COUNT, 1.0);
+        this.weights = new double[TYPE_COUNT];
+        this.types1 = new HashSet<>();
+        this.types2 = new HashSet<>();
+
+        for (int type = 0; type < TYPE_COUNT; type++)
+        {
+            this.weights[type] = Math.log(TYPE_COUNT / (double) (type + 1)) + 1;
+        }
+
+        this.typeIds1 = sampleTypes(zipf, random, this.types1);
+        this.typeIds2 = sampleTypes(zipf, random, this.types2);
+        this.embedding1 = embedding(random);
+        this.embedding2 = embedding(random);
+    }
+
+    private int[] sampleTypes(Zipf zipf, Random random, Set<Type> types)
+    {
+        Set<Integer> ids = new HashSet<>();
+
+        while (ids.size() < this.types)
+        {
+            ids.add(zipf.sample(random));
+        }
+
+        for (int id : ids)
+        {
+            types.add(new Type("http://dbpedia.org/ontology/Type_" + id, this.weights[id]));
+        }
+
+        int[] sorted = ids.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private List<Double> embedding(Random random)
+    {
+        List<Double> embedding = new ArrayList<>(this.dimension);
+
+        for (int i = 0; i < this.dimension; i++)
+        {
+            embedding.add(random.nextGaussian());
+        }
+
+        return embedding;
+    }
+
+    @Benchmark
+    public double jaccardSets()
+    {
+        return JaccardSimilarity.make(this.types1, this.types2).similarity();
+    }
+
+    @Benchmark
+    public double jaccardInterned()
+    {
+        return JaccardSimilarity.similarity(this.typeIds1, this.typeIds2);
+    }
+
+    @Benchmark
+    public double weightedJaccardInterned()
+    {
+        return JaccardSimilarity.similarity(this.typeIds1, this.typeIds2, this.weights);
+    }
+
+    @Benchmark
+    public double cosine()
+    {
+        return Utils.cosineSimilarity(this.embedding1, this.embedding2);
+    }
+}
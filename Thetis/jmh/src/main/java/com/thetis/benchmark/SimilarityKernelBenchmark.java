@@ -0,0 +1,100 @@
+package com.thetis.benchmark;
+
+import com.thetis.similarity.SimilarityKernel;
+import com.thetis.similarity.SimilarityKernels;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar and Vector API similarity kernels over embedding dimensions
+ * The batch benchmark compares one vector to a contiguous block of vectors as stored in a page of the embeddings matrix
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class SimilarityKernelBenchmark
+{
+    private static final int BLOCK_VECTORS = 256;
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    @Param({"64", "128", "256", "512", "1024"})
+    public int dimension;
+
+    private SimilarityKernel similarityKernel;
+    private float[] vector1, vector2, block;
+    private double[] doubles1, doubles2, weights, similarities;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        this.similarityKernel = "vector".equals(this.kernel) ? SimilarityKernels.vector() : SimilarityKernels.scalar();
+
+        if (this.similarityKernel == null)
+            throw new IllegalStateException("The jdk.incubator.vector module is not available");
+
+        Random random = new Random(42);
+        this.vector1 = floats(random, this.dimension);
+        this.vector2 = floats(random, this.dimension);
+        this.block = floats(random, this.dimension * BLOCK_VECTORS);
+        this.doubles1 = doubles(random, this.dimension);
+        this.doubles2 = doubles(random, this.dimension);
+        this.weights = doubles(random, this.dimension);
+        this.similarities = new double[BLOCK_VECTORS];
+    }
+
+    private static float[] floats(Random random, int length)
+    {
+        float[] vector = new float[length];
+
+        for (int i = 0; i < length; i++)
+        {
+            vector[i] = (float) random.nextGaussian();
+        }
+
+        return vector;
+    }
+
+    private static double[] doubles(Random random, int length)
+    {
+        double[] vector = new double[length];
+
+        for (int i = 0; i < length; i++)
+        {
+            vector[i] = random.nextDouble();
+        }
+
+        return vector;
+    }
+
+    @Benchmark
+    public double dot()
+    {
+        return this.similarityKernel.dot(this.vector1, 0, this.vector2, 0, this.dimension);
+    }
+
+    @Benchmark
+    public double cosine()
+    {
+        return this.similarityKernel.cosine(this.vector1, 0, this.vector2, 0, this.dimension);
+    }
+
+    @Benchmark
+    public double weightedEuclidean()
+    {
+        return this.similarityKernel.weightedEuclidean(this.doubles1, this.doubles2, this.weights, this.dimension);
+    }
+
+    @Benchmark
+    public double[] cosineBatch()
+    {
+        this.similarityKernel.cosineBatch(this.vector1, 0, this.block, 0, BLOCK_VECTORS, this.dimension, this.similarities);
+        return this.similarities;
+    }
+}
@@ -0,0 +1,234 @@
+package com.thetis.benchmark;
+
+import com.google.gson.Gson;
+import com.thetis.loader.IndexWriter;
+import com.thetis.loader.Linker;
+import com.thetis.structures.PairNonComparable;
+import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.SimpleTable;
+import com.thetis.structures.table.Table;
+import com.thetis.system.Configuration;
+import com.thetis.tables.JsonTable;
+import org.apache.commons.io.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Synthetic corpus of entity-linked JSON tables written to a temporary directory
+ * Entity mentions follow a Zipf distribution, so a few popular entities are found in most tables as in web table corpora
+ * The corpus is indexed with stand-ins for Neo4j and the embeddings database, so no external services are needed
+ */
+public class SyntheticCorpus implements Closeable
+{
+    public static final String WIKI_PREFIX = "http://www.wikipedia.org/", KG_PREFIX = "http://dbpedia.org/";
+    private static final String LINK_PREFIX = WIKI_PREFIX + "wiki/Entity_", ENTITY_PREFIX = KG_PREFIX + "resource/Entity_";
+    private static final double LINKED_CELLS = 0.8;
+
+    // Maps Wikipedia links to DBpedia resources as the Wikipedia linker does
+    private static final Linker LINKER = mention -> ENTITY_PREFIX + mention.substring(mention.lastIndexOf('_') + 1);
+
+    private final File dir, tableDir, indexDir;
+    private final List<Path> tables = new ArrayList<>();
+    private final List<Table<String>> tableEntities = new ArrayList<>();
+    private final BitSet mentionedEntities = new BitSet();
+    private final Zipf entities;
+    private final int dimension;
+    private final SyntheticNeo4jEndpoint neo4j;
+    private final SyntheticEmbeddingsDB embeddingsDB;
+    private IndexWriter indexWriter = null;
+
+    /**
+     * Writes the synthetic tables
+     * @param tables Number of tables
+     * @param rows Number of rows per table
+     * @param columns Number of columns per table
+     * @param entities Number of distinct entities that can be mentioned
+     * @param dimension Dimension of entity embeddings
+     * @param seed Seed of the corpus, types, predicates, and embeddings
+     */
+    public SyntheticCorpus(int tables, int rows, int columns, int entities, int dimension, long seed) throws IOException
+    {
+        this.dir = Files.createTempDirectory("thetis-jmh").toFile();
+        this.tableDir = new File(this.dir, "tables");
+        this.indexDir = new File(this.dir, "index");
+        this.entities = new Zipf(entities, 1.0);
+        this.dimension = dimension;
+        this.neo4j = new SyntheticNeo4jEndpoint(500, 2000, entities, seed);
+        this.embeddingsDB = new SyntheticEmbeddingsDB(dimension, seed);
+        this.tableDir.mkdirs();
+        this.indexDir.mkdirs();
+
+        Random random = new Random(seed);
+        Gson gson = new Gson();
+
+        for (int table = 0; table < tables; table++)
+        {
+            writeTable(table, rows, columns, random, gson);
+        }
+    }
+
+    private void writeTable(int table, int rows, int columns, Random random, Gson gson) throws IOException
+    {
+        List<JsonTable.TableCell> headers = new ArrayList<>(columns);
+        List<List<JsonTable.TableCell>> jsonRows = new ArrayList<>(rows);
+        Table<String> linkedRows = new DynamicTable<>();
+
+        for (int column = 0; column < columns; column++)
+        {
+            headers.add(new JsonTable.TableCell("column " + column, false, List.of()));
+        }
+
+        for (int row = 0; row < rows; row++)
+        {
+            List<JsonTable.TableCell> jsonRow = new ArrayList<>(columns);
+            List<String> linkedRow = new ArrayList<>(columns);
+
+            for (int column = 0; column < columns; column++)
+            {
+                if (random.nextDouble() < LINKED_CELLS)
+                {
+                    int entity = this.entities.sample(random);
+                    this.mentionedEntities.set(entity);
+                    jsonRow.add(new JsonTable.TableCell("Entity " + entity, false, List.of(LINK_PREFIX + entity)));
+                    linkedRow.add(ENTITY_PREFIX + entity);
+                }
+
+                else
+                    jsonRow.add(new JsonTable.TableCell(String.valueOf(random.nextInt(10000)), true, List.of()));
+            }
+
+            jsonRows.add(jsonRow);
+
+            if (!linkedRow.isEmpty())
+                linkedRows.addRow(new Table.Row<>(linkedRow));
+        }
+
+        String id = String.format("%06d", table);
+        JsonTable jsonTable = new JsonTable(id, columns, rows, 0, "Table " + id, table, "", headers, jsonRows);
+        Path file = new File(this.tableDir, "table-" + id + ".json").toPath();
+
+        try (Writer writer = new FileWriter(file.toFile()))
+        {
+            gson.toJson(jsonTable, writer);
+        }
+
+        this.tables.add(file);
+        this.tableEntities.add(linkedRows);
+    }
+
+    /**
+     * Indexes the tables with the IndexWriter, whose in-memory indexes are used by the benchmarks
+     */
+    public IndexWriter index() throws IOException
+    {
+        Configuration.setEmbeddingsDimension(this.dimension);
+        this.indexWriter = new IndexWriter(this.tables, this.indexDir, LINKER, this.neo4j, Runtime.getRuntime().availableProcessors(),
+                this.embeddingsDB, WIKI_PREFIX, KG_PREFIX);
+        this.indexWriter.performIO();
+        return this.indexWriter;
+    }
+
+    public IndexWriter getIndexWriter()
+    {
+        return this.indexWriter;
+    }
+
+    public File getIndexDirectory()
+    {
+        return this.indexDir;
+    }
+
+    public List<Path> getTables()
+    {
+        return this.tables;
+    }
+
+    public SyntheticNeo4jEndpoint getNeo4j()
+    {
+        return this.neo4j;
+    }
+
+    public SyntheticEmbeddingsDB getEmbeddingsDB()
+    {
+        return this.embeddingsDB;
+    }
+
+    /**
+     * Tables of the KG entities mentioned in each table as used to load LSH indexes
+     */
+    public Set<PairNonComparable<String, Table<String>>> linkedTables()
+    {
+        Set<PairNonComparable<String, Table<String>>> linkedTables = new HashSet<>();
+
+        for (int table = 0; table < this.tables.size(); table++)
+        {
+            linkedTables.add(new PairNonComparable<>(this.tables.get(table).getFileName().toString(), this.tableEntities.get(table)));
+        }
+
+        return linkedTables;
+    }
+
+    /**
+     * Samples a KG entity mentioned in the corpus
+     */
+    public String entity(Random random)
+    {
+        int entity;
+
+        do
+        {
+            entity = this.entities.sample(random);
+        } while (!this.mentionedEntities.get(entity));
+
+        return ENTITY_PREFIX + entity;
+    }
+
+    /**
+     * Samples the Wikipedia link of an entity mentioned in the corpus
+     */
+    public String mention(Random random)
+    {
+        String entity = entity(random);
+        return LINK_PREFIX + entity.substring(entity.lastIndexOf('_') + 1);
+    }
+
+    /**
+     * Samples a query of KG entities mentioned in the corpus
+     */
+    public Table<String> query(int rows, int columns, Random random)
+    {
+        List<List<String>> query = new ArrayList<>(rows);
+
+        for (int row = 0; row < rows; row++)
+        {
+            List<String> tuple = new ArrayList<>(columns);
+
+            for (int column = 0; column < columns; column++)
+            {
+                tuple.add(entity(random));
+            }
+
+            query.add(tuple);
+        }
+
+        return new SimpleTable<>(query);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        FileUtils.deleteDirectory(this.dir);
+    }
+}
@@ -0,0 +1,81 @@
+package com.thetis.benchmark;
+
+import com.thetis.connector.DBDriverBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Stand-in for the embeddings database giving each entity a deterministic random embedding
+ */
+public class SyntheticEmbeddingsDB implements DBDriverBatch<List<Double>, String>
+{
+    private final int dimension;
+    private final long seed;
+
+    public SyntheticEmbeddingsDB(int dimension, long seed)
+    {
+        this.dimension = dimension;
+        this.seed = seed;
+    }
+
+    @Override
+    public List<Double> select(String iri)
+    {
+        Random random = new Random(this.seed * 31 + iri.hashCode());
+        List<Double> vector = new ArrayList<>(this.dimension);
+
+        for (int i = 0; i < this.dimension; i++)
+        {
+            vector.add(random.nextGaussian());
+        }
+
+        return vector;
+    }
+
+    @Override
+    public Map<String, List<Double>> batchSelect(List<String> iris)
+    {
+        Map<String, List<Double>> vectors = new HashMap<>();
+
+        for (String iri : iris)
+        {
+            vectors.put(iri, select(iri));
+        }
+
+        return vectors;
+    }
+
+    @Override
+    public boolean batchInsert(List<String> iris, List<List<Float>> vectors)
+    {
+        return false;
+    }
+
+    @Override
+    public boolean update(String query)
+    {
+        return true;
+    }
+
+    @Override
+    public boolean updateSchema(String query)
+    {
+        return true;
+    }
+
+    @Override
+    public boolean close()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean drop(String query)
+    {
+        return true;
+    }
+}
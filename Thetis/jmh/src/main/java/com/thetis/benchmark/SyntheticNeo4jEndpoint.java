@@ -0,0 +1,112 @@
+package com.thetis.benchmark;
+
+import com.thetis.connector.Neo4jSemanticDriver;
+import com.thetis.structures.Pair;
+import org.neo4j.driver.Record;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stand-in for Neo4j giving each synthetic entity a deterministic set of types and predicates
+ * Types and predicates follow a Zipf distribution, so some types such as owl:Thing are shared by most entities
+ */
+public class SyntheticNeo4jEndpoint implements Neo4jSemanticDriver
+{
+    private static final String TYPE_PREFIX = "http://dbpedia.org/ontology/Type_", PREDICATE_PREFIX = "http://dbpedia.org/property/predicate_";
+    private final Zipf types, predicates;
+    private final long seed, nodes;
+
+    public SyntheticNeo4jEndpoint(int typeCount, int predicateCount, long nodes, long seed)
+    {
+        this.types = new Zipf(typeCount, 1.0);
+        this.predicates = new Zipf(predicateCount, 1.0);
+        this.nodes = nodes;
+        this.seed = seed;
+    }
+
+    private Random random(String entity, int salt)
+    {
+        return new Random(this.seed * 31 + entity.hashCode() * 17L + salt);
+    }
+
+    private static List<String> sample(Zipf zipf, String prefix, int count, Random random)
+    {
+        List<String> elements = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+        {
+            String element = prefix + zipf.sample(random);
+
+            if (!elements.contains(element))
+                elements.add(element);
+        }
+
+        return elements;
+    }
+
+    @Override
+    public List<String> searchTypes(String entity)
+    {
+        Random random = random(entity, 1);
+        List<String> types = sample(this.types, TYPE_PREFIX, 2 + random.nextInt(5), random);
+        types.add("https://www.w3.org/2002/07/owl#Thing");
+        return types;
+    }
+
+    @Override
+    public List<String> searchPredicates(String entity)
+    {
+        Random random = random(entity, 2);
+        return sample(this.predicates, PREDICATE_PREFIX, 3 + random.nextInt(8), random);
+    }
+
+    @Override
+    public String getPredicate(String predicateLabel)
+    {
+        return "";
+    }
+
+    @Override
+    public List<String> searchLinks(Iterable<String> links)
+    {
+        return List.of();
+    }
+
+    @Override
+    public List<String> searchLink(String link)
+    {
+        return List.of();
+    }
+
+    @Override
+    public List<Record> entityLabels()
+    {
+        return List.of();
+    }
+
+    @Override
+    public List<Pair<String, String>> searchLinkMentions(List<String> links)
+    {
+        return List.of();
+    }
+
+    @Override
+    public Long getNumEdges()
+    {
+        return this.nodes * 10;
+    }
+
+    @Override
+    public Long getNumNodes()
+    {
+        return this.nodes;
+    }
+
+    @Override
+    public Long getNumNeighbors(String node)
+    {
+        return 0L;
+    }
+}
@@ -0,0 +1,36 @@
+package com.thetis.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sampling of ranks 0 to n - 1 following a Zipf distribution, where rank 0 is the most popular
+ */
+public class Zipf
+{
+    private final double[] cumulative;
+
+    public Zipf(int n, double exponent)
+    {
+        this.cumulative = new double[n];
+        double sum = 0;
+
+        for (int rank = 0; rank < n; rank++)
+        {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            this.cumulative[rank] = sum;
+        }
+    }
+
+    public int sample(Random random)
+    {
+        double target = random.nextDouble() * this.cumulative[this.cumulative.length - 1];
+        int rank = Arrays.binarySearch(this.cumulative, target);
+        return Math.min(rank >= 0 ? rank : -rank - 1, this.cumulative.length - 1);
+    }
+
+    public int size()
+    {
+        return this.cumulative.length;
+    }
+}
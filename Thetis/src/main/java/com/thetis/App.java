@@ -3,6 +3,7 @@ package com.thetis;
 import com.thetis.commands.IndexTables;
 import com.thetis.commands.LoadEmbedding;
 import com.thetis.commands.SearchTables;
+import com.thetis.system.ExecutionService;
 
 import picocli.CommandLine;
 
@@ -162,6 +163,7 @@ public class App implements Runnable {
         }
         else {
             int exitCode = new CommandLine(new App()).execute(args);
+            ExecutionService.shutdown();
             System.exit(exitCode);
         }
     }
@@ -13,7 +13,10 @@ import com.thetis.loader.IndexWriter;
 import com.thetis.loader.Linker;
 import com.thetis.loader.LuceneLinker;
 import com.thetis.loader.WikiLinker;
+import com.thetis.store.lsh.ContainmentLSHIndex;
+import com.thetis.store.lsh.LSHIndex;
 import com.thetis.system.Configuration;
+import com.thetis.system.ExecutionService;
 import com.thetis.system.Logger;
 import com.thetis.connector.DBDriverBatch;
 import com.thetis.connector.Factory;
@@ -80,6 +83,9 @@ public class IndexTables extends Command {
     @CommandLine.Option(names = {"-t", "--threads"}, description = "Number of threads", required = false, defaultValue = "1")
     private int threads;
 
+    @CommandLine.Option(names = {"--virtualThreads"}, description = "If specified, I/O-bound tasks run on virtual threads when the JVM supports them")
+    private boolean virtualThreads;
+
     private File configFile = null;
     @CommandLine.Option(names = { "-cf", "--config"}, paramLabel = "CONF", description = "configuration file", required = true, defaultValue = "./config.properties" )
     public void setConfigFile(File value) {
@@ -151,6 +157,33 @@ public class IndexTables extends Command {
     @CommandLine.Option(names = {"-link", "--entity-linker"}, description = "Type of entity linking", required = true, defaultValue = "wikilink")
     private Linking linking;
 
+    @CommandLine.Option(names = {"--quantizeEmbeddings"}, description = "If specified, entity embeddings are also stored quantized to 8-bit integers for approximate similarity search")
+    private boolean quantizeEmbeddings;
+
+    @CommandLine.Option(names = {"--tableHNSW"}, description = "If specified, a table-level HNSW index of a vector of each table column is built for pre-filtering")
+    private boolean tableHNSW;
+
+    @CommandLine.Option(names = {"--tableRowVectors"}, description = "If specified, the table-level HNSW index holds a vector of each table row in addition to each table column (requires '--tableHNSW')")
+    private boolean tableRowVectors;
+
+    @CommandLine.Option(names = {"--lsh"}, split = ",", description = "LSH indexes of entities to build for pre-filtering - use comma (',') as separator: ${COMPLETION-CANDIDATES}")
+    private Set<LSHIndex.Kind> lshIndexes = EnumSet.noneOf(LSHIndex.Kind.class);
+
+    @CommandLine.Option(names = {"--lshSignatureSize"}, description = "Number of min-hash values or random projections of each entity signature of the LSH indexes", defaultValue = "32")
+    private int lshSignatureSize;
+
+    @CommandLine.Option(names = {"--lshBandSize"}, description = "Number of signature values hashed into a bucket of each bucket group of the LSH indexes, which must divide the signature size", defaultValue = "8")
+    private int lshBandSize;
+
+    @CommandLine.Option(names = {"--lshBuckets"}, description = "Number of buckets of each bucket group of the LSH indexes", defaultValue = "10007")
+    private int lshBuckets;
+
+    @CommandLine.Option(names = {"--seed"}, description = "Seed of the random hash functions and projections of the LSH and containment LSH indexes", defaultValue = "42")
+    private int seed;
+
+    @CommandLine.Option(names = {"--containment"}, split = ",", description = "Containment LSH indexes of the entities or entity types of table columns to build for pre-filtering - use comma (',') as separator: ${COMPLETION-CANDIDATES}")
+    private Set<ContainmentLSHIndex.Elements> containmentIndexes = EnumSet.noneOf(ContainmentLSHIndex.Elements.class);
+
     private File kgDir = null;
     @CommandLine.Option(names = {"-kg", "--kg-dir"}, paramLabel = "KG_DIR", description = "Directory of KG TTL files", required = false)
     public void setKgDir(File dir)
@@ -179,12 +212,26 @@ public class IndexTables extends Command {
 
     @Override
     public Integer call() {
+        ExecutionService.configure(this.threads, this.virtualThreads);
+
         if (!embeddingsAreLoaded())
         {
             Logger.logNewLine(Logger.Level.ERROR, "Load embeddings before using this command");
             return 1;
         }
 
+        else if (this.tableRowVectors && !this.tableHNSW)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "'--tableRowVectors' requires '--tableHNSW'");
+            return 1;
+        }
+
+        else if (this.lshSignatureSize <= 0 || this.lshBandSize <= 0 || this.lshBuckets <= 0 || this.lshSignatureSize % this.lshBandSize != 0)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "'--lshBandSize' must divide '--lshSignatureSize', and both must be positive as must '--lshBuckets'");
+            return 1;
+        }
+
         long parsedTables;
         Logger.logNewLine(Logger.Level.INFO, "Input Directory: " + this.tableDir.getAbsolutePath());
         Logger.logNewLine(Logger.Level.INFO, "Output Directory: " + this.outputDir.getAbsolutePath());
@@ -275,6 +322,13 @@ public class IndexTables extends Command {
             long startTime = System.nanoTime();
             IndexWriter indexWriter = new IndexWriter(filePaths, outputDir, linker, connector, threads, embeddingStore,
                     WIKI_PREFIX, URI_PREFIX, this.disallowedEntityTypes);
+            indexWriter.setQuantizeEmbeddings(this.quantizeEmbeddings);
+            indexWriter.setTableHNSW(this.tableHNSW);
+            indexWriter.setTableRowVectors(this.tableRowVectors);
+            indexWriter.setLSHIndexes(this.lshIndexes);
+            indexWriter.setLSHParameters(this.lshSignatureSize, this.lshBandSize, this.lshBuckets);
+            indexWriter.setSeed(this.seed);
+            indexWriter.setContainmentIndexes(this.containmentIndexes);
             indexWriter.performIO();
 
             long elapsedTime = System.nanoTime() - startTime;
@@ -304,4 +358,4 @@ public class IndexTables extends Command {
             return -1;
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
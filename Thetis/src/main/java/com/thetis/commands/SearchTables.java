@@ -13,6 +13,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -26,14 +27,20 @@ import com.thetis.search.multicriteria.CombinerPipeline;
 import com.thetis.search.multicriteria.MultiSearch;
 import com.thetis.search.multicriteria.Pareto;
 import com.thetis.search.multicriteria.Topsis;
+import com.thetis.similarity.SimilarityCache;
+import com.thetis.store.ElementTableLink;
 import com.thetis.store.EmbeddingsIndex;
 import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
+import com.thetis.store.LinkedTableIndex;
 import com.thetis.store.hnsw.HNSW;
+import com.thetis.store.lsh.ContainmentLSHIndex;
+import com.thetis.store.lsh.LSHIndex;
 import com.thetis.store.lucene.LuceneIndex;
 import com.thetis.structures.graph.Entity;
 import com.thetis.structures.graph.Type;
+import com.thetis.system.ExecutionService;
 import com.thetis.system.Logger;
 import com.thetis.tables.JsonTable;
 import com.thetis.commands.parser.TableParser;
@@ -108,7 +115,27 @@ public class SearchTables extends Command {
         }
     }
 
-    private enum PrefilterTechnique {HNSW, LUCENE}
+    private enum PrefilterTechnique {
+        HNSW(null, null), LUCENE(null, null), TABLE_HNSW(null, null), TYPES_LSH(LSHIndex.Kind.TYPES, null),
+        PREDICATES_LSH(LSHIndex.Kind.PREDICATES, null), EMBEDDINGS_LSH(LSHIndex.Kind.EMBEDDINGS, null),
+        ENTITY_CONTAINMENT(null, ContainmentLSHIndex.Elements.ENTITIES), TYPE_CONTAINMENT(null, ContainmentLSHIndex.Elements.TYPES);
+
+        private final LSHIndex.Kind lsh;
+        private final ContainmentLSHIndex.Elements containment;
+
+        PrefilterTechnique(LSHIndex.Kind lsh, ContainmentLSHIndex.Elements containment) {
+            this.lsh = lsh;
+            this.containment = containment;
+        }
+
+        public final LSHIndex.Kind getLSH() {
+            return this.lsh;
+        }
+
+        public final ContainmentLSHIndex.Elements getContainment() {
+            return this.containment;
+        }
+    }
 
     @CommandLine.Option(names = { "-sm", "--search-mode" }, description = "Must be one of {exact, analogous, keyword, combined}", required = true)
     private SearchMode searchMode = null;
@@ -238,7 +265,7 @@ public class SearchTables extends Command {
     @CommandLine.Option(names = {"-t", "--threads"}, description = "Number of threads", required = true, defaultValue = "1")
     private int threads;
 
-    @CommandLine.Option(names = {"-pf", "--pre-filter"}, description = "Pre-filtering technique to reduce search space (HNSW, LUCENE)")
+    @CommandLine.Option(names = {"-pf", "--pre-filter"}, description = "Pre-filtering technique to reduce search space (HNSW, LUCENE, TABLE_HNSW, TYPES_LSH, PREDICATES_LSH, EMBEDDINGS_LSH, ENTITY_CONTAINMENT, TYPE_CONTAINMENT)")
     private PrefilterTechnique prefilterTechnique = null;
 
     @CommandLine.Option(names = {"-kin", "--bm25-index-name"}, description = "Index name for BM25 search in Elasticsearch")
@@ -247,9 +274,57 @@ public class SearchTables extends Command {
     @CommandLine.Option(names = {"-qm", "--query-mapping"}, description = "Mapping file from query ID to keyword query")
     private String queryMappingFile = null;
 
+    @CommandLine.Option(names = {"-scs", "--similarityCacheSize"}, description = "Maximum number of entity pair similarities to cache (0 disables the cache)", defaultValue = "1048576")
+    private int similarityCacheSize;
+
+    @CommandLine.Option(names = {"--retainSimilarityCache"}, description = "If specified, cached entity pair similarities are retained across queries")
+    private boolean retainSimilarityCache;
+
+    @CommandLine.Option(names = {"--noCandidatePruning"}, description = "If specified, all tables are scored instead of pruning tables whose upper bound score cannot reach the top-K")
+    private boolean noCandidatePruning;
+
+    @CommandLine.Option(names = {"--virtualThreads"}, description = "If specified, I/O-bound tasks run on virtual threads when the JVM supports them")
+    private boolean virtualThreads;
+
+    @CommandLine.Option(names = {"--batch"}, description = "If specified, all queries of analogous search are scored in a single pass over the corpus, and the runtime of each query is the runtime of the batch divided by the number of queries")
+    private boolean batch;
+
+    @CommandLine.Option(names = {"--timeBudget"}, description = "Time budget of analogous search in milliseconds after which the best top-K found so far is returned (0 for no budget)", defaultValue = "0")
+    private long timeBudget;
+
+    @CommandLine.Option(names = {"--maxScoredTables"}, description = "Maximum number of tables scored by analogous search before the best top-K found so far is returned (0 for no maximum)", defaultValue = "0")
+    private int maxScoredTables;
+
+    @CommandLine.Option(names = {"--quantizedEmbeddings"}, description = "If specified, entity embedding similarities are approximated from the quantized embeddings written with 'index --quantizeEmbeddings'")
+    private boolean quantizedEmbeddings;
+
+    @CommandLine.Option(names = {"--rerankFactor"}, description = "Number of tables re-ranked with exact embeddings as a multiple of top-K when using quantized embeddings", defaultValue = "2")
+    private int rerankFactor;
+
+    @CommandLine.Option(names = {"--rerankMargin"}, description = "Tables whose approximate score is within this margin of the approximate top-K threshold are re-ranked with exact embeddings", defaultValue = "0.01")
+    private double rerankMargin;
+
+    @CommandLine.Option(names = {"--noExactEmbeddings"}, description = "If specified with --quantizedEmbeddings, the exact embeddings are not loaded to save memory and tables are not re-ranked")
+    private boolean noExactEmbeddings;
+
+    @CommandLine.Option(names = {"--tableCandidates"}, description = "Number of nearest table columns and rows retrieved for each query column and row when pre-filtering with TABLE_HNSW", defaultValue = "100")
+    private int tableCandidates;
+
+    @CommandLine.Option(names = {"--lshProbes"}, description = "Number of extra buckets probed per bucket group when pre-filtering with an LSH index", defaultValue = "0")
+    private int lshProbes;
+
+    @CommandLine.Option(names = {"--containmentThreshold"}, description = "Smallest estimated containment of a query column in a table column when pre-filtering with ENTITY_CONTAINMENT or TYPE_CONTAINMENT", defaultValue = "0.5")
+    private double containmentThreshold;
+
+    private LinkedTableIndex linkedTables = null;
+    private Set<String> corpusFiles = null;
+    private ElementTableLink elementTables = null;
+    private SimilarityCache similarityCache = null;
+
     @Override
     public Integer call()
     {
+        ExecutionService.configure(this.threads, this.virtualThreads);
         Logger.logNewLine(Logger.Level.INFO, "Index Directory: " + this.indexDir);
         Logger.logNewLine(Logger.Level.INFO, "Query Directory: " + this.queriesLocation.toString());
         Logger.logNewLine(Logger.Level.INFO, "Table Directory: " + this.tableDir);
@@ -276,6 +351,10 @@ public class SearchTables extends Command {
             connector.testConnection();
 
             IndexReader indexReader = new IndexReader(this.indexDir, true, true, embeddingStore);
+
+            if (this.quantizedEmbeddings)
+                indexReader.loadQuantizedEmbeddings(!this.noExactEmbeddings);
+
             indexReader.performIO();
 
             long elapsedTime = System.nanoTime() - startTime;
@@ -286,6 +365,11 @@ public class SearchTables extends Command {
             EntityTableLink entityTableLink = indexReader.getEntityTableLink();
             EmbeddingsIndex<Id> embeddingsIdx = indexReader.getEmbeddingsIndex();
             HNSW hnsw = indexReader.getHnsw();
+            this.linkedTables = indexReader.getLinkedTables();
+
+            if (!this.noCandidatePruning && this.simProperty != SimilarityProperty.EMBEDDINGS)
+                this.elementTables = ElementTableLink.build(entityTable, entityTableLink, this.simProperty == SimilarityProperty.TYPES);
+
             LuceneIndex lucene = indexReader.getLuceneIndex();
             LuceneSearch keywordSearch = new LuceneSearch(lucene, Objects.requireNonNull(this.tableDir.listFiles()).length);
             Prefilter prefilter = null;
@@ -301,15 +385,47 @@ public class SearchTables extends Command {
                 bm25 = new BM25(this.bm25IndexName, true, this.topK, this.queryMappingFile);
             }
 
+            if (this.prefilterTechnique == PrefilterTechnique.TABLE_HNSW && indexReader.getTableHNSW() == null)
+            {
+                Logger.logNewLine(Logger.Level.ERROR, "The index has no table-level HNSW index, so it must be rebuilt with '--tableHNSW' to pre-filter with TABLE_HNSW");
+                return -1;
+            }
+
+            LSHIndex<String, String> lsh = null;
+
+            if (this.prefilterTechnique != null && this.prefilterTechnique.getLSH() != null &&
+                    (lsh = indexReader.getLSHIndex(this.prefilterTechnique.getLSH(), connector)) == null)
+            {
+                Logger.logNewLine(Logger.Level.ERROR, "The index has no " + this.prefilterTechnique.getLSH() + " LSH index, so it must be rebuilt with 'index --lsh " +
+                        this.prefilterTechnique.getLSH() + "' to pre-filter with " + this.prefilterTechnique);
+                return -1;
+            }
+
+            ContainmentLSHIndex containment = null;
+
+            if (this.prefilterTechnique != null && this.prefilterTechnique.getContainment() != null &&
+                    (containment = indexReader.getContainmentIndex(this.prefilterTechnique.getContainment())) == null)
+            {
+                Logger.logNewLine(Logger.Level.ERROR, "The index has no " + this.prefilterTechnique.getContainment() + " containment LSH index, so it must be rebuilt with 'index --containment " +
+                        this.prefilterTechnique.getContainment() + "' to pre-filter with " + this.prefilterTechnique);
+                return -1;
+            }
+
             if (this.prefilterTechnique != null)
             {
                 prefilter = switch (this.prefilterTechnique) {
                     case HNSW -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, hnsw);
                     case LUCENE -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, keywordSearch);
+                    case TABLE_HNSW -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, indexReader.getTableHNSW(), this.tableCandidates);
+                    case TYPES_LSH, PREDICATES_LSH, EMBEDDINGS_LSH -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, lsh, this.lshProbes);
+                    case ENTITY_CONTAINMENT, TYPE_CONTAINMENT -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, containment, this.containmentThreshold);
                     default -> null;
                 };
             }
 
+            List<Table<String>> batchQueries = new ArrayList<>();
+            List<String> batchQueryNames = new ArrayList<>();
+
             for (Path queryPath : this.queryFiles)
             {
                 String[] split = queryPath.toFile().toString().split("/");
@@ -336,6 +452,13 @@ public class SearchTables extends Command {
 
                 Logger.logNewLine(Logger.Level.INFO, "Search mode: " + this.searchMode.getMode());
 
+                if (this.batch && this.searchMode == SearchMode.ANALOGOUS)
+                {
+                    batchQueries.add(queryTable);
+                    batchQueryNames.add(queryName);
+                    continue;
+                }
+
                 switch (this.searchMode)
                 {
                     case EXACT:
@@ -360,6 +483,9 @@ public class SearchTables extends Command {
                 }
             }
 
+            if (!batchQueries.isEmpty())
+                analogousSearch(batchQueries, batchQueryNames, linker, entityTable, entityTableLink, embeddingsIdx, prefilter, this.tableDir.toPath());
+
             return 0;
         }
 
@@ -498,10 +624,6 @@ public class SearchTables extends Command {
                                                 EmbeddingsIndex<Id> embeddingIdx, Prefilter prefilter, Path tableDir) throws IOException
     {
         AnalogousSearch search;
-        Stream<Path> fileStream = Files.find(tableDir, Integer.MAX_VALUE,
-                (filePath, fileAttr) -> fileAttr.isRegularFile() && filePath.getFileName().toString().endsWith(".json"));
-        Set<Path> filePaths = fileStream.collect(Collectors.toSet());
-        filePaths = filePaths.stream().map(Path::toAbsolutePath).collect(Collectors.toSet());
         AnalogousSearch.EntitySimilarity entitySimilarity = this.simProperty == SimilarityProperty.TYPES ?
                 AnalogousSearch.EntitySimilarity.JACCARD_TYPES : AnalogousSearch.EntitySimilarity.JACCARD_PREDICATES;
 
@@ -526,34 +648,86 @@ public class SearchTables extends Command {
                     this.hungarianAlgorithmSameAlignmentAcrossTuples, AnalogousSearch.SimilarityMeasure.EUCLIDEAN, prefilter);
         }
 
-        search.setCorpus(filePaths.stream().map(Path::toString).collect(Collectors.toSet()));
+        search.setCorpus(corpusFiles(tableDir));
+        search.setLinkedTables(this.linkedTables);
+        search.setCandidateIndex(this.elementTables);
+        search.setBudget(TimeUnit.MILLISECONDS.toNanos(this.timeBudget), this.maxScoredTables);
+
+        if (this.quantizedEmbeddings)
+            search.setQuantizedSimilarity(this.rerankFactor, this.rerankMargin);
+
+        synchronized (this)
+        {
+            if (this.similarityCache == null || !this.retainSimilarityCache)
+                this.similarityCache = new SimilarityCache(this.similarityCacheSize);
+
+            search.setSimilarityCache(this.similarityCache, this.retainSimilarityCache);
+        }
+
         return search;
     }
 
+    // The table directory is only walked once, as it is the same for all queries
+    private synchronized Set<String> corpusFiles(Path tableDir) throws IOException
+    {
+        if (this.corpusFiles == null)
+        {
+            try (Stream<Path> fileStream = Files.find(tableDir, Integer.MAX_VALUE,
+                    (filePath, fileAttr) -> fileAttr.isRegularFile() && filePath.getFileName().toString().endsWith(".json")))
+            {
+                this.corpusFiles = fileStream.map(path -> path.toAbsolutePath().toString()).collect(Collectors.toSet());
+            }
+        }
+
+        return this.corpusFiles;
+    }
+
     /**
      * Given a list of entities, return a ranked list of table candidates
      */
     public void analogousSearch(Table<String> query, String queryName, EntityLinking linker, EntityTable table,
                                 EntityTableLink tableLink, EmbeddingsIndex<Id> embeddingIdx, Prefilter prefilter,
                                 Path tableDir) throws IOException
+    {
+        analogousSearch(List.of(query), List.of(queryName), linker, table, tableLink, embeddingIdx, prefilter, tableDir);
+    }
+
+    /**
+     * Searches a batch of queries in a single pass over the corpus and saves the ranked table candidates of each query
+     */
+    public void analogousSearch(List<Table<String>> queries, List<String> queryNames, EntityLinking linker, EntityTable table,
+                                EntityTableLink tableLink, EmbeddingsIndex<Id> embeddingIdx, Prefilter prefilter,
+                                Path tableDir) throws IOException
     {
         AnalogousSearch search = initAnalogousSearch(linker, table, tableLink, embeddingIdx, prefilter, tableDir);
-        Result result = search.search(query);
-        Iterator<Pair<String, Double>> resultIter = result.getResults();
-        List<Pair<String, Double>> scores = new ArrayList<>();
-        Logger.logNewLine(Logger.Level.RESULT, "\nTop-" + this.topK + " tables are:");
+        List<AnalogousSearch.QueryState> states = search.searchBatch(queries);
+
+        if (states == null)
+            throw new RuntimeException("Analogous search failed");
 
-        while (resultIter.hasNext())
+        // Cache statistics are only known per query when the batch has a single query
+        long cacheHits = states.size() == 1 ? search.getSimilarityCacheHits() : -1,
+                cacheMisses = states.size() == 1 ? search.getSimilarityCacheMisses() : -1;
+
+        for (int i = 0; i < states.size(); i++)
         {
-            Pair<String, Double> next = resultIter.next();
-            scores.add(next);
-            Logger.logNewLine(Logger.Level.RESULT, "Filename = " + next.getFirst() + ", score = " + next.getSecond());
-        }
+            AnalogousSearch.QueryState state = states.get(i);
+            Iterator<Pair<String, Double>> resultIter = state.getResult().getResults();
+            List<Pair<String, Double>> scores = new ArrayList<>();
+            Logger.logNewLine(Logger.Level.RESULT, "\nTop-" + this.topK + " tables of query '" + queryNames.get(i) + "' are:");
+
+            while (resultIter.hasNext())
+            {
+                Pair<String, Double> next = resultIter.next();
+                scores.add(next);
+                Logger.logNewLine(Logger.Level.RESULT, "Filename = " + next.getFirst() + ", score = " + next.getSecond());
+            }
 
-        saveFilenameScores(this.outputDir, tableLink.getDirectory(), queryName, scores, search.getTableStats(),
-                search.getQueryEntitiesMissingCoverage(), search.elapsedNanoSeconds(), search.getEmbeddingComparisons(),
-                search.getNonEmbeddingComparisons(), search.getEmbeddingCoverageSuccesses(), search.getEmbeddingCoverageFails(),
-                search.getReduction());
+            saveFilenameScores(this.outputDir, tableLink.getDirectory(), queryNames.get(i), scores, state.getTableStats(),
+                    state.getQueryEntitiesMissingCoverage(), state.elapsedNanoSeconds(), state.getEmbeddingComparisons(),
+                    state.getNonEmbeddingComparisons(), state.getEmbeddingCoverageSuccesses(), state.getEmbeddingCoverageFails(),
+                    cacheHits, cacheMisses, state.getReduction(), state.isPartial(), state.getScoredTables(), state.getScoredReduction());
+        }
     }
 
     public int ppr(Table<String> query, String queryName, EntityLinking linker, EntityTable table, EntityTableLink tableLink,
@@ -583,7 +757,7 @@ public class SearchTables extends Command {
             }
 
             saveFilenameScores(this.outputDir, tableLink.getDirectory(), queryName, scores, new HashMap<>(), Set.of(), search.elapsedNanoSeconds(),
-                    -1, -1, -1, -1, 0.0);
+                    -1, -1, -1, -1, -1, -1, 0.0, false, -1, 0.0);
         } catch(AuthenticationException ex){
             Logger.logNewLine(Logger.Level.ERROR, "Could not Login to Neo4j Server (user or password do not match)");
             Logger.logNewLine(Logger.Level.ERROR, ex.getMessage());
@@ -615,7 +789,7 @@ public class SearchTables extends Command {
         }
 
         saveFilenameScores(this.outputDir, tableDir, queryName, scores, new HashMap<>(), Set.of(), bm25.elapsedNanoSeconds(),
-                -1, -1, -1, -1, 0.0);
+                -1, -1, -1, -1, -1, -1, 0.0, false, -1, 0.0);
     }
 
     public void combinedSearch(Table<String> query, String queryName, BM25 bm25, EntityLinking linker, EntityTable table,
@@ -637,7 +811,8 @@ public class SearchTables extends Command {
 
         scores = scores.subList(0, this.topK);
         saveFilenameScores(this.outputDir, tableLink.getDirectory(), queryName, scores, new HashMap<>(), Set.of(), semanticSearch.elapsedNanoSeconds(),
-                -1, -1, -1, -1, semanticSearch.getReduction());
+                -1, -1, -1, -1, semanticSearch.getSimilarityCacheHits(), semanticSearch.getSimilarityCacheMisses(),
+                semanticSearch.getReduction(), false, -1, 0.0);
     }
 
     /**
@@ -647,7 +822,9 @@ public class SearchTables extends Command {
     public synchronized void saveFilenameScores(File outputDir, String tableDir, String queryName, List<Pair<String, Double>> scores,
                                                 Map<String, Stats> tableStats, Set<String> queryEntitiesMissingCoverage,
                                                 long runtime, int embeddingComparisons, int nonEmbeddingComparisons,
-                                                int embeddingCoverageSuccesses, int embeddingCoverageFails, double reduction)
+                                                int embeddingCoverageSuccesses, int embeddingCoverageFails, long similarityCacheHits,
+                                                long similarityCacheMisses, double reduction, boolean partial, long scoredTables,
+                                                double scoredReduction)
     {
         File saveDir = new File(outputDir, "/search_output/" + queryName);
 
@@ -700,6 +877,17 @@ public class SearchTables extends Command {
         jsonObj.addProperty("threads", this.threads);
         jsonObj.addProperty("algorithm", algorithm);
 
+        if (scoredTables >= 0) {
+            jsonObj.addProperty("partial", partial);
+            jsonObj.addProperty("numScoredTables", scoredTables);
+            jsonObj.addProperty("scoredReduction", scoredReduction);
+        }
+
+        if (similarityCacheHits >= 0 && similarityCacheMisses >= 0) {
+            jsonObj.addProperty("numSimilarityCacheHits", similarityCacheHits);
+            jsonObj.addProperty("numSimilarityCacheMisses", similarityCacheMisses);
+        }
+
         if (this.simProperty == SimilarityProperty.EMBEDDINGS) {
             // Add the embedding statistics
             jsonObj.addProperty("numEmbeddingSimComparisons", embeddingComparisons);
@@ -1,8 +1,35 @@
 package com.thetis.loader;
 
+import com.thetis.store.lsh.ContainmentLSHIndex;
+import com.thetis.store.lsh.LSHIndex;
+import com.thetis.system.Configuration;
+
 import java.io.IOException;
 
 public interface IndexIO
 {
     void performIO() throws IOException;
+
+    /**
+     * Name of the file of an LSH index in the index directory
+     */
+    static String lshFile(LSHIndex.Kind kind)
+    {
+        return switch (kind) {
+            case TYPES -> Configuration.getTypesLSHFile();
+            case PREDICATES -> Configuration.getPredicatesLSHFile();
+            case EMBEDDINGS -> Configuration.getEmbeddingsLSHFile();
+        };
+    }
+
+    /**
+     * Name of the file of a containment LSH index in the index directory
+     */
+    static String containmentFile(ContainmentLSHIndex.Elements elements)
+    {
+        return switch (elements) {
+            case ENTITIES -> Configuration.getEntityContainmentFile();
+            case TYPES -> Configuration.getTypeContainmentFile();
+        };
+    }
 }
@@ -6,27 +6,41 @@ import com.thetis.store.EmbeddingsIndex;
 import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
+import com.thetis.store.LinkedTableIndex;
+import com.thetis.store.QuantizedEmbeddings;
 import com.thetis.store.hnsw.HNSW;
+import com.thetis.store.hnsw.TableHNSW;
+import com.thetis.store.lsh.ContainmentLSHIndex;
+import com.thetis.store.lsh.LSHIndex;
 import com.thetis.store.lsh.VectorLSHIndex;
 import com.thetis.store.lsh.SetLSHIndex;
 import com.thetis.store.lucene.LuceneIndex;
+import com.thetis.store.segment.Segment;
+import com.thetis.store.segment.SegmentReader;
 import com.thetis.structures.Id;
 import com.thetis.system.Configuration;
+import com.thetis.system.ExecutionService;
 import com.thetis.system.Logger;
+import com.thetis.system.Progress;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 /**
  * Main class responsible for reading indexes serialized on disk
+ * Segment files are only an on-disk format: their indexes are fully decoded into heap structures, so loading takes time linear in the index size
+ * LSH indexes of entities are still read with Java deserialization
  */
 public class IndexReader implements IndexIO
 {
-    private boolean multithreaded, logProgress;
+    private boolean multithreaded, logProgress, quantizedEmbeddings = false, exactEmbeddings = true;
     private File indexDir;
 
     // Indexes
@@ -34,10 +48,14 @@ public class IndexReader implements IndexIO
     private EntityTable entityTable;
     private EntityTableLink entityTableLink;
     private EmbeddingsIndex<Id> embeddingsIdx;
+    private LinkedTableIndex linkedTables;
     private HNSW hnsw;
+    private TableHNSW tableHNSW = null;
+    private final Map<LSHIndex.Kind, LSHIndex<String, String>> lshIndexes = new EnumMap<>(LSHIndex.Kind.class);
+    private final Map<ContainmentLSHIndex.Elements, ContainmentLSHIndex> containmentIndexes = new EnumMap<>(ContainmentLSHIndex.Elements.class);
     private LuceneIndex luceneIndex;
     private DBDriver<List<Double>, String> embedddingsDB;
-    private static final int INDEX_COUNT = 6;
+    private static final int INDEX_COUNT = 8;
 
     public IndexReader(File indexDir, boolean isMultithreaded, boolean logProgress, DBDriver<List<Double>, String> embedddingsDB)
     {
@@ -57,6 +75,16 @@ public class IndexReader implements IndexIO
         this.embedddingsDB = embedddingsDB;
     }
 
+    /**
+     * Loads the embeddings quantized to 8-bit integers by the IndexWriter in addition to or instead of the exact embeddings
+     * @param exactEmbeddings Whether to also load the exact float embeddings, which are needed to re-rank tables scored with quantized embeddings
+     */
+    public void loadQuantizedEmbeddings(boolean exactEmbeddings)
+    {
+        this.quantizedEmbeddings = true;
+        this.exactEmbeddings = exactEmbeddings;
+    }
+
     /**
      * Reads indexes from disk
      * @throws IOException
@@ -64,64 +92,89 @@ public class IndexReader implements IndexIO
     @Override
     public void performIO() throws IOException
     {
-        ExecutorService threadPoolService = Executors.newFixedThreadPool(this.multithreaded ? INDEX_COUNT : 1);
-        Future<?> f1 = threadPoolService.submit(this::loadEntityLinker);
-        Future<?> f2 = threadPoolService.submit(this::loadEntityTable);
-        Future<?> f3 = threadPoolService.submit(this::loadEntityTableLink);
-        Future<?> f4 = threadPoolService.submit(this::loadEmbeddingsIndex);
-        Future<?> f5 = threadPoolService.submit(this::loadLucene);
-        int completed = -1;
+        Executor executor = ExecutionService.io(this.multithreaded ? INDEX_COUNT : 1);
+        Progress progress = new Progress(INDEX_COUNT, 1, "Loaded indexes: %d/%d");
+        List<Future<?>> futures = List.of(
+                progress.submit(executor, Executors.callable(this::loadEntityLinker)),
+                progress.submit(executor, Executors.callable(this::loadEntityTable)),
+                progress.submit(executor, Executors.callable(this::loadEntityTableLink)),
+                progress.submit(executor, Executors.callable(this::loadEmbeddingsIndex)),
+                progress.submit(executor, Executors.callable(this::loadLucene)),
+                progress.submit(executor, Executors.callable(this::loadLinkedTables)),
+                progress.submit(executor, Executors.callable(this::loadTableHNSW)));
 
-        while (!f1.isDone() || !f2.isDone() || !f3.isDone() || !f4.isDone() || !f5.isDone())
+        try
         {
-            int tmpCompleted = (f1.isDone() ? 1 : 0) + (f2.isDone() ? 1 : 0) + (f3.isDone() ? 1 : 0) +
-                    (f4.isDone() ? 1 : 0) + (f5.isDone() ? 1 : 0);
-
-            if (tmpCompleted != completed)
+            for (Future<?> future : futures)
             {
-                completed = tmpCompleted;
-                Logger.log(Logger.Level.INFO, "Loaded indexes: " + completed + "/" + INDEX_COUNT);
+                future.get();
             }
         }
 
-        loadHNSWIndex();
-        Logger.log(Logger.Level.INFO, "Loaded indexes: " + INDEX_COUNT + "/" + INDEX_COUNT);
-
-        try
-        {
-            f1.get();
-            f2.get();
-            f3.get();
-            f4.get();
-            f5.get();
-        }
-
         catch (InterruptedException | ExecutionException e)
         {
             Logger.logNewLine(Logger.Level.ERROR, "Failed loading an index:");
             Logger.logNewLine(Logger.Level.ERROR, e.getMessage());
             throw new RuntimeException(e.getMessage());
         }
+
+        progress.run(this::loadHNSWIndex);
     }
 
     private void loadEntityLinker()
     {
-        this.linker = (EntityLinking) readIndex(this.indexDir + "/" + Configuration.getEntityLinkerFile());
+        this.linker = readSegment(this.indexDir + "/" + Configuration.getEntityLinkerFile(), Segment.Kind.ENTITY_LINKING,
+                EntityLinking::readSegment);
     }
 
     private void loadEntityTable()
     {
-        this.entityTable = (EntityTable) readIndex(this.indexDir + "/" + Configuration.getEntityTableFile());
+        this.entityTable = readSegment(this.indexDir + "/" + Configuration.getEntityTableFile(), Segment.Kind.ENTITY_TABLE, EntityTable::readSegment);
     }
 
     private void loadEntityTableLink()
     {
-        this.entityTableLink = (EntityTableLink) readIndex(this.indexDir + "/" + Configuration.getEntityToTablesFile());
+        this.entityTableLink = readSegment(this.indexDir + "/" + Configuration.getEntityToTablesFile(), Segment.Kind.ENTITY_TABLE_LINK,
+                EntityTableLink::readSegment);
     }
 
     private void loadEmbeddingsIndex()
     {
-        this.embeddingsIdx = (EmbeddingsIndex<Id>) readIndex(this.indexDir + "/" + Configuration.getEmbeddingsIndexFile());
+        QuantizedEmbeddings quantized = null;
+
+        if (this.quantizedEmbeddings)
+            quantized = readSegment(this.indexDir + "/" + Configuration.getQuantizedEmbeddingsIndexFile(), Segment.Kind.QUANTIZED_EMBEDDINGS,
+                    QuantizedEmbeddings::readSegment);
+
+        if (quantized != null && !this.exactEmbeddings)
+        {
+            this.embeddingsIdx = EmbeddingsIndex.quantizedOnly(quantized);
+            return;
+        }
+
+        this.embeddingsIdx = readSegment(this.indexDir + "/" + Configuration.getEmbeddingsIndexFile(), Segment.Kind.EMBEDDINGS,
+                EmbeddingsIndex::readSegment);
+        this.embeddingsIdx.setQuantized(quantized);
+    }
+
+    private void loadLinkedTables()
+    {
+        this.linkedTables = readSegment(this.indexDir + "/" + Configuration.getLinkedTablesFile(), Segment.Kind.LINKED_TABLES,
+                LinkedTableIndex::readSegment);
+    }
+
+    // Indexes written before the table-level HNSW index was introduced do not have it
+    private void loadTableHNSW()
+    {
+        if (!new File(this.indexDir + "/" + Configuration.getTableHNSWFile()).exists())
+        {
+            Logger.logNewLine(Logger.Level.INFO, "Index has no table-level HNSW index");
+            return;
+        }
+
+        this.tableHNSW = readSegment(this.indexDir + "/" + Configuration.getTableHNSWFile(), Segment.Kind.TABLE_HNSW, TableHNSW::readSegment);
+        this.tableHNSW.load(Path.of(this.indexDir + "/" + Configuration.getTableHNSWColumnsFile()),
+                Path.of(this.indexDir + "/" + Configuration.getTableHNSWRowsFile()));
     }
 
     private void loadHNSWIndex()
@@ -172,6 +225,26 @@ public class IndexReader implements IndexIO
         }
     }
 
+    private <T> T readSegment(String file, Segment.Kind kind, SegmentReader.Decoder<T> decoder)
+    {
+        try
+        {
+            return SegmentReader.read(new File(file), kind, decoder);
+        }
+
+        catch (EOFException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "EOF reached earlier than expected when reading index segment: " + file);
+            throw new RuntimeException(e.getMessage());
+        }
+
+        catch (IOException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "IO error when reading index segment: " + file);
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
     private HNSW readHNSW()
     {
         try (ObjectInputStream stream = new ObjectInputStream(new FileInputStream(this.indexDir + "/" + Configuration.getHNSWParamsFile())))
@@ -180,7 +253,7 @@ public class IndexReader implements IndexIO
             long capacity = stream.readLong();
             int neighborhoodSize = stream.readInt();
             String indexPath = stream.readUTF();
-            HNSW hnsw = new HNSW(entity -> this.embeddingsIdx.find(this.linker.kgUriLookup(entity.getUri())),
+            HNSW hnsw = new HNSW(entity -> this.embeddingsIdx.findPrimitive(this.linker.kgUriLookup(entity.getUri())),
                     embeddingsDimension, capacity, neighborhoodSize, this.linker, this.entityTable, this.entityTableLink, indexPath);
             hnsw.load();
 
@@ -214,11 +287,81 @@ public class IndexReader implements IndexIO
         return this.embeddingsIdx;
     }
 
+    public LinkedTableIndex getLinkedTables()
+    {
+        return this.linkedTables;
+    }
+
     public HNSW getHnsw()
     {
         return this.hnsw;
     }
 
+    /**
+     * @return Table-level HNSW index or null if the index does not have one
+     */
+    public TableHNSW getTableHNSW()
+    {
+        return this.tableHNSW;
+    }
+
+    /**
+     * Reads an LSH index of entities the first time it is requested, as LSH indexes are only used for pre-filtering
+     * @param kind LSH index to read
+     * @param neo4j Connector used by the LSH indexes of types and predicates to look up the types and predicates of query entities
+     * @return LSH index or null if the index does not have it
+     */
+    public synchronized LSHIndex<String, String> getLSHIndex(LSHIndex.Kind kind, Neo4jSemanticDriver neo4j)
+    {
+        if (this.lshIndexes.containsKey(kind))
+        {
+            return this.lshIndexes.get(kind);
+        }
+
+        String file = this.indexDir + "/" + IndexIO.lshFile(kind);
+        LSHIndex<String, String> index = null;
+
+        if (new File(file).exists())
+        {
+            Object lsh = readIndex(file);
+
+            if (lsh instanceof SetLSHIndex setLSH)
+            {
+                setLSH.useEntityLinker(this.linker);
+                setLSH.useNeo4j(neo4j);
+                index = setLSH;
+            }
+
+            else if (lsh instanceof VectorLSHIndex vectorLSH)
+            {
+                vectorLSH.useEntityLinker(this.linker);
+                vectorLSH.useEmbeddingsIndex(this.embeddingsIdx);
+                index = vectorLSH;
+            }
+        }
+
+        this.lshIndexes.put(kind, index);
+        return index;
+    }
+
+    /**
+     * Reads a containment LSH index of table columns the first time it is requested, as containment LSH indexes are only used for pre-filtering
+     * @param elements Elements of the column sets of the containment LSH index to read
+     * @return Containment LSH index or null if the index does not have it
+     */
+    public synchronized ContainmentLSHIndex getContainmentIndex(ContainmentLSHIndex.Elements elements)
+    {
+        if (this.containmentIndexes.containsKey(elements))
+        {
+            return this.containmentIndexes.get(elements);
+        }
+
+        String file = this.indexDir + "/" + IndexIO.containmentFile(elements);
+        ContainmentLSHIndex index = new File(file).exists() ? readSegment(file, Segment.Kind.CONTAINMENT_LSH, ContainmentLSHIndex::readSegment) : null;
+        this.containmentIndexes.put(elements, index);
+        return index;
+    }
+
     public LuceneIndex getLuceneIndex()
     {
         return this.luceneIndex;
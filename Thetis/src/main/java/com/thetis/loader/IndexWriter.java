@@ -7,20 +7,32 @@ import com.google.gson.GsonBuilder;
 import com.thetis.connector.Neo4jSemanticDriver;
 import com.thetis.store.*;
 import com.thetis.store.hnsw.HNSW;
+import com.thetis.store.hnsw.TableHNSW;
 import com.thetis.commands.parser.TableParser;
 import com.thetis.connector.DBDriverBatch;
+import com.thetis.store.lsh.BucketIndex;
+import com.thetis.store.lsh.ContainmentLSHIndex;
+import com.thetis.store.lsh.HashFunction;
+import com.thetis.store.lsh.LSHIndex;
+import com.thetis.store.lsh.SetLSHIndex;
+import com.thetis.store.lsh.VectorLSHIndex;
 import com.thetis.store.lucene.LuceneBuilder;
 import com.thetis.store.lucene.LuceneDocument;
 import com.thetis.store.lucene.LuceneIndex;
+import com.thetis.store.segment.Segment;
+import com.thetis.store.segment.SegmentWriter;
 import com.thetis.structures.Pair;
 import com.thetis.structures.PairNonComparable;
 import com.thetis.structures.graph.Entity;
 import com.thetis.structures.Id;
 import com.thetis.structures.graph.Type;
 import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.LinkedTable;
 import com.thetis.structures.table.Table;
 import com.thetis.system.Configuration;
+import com.thetis.system.ExecutionService;
 import com.thetis.system.Logger;
+import com.thetis.system.Progress;
 import com.thetis.tables.JsonTable;
 import com.thetis.utilities.Utils;
 import org.apache.commons.io.FilenameUtils;
@@ -29,9 +41,9 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -47,8 +59,9 @@ public class IndexWriter implements IndexIO
     private int threads;
     private AtomicLong loadedTables = new AtomicLong(0);
     private AtomicInteger cellsWithLinks = new AtomicInteger(0), tableStatsCollected = new AtomicInteger(0);
-    private final Object lock = new Object(), incrementLock = new Object();
+    private final Object lock = new Object();
     private long elapsed = -1;
+    private boolean quantizeEmbeddings = false, buildTableHNSW = false, tableRowVectors = false;
     private Map<Integer, Integer> cellToNumLinksFrequency = Collections.synchronizedMap(new HashMap<>());
     private Map<Integer, Integer> linkToNumEntitiesFrequency = Collections.synchronizedMap(new HashMap<>());
     private Neo4jSemanticDriver neo4j;
@@ -58,6 +71,12 @@ public class IndexWriter implements IndexIO
     private SynchronizedIndex<Id, List<String>> entityTableLink;
     private SynchronizedIndex<Id, List<Double>> embeddingsIdx;
     private SynchronizedIndex<String, Set<String>> hnsw;
+    private SynchronizedIndex<String, LinkedTable> linkedTables;
+    private TableHNSW tableHNSW = null;
+    private Set<LSHIndex.Kind> lshKinds = EnumSet.noneOf(LSHIndex.Kind.class);
+    private final Map<LSHIndex.Kind, LSHIndex<String, String>> lshIndexes = new EnumMap<>(LSHIndex.Kind.class);
+    private Set<ContainmentLSHIndex.Elements> containmentElements = EnumSet.noneOf(ContainmentLSHIndex.Elements.class);
+    private final Map<ContainmentLSHIndex.Elements, ContainmentLSHIndex> containmentIndexes = new EnumMap<>(ContainmentLSHIndex.Elements.class);
     private LuceneBuilder lucenceBuilder;
     private LuceneIndex luceneIndex;
     private DBDriverBatch<List<Double>, String> embeddingsDB;
@@ -69,6 +88,9 @@ public class IndexWriter implements IndexIO
     private final Set<PairNonComparable<String, Table<String>>> tableEntities = Collections.synchronizedSet(new HashSet<>());
     private List<String> disallowedEntityTypes;
     protected static final int HNSW_K = 10000;
+    private int lshSignatureSize = 32, lshBandSize = 8, lshBuckets = 10007;
+    private int seed = 42;
+    private static final HashFunction LSH_HASH = (obj, keys) -> Math.floorMod(obj.hashCode(), keys);
 
     public IndexWriter(List<Path> files, File outputDir, Linker entityLinker, Neo4jSemanticDriver neo4j, int threads,
                        DBDriverBatch<List<Double>, String> embeddingStore, String wikiPrefix, String uriPrefix, String ... disallowedEntityTypes)
@@ -99,7 +121,8 @@ public class IndexWriter implements IndexIO
         this.entityTable = SynchronizedIndex.wrap(new EntityTable());
         this.embeddingsIdx = SynchronizedIndex.wrap(new EmbeddingsIndex<>());
         this.entityTableLink = SynchronizedIndex.wrap(new EntityTableLink());
-        this.hnsw = SynchronizedIndex.wrap(new HNSW(entity -> this.embeddingsIdx.find(((EntityLinking) this.linker.getLinker()).kgUriLookup(entity.getUri())),
+        this.linkedTables = SynchronizedIndex.wrap(new LinkedTableIndex());
+        this.hnsw = SynchronizedIndex.wrap(new HNSW(entity -> getEmbeddingsIndex().findPrimitive(((EntityLinking) this.linker.getLinker()).kgUriLookup(entity.getUri())),
                 Configuration.getEmbeddingsDimension(), neo4j.getNumNodes(), HNSW_K, getEntityLinker(), getEntityTable(), getEntityTableLinker(),
                 outputDir + "/" + Configuration.getHNSWFile()));
         ((EntityTableLink) this.entityTableLink.getIndex()).setDirectory(files.get(0).toFile().getParent() + "/");
@@ -115,6 +138,78 @@ public class IndexWriter implements IndexIO
         }
     }
 
+    /**
+     * Embeddings are additionally quantized to 8-bit integers and written to their own segment
+     * @param quantize Whether to quantize the embeddings
+     */
+    public void setQuantizeEmbeddings(boolean quantize)
+    {
+        this.quantizeEmbeddings = quantize;
+    }
+
+    /**
+     * A table-level HNSW index of table column vectors is additionally built for pre-filtering
+     * @param build Whether to build the table-level HNSW index
+     */
+    public void setTableHNSW(boolean build)
+    {
+        this.buildTableHNSW = build;
+    }
+
+    /**
+     * The table-level HNSW index additionally holds a vector of each table row, which requires the table-level HNSW index to be built
+     * @param rowVectors Whether table rows are indexed in addition to table columns
+     */
+    public void setTableRowVectors(boolean rowVectors)
+    {
+        this.tableRowVectors = rowVectors;
+    }
+
+    /**
+     * LSH indexes of entities to build for pre-filtering, which are built concurrently from the loaded tables after the other indexes are written to disk
+     * @param kinds LSH indexes to build
+     */
+    public void setLSHIndexes(Set<LSHIndex.Kind> kinds)
+    {
+        this.lshKinds = kinds.isEmpty() ? EnumSet.noneOf(LSHIndex.Kind.class) : EnumSet.copyOf(kinds);
+    }
+
+    /**
+     * Parameters of the LSH indexes of entities
+     * @param signatureSize Number of min-hash values or random projections of each signature
+     * @param bandSize Number of signature values hashed into a bucket of each bucket group, which must divide the signature size
+     * @param buckets Number of buckets of each bucket group
+     */
+    public void setLSHParameters(int signatureSize, int bandSize, int buckets)
+    {
+        if (signatureSize <= 0 || bandSize <= 0 || buckets <= 0 || signatureSize % bandSize != 0)
+        {
+            throw new IllegalArgumentException("LSH band size must be positive and divide the positive signature size, and the number of buckets must be positive");
+        }
+
+        this.lshSignatureSize = signatureSize;
+        this.lshBandSize = bandSize;
+        this.lshBuckets = buckets;
+    }
+
+    /**
+     * Seed of the random hash functions and projections of the LSH and containment LSH indexes, so indexes of the same tables are reproducible
+     * @param seed Random seed
+     */
+    public void setSeed(int seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Containment LSH indexes of the entities or entity types of table columns to build for table-unionability pre-filtering
+     * @param elements Elements of the column sets of each containment LSH index to build
+     */
+    public void setContainmentIndexes(Set<ContainmentLSHIndex.Elements> elements)
+    {
+        this.containmentElements = elements.isEmpty() ? EnumSet.noneOf(ContainmentLSHIndex.Elements.class) : EnumSet.copyOf(elements);
+    }
+
     /**
      * Loading of tables to disk
      */
@@ -127,30 +222,15 @@ public class IndexWriter implements IndexIO
         }
 
         int size = this.files.size();
-        ExecutorService threadPool = Executors.newFixedThreadPool(this.threads);
+        Executor executor = ExecutionService.io(this.threads);
         List<Future<Boolean>> tasks = new ArrayList<>(size);
-        long startTime = System.nanoTime(), prev = 0;
-        threadPool.submit(this::loadLucene);
+        Progress progress = new Progress(size, 100, "Processed %d/%d files...");
+        long startTime = System.nanoTime();
+        Future<?> luceneTask = CompletableFuture.runAsync(this::loadLucene, executor);
 
-        for (int i = 0; i < size; i++)
+        for (Path file : this.files)
         {
-            final int index = i;
-            Future<Boolean> task = threadPool.submit(() -> load(this.files.get(index)));
-            tasks.add(task);
-        }
-
-        while (this.loadedTables.get() < size)
-        {
-            synchronized (this.incrementLock)
-            {
-                this.loadedTables.set(tasks.stream().filter(Future::isDone).count());
-            }
-
-            if (this.loadedTables.get() - prev >= 100)
-            {
-                Logger.log(Logger.Level.INFO, "Processed " + this.loadedTables.get() + "/" + size + " files...");
-                prev = this.loadedTables.get();
-            }
+            tasks.add(progress.submit(executor, () -> load(file)));
         }
 
         tasks.forEach(t ->
@@ -162,6 +242,19 @@ public class IndexWriter implements IndexIO
 
             catch (InterruptedException | ExecutionException ignored) {}
         });
+
+        // The Lucene index is built from the loaded documents when the indexes are written
+        try
+        {
+            luceneTask.get();
+        }
+
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw new RuntimeException("Error in loading tables into the Lucene index: " + e.getMessage());
+        }
+
+        this.loadedTables.set(progress.completed());
         Logger.log(Logger.Level.INFO, "Collecting IDF weights...");
         loadIDFs();
 
@@ -170,6 +263,9 @@ public class IndexWriter implements IndexIO
         this.tableStats.clear();    // Clean up to save space before writing index objects to disk
         flushToDisk();
 
+        // LSH indexes read the embeddings and the entity table, so they are only built once writing no longer modifies them
+        writeLSHIndexes(buildLSHIndexes());
+
         this.elapsed = System.nanoTime() - startTime;
         Logger.log(Logger.Level.INFO, "Done");
         Logger.logNewLine(Logger.Level.INFO, "A total of " + this.loadedTables.get() + " tables were loaded");
@@ -190,12 +286,15 @@ public class IndexWriter implements IndexIO
         Map<Pair<Integer, Integer>, List<String>> entityMatches = new HashMap<>();  // Maps a cell specified by RowNumber, ColumnNumber to the list of entities it matches to
         Table<String> parsedTable = new DynamicTable<>();   // The set of entities corresponding to this filename/table
         StringBuilder documentBuilder = new StringBuilder();
+        int[][] linkedCells = new int[table.rows.size()][];    // First known entity of each cell
         int row = 0;
 
         for (List<JsonTable.TableCell> tableRow : table.rows)
         {
             int column = 0;
             List<String> parsedRow = new ArrayList<>();
+            linkedCells[row] = new int[tableRow.size()];
+            Arrays.fill(linkedCells[row], LinkedTable.NO_ENTITY);
 
             for (JsonTable.TableCell cell : tableRow)
             {
@@ -256,6 +355,11 @@ public class IndexWriter implements IndexIO
                             Id entityId = ((EntityLinking) this.linker.getLinker()).kgUriLookup(entity);
                             Pair<Integer, Integer> location = new Pair<>(row, column);
 
+                            if (linkedCells[row][column] == LinkedTable.NO_ENTITY && entityId != null)
+                            {
+                                linkedCells[row][column] = entityId.getId();
+                            }
+
                             synchronized (this.lock)
                             {
                                 ((EntityTableLink) this.entityTableLink.getIndex()).
@@ -286,6 +390,10 @@ public class IndexWriter implements IndexIO
             row++;
         }
 
+        String[] headers = table.headers == null ? new String[0] :
+                table.headers.stream().map(cell -> cell.text).toArray(String[]::new);
+        this.linkedTables.insert(tableName, new LinkedTable(table.numDataRows, table.numCols, headers, linkedCells));
+
         synchronized (this.lock)
         {
             this.tableEntities.add(new PairNonComparable<>(tableName, parsedTable));
@@ -450,6 +558,7 @@ public class IndexWriter implements IndexIO
     {
         loadEntityIDFs();
         loadTypeIDFs();
+        ((EntityTable) this.entityTable.getIndex()).intern();   // Type weights of the interned types are the IDFs
     }
 
     private void loadEntityIDFs()
@@ -507,33 +616,52 @@ public class IndexWriter implements IndexIO
     private void flushToDisk() throws IOException
     {
         // Entity linker
-        ObjectOutputStream outputStream =
-                new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getEntityLinkerFile()));
-        outputStream.writeObject(this.linker.getLinker());
-        outputStream.flush();
-        outputStream.close();
+        try (SegmentWriter writer = new SegmentWriter(new File(this.outputPath + "/" + Configuration.getEntityLinkerFile()), Segment.Kind.ENTITY_LINKING))
+        {
+            ((EntityLinking) this.linker.getLinker()).writeSegment(writer);
+        }
 
         // Entity table
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getEntityTableFile()));
-        outputStream.writeObject(this.entityTable.getIndex());
-        outputStream.flush();
-        outputStream.close();
+        try (SegmentWriter writer = new SegmentWriter(new File(this.outputPath + "/" + Configuration.getEntityTableFile()), Segment.Kind.ENTITY_TABLE))
+        {
+            ((EntityTable) this.entityTable.getIndex()).writeSegment(writer);
+        }
 
         // Entity to tables inverted index
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getEntityToTablesFile()));
-        outputStream.writeObject(this.entityTableLink.getIndex());
-        outputStream.flush();
-        outputStream.close();
+        try (SegmentWriter writer = new SegmentWriter(new File(this.outputPath + "/" + Configuration.getEntityToTablesFile()), Segment.Kind.ENTITY_TABLE_LINK))
+        {
+            ((EntityTableLink) this.entityTableLink.getIndex()).writeSegment(writer);
+        }
 
         // Embeddings index
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getEmbeddingsIndexFile()));
-        outputStream.writeObject(this.embeddingsIdx.getIndex());
-        outputStream.flush();
-        outputStream.close();
+        try (SegmentWriter writer = new SegmentWriter(new File(this.outputPath + "/" + Configuration.getEmbeddingsIndexFile()), Segment.Kind.EMBEDDINGS))
+        {
+            ((EmbeddingsIndex<?>) this.embeddingsIdx.getIndex()).writeSegment(writer);
+        }
+
+        // Quantized embeddings
+        if (this.quantizeEmbeddings)
+        {
+            EmbeddingsIndex<?> embeddings = (EmbeddingsIndex<?>) this.embeddingsIdx.getIndex();
+            embeddings.setQuantized(QuantizedEmbeddings.quantize(embeddings.getMatrix()));
+
+            try (SegmentWriter writer = new SegmentWriter(new File(this.outputPath + "/" + Configuration.getQuantizedEmbeddingsIndexFile()), Segment.Kind.QUANTIZED_EMBEDDINGS))
+            {
+                embeddings.getQuantized().writeSegment(writer);
+            }
+
+            Logger.logNewLine(Logger.Level.INFO, "Quantized embeddings take " + embeddings.getQuantized().memoryBytes() + " bytes");
+        }
+
+        // Entity-linked tables
+        try (SegmentWriter writer = new SegmentWriter(new File(this.outputPath + "/" + Configuration.getLinkedTablesFile()), Segment.Kind.LINKED_TABLES))
+        {
+            ((LinkedTableIndex) this.linkedTables.getIndex()).writeSegment(writer);
+        }
 
         // HNSW index
         HNSW tmpHNSW = getHNSW();
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getHNSWParamsFile()));
+        ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getHNSWParamsFile()));
         outputStream.writeInt(tmpHNSW.getEmbeddingsDimension());
         outputStream.writeLong(tmpHNSW.getCapacity());
         outputStream.writeInt(tmpHNSW.getNeighborhoodSize());
@@ -542,10 +670,106 @@ public class IndexWriter implements IndexIO
         outputStream.close();
         tmpHNSW.save();
 
+        // Table-level HNSW index of the dimension of the loaded embeddings
+        int dimension = getEmbeddingsIndex().getMatrix().dimension();
+
+        if (this.buildTableHNSW && dimension == -1)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "No embeddings were loaded, so no table-level HNSW index is built");
+        }
+
+        else if (this.buildTableHNSW)
+        {
+            this.tableHNSW = TableHNSW.build(getLinkedTables(), getEntityTableLinker(), id -> getEmbeddingsIndex().findPrimitive(id),
+                    dimension, this.tableRowVectors);
+
+            try (SegmentWriter writer = new SegmentWriter(new File(this.outputPath + "/" + Configuration.getTableHNSWFile()), Segment.Kind.TABLE_HNSW))
+            {
+                this.tableHNSW.writeSegment(writer);
+            }
+
+            this.tableHNSW.save(Path.of(this.outputPath + "/" + Configuration.getTableHNSWColumnsFile()),
+                    Path.of(this.outputPath + "/" + Configuration.getTableHNSWRowsFile()));
+            Logger.logNewLine(Logger.Level.INFO, "Table-level HNSW index holds " + this.tableHNSW.columnCount() + " columns and " +
+                    this.tableHNSW.rowCount() + " rows");
+        }
+
+        // Containment LSH indexes
+        for (ContainmentLSHIndex.Elements elements : this.containmentElements)
+        {
+            ContainmentLSHIndex containment = ContainmentLSHIndex.build(getLinkedTables(), getEntityTableLinker(), getEntityTable(), elements,
+                    this.seed);
+
+            try (SegmentWriter writer = new SegmentWriter(new File(this.outputPath + "/" + IndexIO.containmentFile(elements)), Segment.Kind.CONTAINMENT_LSH))
+            {
+                containment.writeSegment(writer);
+            }
+
+            this.containmentIndexes.put(elements, containment);
+            Logger.logNewLine(Logger.Level.INFO, elements + " containment LSH index holds " + containment.columnCount() + " columns in " +
+                    containment.partitionCount() + " partitions");
+        }
+
         genNeo4jTableMappings();
         this.luceneIndex = this.lucenceBuilder.build();
     }
 
+    // Each LSH index parallelizes its own construction on the compute executor, so the indexes are built concurrently from I/O threads
+    private Map<LSHIndex.Kind, Future<LSHIndex<String, String>>> buildLSHIndexes()
+    {
+        Map<LSHIndex.Kind, Future<LSHIndex<String, String>>> futures = new EnumMap<>(LSHIndex.Kind.class);
+        Executor executor = ExecutionService.io(Math.max(1, this.lshKinds.size()));
+
+        for (LSHIndex.Kind kind : this.lshKinds)
+        {
+            futures.put(kind, CompletableFuture.supplyAsync(() -> buildLSHIndex(kind), executor));
+        }
+
+        return futures;
+    }
+
+    private LSHIndex<String, String> buildLSHIndex(LSHIndex.Kind kind)
+    {
+        int bucketGroups = this.lshSignatureSize / this.lshBandSize;
+
+        if (kind == LSHIndex.Kind.EMBEDDINGS)
+        {
+            return new VectorLSHIndex(bucketGroups, this.lshBuckets, this.lshSignatureSize, this.lshBandSize, this.tableEntities, this.threads,
+                    getEntityLinker(), LSH_HASH, new Random(this.seed), getEmbeddingsIndex(), false);
+        }
+
+        SetLSHIndex.EntitySet set = kind == LSHIndex.Kind.TYPES ? SetLSHIndex.EntitySet.TYPES : SetLSHIndex.EntitySet.PREDICATES;
+        return new SetLSHIndex(this.neo4j, set, this.lshSignatureSize, this.lshBandSize, 1, this.tableEntities, LSH_HASH, bucketGroups,
+                this.lshBuckets, this.threads, new Random(this.seed), getEntityLinker(), getEntityTable(), false, SetLSHIndex.MinHash.HASHING);
+    }
+
+    private void writeLSHIndexes(Map<LSHIndex.Kind, Future<LSHIndex<String, String>>> futures) throws IOException
+    {
+        for (Map.Entry<LSHIndex.Kind, Future<LSHIndex<String, String>>> entry : futures.entrySet())
+        {
+            LSHIndex<String, String> index;
+
+            try
+            {
+                index = entry.getValue().get();
+            }
+
+            catch (InterruptedException | ExecutionException e)
+            {
+                Logger.logNewLine(Logger.Level.ERROR, "Failed building " + entry.getKey() + " LSH index: " + e.getMessage());
+                continue;
+            }
+
+            try (ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + IndexIO.lshFile(entry.getKey()))))
+            {
+                outputStream.writeObject(index);
+            }
+
+            this.lshIndexes.put(entry.getKey(), index);
+            Logger.logNewLine(Logger.Level.INFO, entry.getKey() + " LSH index holds " + ((BucketIndex<?, ?>) index).entries() + " bucket entries");
+        }
+    }
+
     private void genNeo4jTableMappings() throws IOException
     {
         FileOutputStream outputStream = new FileOutputStream(this.outputPath + "/" + Configuration.getTableToEntitiesFile());
@@ -652,6 +876,33 @@ public class IndexWriter implements IndexIO
         return (HNSW) this.hnsw.getIndex();
     }
 
+    /**
+     * Getter to table-level HNSW index, which is built when the indexes are written to disk
+     * @return Table-level HNSW index
+     */
+    public TableHNSW getTableHNSW()
+    {
+        return this.tableHNSW;
+    }
+
+    /**
+     * Getter to an LSH index of entities, which is built when the indexes are written to disk
+     * @return LSH index or null if it was not built
+     */
+    public LSHIndex<String, String> getLSHIndex(LSHIndex.Kind kind)
+    {
+        return this.lshIndexes.get(kind);
+    }
+
+    /**
+     * Getter to a containment LSH index of table columns, which is built when the indexes are written to disk
+     * @return Containment LSH index or null if it was not built
+     */
+    public ContainmentLSHIndex getContainmentIndex(ContainmentLSHIndex.Elements elements)
+    {
+        return this.containmentIndexes.get(elements);
+    }
+
     /**
      * Getter to entity-table linker
      * @return Loaded entity-table linker
@@ -661,6 +912,15 @@ public class IndexWriter implements IndexIO
         return (EntityTableLink) this.entityTableLink.getIndex();
     }
 
+    /**
+     * Getter to entity-linked tables
+     * @return Loaded tables of entity IDs
+     */
+    public LinkedTableIndex getLinkedTables()
+    {
+        return (LinkedTableIndex) this.linkedTables.getIndex();
+    }
+
     /**
      * Getter to Lucene index
      * @return Loaded lucene index
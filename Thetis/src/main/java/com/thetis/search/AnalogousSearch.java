@@ -1,28 +1,36 @@
 package com.thetis.search;
 
 import com.thetis.loader.Stats;
+import com.thetis.store.ElementTableLink;
 import com.thetis.store.EmbeddingsIndex;
+import com.thetis.store.EmbeddingsMatrix;
 import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
+import com.thetis.store.LinkedTableIndex;
+import com.thetis.store.QuantizedEmbeddings;
 import com.thetis.commands.parser.TableParser;
 import com.thetis.similarity.JaccardSimilarity;
+import com.thetis.similarity.SimilarityCache;
+import com.thetis.similarity.SimilarityKernels;
 import com.thetis.structures.Id;
 import com.thetis.structures.Pair;
 import com.thetis.structures.graph.Entity;
-import com.thetis.structures.graph.Type;
-import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.LinkedTable;
 import com.thetis.structures.table.Table;
+import com.thetis.system.ExecutionService;
 import com.thetis.system.Logger;
+import com.thetis.system.Progress;
 import com.thetis.tables.JsonTable;
 import com.thetis.utilities.HungarianAlgorithm;
-import com.thetis.utilities.Utils;
 
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAccumulator;
 
 /**
  * Entry class for searching tables using our algorithm
@@ -63,19 +71,193 @@ public class AnalogousSearch extends AbstractSearch
         NORM_COS, ABS_COS, ANG_COS
     }
 
-    private int topK, threads, embeddingComparisons, nonEmbeddingComparisons,
-            embeddingCoverageSuccesses, embeddingCoverageFails;
-    Set<String> queryEntitiesMissingCoverage = new HashSet<>();
-    private long elapsed = -1, parsedTables;
-    private double reduction = 0.0;
+    public static final int DEFAULT_SIMILARITY_CACHE_SIZE = 1 << 20;
+    private static final int[] NO_ELEMENTS = new int[0];
+    private static final double ADJUSTED_SIMILARITY_LIMIT = 0.95;  // Maximum adjusted similarity between distinct entities
+    private static final double PRUNING_SLACK = 1e-9;   // Tolerance of rounding when comparing upper bounds to scores
+
+    /**
+     * Scores and statistics of a single query
+     * Queries of a batch are scored in the same pass over the corpus, so each query keeps its own top-K threshold and statistics
+     */
+    public static class QueryState
+    {
+        private final Table<String> query;
+        private final Id[][] ids;
+        private final double[][] rowWeights;    // Normalized IDF weights of the query entities of each query row
+        private BitSet corpus = null;     // Table positions of the search space of the query if it is pre-filtered, otherwise the whole corpus is searched
+        private double[] bounds = null;
+        private final DoubleAccumulator threshold = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+        private final AtomicInteger embeddingComparisons = new AtomicInteger(0), nonEmbeddingComparisons = new AtomicInteger(0),
+                embeddingCoverageSuccesses = new AtomicInteger(0), embeddingCoverageFails = new AtomicInteger(0);
+        private final AtomicLong scoredTables = new AtomicLong(0);
+        private final Set<String> queryEntitiesMissingCoverage = ConcurrentHashMap.newKeySet();
+        private final Map<String, Stats> tableStats = new ConcurrentSkipListMap<>();
+        private Result result = null;
+        private long elapsed = -1, parsedTables = 0, rerankedTables = 0;
+        private double reduction = 0.0, scoredReduction = 0.0;
+        private boolean partial = false;
+
+        private QueryState(Table<String> query, Id[][] ids, double[][] rowWeights)
+        {
+            this.query = query;
+            this.ids = ids;
+            this.rowWeights = rowWeights;
+        }
+
+        public Table<String> getQuery()
+        {
+            return this.query;
+        }
+
+        public Result getResult()
+        {
+            return this.result;
+        }
+
+        /**
+         * @return Runtime of the query, which is the runtime of its batch divided by the number of queries in the batch
+         */
+        public long elapsedNanoSeconds()
+        {
+            return this.elapsed;
+        }
+
+        public int getEmbeddingComparisons()
+        {
+            return this.embeddingComparisons.get();
+        }
+
+        public int getNonEmbeddingComparisons()
+        {
+            return this.nonEmbeddingComparisons.get();
+        }
+
+        public int getEmbeddingCoverageSuccesses()
+        {
+            return this.embeddingCoverageSuccesses.get();
+        }
+
+        public int getEmbeddingCoverageFails()
+        {
+            return this.embeddingCoverageFails.get();
+        }
+
+        public Set<String> getQueryEntitiesMissingCoverage()
+        {
+            return this.queryEntitiesMissingCoverage;
+        }
+
+        public Map<String, Stats> getTableStats()
+        {
+            return this.tableStats;
+        }
+
+        public long getParsedTables()
+        {
+            return this.parsedTables;
+        }
+
+        public double getReduction()
+        {
+            return this.reduction;
+        }
+
+        /**
+         * @return True if the search budget expired before all candidate tables were scored, so the top-K is the best found so far
+         */
+        public boolean isPartial()
+        {
+            return this.partial;
+        }
+
+        public long getScoredTables()
+        {
+            return this.scoredTables.get();
+        }
+
+        /**
+         * @return Number of tables scored with approximate similarities that were re-scored with exact similarities
+         */
+        public long getRerankedTables()
+        {
+            return this.rerankedTables;
+        }
+
+        /**
+         * @return Fraction of the corpus that was not scored due to pre-filtering, pruning, or the search budget
+         */
+        public double getScoredReduction()
+        {
+            return this.scoredReduction;
+        }
+    }
+
+    /**
+     * Scratch buffers of a scoring worker, which are reused across the tables the worker scores so scoring a table does not allocate
+     */
+    private static final class ScoringBuffers
+    {
+        private double[][] rowVectors = new double[0][];   // Aggregated similarities of each query entity of each query row
+        private int[] rowCounts = new int[0];               // Number of table rows aggregated into the vector of each query row
+        private Id[] columnEntities = new Id[0];           // Entity of each column of the current table row
+        private int[] entityColumns = new int[0];          // Columns of the current table row that map to an entity
+        private double[] identity = new double[0];         // Vector of a table row that perfectly matches a query row
+
+        private void reset(Id[][] queryIds)
+        {
+            if (this.rowVectors.length < queryIds.length)
+            {
+                this.rowVectors = Arrays.copyOf(this.rowVectors, queryIds.length);
+                this.rowCounts = new int[queryIds.length];
+            }
+
+            for (int queryRow = 0; queryRow < queryIds.length; queryRow++)
+            {
+                if (this.rowVectors[queryRow] == null || this.rowVectors[queryRow].length < queryIds[queryRow].length)
+                    this.rowVectors[queryRow] = new double[queryIds[queryRow].length];
+
+                else
+                    Arrays.fill(this.rowVectors[queryRow], 0.0);
+
+                this.rowCounts[queryRow] = 0;
+
+                if (this.identity.length < queryIds[queryRow].length)
+                {
+                    this.identity = new double[queryIds[queryRow].length];
+                    Arrays.fill(this.identity, 1.0);
+                }
+            }
+        }
+
+        private void ensureColumns(int columns)
+        {
+            if (this.columnEntities.length < columns)
+            {
+                this.columnEntities = new Id[columns];
+                this.entityColumns = new int[columns];
+            }
+        }
+    }
+
+    private int topK, threads, maxScoredTables = 0;
+    private long elapsed = -1, timeBudget = 0;
+    private QuantizedEmbeddings quantized = null;  // Quantized embeddings used for approximate entity similarities
+    private int rerankFactor = 1;
+    private double rerankMargin = 0.0;
+    private QueryState lastQuery = new QueryState(null, null, null);
     private boolean singleColumnPerQueryEntity, weightedJaccard, adjustedSimilarity,
             useMaxSimilarityPerColumn, hungarianAlgorithmSameAlignmentAcrossTuples;
     private SimilarityMeasure measure;
     private EntitySimilarity entitySimilarityMeasure;
-    private Map<String, Stats> tableStats = new TreeMap<>();
-    private final Object lockStats = new Object();
-    private Set<String> corpus;
+    private BitSet corpus;     // Positions of the tables of the corpus in the table dictionary of the entity-table link index
     private Prefilter prefilter;
+    private LinkedTableIndex linkedTables = null;
+    private ElementTableLink elementTables = null;
+    private Id[] kgIds;     // KG entity IDs indexed by their integer representation
+    private SimilarityCache similarityCache = new SimilarityCache(DEFAULT_SIMILARITY_CACHE_SIZE);
+    private boolean retainSimilarityCache = false;
+    private long similarityCacheHits = 0, similarityCacheMisses = 0;
 
     public AnalogousSearch(EntityLinking linker, EntityTable entityTable, EntityTableLink entityTableLink, EmbeddingsIndex<Id> embeddingIdx,
                            int topK, int threads, EntitySimilarity entitySimilarity, boolean singleColumnPerQueryEntity,
@@ -94,6 +276,7 @@ public class AnalogousSearch extends AbstractSearch
         this.measure = similarityMeasure;
         this.corpus = distinctTables();
         this.prefilter = null;
+        this.kgIds = indexEntityIds();
     }
 
     public AnalogousSearch(EntityLinking linker, EntityTable entityTable, EntityTableLink entityTableLink, EmbeddingsIndex<Id> embeddingIdx,
@@ -108,31 +291,103 @@ public class AnalogousSearch extends AbstractSearch
         this.prefilter = prefilter;
     }
 
+    /**
+     * Restricts the corpus to the given table files
+     * Tables without entities in the entity-table link index are left out, as they cannot be scored
+     */
     public void setCorpus(Set<String> tableFiles)
     {
-        this.corpus = tableFiles;
-        this.corpus = this.corpus.stream().map(t -> {
-            String[] split = t.split("/");
+        this.corpus = new BitSet(getEntityTableLink().tableCount());
 
-            if (split.length == 0)
-                return t;
+        for (String tableFile : tableFiles)
+        {
+            String[] split = tableFile.split("/");
+            int position = getEntityTableLink().tablePosition(split.length == 0 ? tableFile : split[split.length - 1]);
 
-            return split[split.length - 1];
-        }).collect(Collectors.toSet());
+            if (position >= 0)
+                this.corpus.set(position);
+        }
     }
 
-    private void prefilterSearchSpace(Table<String> query)
+    /**
+     * Restricts the corpus to tables at the given positions in the table dictionary of the entity-table link index
+     */
+    public void setCorpus(BitSet tablePositions)
     {
-        int initialSize = this.corpus.size();
-        Iterator<Pair<String, Double>> res = this.prefilter.search(query).getResults();
-        this.corpus.clear();
+        this.corpus = (BitSet) tablePositions.clone();
+    }
 
-        while (res.hasNext())
-        {
-            this.corpus.add(res.next().getFirst());
-        }
+    /**
+     * Cache of entity pair similarities
+     * By default, each search instance has its own cache which is cleared at the start of every query
+     * A cache can be shared across queries when the entity similarity measure and indexes do not change between queries
+     * @param cache Similarity cache
+     * @param retainAcrossQueries Whether to keep cached similarities from previous queries
+     */
+    public void setSimilarityCache(SimilarityCache cache, boolean retainAcrossQueries)
+    {
+        this.similarityCache = cache;
+        this.retainSimilarityCache = retainAcrossQueries;
+    }
 
-        this.reduction = initialSize > 0 ? (1 - ((double) this.corpus.size() / initialSize)) : 0;
+    /**
+     * Tables are scored from the given entity-linked tables instead of parsing the table files
+     * @param linkedTables Index of entity-linked tables
+     */
+    public void setLinkedTables(LinkedTableIndex linkedTables)
+    {
+        this.linkedTables = linkedTables;
+    }
+
+    /**
+     * Tables are scored in order of an upper bound of their score, and tables whose upper bound is below the score of the current
+     * top-K tables are not scored
+     * Bounds are only used for Jaccard similarity of types or predicates with the euclidean similarity measure
+     * @param elementTables Index of types to tables for Jaccard type similarity, or of predicates to tables for Jaccard predicate similarity
+     */
+    public void setCandidateIndex(ElementTableLink elementTables)
+    {
+        this.elementTables = elementTables;
+    }
+
+    /**
+     * Bounds the search of each query, after which the best top-K found so far is returned and marked as partial
+     * Without upper bounds of the table scores, tables are scored in decreasing order of the number of query entities linked to them
+     * The budget of a batch of queries applies to the whole batch
+     * @param timeBudgetNanos Time budget in nanoseconds, or 0 for no time budget
+     * @param maxScoredTables Maximum number of tables to score, or 0 for no maximum
+     */
+    public void setBudget(long timeBudgetNanos, int maxScoredTables)
+    {
+        this.timeBudget = Math.max(0, timeBudgetNanos);
+        this.maxScoredTables = Math.max(0, maxScoredTables);
+    }
+
+    /**
+     * Entity embedding similarities are approximated from the embeddings quantized to 8-bit integers
+     * The candidate tables for re-ranking are the top rerankFactor times K tables by approximate score, and the candidates whose
+     * approximate score is at least the approximate K-th score minus the margin are re-scored with the exact embeddings
+     * A larger factor and margin re-score more tables to trade speed for accuracy
+     * If the embeddings index only holds the quantized embeddings, tables are not re-scored
+     * @param rerankFactor Number of candidate tables for re-ranking as a multiple of K
+     * @param rerankMargin Margin below the approximate K-th score within which candidates are re-scored
+     */
+    public void setQuantizedSimilarity(int rerankFactor, double rerankMargin)
+    {
+        this.quantized = getEmbeddingsIndex().getQuantized();
+        this.rerankFactor = Math.max(1, rerankFactor);
+        this.rerankMargin = Math.max(0, rerankMargin);
+
+        if (this.quantized == null)
+            Logger.logNewLine(Logger.Level.ERROR, "The embeddings index holds no quantized embeddings, so exact embeddings are used");
+    }
+
+    private BitSet prefilterSearchSpace(Table<String> query, QueryState state)
+    {
+        BitSet corpus = this.prefilter.searchTables(query);
+        int corpusSize = this.corpus.cardinality();
+        state.reduction = corpusSize > 0 ? (1 - ((double) corpus.cardinality() / corpusSize)) : 0;
+        return corpus;
     }
 
     private static boolean useEmbeddings(EntitySimilarity sim)
@@ -148,81 +403,229 @@ public class AnalogousSearch extends AbstractSearch
      */
     @Override
     protected Result abstractSearch(Table<String> query)
+    {
+        List<QueryState> states = searchBatch(List.of(query));
+
+        if (states == null)
+            return null;
+
+        this.lastQuery = states.get(0);
+        return this.lastQuery.getResult();
+    }
+
+    /**
+     * Searches a batch of queries in a single pass over the corpus
+     * Each table is loaded once and scored against every query whose search space contains it, and each query keeps its own top-K
+     * The similarity cache is shared by the queries of the batch, so its hits and misses are only counted for the whole batch
+     * @param queries Input table queries
+     * @return State of each query in the order of the queries, or null if the search failed
+     */
+    public List<QueryState> searchBatch(List<Table<String>> queries)
     {
         long start = System.nanoTime();
 
-        if (this.prefilter != null)
-        {
-            prefilterSearchSpace(query);
-            Logger.logNewLine(Logger.Level.INFO, "Pre-filtered corpus in " + this.prefilter.elapsedNanoSeconds() + "ns");
-        }
+        if (!this.retainSimilarityCache)
+            this.similarityCache.clear();
+
+        long cacheHits = this.similarityCache.hits(), cacheMisses = this.similarityCache.misses();
 
         try
         {
-            Logger.logNewLine(Logger.Level.INFO, "There are " + this.corpus.size() + " files to be processed.");
-            ExecutorService threadPool = Executors.newFixedThreadPool(this.threads);
-            List<Future<Pair<String, Double>>> parsed = new ArrayList<>(this.corpus.size());
+            List<QueryState> states = new ArrayList<>(queries.size());
+            BitSet corpus = new BitSet(getEntityTableLink().tableCount());
 
-            for (String table : this.corpus)
+            for (Table<String> query : queries)
             {
-                Future<Pair<String, Double>> future = threadPool.submit(() -> searchTable(query, table));
-                parsed.add(future);
+                QueryState state = new QueryState(query, queryEntityIds(query), queryRowWeights(query));
+
+                if (this.prefilter != null)
+                {
+                    state.corpus = prefilterSearchSpace(query, state);
+                    corpus.or(state.corpus);
+                    Logger.logNewLine(Logger.Level.INFO, "Pre-filtered corpus in " + this.prefilter.elapsedNanoSeconds() + "ns");
+                }
+
+                else
+                    corpus.or(this.corpus);
+
+                states.add(state);
             }
 
-            long done = 1, prev = 0, corpusSize = this.corpus.size();
+            Logger.logNewLine(Logger.Level.INFO, "There are " + corpus.cardinality() + " files to be processed.");
+            Executor executor = ExecutionService.compute(this.threads);
+            List<Future<TopK[]>> workers = new ArrayList<>(this.threads);
+            Progress progress = new Progress(corpus.cardinality(), 100, "Processed %d/%d files...");
+            int[] positions = corpus.stream().toArray();
+            String[] tables = new String[positions.length];
+            double[] maxBounds = new double[tables.length];
+            Integer[] ranking = new Integer[tables.length];
+            AtomicInteger nextTable = new AtomicInteger(0);
+
+            for (int table = 0; table < positions.length; table++)
+            {
+                tables[table] = getEntityTableLink().tableName(positions[table]);
+            }
 
-            while (done != corpusSize)
+            for (QueryState state : states)
             {
-                done = parsed.stream().filter(Future::isDone).count();
+                state.bounds = tableUpperBounds(state.query, state.ids, state.rowWeights, tables);
 
-                if (done - prev >= 100)
+                if (state.bounds == null)
+                    maxBounds = null;
+
+                else if (maxBounds != null)
                 {
-                    Logger.log(Logger.Level.INFO, "Processed " + done + "/" + corpusSize + " files...");
-                    prev = done;
+                    for (int table = 0; table < tables.length; table++)
+                    {
+                        maxBounds[table] = Math.max(maxBounds[table], state.bounds[table]);
+                    }
                 }
             }
 
-            List<Pair<String, Double>> scores = new ArrayList<>();
-            long parsedTables = parsed.stream().filter(f -> {
-                try
+            for (int i = 0; i < ranking.length; i++)
+            {
+                ranking[i] = i;
+            }
+
+            double[] bounds = maxBounds, prior = bounds == null && hasBudget() ? linkedEntityCounts(states, tables) : null;
+            long deadline = start + this.timeBudget;
+            AtomicInteger loadedTables = new AtomicInteger(0);
+            AtomicBoolean budgetExhausted = new AtomicBoolean(false);
+
+            if (bounds != null)
+                Arrays.sort(ranking, (t1, t2) -> Double.compare(bounds[t2], bounds[t1]));
+
+            else if (prior != null)     // Tables most likely to score high are scored first, so the top-K is good when the budget expires
+                Arrays.sort(ranking, (t1, t2) -> Double.compare(prior[t2], prior[t1]));
+
+            // With approximate similarities, more than K tables are kept so the top-K can be re-ranked with exact similarities
+            int candidates = approximateSimilarity() ? this.topK * this.rerankFactor : this.topK;
+
+            // Each worker keeps the top-K of each query of the tables it scores, and the worker heaps are merged at the end
+            for (int worker = 0; worker < this.threads; worker++)
+            {
+                workers.add(CompletableFuture.supplyAsync(() ->
                 {
-                    Pair<String, Double> tableScore = f.get();
+                    TopK[] topK = new TopK[states.size()];
+                    ScoringBuffers buffers = new ScoringBuffers();
+                    int next;
 
-                    if (tableScore != null)
+                    for (int query = 0; query < topK.length; query++)
                     {
-                        scores.add(tableScore);
-                        return true;
+                        topK[query] = new TopK(candidates);
                     }
 
-                    return false;
+                    while ((next = nextTable.getAndIncrement()) < tables.length)
+                    {
+                        int table = ranking[next];
+
+                        // Tables are ranked by their largest upper bound, so none of the remaining tables can reach the top-K of any query
+                        if (bounds != null && bounds[table] < minThreshold(states) - PRUNING_SLACK)
+                            break;
+
+                        LinkedTable linkedTable = null;
+                        boolean loaded = false;
+
+                        for (int query = 0; query < topK.length; query++)
+                        {
+                            QueryState state = states.get(query);
+
+                            if ((state.corpus != null && !state.corpus.get(positions[table])) ||
+                                    (state.bounds != null && state.bounds[table] < state.threshold.get() - PRUNING_SLACK))
+                                continue;
+
+                            if (!loaded)
+                            {
+                                if (!reserveBudget(deadline, loadedTables))
+                                {
+                                    budgetExhausted.set(true);
+                                    break;
+                                }
+
+                                linkedTable = linkedTable(tables[table]);
+                                loaded = true;
+                            }
+
+                            Pair<String, Double> tableScore = searchTable(state, tables[table], linkedTable, buffers, false);
+                            state.scoredTables.incrementAndGet();
+
+                            if (tableScore != null)
+                            {
+                                topK[query].offer(tableScore.getFirst(), tableScore.getSecond(), table);
+
+                                if (state.bounds != null)
+                                    state.threshold.accumulate(topK[query].threshold());
+                            }
+                        }
+
+                        if (budgetExhausted.get())
+                            break;
+
+                        progress.complete();
+                    }
+
+                    return topK;
+                }, executor));
+            }
+
+            TopK[] topK = new TopK[states.size()];
+
+            for (int query = 0; query < topK.length; query++)
+            {
+                topK[query] = new TopK(candidates);
+            }
+
+            for (Future<TopK[]> worker : workers)
+            {
+                try
+                {
+                    TopK[] workerTopK = worker.get();
+
+                    for (int query = 0; query < topK.length; query++)
+                    {
+                        topK[query].merge(workerTopK[query]);
+                    }
                 }
 
                 catch (InterruptedException | ExecutionException e)
                 {
                     throw new RuntimeException(e.getMessage());
                 }
-            }).count();
+            }
+
+            for (int query = 0; query < topK.length; query++)
+            {
+                QueryState state = states.get(query);
+                state.result = approximateSimilarity() ? rerank(state, topK[query].toResult(), executor) : topK[query].toResult();
+            }
 
             this.elapsed = System.nanoTime() - start;
-            this.parsedTables = parsedTables;
-            Logger.logNewLine(Logger.Level.INFO, "A total of " + parsedTables + " tables were parsed.");
-            Logger.logNewLine(Logger.Level.INFO, "Elapsed time: " + this.elapsed / 1e9 + " seconds\n");
+            this.similarityCacheHits = this.similarityCache.hits() - cacheHits;
+            this.similarityCacheMisses = this.similarityCache.misses() - cacheMisses;
 
-            if (useEmbeddings(this.entitySimilarityMeasure))
-            {
-                Logger.logNewLine(Logger.Level.INFO, "A total of " + this.embeddingComparisons + " entity comparisons were made using embeddings.");
-                Logger.logNewLine(Logger.Level.INFO, "A total of " + this.nonEmbeddingComparisons + " entity comparisons cannot be made due to lack of embeddings.");
+            int corpusSize = this.corpus.cardinality();
 
-                double percentage = (this.embeddingComparisons / ((double) this.nonEmbeddingComparisons + this.embeddingComparisons)) * 100;
-                Logger.logNewLine(Logger.Level.INFO, percentage + "% of required entity comparisons were made using embeddings.\n");
-                Logger.logNewLine(Logger.Level.INFO, "Embedding Coverage successes: " + this.embeddingCoverageSuccesses);
-                Logger.logNewLine(Logger.Level.INFO, "Embedding Coverage failures: " + this.embeddingCoverageFails);
-                Logger.logNewLine(Logger.Level.INFO, "Embedding Coverage Success Rate: " + (double) this.embeddingCoverageSuccesses /
-                        (this.embeddingCoverageSuccesses + this.embeddingCoverageFails));
-                Logger.logNewLine(Logger.Level.INFO, "Query Entities with missing embedding coverage: " + this.queryEntitiesMissingCoverage + "\n");
+            for (int query = 0; query < topK.length; query++)
+            {
+                QueryState state = states.get(query);
+                state.parsedTables = topK[query].offered();
+                state.elapsed = this.elapsed / states.size();
+                state.partial = budgetExhausted.get();
+                state.scoredReduction = corpusSize > 0 ? 1 - ((double) state.scoredTables.get() / corpusSize) : 0;
+                logQueryStatistics(state, state.corpus != null ? state.corpus.cardinality() : corpusSize);
             }
 
-            return new Result(this.topK, scores);
+            if (budgetExhausted.get())
+                Logger.logNewLine(Logger.Level.INFO, "Search budget exhausted after scoring " + Math.min(loadedTables.get(), tables.length) + " tables, so the top-K is partial.");
+
+            if (states.size() > 1)
+                Logger.logNewLine(Logger.Level.INFO, "Searched " + states.size() + " queries in a single pass over " + tables.length + " tables.");
+
+            Logger.logNewLine(Logger.Level.INFO, "Elapsed time: " + this.elapsed / 1e9 + " seconds\n");
+            Logger.logNewLine(Logger.Level.INFO, "Entity similarity cache hits: " + this.similarityCacheHits);
+            Logger.logNewLine(Logger.Level.INFO, "Entity similarity cache misses: " + this.similarityCacheMisses + "\n");
+
+            return states;
         }
 
         catch (RuntimeException e)
@@ -232,185 +635,348 @@ public class AnalogousSearch extends AbstractSearch
         }
     }
 
-    private Pair<String, Double> searchTable(Table<String> query, String table)
+    private boolean approximateSimilarity()
     {
-        JsonTable jTable = TableParser.parse(new File(this.getEntityTableLink().getDirectory() + table));
+        return this.quantized != null && useEmbeddings(this.entitySimilarityMeasure);
+    }
+
+    /**
+     * Re-scores the candidate tables whose approximate score is within the re-rank margin of the approximate top-K threshold
+     * Entity similarities of the re-scored tables are computed from the exact embeddings
+     * Without exact embeddings, the approximate top-K is returned
+     * @param state State of the query
+     * @param candidates Candidate tables ranked by their approximate score
+     * @return Top-K tables
+     */
+    private Result rerank(QueryState state, Result candidates, Executor executor)
+    {
+        TopK topK = new TopK(this.topK);
+        int rerankCount = 0;
+
+        if (this.topK <= 0 || !getEmbeddingsIndex().hasExactEmbeddings())
+        {
+            for (int rank = 0; rank < candidates.getSize(); rank++)
+            {
+                topK.offer(candidates.getTable(rank), candidates.getScore(rank), rank);
+            }
+
+            return topK.toResult();
+        }
+
+        double threshold = candidates.getSize() >= this.topK ? candidates.getScore(this.topK - 1) - this.rerankMargin : Double.NEGATIVE_INFINITY;
+
+        while (rerankCount < candidates.getSize() && !(candidates.getScore(rerankCount) < threshold))
+        {
+            rerankCount++;
+        }
+
+        // The exact scores are collected in a separate state, so the comparison statistics only count the approximate pass
+        QueryState exactState = new QueryState(state.query, state.ids, state.rowWeights);
+        double[] scores = new double[rerankCount];
+        AtomicInteger nextCandidate = new AtomicInteger(0);
+        List<Future<?>> workers = new ArrayList<>(this.threads);
+        int count = rerankCount;
+
+        for (int worker = 0; worker < this.threads; worker++)
+        {
+            workers.add(CompletableFuture.runAsync(() ->
+            {
+                ScoringBuffers buffers = new ScoringBuffers();
+                int rank;
+
+                while ((rank = nextCandidate.getAndIncrement()) < count)
+                {
+                    String table = candidates.getTable(rank);
+                    Pair<String, Double> tableScore = searchTable(exactState, table, linkedTable(table), buffers, true);
+                    scores[rank] = tableScore != null ? tableScore.getSecond() : Double.NaN;
+                }
+            }, executor));
+        }
+
+        for (Future<?> worker : workers)
+        {
+            try
+            {
+                worker.get();
+            }
+
+            catch (InterruptedException | ExecutionException e)
+            {
+                throw new RuntimeException(e.getMessage());
+            }
+        }
+
+        for (int rank = 0; rank < rerankCount; rank++)
+        {
+            topK.offer(candidates.getTable(rank), scores[rank], rank);
+        }
+
+        state.tableStats.putAll(exactState.tableStats);
+        state.rerankedTables = rerankCount;
+        return topK.toResult();
+    }
+
+    private boolean hasBudget()
+    {
+        return this.timeBudget > 0 || this.maxScoredTables > 0;
+    }
+
+    // Reserves the scoring of a table within the time budget and the maximum number of scored tables
+    private boolean reserveBudget(long deadline, AtomicInteger loadedTables)
+    {
+        if (this.timeBudget > 0 && System.nanoTime() - deadline > 0)
+            return false;
+
+        return this.maxScoredTables <= 0 || loadedTables.getAndIncrement() < this.maxScoredTables;
+    }
+
+    /**
+     * Cheap prior of the table scores, which is the number of query entities linked to each table summed over the queries
+     * @return Prior indexed as the tables
+     */
+    private double[] linkedEntityCounts(List<QueryState> states, String[] tables)
+    {
+        int[] positionToTable = new int[getEntityTableLink().tableCount()];
+        double[] counts = new double[tables.length];
+        Arrays.fill(positionToTable, -1);
+
+        for (int table = 0; table < tables.length; table++)
+        {
+            int position = getEntityTableLink().tablePosition(tables[table]);
+
+            if (position >= 0)
+                positionToTable[position] = table;
+        }
+
+        for (QueryState state : states)
+        {
+            for (Id[] queryRow : state.ids)
+            {
+                for (Id queryEntity : queryRow)
+                {
+                    if (queryEntity == null)
+                        continue;
+
+                    for (int position : getEntityTableLink().tablePositions(queryEntity))
+                    {
+                        if (positionToTable[position] >= 0)
+                            counts[positionToTable[position]]++;
+                    }
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    private static double minThreshold(List<QueryState> states)
+    {
+        double min = Double.POSITIVE_INFINITY;
+
+        for (QueryState state : states)
+        {
+            min = Math.min(min, state.threshold.get());
+        }
+
+        return min;
+    }
+
+    private void logQueryStatistics(QueryState state, int corpusSize)
+    {
+        Logger.logNewLine(Logger.Level.INFO, "A total of " + state.parsedTables + " tables were parsed.");
+
+        if (state.bounds != null)
+            Logger.logNewLine(Logger.Level.INFO, "A total of " + (corpusSize - state.scoredTables.get()) + " tables were pruned by their upper bound score.");
+
+        if (useEmbeddings(this.entitySimilarityMeasure))
+        {
+            int embeddingComparisons = state.getEmbeddingComparisons(), nonEmbeddingComparisons = state.getNonEmbeddingComparisons(),
+                    coverageSuccesses = state.getEmbeddingCoverageSuccesses(), coverageFails = state.getEmbeddingCoverageFails();
+            Logger.logNewLine(Logger.Level.INFO, "A total of " + embeddingComparisons + " entity comparisons were made using embeddings.");
+            Logger.logNewLine(Logger.Level.INFO, "A total of " + nonEmbeddingComparisons + " entity comparisons cannot be made due to lack of embeddings.");
+
+            double percentage = (embeddingComparisons / ((double) nonEmbeddingComparisons + embeddingComparisons)) * 100;
+            Logger.logNewLine(Logger.Level.INFO, percentage + "% of required entity comparisons were made using embeddings.\n");
+            Logger.logNewLine(Logger.Level.INFO, "Embedding Coverage successes: " + coverageSuccesses);
+            Logger.logNewLine(Logger.Level.INFO, "Embedding Coverage failures: " + coverageFails);
+            Logger.logNewLine(Logger.Level.INFO, "Embedding Coverage Success Rate: " + (double) coverageSuccesses / (coverageSuccesses + coverageFails));
+            Logger.logNewLine(Logger.Level.INFO, "Query Entities with missing embedding coverage: " + state.getQueryEntitiesMissingCoverage() + "\n");
+        }
+    }
+
+    private Pair<String, Double> searchTable(QueryState state, String table, LinkedTable linkedTable, ScoringBuffers buffers, boolean exact)
+    {
+        Id[][] queryIds = state.ids;
         Stats.StatBuilder statBuilder = Stats.build();
 
-        if (jTable == null || jTable.numDataRows == 0)
+        if (linkedTable == null || linkedTable.rowCount() == 0)
             return null;
 
-        List<List<Integer>> queryRowToColumnMappings = new ArrayList<>();  // If each query entity needs to map to only one column find the best mapping
+        int[][] queryRowToColumnMappings = null;  // If each query entity needs to map to only one column find the best mapping
 
         if (this.singleColumnPerQueryEntity)
         {
-            queryRowToColumnMappings = getQueryToColumnMapping(query, jTable);
+            queryRowToColumnMappings = getQueryToColumnMapping(state, linkedTable, exact);
+            List<String> headers = linkedTable.getHeaders();
             List<List<String>> queryRowToColumnNames = new ArrayList<>(); // Log in the `statisticsMap` the column names aligned with each query row
 
-            for (int queryRow = 0; queryRow < queryRowToColumnMappings.size(); queryRow++)
+            for (int[] queryRowMapping : queryRowToColumnMappings)
             {
-                queryRowToColumnNames.add(new ArrayList<>());
+                List<String> columnNames = new ArrayList<>(queryRowMapping.length);
 
-                for (int entityId = 0; entityId < queryRowToColumnMappings.get(queryRow).size(); entityId++)
+                for (int alignedColNum : queryRowMapping)
                 {
-                    int alignedColNum = queryRowToColumnMappings.get(queryRow).get(entityId);
-
-                    if ((jTable.headers.size() > alignedColNum) && (alignedColNum >= 0))    // Ensure that `table` has headers that we can index them
-                        queryRowToColumnNames.get(queryRow).add(jTable.headers.get(alignedColNum).text);
+                    if ((headers.size() > alignedColNum) && (alignedColNum >= 0))    // Ensure that `table` has headers that we can index them
+                        columnNames.add(headers.get(alignedColNum));
                 }
+
+                queryRowToColumnNames.add(columnNames);
             }
 
             statBuilder.tupleQueryAlignment(queryRowToColumnNames);
         }
 
         int numEntityMappedRows = 0;    // Number of rows in a table that have at least one cell mapping ot a known entity
-        int queryRowsCount = query.rowCount();
-        Table<List<Double>> scores = new DynamicTable<>();  // Each cell is a score of the corresponding query cell to the mapped cell in each table row
+        int tableRows = linkedTable.storedRows();
+        buffers.reset(queryIds);
 
-        for (int queryRowCounter = 0; queryRowCounter < queryRowsCount; queryRowCounter++)
+        // Each query row keeps a vector of the similarities of its entities to the best matching entities of each table row,
+        // which is aggregated over the table rows as they are scored
+        for (int tableRow = 0; tableRow < tableRows; tableRow++)
         {
-            int queryRowSize = query.getRow(queryRowCounter).size();
-            List<List<Double>> queryRowsScores = new ArrayList<>(queryRowSize);
+            int[] rowEntities = linkedTable.row(tableRow);
+            buffers.ensureColumns(rowEntities.length);
 
-            for (int i = 0; i < queryRowSize; i++)
-            {
-                queryRowsScores.add(new ArrayList<>(jTable.rows.size()));
-            }
+            Id[] columnEntities = buffers.columnEntities;
+            int[] entityColumns = buffers.entityColumns;
+            int entityCount = 0;
 
-            for (List<JsonTable.TableCell> tableRow : jTable.rows)
+            for (int tableColumn = 0; tableColumn < rowEntities.length; tableColumn++)
             {
-                Map<Integer, String> columnToEntity = new HashMap<>();
+                columnEntities[tableColumn] = entityId(rowEntities[tableColumn]);
 
-                for (int tableColumn = 0; tableColumn < tableRow.size(); tableColumn++)
-                {
-                    for (String link : tableRow.get(tableColumn).links)
-                    {
-                        String uri = getLinker().mapTo(link);
+                if (columnEntities[tableColumn] != null)
+                    entityColumns[entityCount++] = tableColumn;
+            }
 
-                        if (uri != null)
-                        {
-                            columnToEntity.put(tableColumn, uri);
-                            break;
-                        }
-                    }
-                }
+            if (entityCount == 0)   // Compute similarity vectors only for rows that map to at least one entity
+                continue;
+
+            numEntityMappedRows++;
 
-                if (columnToEntity.isEmpty())   // Compute similarity vectors only for rows that map to at least one entity
+            for (int queryRow = 0; queryRow < queryIds.length; queryRow++)
+            {
+                if (useEmbeddings(this.entitySimilarityMeasure) &&
+                        !hasEmbeddingCoverage(state, queryRow, columnEntities, rowEntities.length, entityColumns, entityCount, queryRowToColumnMappings))
                     continue;
 
-                numEntityMappedRows++;
+                double[] rowVector = buffers.rowVectors[queryRow];
 
-                if (!useEmbeddings(this.entitySimilarityMeasure) ||
-                        hasEmbeddingCoverage(query.getRow(queryRowCounter), columnToEntity, queryRowToColumnMappings, queryRowCounter))
+                for (int queryColumn = 0; queryColumn < queryIds[queryRow].length; queryColumn++)
                 {
-                    for (int queryColumn = 0; queryColumn < queryRowSize; queryColumn++)
-                    {
-                        String queryEntity = query.getRow(queryRowCounter).get(queryColumn);
-                        double bestSimScore = 0.0;
+                    Id queryEntity = queryIds[queryRow][queryColumn];
+                    double bestSimScore = 0.0;
 
-                        if (this.singleColumnPerQueryEntity)
-                        {
-                            int assignedColumn = queryRowToColumnMappings.get(queryRowCounter).get(queryColumn);
+                    if (this.singleColumnPerQueryEntity)
+                    {
+                        int assignedColumn = queryRowToColumnMappings[queryRow][queryColumn];
 
-                            if (columnToEntity.containsKey(assignedColumn))
-                            {
-                                bestSimScore = entitySimilarityScore(queryEntity, columnToEntity.get(assignedColumn));
-                            }
-                        }
+                        if (assignedColumn >= 0 && assignedColumn < rowEntities.length && columnEntities[assignedColumn] != null)
+                            bestSimScore = entitySimilarityScore(state, queryEntity, columnEntities[assignedColumn], exact);
+                    }
 
-                        else
+                    else
+                    {
+                        for (int i = 0; i < entityCount; i++)   // Loop over each entity in the table row
                         {
-                            for (String rowEntity : columnToEntity.values()) // Loop over each entity in the table row
-                            {
-                                double simScore = entitySimilarityScore(queryEntity, rowEntity);
-                                bestSimScore = Math.max(bestSimScore, simScore);
-                            }
+                            double simScore = entitySimilarityScore(state, queryEntity, columnEntities[entityColumns[i]], exact);
+                            bestSimScore = Math.max(bestSimScore, simScore);
                         }
-
-                        queryRowsScores.get(queryColumn).add(bestSimScore);
                     }
+
+                    rowVector[queryColumn] = this.useMaxSimilarityPerColumn ? Math.max(rowVector[queryColumn], bestSimScore) :
+                            rowVector[queryColumn] + bestSimScore;
                 }
-            }
 
-            scores.addRow(new Table.Row<>(queryRowsScores));
+                buffers.rowCounts[queryRow]++;
+            }
         }
 
         // Update Statistics
         statBuilder.entityMappedRows(numEntityMappedRows);
-        statBuilder.fractionOfEntityMappedRows((double) numEntityMappedRows / jTable.numDataRows);
-        Double score = aggregateTableSimilarities(query, scores, statBuilder);
-        this.tableStats.put(table, statBuilder.finish());
+        statBuilder.fractionOfEntityMappedRows((double) numEntityMappedRows / linkedTable.rowCount());
+        double score = aggregateTableSimilarities(queryIds, buffers, state.rowWeights, statBuilder);
+        state.tableStats.put(table, statBuilder.finish());
 
         return new Pair<>(table, score);
     }
 
+    /**
+     * Entity-linked representation of a table
+     * Tables are read from the linked table index if one is given, otherwise the table file is parsed and linked
+     * @param table Table file name
+     * @return Linked table or null if the table is not known
+     */
+    private LinkedTable linkedTable(String table)
+    {
+        if (this.linkedTables != null)
+            return this.linkedTables.find(table);
+
+        JsonTable jTable = TableParser.parse(new File(this.getEntityTableLink().getDirectory() + table));
+
+        if (jTable == null || jTable.rows == null)
+            return null;
+
+        return LinkedTable.fromJson(jTable, getLinker());
+    }
+
     /**
      * Initialize multi-dimensional array indexed by (tupleID, entityID, columnID) mapping to the
      * aggregated score for that query entity with respect to the column
      */
-    private List<List<Integer>> getQueryToColumnMapping(Table<String> query, JsonTable table)
+    private int[][] getQueryToColumnMapping(QueryState state, LinkedTable table, boolean exact)
     {
-        List<List<List<Double>>> entityToColumnScore = new ArrayList<>();
-        int queryRows = query.rowCount();
+        Id[][] queryIds = state.ids;
+        int queryRows = queryIds.length, tableRows = table.storedRows(), columns = table.columnCount();
+        double[][][] entityToColumnScore = new double[queryRows][][];
 
         for (int row = 0; row < queryRows; row++)
         {
-            int rowSize = query.getRow(row).size();
-            entityToColumnScore.add(new ArrayList<>(rowSize));
-
-            for (int rowEntity = 0; rowEntity < rowSize; rowEntity++)
-            {
-                entityToColumnScore.get(row).add(new ArrayList<>(Collections.nCopies(table.numCols, 0.0)));
-            }
+            entityToColumnScore[row] = new double[queryIds[row].length][columns];
         }
 
         // Loop over every cell in a table and populate 'entityToColumnScore'
-        for (List<JsonTable.TableCell> row : table.rows)
+        for (int row = 0; row < tableRows; row++)
         {
-            int colCounter = 0;
+            int[] rowEntities = table.row(row);
 
-            for (JsonTable.TableCell cell : row)
+            for (int colCounter = 0; colCounter < rowEntities.length; colCounter++)
             {
-                if(!cell.links.isEmpty())   // A cell value may map to multiple entities. Currently use the first one. TODO: Consider all of them?
-                {
-                    String curEntity = null;
-
-                    for (String link : cell.links)
-                    {
-                        if (getLinker().mapTo(link) != null)    // Only consider links for which we have a known entity mapping
-                        {
-                            curEntity = getLinker().mapTo(link);
-                            break;
-                        }
-                    }
+                Id curEntity = entityId(rowEntities[colCounter]);   // A cell value may map to multiple entities. Currently the first known entity is used. TODO: Consider all of them?
 
-                    if (curEntity != null)
+                if (curEntity != null)
+                {
+                    for (int queryRow = 0; queryRow < queryRows; queryRow++)    // Loop over each query tuple and each entity in a tuple and compute a score between the query entity and 'curEntity'
                     {
-                        for (int queryRow = 0; queryRow < queryRows; queryRow++)    // Loop over each query tuple and each entity in a tuple and compute a score between the query entity and 'curEntity'
+                        for (int queryEntityCounter = 0; queryEntityCounter < queryIds[queryRow].length; queryEntityCounter++)
                         {
-                            for (int queryEntityCounter = 0; queryEntityCounter < query.getRow(queryRow).size(); queryEntityCounter++)
-                            {
-                                String queryEntity = query.getRow(queryRow).get(queryEntityCounter);
-                                Double score = entitySimilarityScore(queryEntity, curEntity);
-                                entityToColumnScore.get(queryRow).get(queryEntityCounter).set(colCounter, entityToColumnScore.get(queryRow).get(queryEntityCounter).get(colCounter) + score);
-                            }
+                            entityToColumnScore[queryRow][queryEntityCounter][colCounter] +=
+                                    entitySimilarityScore(state, queryIds[queryRow][queryEntityCounter], curEntity, exact);
                         }
                     }
                 }
-
-                colCounter++;
             }
         }
 
-        List<List<Integer>> tupleToColumnMappings = getBestMatchFromScores(query, entityToColumnScore); // Find the best mapping between a query entity and a column for each query tuple.
+        int[][] tupleToColumnMappings = getBestMatchFromScores(entityToColumnScore); // Find the best mapping between a query entity and a column for each query tuple.
 
         if (this.hungarianAlgorithmSameAlignmentAcrossTuples)
         {
             // TODO: Maybe perform a voting procedure instead of choosing to keep the alignment of the first query tuple
 
-            for (int row = 1; row < tupleToColumnMappings.size(); row++)    // Modify tupleToColumnMappings so that the same column alignments are used across all query tuples
+            for (int row = 1; row < tupleToColumnMappings.length; row++)    // Modify tupleToColumnMappings so that the same column alignments are used across all query tuples
             {
-                tupleToColumnMappings.set(row, tupleToColumnMappings.get(0));
+                tupleToColumnMappings[row] = tupleToColumnMappings[0];
             }
         }
 
@@ -428,92 +994,90 @@ public class AnalogousSearch extends AbstractSearch
      * If 'usePretrainedEmbeddings' is not specified but 'adjustedJaccardSimilarity' is specified then
      * an adjusted Jaccard similarity between two entities is used where the similarity score is 1 only if the two entities are identical.
      * Otherwise a maximum similarity score is placed if the two entities are different
-     * @param ent1 entity URI
-     * @param ent2 entity URI
+     * @param state State of the query counting the comparisons
+     * @param ent1 entity ID
+     * @param ent2 entity ID
+     * @param exact Whether to use the exact embeddings even if quantized embeddings are used for approximate similarities
      * @return A score within [0, 1]
      */
-    private double entitySimilarityScore(String ent1, String ent2)
+    private double entitySimilarityScore(QueryState state, Id ent1, Id ent2, boolean exact)
     {
         double sim = 0;
 
         if (this.entitySimilarityMeasure == EntitySimilarity.JACCARD_TYPES ||
                 this.entitySimilarityMeasure == EntitySimilarity.JACCARD_PREDICATES)
-            sim = jaccardSimilarity(ent1, ent2);
+        {
+            sim = ent1 == null || ent2 == null ? jaccardSimilarity(ent1, ent2) :
+                    this.similarityCache.computeIfAbsent(ent1.getId(), ent2.getId(), () -> jaccardSimilarity(ent1, ent2));
+        }
 
         else if (entityExists(ent1) && entityExists(ent2))
-            sim = cosineSimilarity(ent1, ent2);
-
-        else
         {
-            synchronized (this.lockStats)
-            {
-                this.nonEmbeddingComparisons++;
-            }
+            if (exact && approximateSimilarity())  // The cache holds approximate similarities, so it is bypassed by the exact similarities
+                sim = cosineSimilarity(ent1, ent2, false);
+
+            else
+                sim = this.similarityCache.computeIfAbsent(ent1.getId(), ent2.getId(), () -> cosineSimilarity(ent1, ent2, approximateSimilarity()));
+
+            state.embeddingComparisons.incrementAndGet();
         }
 
+        else
+            state.nonEmbeddingComparisons.incrementAndGet();
+
         if (this.adjustedSimilarity)
-            return ent1.equals(ent2) ? 1.0 : Math.min(0.95, sim);
+            return ent1 != null && ent1.equals(ent2) ? 1.0 : Math.min(ADJUSTED_SIMILARITY_LIMIT, sim);
 
         return sim;
     }
 
-    private double jaccardSimilarity(String ent1, String ent2)
+    private double jaccardSimilarity(Id ent1Id, Id ent2Id)
     {
-        Set<Type> entTypes1 = new HashSet<>(), entTypes2 = new HashSet<>();
-        Set<String> entPredicates1 = new HashSet<>(), entPredicates2 = new HashSet<>();
-        Id ent1Id = getLinker().kgUriLookup(ent1), ent2Id = getLinker().kgUriLookup(ent2);
+        boolean types = this.entitySimilarityMeasure == EntitySimilarity.JACCARD_TYPES;
+        int[] elements1 = internedElements(ent1Id, types), elements2 = internedElements(ent2Id, types);
 
-        if (getEntityTable().contains(ent1Id))
-        {
-            Entity entity = getEntityTable().find(ent1Id);
-            entTypes1 = new HashSet<>(entity.getTypes());
-            entPredicates1 = new HashSet<>(entity.getPredicates());
-        }
+        if (types && this.weightedJaccard)   // Run weighted Jaccard Similarity
+            return JaccardSimilarity.similarity(elements1, elements2, getEntityTable().getTypeDictionary().weights());
 
-        if (getEntityTable().contains(ent2Id))
-        {
-            Entity entity = getEntityTable().find(ent2Id);
-            entTypes2 = new HashSet<>(entity.getTypes());
-            entPredicates2 = new HashSet<>(entity.getPredicates());
-        }
-
-        double jaccardScore = 0.0;
-
-        if (this.entitySimilarityMeasure == EntitySimilarity.JACCARD_TYPES && this.weightedJaccard)   // Run weighted Jaccard Similarity
-        {
-            Set<Pair<Type, Double>> weights = entTypes1.stream().map(t -> new Pair<>(t, t.getIdf())).collect(Collectors.toSet());
-            weights.addAll(entTypes2.stream().map(t -> new Pair<>(t, t.getIdf())).collect(Collectors.toSet()));
-            weights = weights.stream().filter(p -> p.getSecond() >= 0).collect(Collectors.toSet());
-            jaccardScore = JaccardSimilarity.make(entTypes1, entTypes2, weights).similarity();
-        }
+        return JaccardSimilarity.similarity(elements1, elements2);
+    }
 
-        else
-        {
-            if (this.entitySimilarityMeasure == EntitySimilarity.JACCARD_PREDICATES)
-                jaccardScore = JaccardSimilarity.make(entPredicates1, entPredicates2).similarity();
+    private int[] internedElements(Id entityId, boolean types)
+    {
+        Entity entity = entityId != null ? getEntityTable().find(entityId) : null;
 
-            else
-                jaccardScore = JaccardSimilarity.make(entTypes1, entTypes2).similarity();
-        }
+        if (entity == null)
+            return NO_ELEMENTS;
 
-        return jaccardScore;
+        return types ? entity.getTypeIds() : entity.getPredicateIds();
     }
 
-    private double cosineSimilarity(String ent1, String ent2)
+    private double cosineSimilarity(Id id1, Id id2, boolean approximate)
     {
-        Id id1 = getLinker().kgUriLookup(ent1), id2 = getLinker().kgUriLookup(ent2);
-
         if (id1 == null || id2 == null)
             return 0.0;
 
-        List<Double> ent1Embeddings = getEmbeddingsIndex().find(id1),
-                ent2Embeddings = getEmbeddingsIndex().find(id2);
+        double cosineSim, simScore = 0.0;
 
-        if (ent1Embeddings == null || ent2Embeddings == null)
-            return 0.0;
+        if (approximate || !getEmbeddingsIndex().hasExactEmbeddings())
+        {
+            QuantizedEmbeddings embeddings = getEmbeddingsIndex().getQuantized();
 
-        double cosineSim = Utils.cosineSimilarity(ent1Embeddings, ent2Embeddings),
-                simScore = 0.0;
+            if (!embeddings.contains(id1) || !embeddings.contains(id2))
+                return 0.0;
+
+            cosineSim = embeddings.cosine(id1, id2);
+        }
+
+        else
+        {
+            EmbeddingsMatrix embeddings = getEmbeddingsIndex().getMatrix();
+
+            if (!embeddings.contains(id1) || !embeddings.contains(id2))
+                return 0.0;
+
+            cosineSim = embeddings.cosine(id1, id2);
+        }
 
         if (this.entitySimilarityMeasure == EntitySimilarity.EMBEDDINGS_NORM)
             simScore = (cosineSim + 1.0) / 2.0;
@@ -524,11 +1088,6 @@ public class AnalogousSearch extends AbstractSearch
         else if (this.entitySimilarityMeasure == EntitySimilarity.EMBEDDINGS_ANG)
             simScore = 1 - Math.acos(cosineSim) / Math.PI;
 
-        synchronized (this.lockStats)
-        {
-            this.embeddingComparisons++;
-        }
-
         return simScore;
     }
 
@@ -537,202 +1096,343 @@ public class AnalogousSearch extends AbstractSearch
      * @param entity Entity to check
      * @return true if the entity exists in the embeddings database
      */
-    private boolean entityExists(String entity)
+    private boolean entityExists(Id entity)
     {
-        try
-        {
-            Id id = getLinker().kgUriLookup(entity);
-            return id != null && getEmbeddingsIndex().contains(id);
-        }
-
-        catch (IllegalArgumentException exc)
-        {
-            return false;
-        }
+        return entity != null && getEmbeddingsIndex().contains(entity);
     }
 
     /**
      * Mapping of the matched columnIDs for each entity in each query tuple
      * Indexed by (tupleID, entityID) mapping to the columnID. If a columnID is -1 then that entity is not chosen for assignment
-     * @param query Query table
-     * @param entityToColumnScore Column score per entity
+     * @param entityToColumnScore Column score per entity, which is negated in place
      * @return Best match from given scores
      */
-    private List<List<Integer>> getBestMatchFromScores(Table<String> query, List<List<List<Double>>> entityToColumnScore)
+    private int[][] getBestMatchFromScores(double[][][] entityToColumnScore)
     {
-        List<List<Integer>> tupleToColumnMappings = new ArrayList<>();
+        int[][] tupleToColumnMappings = new int[entityToColumnScore.length][];
 
-        for (int row = 0; row < query.rowCount(); row++)
+        for (int row = 0; row < entityToColumnScore.length; row++)
         {
-            // 2-D array where each row is composed of the negative column relevance scores for a given entity in the query tuple
-            // Taken from: https://stackoverflow.com/questions/10043209/convert-arraylist-into-2d-array-containing-varying-lengths-of-arrays
-            double[][] scoresMatrix = entityToColumnScore.get(row).stream().map(u -> u.stream().mapToDouble(i -> -1 * i).toArray()).toArray(double[][]::new);
+            // Each row of the matrix is composed of the negative column relevance scores for a given entity in the query tuple
+            double[][] scoresMatrix = entityToColumnScore[row];
+
+            for (double[] entityScores : scoresMatrix)
+            {
+                for (int column = 0; column < entityScores.length; column++)
+                {
+                    entityScores[column] = -entityScores[column];
+                }
+            }
 
             // Run the Hungarian Algorithm on the scoresMatrix
             // If there are less columns that rows, some rows (i.e. query entities) will not be assigned to a column.
             // More specifically they will be assigned to a column id of -1
             HungarianAlgorithm ha = new HungarianAlgorithm(scoresMatrix);
-            int[] assignmentArray = ha.execute();
-            List<Integer> assignmentList = Arrays.stream(assignmentArray).boxed().collect(Collectors.toList());
-            tupleToColumnMappings.add(assignmentList);
+            tupleToColumnMappings[row] = ha.execute();
         }
 
         return tupleToColumnMappings;
     }
 
     /**
-     * Given a list of the entities of a query tuple, the entities of a row in the table, the mapping
+     * Given the entities of a query tuple, the entities of a row in the table, the mapping
      * of the table columns to the query entities if any and the id of the query tuple; identify
      * if there exist pre-trained embeddings for each query entity and each matching row entity
      */
-    private boolean hasEmbeddingCoverage(Table.Row<String> queryRow, Map<Integer, String> columnToEntity,
-                                         List<List<Integer>> tupleToColumnMappings, Integer queryRowIndex)
+    private boolean hasEmbeddingCoverage(QueryState state, int queryRowIndex, Id[] columnEntities, int columns, int[] entityColumns,
+                                         int entityCount, int[][] tupleToColumnMappings)
     {
-        for (int i = 0; i < queryRow.size(); i++)   // Ensure that all query entities have an embedding
+        Id[] queryRowIds = state.ids[queryRowIndex];
+
+        for (int i = 0; i < queryRowIds.length; i++)   // Ensure that all query entities have an embedding
         {
-            if (!entityExists(queryRow.get(i)))
+            if (!entityExists(queryRowIds[i]))
             {
-                this.embeddingCoverageFails++;
-                this.queryEntitiesMissingCoverage.add(queryRow.get(i));
+                state.embeddingCoverageFails.incrementAndGet();
+                state.queryEntitiesMissingCoverage.add(state.query.getRow(queryRowIndex).get(i));
                 return false;
             }
         }
 
         // If `singleColumnPerQueryEntity` is true then ensure that all row entities that are
-        // in the chosen columns (i.e. tupleToColumnMappings.get(queryTupleID) ) need to be mappable
-        List<String> relevantRowEntities = new ArrayList<>();
+        // in the chosen columns (i.e. tupleToColumnMappings[queryTupleID]) need to be mappable
+        int relevantRowEntities = 0;
 
         if (this.singleColumnPerQueryEntity)
         {
-            for (int assignedColumn : tupleToColumnMappings.get(queryRowIndex))
+            for (int assignedColumn : tupleToColumnMappings[queryRowIndex])
             {
-                if (columnToEntity.containsKey(assignedColumn))
-                    relevantRowEntities.add(columnToEntity.get(assignedColumn));
+                if (assignedColumn >= 0 && assignedColumn < columns && columnEntities[assignedColumn] != null)
+                {
+                    relevantRowEntities++;
+
+                    if (!entityExists(columnEntities[assignedColumn]))
+                    {
+                        state.embeddingCoverageFails.incrementAndGet();
+                        return false;
+                    }
+                }
             }
         }
 
-        else    // All entities in `rowEntities` are relevant
-            relevantRowEntities = new ArrayList<>(columnToEntity.values());
-
-        for (String rowEnt : relevantRowEntities)   // Loop over all relevant row entities and ensure there is a pre-trained embedding mapping for each one
+        else    // All entities of the row are relevant
         {
-            if (!entityExists(rowEnt))
+            for (int i = 0; i < entityCount; i++)   // Loop over all relevant row entities and ensure there is a pre-trained embedding mapping for each one
             {
-                this.embeddingCoverageFails++;
-                return false;
+                if (!entityExists(columnEntities[entityColumns[i]]))
+                {
+                    state.embeddingCoverageFails.incrementAndGet();
+                    return false;
+                }
             }
+
+            relevantRowEntities = entityCount;
         }
 
-        if (relevantRowEntities.isEmpty())
+        if (relevantRowEntities == 0)
         {
-            this.embeddingCoverageFails++;
+            state.embeddingCoverageFails.incrementAndGet();
             return false;
         }
 
-        this.embeddingCoverageSuccesses++;
+        state.embeddingCoverageSuccesses.incrementAndGet();
         return true;
     }
 
     /**
-     * Aggregates scores into a single table score
-     * @param query Query table
-     * @param scores Table of query entity scores
-     * @param statBuilder Statistics
-     * @return Single score of table
+     * Computes the weighted vector (i.e. considers IDF scores of query entities) for each query tuple
+     * The IDF scores of a tuple are normalized to sum to 1
      */
-    private Double aggregateTableSimilarities(Table<String> query, Table<List<Double>> scores, Stats.StatBuilder statBuilder)
+    private double[][] queryRowWeights(Table<String> query)
     {
-        // Compute the weighted vector (i.e. considers IDF scores of query entities) for each query tuple
-        Map<Integer, List<Double>> queryRowToWeightVector = new HashMap<>();
+        double[][] queryRowToWeightVector = new double[query.rowCount()][];
 
         for (int queryRow = 0; queryRow < query.rowCount(); queryRow++)
         {
             int rowSize = query.getRow(queryRow).size();
-            List<Double> curRowIDFScores  = new ArrayList<>(rowSize);
+            double[] curRowIDFScores = new double[rowSize];
+            double sum = 0.0;
 
             for (int column = 0; column < rowSize; column++)
             {
                 Id entityId = getLinker().kgUriLookup(query.getRow(queryRow).get(column));
-                curRowIDFScores.add(getEntityTable().find(entityId).getIDF());
+                curRowIDFScores[column] = getEntityTable().find(entityId).getIDF();
+                sum += curRowIDFScores[column];
+            }
+
+            for (int column = 0; column < rowSize; column++)
+            {
+                curRowIDFScores[column] /= sum;
+            }
+
+            queryRowToWeightVector[queryRow] = curRowIDFScores;
+        }
+
+        return queryRowToWeightVector;
+    }
+
+    /**
+     * Upper bound of the score of each table
+     * The score of a query tuple grows with the similarity of each of its entities to the table entities, so it is bounded by scoring
+     * the upper bounds of the entity similarities given by the CandidateGenerator
+     * @return Bounds indexed as the tables, or null if the tables cannot be bounded
+     */
+    private double[] tableUpperBounds(Table<String> query, Id[][] queryIds, double[][] queryRowWeights, String[] tables)
+    {
+        boolean types = this.entitySimilarityMeasure == EntitySimilarity.JACCARD_TYPES;
+
+        if (this.elementTables == null || this.measure != SimilarityMeasure.EUCLIDEAN || query.rowCount() == 0 ||
+                !(types || this.entitySimilarityMeasure == EntitySimilarity.JACCARD_PREDICATES) || this.elementTables.isTypes() != types)
+            return null;
+
+        CandidateGenerator generator = new CandidateGenerator(getEntityTable(), getEntityTableLink(), this.elementTables, types && this.weightedJaccard,
+                this.adjustedSimilarity ? ADJUSTED_SIMILARITY_LIMIT : 1.0);
+        Map<Id, double[]> entityBounds = new HashMap<>();
+        double[] bounds = new double[tables.length];
+        int candidates = 0;
+
+        for (Id[] queryRow : queryIds)
+        {
+            for (Id queryEntity : queryRow)
+            {
+                if (queryEntity != null && !entityBounds.containsKey(queryEntity))
+                    entityBounds.put(queryEntity, generator.similarityBounds(queryEntity));
+            }
+        }
+
+        for (int table = 0; table < tables.length; table++)
+        {
+            int position = getEntityTableLink().tablePosition(tables[table]);
+            boolean candidate = false;
+
+            for (int queryRow = 0; queryRow < queryIds.length; queryRow++)
+            {
+                double sum = 0.0;
+                boolean bounded = true;
+
+                for (int queryColumn = 0; queryColumn < queryIds[queryRow].length; queryColumn++)
+                {
+                    Id queryEntity = queryIds[queryRow][queryColumn];
+                    double weight = queryRowWeights[queryRow][queryColumn],
+                            similarity = queryEntity != null && position >= 0 ? Math.min(1.0, entityBounds.get(queryEntity)[position]) : 0.0;
+
+                    if (similarity > 0)
+                        candidate = true;
+
+                    if (!(weight >= 0))     // The tuple score does not grow with the entity similarities for negative or undefined weights
+                        bounded = false;
+
+                    sum += Math.pow(similarity - 1.0, 2.0) * weight;
+                }
+
+                bounds[table] += bounded ? 1 / (Math.sqrt(sum) + 1) : 1.0;
             }
 
-            queryRowToWeightVector.put(queryRow, Utils.normalizeVector(curRowIDFScores));
+            bounds[table] /= queryIds.length;
+
+            if (candidate)
+                candidates++;
         }
 
+        Logger.logNewLine(Logger.Level.INFO, "There are " + candidates + " candidate tables sharing an entity, type, or predicate with the query.");
+        return bounds;
+    }
+
+    /**
+     * Aggregates the query row vectors of a table into a single table score
+     * Each query row vector is compared to the identity vector, which is the vector of a table row that perfectly matches the query row
+     * @param queryIds Query entity IDs
+     * @param buffers Scratch buffers holding the aggregated vector of each query row
+     * @param queryRowToWeightVector Normalized IDF weights of each query row
+     * @param statBuilder Statistics
+     * @return Single score of table
+     */
+    private double aggregateTableSimilarities(Id[][] queryIds, ScoringBuffers buffers, double[][] queryRowToWeightVector,
+                                              Stats.StatBuilder statBuilder)
+    {
+        if (queryIds.length == 0)
+            return 0.0;
+
         // Compute a score for the current file with respect to each query tuple
         // The score takes into account the weight vector associated with each tuple
-        Map<Integer, Double> tupleIDToScore = new HashMap<>();
+        List<Double> queryRowScores = new ArrayList<>(queryIds.length);
         List<List<Double>> queryRowVectors = new ArrayList<>();    // 2D List mapping each tupleID to the similarity scores chosen across the aligned columns
+        double sum = 0.0;
 
-        for (int queryRow = 0; queryRow < query.rowCount(); queryRow++)
+        for (int queryRow = 0; queryRow < queryIds.length; queryRow++)
         {
-            if (tableRowExists(scores.getRow(queryRow), l -> !l.isEmpty())) // Ensure that the current query row has at least one similarity vector with some row
-            {
-                List<Double> curQueryRowVec;
+            int rowSize = queryIds[queryRow].length, count = buffers.rowCounts[queryRow];
+            double[] curQueryRowVec = buffers.rowVectors[queryRow];
+            double score = 0.0;
 
-                if (this.useMaxSimilarityPerColumn)  // Use the maximum similarity score per column as the tuple vector
-                    curQueryRowVec = Utils.getMaxPerColumnVector(scores.getRow(queryRow));
+            if (count > 0 && rowSize > 0)   // Ensure that the current query row has a similarity vector with some row
+            {
+                List<Double> rowVector = new ArrayList<>(rowSize);
 
-                else
-                    curQueryRowVec = Utils.getAverageVector(scores.getRow(queryRow));
+                for (int column = 0; column < rowSize; column++)
+                {
+                    if (!this.useMaxSimilarityPerColumn)    // Use the average similarity score per column as the tuple vector
+                        curQueryRowVec[column] /= count;
 
-                List<Double> identityVector = new ArrayList<>(Collections.nCopies(curQueryRowVec.size(), 1.0));
-                double score = 0.0;
+                    rowVector.add(curQueryRowVec[column]);
+                }
 
                 if (this.measure == SimilarityMeasure.COSINE)   // Note: Cosine similarity doesn't make sense if we are operating in a vector similarity space
-                    score = Utils.cosineSimilarity(curQueryRowVec, identityVector);
+                    score = SimilarityKernels.get().cosine(curQueryRowVec, buffers.identity, rowSize);
 
                 else if (this.measure == SimilarityMeasure.EUCLIDEAN)   // Perform weighted euclidean distance between the `curTupleVec` and `identity
                 {
-                    score = Utils.euclideanDistance(curQueryRowVec, identityVector, queryRowToWeightVector.get(queryRow));
+                    score = SimilarityKernels.get().weightedEuclidean(curQueryRowVec, buffers.identity, queryRowToWeightVector[queryRow], rowSize);
                     score = 1 / (score + 1);    // Convert euclidean distance to similarity, high similarity (i.e. close to 1) means euclidean distance is small
                 }
 
-                tupleIDToScore.put(queryRow, score);
-                queryRowVectors.add(curQueryRowVec);  // Update the tupleVectors array
+                queryRowVectors.add(rowVector);  // Update the tupleVectors array
             }
 
-            else
-                tupleIDToScore.put(queryRow, 0.0);
+            queryRowScores.add(score);
+            sum += score;
         }
 
         // TODO: Each tuple currently weighted equally. Maybe add extra weighting per tuple when taking average?
-        if (!tupleIDToScore.isEmpty())  // Get a single score for the current filename that is averaged across all query tuple scores
+        statBuilder.queryRowScores(queryRowScores);
+        statBuilder.queryRowVectors(queryRowVectors);
+        return sum / queryIds.length;
+    }
+
+    @Override
+    protected long abstractElapsedNanoSeconds()
+    {
+        return this.elapsed;
+    }
+
+    private Id[][] queryEntityIds(Table<String> query)
+    {
+        Id[][] ids = new Id[query.rowCount()][];
+
+        for (int row = 0; row < ids.length; row++)
         {
-            List<Double> queryRowScores = new ArrayList<>(tupleIDToScore.values());
-            statBuilder.queryRowScores(queryRowScores);
-            statBuilder.queryRowVectors(queryRowVectors);
-            return Utils.getAverageOfVector(queryRowScores);
+            ids[row] = new Id[query.getRow(row).size()];
+
+            for (int column = 0; column < ids[row].length; column++)
+            {
+                try
+                {
+                    ids[row][column] = getLinker().kgUriLookup(query.getRow(row).get(column));
+                }
+
+                catch (IllegalArgumentException exc)
+                {
+                    ids[row][column] = null;
+                }
+            }
         }
 
-        return 0.0;
+        return ids;
     }
 
-    private <E> boolean tableRowExists(Table.Row<E> row, Predicate<E> function)
+    private Id[] indexEntityIds()
     {
-        for (int i = 0; i < row.size(); i++)
+        List<Id> ids = new ArrayList<>();
+        Iterator<Id> entityIter = getLinker().kgUriIds();
+        int max = -1;
+
+        while (entityIter.hasNext())
         {
-            if (function.test(row.get(i)))
-                return true;
+            Id id = entityIter.next();
+
+            if (id.getId() >= 0)
+            {
+                ids.add(id);
+                max = Math.max(max, id.getId());
+            }
         }
 
-        return false;
+        Id[] idArray = new Id[max + 1];
+        ids.forEach(id -> idArray[id.getId()] = id);
+
+        return idArray;
     }
 
-    @Override
-    protected long abstractElapsedNanoSeconds()
+    /**
+     * @param id Integer representation of a KG entity ID
+     * @return Entity ID or null if the entity is unknown
+     */
+    private Id entityId(int id)
     {
-        return this.elapsed;
+        return id >= 0 && id < this.kgIds.length ? this.kgIds[id] : null;
     }
 
-    private Set<String> distinctTables()
+    private BitSet distinctTables()
     {
-        Set<String> tables = new HashSet<>();
+        BitSet tables = new BitSet(getEntityTableLink().tableCount());
         Iterator<Id> entityIter = getLinker().kgUriIds();
 
         while (entityIter.hasNext())
         {
-            tables.addAll(getEntityTableLink().find(entityIter.next()));
+            for (int position : getEntityTableLink().tablePositions(entityIter.next()))
+            {
+                tables.set(position);
+            }
         }
 
         return tables;
@@ -740,41 +1440,51 @@ public class AnalogousSearch extends AbstractSearch
 
     public int getEmbeddingComparisons()
     {
-        return this.embeddingComparisons;
+        return this.lastQuery.getEmbeddingComparisons();
     }
 
     public int getNonEmbeddingComparisons()
     {
-        return this.nonEmbeddingComparisons;
+        return this.lastQuery.getNonEmbeddingComparisons();
     }
 
     public int getEmbeddingCoverageSuccesses()
     {
-        return this.embeddingCoverageSuccesses;
+        return this.lastQuery.getEmbeddingCoverageSuccesses();
     }
 
     public int getEmbeddingCoverageFails()
     {
-        return this.embeddingCoverageFails;
+        return this.lastQuery.getEmbeddingCoverageFails();
     }
 
     public Set<String> getQueryEntitiesMissingCoverage()
     {
-        return this.queryEntitiesMissingCoverage;
+        return this.lastQuery.getQueryEntitiesMissingCoverage();
     }
 
     public Map<String, Stats> getTableStats()
     {
-        return this.tableStats;
+        return this.lastQuery.getTableStats();
     }
 
     public long getParsedTables()
     {
-        return this.parsedTables;
+        return this.lastQuery.getParsedTables();
     }
 
     public double getReduction()
     {
-        return this.reduction;
+        return this.lastQuery.getReduction();
+    }
+
+    public long getSimilarityCacheHits()
+    {
+        return this.similarityCacheHits;
+    }
+
+    public long getSimilarityCacheMisses()
+    {
+        return this.similarityCacheMisses;
     }
 }
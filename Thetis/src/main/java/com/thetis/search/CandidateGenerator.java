@@ -0,0 +1,96 @@
+package com.thetis.search;
+
+import com.thetis.store.ElementTableLink;
+import com.thetis.store.EntityTable;
+import com.thetis.store.EntityTableLink;
+import com.thetis.structures.Id;
+import com.thetis.structures.graph.Entity;
+
+/**
+ * Candidate generation of tables for a query entity from the inverted indexes of entities, types and predicates to tables
+ * An entity of a table shares at most the types or predicates of the query entity that are found in the table, which bounds the Jaccard
+ * similarity between the query entity and any entity of the table
+ * Tables sharing no type or predicate with the query entity have a bound of 0, and tables containing the query entity have a bound of 1
+ */
+public class CandidateGenerator
+{
+    private final EntityTable entityTable;
+    private final EntityTableLink entityTableLink;
+    private final ElementTableLink elementTables;
+    private final double[] weights;
+    private final double maxSimilarity;
+
+    /**
+     * @param elementTables Index of types or predicates to tables
+     * @param weighted Whether the Jaccard similarity is weighted by the IDF of types
+     * @param maxSimilarity Maximum similarity between two distinct entities
+     */
+    public CandidateGenerator(EntityTable entityTable, EntityTableLink entityTableLink, ElementTableLink elementTables, boolean weighted,
+                              double maxSimilarity)
+    {
+        this.entityTable = entityTable;
+        this.entityTableLink = entityTableLink;
+        this.elementTables = elementTables;
+        this.weights = weighted && elementTables.isTypes() ? entityTable.getTypeDictionary().weights() : null;
+        this.maxSimilarity = maxSimilarity;
+    }
+
+    private double weight(int element)
+    {
+        return this.weights != null ? this.weights[element] : 1.0;
+    }
+
+    /**
+     * Upper bounds of the Jaccard similarity between an entity and the entities of every table
+     * @param entityId ID of the query entity, which may be null
+     * @return Bounds indexed by table position in the table dictionary of the EntityTableLink
+     */
+    public double[] similarityBounds(Id entityId)
+    {
+        double[] bounds = new double[this.entityTableLink.tableCount()];
+
+        if (entityId == null)
+            return bounds;
+
+        Entity entity = this.entityTable.find(entityId);
+        int[] elements = entity == null ? null : this.elementTables.isTypes() ? entity.getTypeIds() : entity.getPredicateIds();
+
+        if (elements != null)
+        {
+            double total = 0.0;
+
+            for (int element : elements)
+            {
+                double weight = weight(element);
+
+                if (weight > 0)
+                    total += weight;
+            }
+
+            for (int element : elements)
+            {
+                double weight = weight(element);
+
+                if (weight <= 0)
+                    continue;
+
+                for (int table : this.elementTables.tables(element))
+                {
+                    bounds[table] += weight / total;
+                }
+            }
+
+            for (int table = 0; table < bounds.length; table++)
+            {
+                bounds[table] = Math.min(bounds[table], this.maxSimilarity);
+            }
+        }
+
+        for (int table : this.entityTableLink.tablePositions(entityId))
+        {
+            bounds[table] = 1.0;
+        }
+
+        return bounds;
+    }
+}
@@ -5,12 +5,20 @@ import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
 import com.thetis.store.hnsw.HNSW;
+import com.thetis.store.hnsw.TableHNSW;
+import com.thetis.store.lsh.ContainmentLSHIndex;
+import com.thetis.store.lsh.LSHIndex;
 import com.thetis.structures.Id;
 import com.thetis.structures.Pair;
 import com.thetis.structures.table.DynamicTable;
 import com.thetis.structures.table.Table;
+import com.thetis.system.ExecutionService;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 /**
  * Searches corpus using specified LSH index
@@ -20,6 +28,12 @@ public class Prefilter extends AbstractSearch
 {
     private long elapsed = -1;
     private HNSW hnsw;
+    private TableHNSW tableHNSW = null;
+    private int tableCandidates;
+    private LSHIndex<String, String> lsh = null;
+    private int probes = 0;
+    private ContainmentLSHIndex containment = null;
+    private double containmentThreshold;
     private LuceneSearch lucene;
     private static final int SIZE_THRESHOLD = 8;
     private static final int SPLITS_SIZE = 3;
@@ -46,64 +60,303 @@ public class Prefilter extends AbstractSearch
         this.lucene = lucene;
     }
 
+    /**
+     * Pre-filters with the table-level HNSW index
+     * @param tableCandidates Number of nearest columns and rows retrieved for each query column and row
+     */
+    public Prefilter(EntityLinking linker, EntityTable entityTable, EntityTableLink entityTableLink,
+                     EmbeddingsIndex<Id> embeddingsIndex, TableHNSW tableHNSW, int tableCandidates)
+    {
+        this(linker, entityTable, entityTableLink, embeddingsIndex);
+        this.hnsw = null;
+        this.lucene = null;
+        this.tableHNSW = tableHNSW;
+        this.tableCandidates = tableCandidates;
+    }
+
+    /**
+     * Pre-filters with an LSH index of entities
+     * @param probes Number of extra buckets probed per bucket group by multi-probe search
+     */
+    public Prefilter(EntityLinking linker, EntityTable entityTable, EntityTableLink entityTableLink,
+                     EmbeddingsIndex<Id> embeddingsIndex, LSHIndex<String, String> lsh, int probes)
+    {
+        this(linker, entityTable, entityTableLink, embeddingsIndex);
+        this.hnsw = null;
+        this.lucene = null;
+        this.lsh = lsh;
+        this.probes = probes;
+    }
+
+    /**
+     * Pre-filters with a containment LSH index of table columns, which finds tables that a query could be unioned with
+     * @param containmentThreshold Smallest estimated containment of a query column in a table column
+     */
+    public Prefilter(EntityLinking linker, EntityTable entityTable, EntityTableLink entityTableLink,
+                     EmbeddingsIndex<Id> embeddingsIndex, ContainmentLSHIndex containment, double containmentThreshold)
+    {
+        this(linker, entityTable, entityTableLink, embeddingsIndex);
+        this.hnsw = null;
+        this.lucene = null;
+        this.containment = containment;
+        this.containmentThreshold = containmentThreshold;
+    }
+
     @Override
     protected Result abstractSearch(Table<String> query)
     {
-        long start = System.nanoTime();
-
         if (this.lucene != null)
         {
+            long start = System.nanoTime();
             Result result = this.lucene.search(query);
             this.elapsed = System.nanoTime() - start;
             return result;
         }
 
-        List<Pair<String, Double>> candidates = new ArrayList<>();
-        List<Table<String>> subQueries = List.of(query);
-        Map<String, Integer> tableCounter = new HashMap<>();
-        boolean isQuerySplit = false;
+        else if (this.containment != null)
+        {
+            Map<Integer, Double> tables = searchContainment(query);
+            List<Pair<String, Double>> candidates = new ArrayList<>(tables.size());
+            tables.forEach((table, containment) -> candidates.add(new Pair<>(getEntityTableLink().tableName(table), containment)));
+            return new Result(candidates.size(), candidates);
+        }
 
-        if (query.rowCount() >= SIZE_THRESHOLD)
+        BitSet tables = searchTables(query);
+        List<Pair<String, Double>> candidates = new ArrayList<>(tables.cardinality());
+
+        for (int table = tables.nextSetBit(0); table >= 0; table = tables.nextSetBit(table + 1))
         {
-            subQueries = split(query, SPLITS_SIZE);
-            isQuerySplit = true;
+            candidates.add(new Pair<>(getEntityTableLink().tableName(table), -1.0));
         }
 
+        return new Result(candidates.size(), candidates);
+    }
+
+    /**
+     * Pre-filters the search space of a query
+     * Large queries are split into sub-queries, and a table is a candidate if it is found by at least MIN_EXISTS_IN sub-queries
+     * The entities of all sub-queries are searched in parallel
+     * @param query Input table query
+     * @return Positions of the candidate tables in the table dictionary of the entity-table link index
+     */
+    public BitSet searchTables(Table<String> query)
+    {
+        long start = System.nanoTime();
+
+        if (this.tableHNSW != null)
+        {
+            BitSet candidates = searchTableHNSW(query);
+            this.elapsed = System.nanoTime() - start;
+            return candidates;
+        }
+
+        else if (this.containment != null)
+        {
+            BitSet candidates = new BitSet(getEntityTableLink().tableCount());
+            searchContainment(query).keySet().forEach(candidates::set);
+            this.elapsed = System.nanoTime() - start;
+            return candidates;
+        }
+
+        List<Table<String>> subQueries = query.rowCount() >= SIZE_THRESHOLD ? split(query, SPLITS_SIZE) : List.of(query);
+        Executor executor = ExecutionService.compute(ExecutionService.parallelism());
+        List<List<Future<BitSet>>> subQueryTables = new ArrayList<>(subQueries.size());
+
+        // Each HNSW or LSH task searches a single entity and each Lucene task a single column, so tasks do not wait on each other
         for (Table<String> subQuery : subQueries)
         {
-            Set<String> subCandidates = searchFromTable(subQuery);
-            subCandidates.forEach(t -> tableCounter.put(t, tableCounter.containsKey(t) ? tableCounter.get(t) + 1 : 1));
+            List<Future<BitSet>> futures = new ArrayList<>();
+
+            for (Set<String> column : columns(subQuery))
+            {
+                if (this.lucene != null)
+                    futures.add(CompletableFuture.supplyAsync(() -> searchLucene(column), executor));
+
+                else
+                {
+                    for (String entity : column)
+                    {
+                        futures.add(CompletableFuture.supplyAsync(() -> findTables(entity), executor));
+                    }
+                }
+            }
+
+            subQueryTables.add(futures);
         }
 
-        for (Map.Entry<String, Integer> entry : tableCounter.entrySet())
+        BitSet candidates = new BitSet(getEntityTableLink().tableCount());
+        int[] votes = subQueries.size() > 1 ? new int[getEntityTableLink().tableCount()] : null;
+
+        try
         {
-            if (isQuerySplit && entry.getValue() >= MIN_EXISTS_IN)
+            for (List<Future<BitSet>> futures : subQueryTables)
             {
-                candidates.add(new Pair<>(entry.getKey(), -1.0));
+                BitSet tables = new BitSet(getEntityTableLink().tableCount());
+
+                for (Future<BitSet> future : futures)
+                {
+                    tables.or(future.get());
+                }
+
+                if (votes == null)
+                    candidates = tables;
+
+                else
+                {
+                    for (int table = tables.nextSetBit(0); table >= 0; table = tables.nextSetBit(table + 1))
+                    {
+                        if (++votes[table] == MIN_EXISTS_IN)
+                            candidates.set(table);
+                    }
+                }
             }
+        }
+
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw new RuntimeException("Error in multi-threaded pre-filtering: " + e.getMessage());
+        }
+
+        this.elapsed = System.nanoTime() - start;
+        return candidates;
+    }
+
+    private BitSet findTables(String entity)
+    {
+        if (this.lsh == null)
+        {
+            return this.hnsw.findTables(entity);
+        }
+
+        BitSet tables = new BitSet(getEntityTableLink().tableCount());
 
-            else if (!isQuerySplit)
+        for (String tableName : this.lsh.search(entity, 1, this.probes))
+        {
+            int table = getEntityTableLink().tablePosition(tableName);
+
+            if (table >= 0)
             {
-                candidates.add(new Pair<>(entry.getKey(), -1.0));
+                tables.set(table);
             }
         }
 
+        return tables;
+    }
+
+    /**
+     * Retrieves the tables of the columns nearest to each query column directly from the table-level HNSW index
+     * Tables found by every query column are candidates, and if no table is found by every query column, the tables found by any query column are
+     * When rows are indexed, the tables of the rows nearest to each query row are added to the candidates
+     */
+    private BitSet searchTableHNSW(Table<String> query)
+    {
+        BitSet candidates = null, union = new BitSet(getEntityTableLink().tableCount());
+
+        for (Set<String> column : columns(query))
+        {
+            BitSet tables = this.tableHNSW.findColumns(this.tableHNSW.centroid(entityIds(column), this::embedding), this.tableCandidates);
+
+            if (tables.isEmpty())   // None of the entities of the column have embeddings
+                continue;
+
+            union.or(tables);
+
+            if (candidates == null)
+                candidates = tables;
+
+            else
+                candidates.and(tables);
+        }
+
+        if (candidates == null || candidates.isEmpty())
+            candidates = union;
+
+        if (this.tableHNSW.hasRows())
+        {
+            for (int row = 0; row < query.rowCount(); row++)
+            {
+                Set<String> entities = new HashSet<>();
+
+                for (int column = 0; column < query.getRow(row).size(); column++)
+                {
+                    entities.add(query.getRow(row).get(column));
+                }
+
+                candidates.or(this.tableHNSW.findRows(this.tableHNSW.centroid(entityIds(entities), this::embedding), this.tableCandidates));
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Pre-filters with the containment LSH index by searching the table columns that contain each query column
+     * A table is a candidate if a column of it is estimated to contain at least the containment threshold of any query column
+     * @param query Input table query
+     * @return Estimated containment of each candidate table, keyed by its position in the table dictionary of the entity-table link index,
+     *         which is the mean over the query columns of the largest containment of the query column in a column of the table
+     */
+    public Map<Integer, Double> searchContainment(Table<String> query)
+    {
+        long start = System.nanoTime();
+        Map<Integer, Double> candidates = new HashMap<>();
+        int searchedColumns = 0;
+
+        for (Set<String> column : columns(query))
+        {
+            int[] elements = this.containment.elements(entityIds(column), getEntityTable());
+
+            if (elements.length == 0)   // None of the entities of the column are known
+                continue;
+
+            this.containment.search(elements, this.containmentThreshold).forEach((table, containment) -> candidates.merge(table, containment, Double::sum));
+            searchedColumns++;
+        }
+
+        for (Map.Entry<Integer, Double> candidate : candidates.entrySet())
+        {
+            candidate.setValue(candidate.getValue() / searchedColumns);
+        }
+
         this.elapsed = System.nanoTime() - start;
-        return new Result(candidates.size(), candidates);
+        return candidates;
+    }
+
+    private List<Id> entityIds(Set<String> entities)
+    {
+        List<Id> ids = new ArrayList<>(entities.size());
+
+        for (String entity : entities)
+        {
+            Id id = getLinker().kgUriLookup(entity);
+
+            if (id != null)
+            {
+                ids.add(id);
+            }
+        }
+
+        return ids;
     }
 
-    private Set<String> searchFromTable(Table<String> query)
+    private float[] embedding(Id entity)
     {
-        Set<String> candidates = new HashSet<>();
+        return getEmbeddingsIndex().findPrimitive(entity);
+    }
+
+    // Distinct entities of each column of a query
+    private static List<Set<String>> columns(Table<String> query)
+    {
+        List<Set<String>> columns = new ArrayList<>();
 
         if (query.rowCount() == 0)
         {
-            return candidates;
+            return columns;
         }
 
-        int rows = query.rowCount(), columns = query.getRow(0).size();
+        int rows = query.rowCount(), columnCount = query.getRow(0).size();
 
-        for (int column = 0; column < columns; column++)
+        for (int column = 0; column < columnCount; column++)
         {
             Set<String> entities = new HashSet<>(rows);
 
@@ -115,10 +368,10 @@ public class Prefilter extends AbstractSearch
                 }
             }
 
-            candidates.addAll(this.lucene != null ? searchLucene(entities) : searchHNSW(entities));
+            columns.add(entities);
         }
 
-        return candidates;
+        return columns;
     }
 
     private static List<Table<String>> split(Table<String> table, int splitSize)
@@ -141,31 +394,24 @@ public class Prefilter extends AbstractSearch
         return subTables;
     }
 
-    private Set<String> searchHNSW(Set<String> entities)
-    {
-        Set<String> tables = new HashSet<>();
-
-        for (String entity : entities)
-        {
-            tables.addAll(this.hnsw.find(entity));
-        }
-
-        return tables;
-    }
-
-    private Set<String> searchLucene(Set<String> entities)
+    private BitSet searchLucene(Set<String> entities)
     {
         Table<String> query = new DynamicTable<>(List.of(new ArrayList<>(entities)));
         Result result = this.lucene.search(query);
         Iterator<Pair<String, Double>> resultIter = result.getResults();
-        Set<String> resultSet = new HashSet<>();
+        BitSet tables = new BitSet(getEntityTableLink().tableCount());
 
         while (resultIter.hasNext())
         {
-            resultSet.add(resultIter.next().getFirst());
+            int table = getEntityTableLink().tablePosition(resultIter.next().getFirst());
+
+            if (table >= 0)
+            {
+                tables.set(table);
+            }
         }
 
-        return resultSet;
+        return tables;
     }
 
     @Override
@@ -4,20 +4,27 @@ import com.thetis.structures.Pair;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Container of top-K search result in sorted descending order
+ * The result is ranked once on construction and is immutable, so iterating it repeatedly does not re-sort
  */
 public class Result implements Iterable<Pair<String, Double>>
 {
     protected int k, size;
-    protected List<Pair<String, Double>> tableScores;
+    private final String[] tables;
+    private final double[] scores;
 
+    /**
+     * Ranks the given table scores and keeps the top-K
+     * Tables of equal score keep their order in the given list
+     * @param k Number of tables to keep
+     * @param tableScores Unordered table scores
+     */
     public Result(int k, List<Pair<String, Double>> tableScores)
     {
-        this.k = k;
-        this.size = Math.min(k, tableScores.size());
-        this.tableScores = tableScores;
+        this(k, rank(k, tableScores));
     }
 
     public Result(int k, Pair<String, Double> ... tableScores)
@@ -25,6 +32,37 @@ public class Result implements Iterable<Pair<String, Double>>
         this(k, List.of(tableScores));
     }
 
+    private Result(int k, Result ranked)
+    {
+        this(k, ranked.tables, ranked.scores);
+    }
+
+    /**
+     * @param k Number of tables searched for
+     * @param tables Table names ranked in descending order of score
+     * @param scores Scores of the ranked tables
+     */
+    Result(int k, String[] tables, double[] scores)
+    {
+        this.k = k;
+        this.size = tables.length;
+        this.tables = tables;
+        this.scores = scores;
+    }
+
+    private static Result rank(int k, List<Pair<String, Double>> tableScores)
+    {
+        TopK topK = new TopK(Math.min(k, tableScores.size()));
+        long order = 0;
+
+        for (Pair<String, Double> tableScore : tableScores)
+        {
+            topK.offer(tableScore.getFirst(), tableScore.getSecond(), order++);
+        }
+
+        return topK.toResult();
+    }
+
     public int getK()
     {
         return this.k;
@@ -35,19 +73,47 @@ public class Result implements Iterable<Pair<String, Double>>
         return this.size;
     }
 
+    /**
+     * Table at a given rank
+     * @param rank Rank starting from 0
+     */
+    public String getTable(int rank)
+    {
+        return this.tables[rank];
+    }
+
+    /**
+     * Score of the table at a given rank
+     * @param rank Rank starting from 0
+     */
+    public double getScore(int rank)
+    {
+        return this.scores[rank];
+    }
+
     public Iterator<Pair<String, Double>> getResults()
     {
-        this.tableScores.sort((e1, e2) -> {
-            if (e1.getSecond().equals(e2.getSecond()))
-                return 0;
+        return new Iterator<>()
+        {
+            private int rank = 0;
 
-            return e1.getSecond() > e2.getSecond() ? -1 : 1;
-        });
+            @Override
+            public boolean hasNext()
+            {
+                return this.rank < size;
+            }
 
-        if (this.tableScores.size() < this.k + 1)
-            return this.tableScores.iterator();
+            @Override
+            public Pair<String, Double> next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
 
-        return this.tableScores.subList(0, this.k).iterator();
+                Pair<String, Double> tableScore = new Pair<>(tables[this.rank], scores[this.rank]);
+                this.rank++;
+                return tableScore;
+            }
+        };
     }
 
     @Override
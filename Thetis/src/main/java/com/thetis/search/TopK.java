@@ -0,0 +1,189 @@
+package com.thetis.search;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap keeping the K highest scoring tables
+ * Ties in score are broken by insertion order, so the earliest offered table ranks first as with a stable sort
+ * NaN scores rank below all other scores
+ * This class is not thread-safe, so concurrent workers should use a heap each and merge them
+ */
+public class TopK
+{
+    private final int k;
+    private final String[] tables;
+    private final double[] scores;
+    private final long[] order;
+    private int size = 0;
+    private long offered = 0;
+
+    public TopK(int k)
+    {
+        this.k = Math.max(0, k);
+        this.tables = new String[this.k];
+        this.scores = new double[this.k];
+        this.order = new long[this.k];
+    }
+
+    /**
+     * Offers a table to the heap
+     * @param table Table name
+     * @param score Score of the table
+     * @param order Position of the table in the corpus used to break ties
+     */
+    public void offer(String table, double score, long order)
+    {
+        this.offered++;
+
+        if (this.size < this.k)
+        {
+            set(this.size, table, score, order);
+            siftUp(this.size++);
+        }
+
+        else if (this.k > 0 && ranksBefore(score, order, this.scores[0], this.order[0]))
+        {
+            set(0, table, score, order);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Offers all tables of another heap to this heap
+     */
+    public void merge(TopK other)
+    {
+        long offered = this.offered + other.offered;
+
+        for (int i = 0; i < other.size; i++)
+        {
+            offer(other.tables[i], other.scores[i], other.order[i]);
+        }
+
+        this.offered = offered;
+    }
+
+    public int k()
+    {
+        return this.k;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return Lowest score in the heap once it holds K tables, otherwise negative infinity
+     */
+    public double threshold()
+    {
+        return this.k > 0 && this.size == this.k ? rankScore(this.scores[0]) : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return Number of tables offered to this heap including merged heaps
+     */
+    public long offered()
+    {
+        return this.offered;
+    }
+
+    /**
+     * Ranked result of the tables in the heap
+     */
+    public Result toResult()
+    {
+        Integer[] ranking = new Integer[this.size];
+
+        for (int i = 0; i < this.size; i++)
+        {
+            ranking[i] = i;
+        }
+
+        Arrays.sort(ranking, (i1, i2) -> {
+            if (i1.equals(i2))
+                return 0;
+
+            return ranksBefore(this.scores[i1], this.order[i1], this.scores[i2], this.order[i2]) ? -1 : 1;
+        });
+
+        String[] tables = new String[this.size];
+        double[] scores = new double[this.size];
+
+        for (int i = 0; i < this.size; i++)
+        {
+            tables[i] = this.tables[ranking[i]];
+            scores[i] = this.scores[ranking[i]];
+        }
+
+        return new Result(this.k, tables, scores);
+    }
+
+    private static double rankScore(double score)
+    {
+        return Double.isNaN(score) ? Double.NEGATIVE_INFINITY : score;
+    }
+
+    private static boolean ranksBefore(double score1, long order1, double score2, long order2)
+    {
+        double s1 = rankScore(score1), s2 = rankScore(score2);
+        return s1 > s2 || (s1 == s2 && order1 < order2);
+    }
+
+    private void set(int i, String table, double score, long order)
+    {
+        this.tables[i] = table;
+        this.scores[i] = score;
+        this.order[i] = order;
+    }
+
+    private void swap(int i, int j)
+    {
+        String table = this.tables[i];
+        double score = this.scores[i];
+        long order = this.order[i];
+        set(i, this.tables[j], this.scores[j], this.order[j]);
+        set(j, table, score, order);
+    }
+
+    // The root of the heap is the lowest ranking table
+    private boolean lower(int i, int j)
+    {
+        return ranksBefore(this.scores[j], this.order[j], this.scores[i], this.order[i]);
+    }
+
+    private void siftUp(int i)
+    {
+        while (i > 0)
+        {
+            int parent = (i - 1) / 2;
+
+            if (!lower(i, parent))
+                break;
+
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i)
+    {
+        while (true)
+        {
+            int left = 2 * i + 1, right = left + 1, lowest = i;
+
+            if (left < this.size && lower(left, lowest))
+                lowest = left;
+
+            if (right < this.size && lower(right, lowest))
+                lowest = right;
+
+            if (lowest == i)
+                break;
+
+            swap(i, lowest);
+            i = lowest;
+        }
+    }
+}
@@ -25,23 +25,20 @@ public class CosineSimilarity implements Similarity
     @Override
     public double similarity()
     {
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        Iterator<Double> l1Iter = this.l1.iterator(), l2Iter = this.l2.iterator();
+        int length = Math.min(this.l1.size(), this.l2.size());
+        return SimilarityKernels.get().cosine(toPrimitive(this.l1, length), toPrimitive(this.l2, length), length);
+    }
+
+    private static double[] toPrimitive(List<Double> list, int length)
+    {
+        double[] vector = new double[length];
+        Iterator<Double> iter = list.iterator();
 
-        while (l1Iter.hasNext() && l2Iter.hasNext())
+        for (int i = 0; i < length; i++)
         {
-            double l1Next = l1Iter.next(), l2Next = l2Iter.next();
-            dotProduct += l1Next * l2Next;
-            normA += Math.pow(l1Next, 2);
-            normB += Math.pow(l2Next, 2);
+            vector[i] = iter.next();
         }
 
-        if (normA == 0 || normB == 0)
-            return 0;
-
-        double cosineSimilarity = dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
-        return cosineSimilarity <= -1.0 ? -1.0 : Math.min(cosineSimilarity, 1.0);
+        return vector;
     }
 }
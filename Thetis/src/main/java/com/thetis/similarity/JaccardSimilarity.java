@@ -40,6 +40,78 @@ public class JaccardSimilarity<E extends Comparable<E>> implements Similarity
         return new JaccardSimilarity<E>(s1, s2, weights);
     }
 
+    /**
+     * Jaccard similarity of two sets of interned element IDs computed as a merge without allocation
+     * @param s1 Sorted IDs without duplicates
+     * @param s2 Sorted IDs without duplicates
+     */
+    public static double similarity(int[] s1, int[] s2)
+    {
+        int i = 0, j = 0, intersection = 0;
+
+        while (i < s1.length && j < s2.length)
+        {
+            if (s1[i] < s2[j])
+                i++;
+
+            else if (s1[i] > s2[j])
+                j++;
+
+            else
+            {
+                intersection++;
+                i++;
+                j++;
+            }
+        }
+
+        int union = s1.length + s2.length - intersection;
+        return union == 0 ? 0 : (double) intersection / union;
+    }
+
+    /**
+     * Weighted Jaccard similarity of two sets of interned element IDs computed as a merge without allocation
+     * Elements with a negative weight are ignored
+     * @param s1 Sorted IDs without duplicates
+     * @param s2 Sorted IDs without duplicates
+     * @param weights Weights indexed by element ID
+     */
+    public static double similarity(int[] s1, int[] s2, double[] weights)
+    {
+        int i = 0, j = 0;
+        double numeratorSum = 0.0, denominatorSum = 0.0;
+
+        while (i < s1.length || j < s2.length)
+        {
+            double weight;
+            boolean shared = false;
+
+            if (j == s2.length || (i < s1.length && s1[i] < s2[j]))
+                weight = weights[s1[i++]];
+
+            else if (i == s1.length || s1[i] > s2[j])
+                weight = weights[s2[j++]];
+
+            else
+            {
+                weight = weights[s1[i]];
+                shared = true;
+                i++;
+                j++;
+            }
+
+            if (weight >= 0)
+            {
+                denominatorSum += weight;
+
+                if (shared)
+                    numeratorSum += weight;
+            }
+        }
+
+        return denominatorSum != 0 ? numeratorSum / denominatorSum : 0.0;
+    }
+
     @Override
     public double similarity()
     {
@@ -0,0 +1,104 @@
+package com.thetis.similarity;
+
+/**
+ * Similarity kernels as plain loops, which are used when the JDK Vector API is not available
+ */
+public final class ScalarSimilarityKernel implements SimilarityKernel
+{
+    @Override
+    public String name()
+    {
+        return "scalar";
+    }
+
+    @Override
+    public double dot(float[] v1, int offset1, float[] v2, int offset2, int length)
+    {
+        double dot = 0.0;
+
+        for (int i = 0; i < length; i++)
+        {
+            dot += v1[offset1 + i] * v2[offset2 + i];
+        }
+
+        return dot;
+    }
+
+    @Override
+    public double dot(double[] v1, double[] v2, int length)
+    {
+        double dot = 0.0;
+
+        for (int i = 0; i < length; i++)
+        {
+            dot += v1[i] * v2[i];
+        }
+
+        return dot;
+    }
+
+    @Override
+    public double cosine(float[] v1, int offset1, float[] v2, int offset2, int length)
+    {
+        double dot = 0.0, norm1 = 0.0, norm2 = 0.0;
+
+        for (int i = 0; i < length; i++)
+        {
+            float e1 = v1[offset1 + i], e2 = v2[offset2 + i];
+            dot += e1 * e2;
+            norm1 += e1 * e1;
+            norm2 += e2 * e2;
+        }
+
+        return SimilarityKernels.cosine(dot, norm1, norm2);
+    }
+
+    @Override
+    public double cosine(double[] v1, double[] v2, int length)
+    {
+        double dot = 0.0, norm1 = 0.0, norm2 = 0.0;
+
+        for (int i = 0; i < length; i++)
+        {
+            dot += v1[i] * v2[i];
+            norm1 += v1[i] * v1[i];
+            norm2 += v2[i] * v2[i];
+        }
+
+        return SimilarityKernels.cosine(dot, norm1, norm2);
+    }
+
+    @Override
+    public double weightedEuclidean(double[] v1, double[] v2, double[] weights, int length)
+    {
+        double sum = 0.0;
+
+        for (int i = 0; i < length; i++)
+        {
+            double difference = v1[i] - v2[i];
+            sum += difference * difference * weights[i];
+        }
+
+        return Math.sqrt(sum);
+    }
+
+    @Override
+    public void cosineBatch(float[] query, int queryOffset, float[] block, int blockOffset, int count, int dimension, double[] similarities)
+    {
+        double queryNorm = dot(query, queryOffset, query, queryOffset, dimension);
+
+        for (int vector = 0, offset = blockOffset; vector < count; vector++, offset += dimension)
+        {
+            double dot = 0.0, norm = 0.0;
+
+            for (int i = 0; i < dimension; i++)
+            {
+                float e = block[offset + i];
+                dot += query[queryOffset + i] * e;
+                norm += e * e;
+            }
+
+            similarities[vector] = SimilarityKernels.cosine(dot, queryNorm, norm);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.thetis.similarity;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Bounded concurrent cache of similarity scores between pairs of entities
+ * A pair is keyed by the two integer entity IDs packed into a long regardless of their order, so the cached similarity must be symmetric
+ * The cache is direct-mapped: each pair hashes to one slot, and a new pair replaces the pair occupying its slot
+ * Entries are immutable, so lookups are lock-free
+ */
+public class SimilarityCache
+{
+    private static final class Entry
+    {
+        private final long key;
+        private final double similarity;
+
+        private Entry(long key, double similarity)
+        {
+            this.key = key;
+            this.similarity = similarity;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of cached pairs, rounded up to a power of two. A capacity of 0 disables caching.
+     */
+    public SimilarityCache(int capacity)
+    {
+        capacity = Math.max(0, Math.min(capacity, 1 << 30));
+        this.slots = new AtomicReferenceArray<>(capacity <= 1 ? capacity : Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = this.slots.length() - 1;
+    }
+
+    private static long key(int id1, int id2)
+    {
+        int low = Math.min(id1, id2), high = Math.max(id1, id2);
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key)
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & this.mask;
+    }
+
+    /**
+     * Looks up the similarity of a pair of entities and computes and caches it if absent
+     * @param id1 Integer ID of the first entity
+     * @param id2 Integer ID of the second entity
+     * @param similarity Computation of the similarity on a cache miss
+     * @return Similarity of the two entities
+     */
+    public double computeIfAbsent(int id1, int id2, DoubleSupplier similarity)
+    {
+        if (this.slots.length() == 0)
+        {
+            this.misses.increment();
+            return similarity.getAsDouble();
+        }
+
+        long key = key(id1, id2);
+        int slot = slot(key);
+        Entry entry = this.slots.get(slot);
+
+        if (entry != null && entry.key == key)
+        {
+            this.hits.increment();
+            return entry.similarity;
+        }
+
+        double sim = similarity.getAsDouble();
+        this.slots.set(slot, new Entry(key, sim));
+        this.misses.increment();
+        return sim;
+    }
+
+    public int capacity()
+    {
+        return this.slots.length();
+    }
+
+    public long hits()
+    {
+        return this.hits.sum();
+    }
+
+    public long misses()
+    {
+        return this.misses.sum();
+    }
+
+    /**
+     * Removes all cached pairs and resets the hit and miss counters
+     */
+    public void clear()
+    {
+        for (int i = 0; i < this.slots.length(); i++)
+        {
+            this.slots.set(i, null);
+        }
+
+        this.hits.reset();
+        this.misses.reset();
+    }
+}
@@ -0,0 +1,41 @@
+package com.thetis.similarity;
+
+/**
+ * Numeric kernels of vector similarities
+ * Float vectors are given as an array and an offset, so rows of a contiguous embedding block can be used without copying
+ */
+public interface SimilarityKernel
+{
+    String name();
+
+    double dot(float[] v1, int offset1, float[] v2, int offset2, int length);
+
+    double dot(double[] v1, double[] v2, int length);
+
+    /**
+     * @return Cosine similarity within [-1, 1], or 0 if a vector is a zero vector
+     */
+    double cosine(float[] v1, int offset1, float[] v2, int offset2, int length);
+
+    /**
+     * @return Cosine similarity within [-1, 1], or 0 if a vector is a zero vector
+     */
+    double cosine(double[] v1, double[] v2, int length);
+
+    /**
+     * @return Euclidean distance between two vectors where the squared difference of each dimension is multiplied by its weight
+     */
+    double weightedEuclidean(double[] v1, double[] v2, double[] weights, int length);
+
+    /**
+     * Cosine similarities of one vector to a block of contiguous vectors of the same dimension
+     * @param query Array holding the query vector
+     * @param queryOffset Offset of the query vector
+     * @param block Array holding the vectors to compare against
+     * @param blockOffset Offset of the first vector in the block
+     * @param count Number of vectors in the block
+     * @param dimension Dimension of the vectors
+     * @param similarities Output of the similarity to each vector of the block
+     */
+    void cosineBatch(float[] query, int queryOffset, float[] block, int blockOffset, int count, int dimension, double[] similarities);
+}
@@ -0,0 +1,67 @@
+package com.thetis.similarity;
+
+import com.thetis.system.Logger;
+
+/**
+ * Selection of the similarity kernel used by the search
+ * The Vector API kernel is used when the JVM is started with --add-modules jdk.incubator.vector, otherwise the scalar kernel is used
+ * The system property thetis.similarity.kernel set to scalar forces the scalar kernel
+ */
+public final class SimilarityKernels
+{
+    public static final String KERNEL_PROPERTY = "thetis.similarity.kernel";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final SimilarityKernel SCALAR = new ScalarSimilarityKernel();
+    private static final SimilarityKernel VECTOR = loadVectorKernel();
+    private static final SimilarityKernel SELECTED = !"scalar".equalsIgnoreCase(System.getProperty(KERNEL_PROPERTY)) && VECTOR != null ? VECTOR : SCALAR;
+
+    private SimilarityKernels() {}
+
+    private static SimilarityKernel loadVectorKernel()
+    {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty())
+            return null;
+
+        try
+        {
+            // Loaded reflectively so the Vector API classes are only resolved when the module is present
+            return (SimilarityKernel) Class.forName("com.thetis.similarity.VectorSimilarityKernel").getDeclaredConstructor().newInstance();
+        }
+
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "Could not load the Vector API similarity kernel: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return Kernel selected for this JVM
+     */
+    public static SimilarityKernel get()
+    {
+        return SELECTED;
+    }
+
+    public static SimilarityKernel scalar()
+    {
+        return SCALAR;
+    }
+
+    /**
+     * @return Vector API kernel, or null if the jdk.incubator.vector module is not available
+     */
+    public static SimilarityKernel vector()
+    {
+        return VECTOR;
+    }
+
+    static double cosine(double dot, double norm1, double norm2)
+    {
+        if (norm1 == 0 || norm2 == 0)
+            return 0;
+
+        double cosine = dot / (Math.sqrt(norm1) * Math.sqrt(norm2));
+        return cosine <= -1.0 ? -1.0 : Math.min(cosine, 1.0);
+    }
+}
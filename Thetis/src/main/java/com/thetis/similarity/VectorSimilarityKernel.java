@@ -0,0 +1,176 @@
+package com.thetis.similarity;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Similarity kernels using the incubating JDK Vector API
+ * Float lanes are accumulated in float, so results may differ from the scalar kernels in the last digits
+ * This class must only be loaded when the jdk.incubator.vector module is present, which SimilarityKernels checks
+ */
+final class VectorSimilarityKernel implements SimilarityKernel
+{
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public String name()
+    {
+        return "vector";
+    }
+
+    @Override
+    public double dot(float[] v1, int offset1, float[] v2, int offset2, int length)
+    {
+        FloatVector dot = FloatVector.zero(FLOATS);
+        int i = 0, bound = FLOATS.loopBound(length);
+
+        for (; i < bound; i += FLOATS.length())
+        {
+            FloatVector e1 = FloatVector.fromArray(FLOATS, v1, offset1 + i), e2 = FloatVector.fromArray(FLOATS, v2, offset2 + i);
+            dot = e1.fma(e2, dot);
+        }
+
+        double sum = dot.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+        {
+            sum += v1[offset1 + i] * v2[offset2 + i];
+        }
+
+        return sum;
+    }
+
+    @Override
+    public double dot(double[] v1, double[] v2, int length)
+    {
+        DoubleVector dot = DoubleVector.zero(DOUBLES);
+        int i = 0, bound = DOUBLES.loopBound(length);
+
+        for (; i < bound; i += DOUBLES.length())
+        {
+            DoubleVector e1 = DoubleVector.fromArray(DOUBLES, v1, i), e2 = DoubleVector.fromArray(DOUBLES, v2, i);
+            dot = e1.fma(e2, dot);
+        }
+
+        double sum = dot.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+        {
+            sum += v1[i] * v2[i];
+        }
+
+        return sum;
+    }
+
+    @Override
+    public double cosine(float[] v1, int offset1, float[] v2, int offset2, int length)
+    {
+        FloatVector dot = FloatVector.zero(FLOATS), norm1 = FloatVector.zero(FLOATS), norm2 = FloatVector.zero(FLOATS);
+        int i = 0, bound = FLOATS.loopBound(length);
+
+        for (; i < bound; i += FLOATS.length())
+        {
+            FloatVector e1 = FloatVector.fromArray(FLOATS, v1, offset1 + i), e2 = FloatVector.fromArray(FLOATS, v2, offset2 + i);
+            dot = e1.fma(e2, dot);
+            norm1 = e1.fma(e1, norm1);
+            norm2 = e2.fma(e2, norm2);
+        }
+
+        double dotSum = dot.reduceLanes(VectorOperators.ADD), norm1Sum = norm1.reduceLanes(VectorOperators.ADD),
+                norm2Sum = norm2.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+        {
+            float e1 = v1[offset1 + i], e2 = v2[offset2 + i];
+            dotSum += e1 * e2;
+            norm1Sum += e1 * e1;
+            norm2Sum += e2 * e2;
+        }
+
+        return SimilarityKernels.cosine(dotSum, norm1Sum, norm2Sum);
+    }
+
+    @Override
+    public double cosine(double[] v1, double[] v2, int length)
+    {
+        DoubleVector dot = DoubleVector.zero(DOUBLES), norm1 = DoubleVector.zero(DOUBLES), norm2 = DoubleVector.zero(DOUBLES);
+        int i = 0, bound = DOUBLES.loopBound(length);
+
+        for (; i < bound; i += DOUBLES.length())
+        {
+            DoubleVector e1 = DoubleVector.fromArray(DOUBLES, v1, i), e2 = DoubleVector.fromArray(DOUBLES, v2, i);
+            dot = e1.fma(e2, dot);
+            norm1 = e1.fma(e1, norm1);
+            norm2 = e2.fma(e2, norm2);
+        }
+
+        double dotSum = dot.reduceLanes(VectorOperators.ADD), norm1Sum = norm1.reduceLanes(VectorOperators.ADD),
+                norm2Sum = norm2.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+        {
+            dotSum += v1[i] * v2[i];
+            norm1Sum += v1[i] * v1[i];
+            norm2Sum += v2[i] * v2[i];
+        }
+
+        return SimilarityKernels.cosine(dotSum, norm1Sum, norm2Sum);
+    }
+
+    @Override
+    public double weightedEuclidean(double[] v1, double[] v2, double[] weights, int length)
+    {
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        int i = 0, bound = DOUBLES.loopBound(length);
+
+        for (; i < bound; i += DOUBLES.length())
+        {
+            DoubleVector difference = DoubleVector.fromArray(DOUBLES, v1, i).sub(DoubleVector.fromArray(DOUBLES, v2, i));
+            sum = difference.mul(difference).fma(DoubleVector.fromArray(DOUBLES, weights, i), sum);
+        }
+
+        double total = sum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+        {
+            double difference = v1[i] - v2[i];
+            total += difference * difference * weights[i];
+        }
+
+        return Math.sqrt(total);
+    }
+
+    @Override
+    public void cosineBatch(float[] query, int queryOffset, float[] block, int blockOffset, int count, int dimension, double[] similarities)
+    {
+        double queryNorm = dot(query, queryOffset, query, queryOffset, dimension);
+        int bound = FLOATS.loopBound(dimension);
+
+        for (int vector = 0, offset = blockOffset; vector < count; vector++, offset += dimension)
+        {
+            FloatVector dot = FloatVector.zero(FLOATS), norm = FloatVector.zero(FLOATS);
+            int i = 0;
+
+            for (; i < bound; i += FLOATS.length())
+            {
+                FloatVector q = FloatVector.fromArray(FLOATS, query, queryOffset + i), e = FloatVector.fromArray(FLOATS, block, offset + i);
+                dot = q.fma(e, dot);
+                norm = e.fma(e, norm);
+            }
+
+            double dotSum = dot.reduceLanes(VectorOperators.ADD), normSum = norm.reduceLanes(VectorOperators.ADD);
+
+            for (; i < dimension; i++)
+            {
+                float e = block[offset + i];
+                dotSum += query[queryOffset + i] * e;
+                normSum += e * e;
+            }
+
+            similarities[vector] = SimilarityKernels.cosine(dotSum, queryNorm, normSum);
+        }
+    }
+}
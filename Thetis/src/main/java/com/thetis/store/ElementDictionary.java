@@ -0,0 +1,110 @@
+package com.thetis.store;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary interning elements such as entity types and predicates as dense integer IDs
+ * Each ID has a weight, which is -1 when the element has no weight
+ */
+public class ElementDictionary implements Serializable
+{
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> elements = new ArrayList<>();
+    private double[] weights = new double[0];
+
+    /**
+     * @return ID of the element, which is allocated if the element has not been interned before
+     */
+    public synchronized int intern(String element)
+    {
+        Integer id = this.ids.get(element);
+
+        if (id != null)
+            return id;
+
+        id = this.elements.size();
+        this.ids.put(element, id);
+        this.elements.add(element);
+
+        if (id == this.weights.length)
+        {
+            int oldLength = this.weights.length;
+            this.weights = Arrays.copyOf(this.weights, Math.max(16, oldLength * 2));
+            Arrays.fill(this.weights, oldLength, this.weights.length, -1);
+        }
+
+        return id;
+    }
+
+    /**
+     * Interns a collection of elements
+     * @return Sorted IDs of the elements without duplicates
+     */
+    public int[] intern(Iterable<String> elements)
+    {
+        int[] ids = new int[8];
+        int count = 0;
+
+        for (String element : elements)
+        {
+            if (count == ids.length)
+                ids = Arrays.copyOf(ids, count * 2);
+
+            ids[count++] = intern(element);
+        }
+
+        Arrays.sort(ids, 0, count);
+        int unique = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            if (unique == 0 || ids[i] != ids[unique - 1])
+                ids[unique++] = ids[i];
+        }
+
+        return Arrays.copyOf(ids, unique);
+    }
+
+    /**
+     * @return ID of the element or -1 if the element has not been interned
+     */
+    public synchronized int lookup(String element)
+    {
+        Integer id = this.ids.get(element);
+        return id != null ? id : -1;
+    }
+
+    public synchronized String element(int id)
+    {
+        return this.elements.get(id);
+    }
+
+    public synchronized void setWeight(int id, double weight)
+    {
+        this.weights[id] = weight;
+    }
+
+    public synchronized double weight(int id)
+    {
+        return this.weights[id];
+    }
+
+    /**
+     * Weights indexed by element ID
+     * The array is shared with the dictionary and may be longer than the number of elements, in which case the remaining weights are -1
+     */
+    public synchronized double[] weights()
+    {
+        return this.weights;
+    }
+
+    public synchronized int size()
+    {
+        return this.elements.size();
+    }
+}
@@ -0,0 +1,119 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+import com.thetis.structures.graph.Entity;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Inverted index from interned entity types or predicates to the tables containing an entity with that type or predicate
+ * Tables are identified by their position in the table dictionary of the EntityTableLink the index is built from
+ */
+public class ElementTableLink
+{
+    private static final int[] NO_TABLES = new int[0];
+
+    private final int[][] postings;
+    private final boolean types;
+
+    private ElementTableLink(int[][] postings, boolean types)
+    {
+        this.postings = postings;
+        this.types = types;
+    }
+
+    /**
+     * Builds the index from the entity postings
+     * @param entityTable Entity table with interned types and predicates
+     * @param entityTableLink Index from entities to the tables they are found in
+     * @param types Whether to index entity types or entity predicates
+     */
+    public static ElementTableLink build(EntityTable entityTable, EntityTableLink entityTableLink, boolean types)
+    {
+        ElementDictionary dictionary = types ? entityTable.getTypeDictionary() : entityTable.getPredicateDictionary();
+        int[][] postings = new int[dictionary.size()][];
+        int[] sizes = new int[dictionary.size()];
+        Iterator<Id> ids = entityTable.allIds();
+
+        while (ids.hasNext())
+        {
+            Id id = ids.next();
+            Entity entity = entityTable.find(id);
+            int[] elements = types ? entity.getTypeIds() : entity.getPredicateIds(), tables = entityTableLink.tablePositions(id);
+
+            if (elements == null || tables.length == 0)
+                continue;
+
+            for (int element : elements)
+            {
+                append(postings, sizes, element, tables);
+            }
+        }
+
+        for (int element = 0; element < postings.length; element++)
+        {
+            postings[element] = postings[element] == null ? NO_TABLES : Arrays.copyOf(postings[element], compact(postings[element], sizes[element]));
+        }
+
+        return new ElementTableLink(postings, types);
+    }
+
+    private static void append(int[][] postings, int[] sizes, int element, int[] tables)
+    {
+        int[] posting = postings[element];
+        int size = sizes[element];
+
+        if (posting == null)
+            posting = new int[Math.max(8, tables.length)];
+
+        else if (size + tables.length > posting.length)
+        {
+            // Popular elements are found in the same tables many times, so duplicates are removed before the posting grows
+            size = compact(posting, size);
+
+            if (size + tables.length > posting.length)
+                posting = Arrays.copyOf(posting, Math.max(posting.length * 2, size + tables.length));
+        }
+
+        System.arraycopy(tables, 0, posting, size, tables.length);
+        postings[element] = posting;
+        sizes[element] = size + tables.length;
+    }
+
+    // Sorts the first size positions and removes duplicates, returning the number of unique positions
+    private static int compact(int[] posting, int size)
+    {
+        Arrays.sort(posting, 0, size);
+        int unique = 0;
+
+        for (int i = 0; i < size; i++)
+        {
+            if (unique == 0 || posting[i] != posting[unique - 1])
+                posting[unique++] = posting[i];
+        }
+
+        return unique;
+    }
+
+    /**
+     * @return Sorted positions of the tables containing an entity with the given type or predicate
+     */
+    public int[] tables(int element)
+    {
+        return element >= 0 && element < this.postings.length ? this.postings[element] : NO_TABLES;
+    }
+
+    /**
+     * @return True if the index is of entity types and false if it is of entity predicates
+     */
+    public boolean isTypes()
+    {
+        return this.types;
+    }
+
+    public int size()
+    {
+        return this.postings.length;
+    }
+}
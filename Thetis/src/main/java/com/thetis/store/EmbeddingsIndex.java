@@ -1,52 +1,173 @@
 package com.thetis.store;
 
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
 import com.thetis.structures.Id;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Index of entity embeddings
+ * Embeddings are stored in a dense matrix of primitive floats, so looked up embeddings are single precision
+ * The index may additionally hold embeddings quantized to 8-bit integers, or only the quantized embeddings to save memory
+ */
 public class EmbeddingsIndex<C> implements ClusteredIndex<C, Id, List<Double>>, Serializable
 {
-    private final Map<Id, List<Double>> embeddingsMap = new ConcurrentHashMap<>();
+    private final EmbeddingsMatrix matrix;
+    private QuantizedEmbeddings quantized = null;
+    private boolean quantizedOnly = false;
     private Map<C, Map<Id, List<Double>>> clusteredEmbeddings = new ConcurrentHashMap<>();
 
+    public EmbeddingsIndex()
+    {
+        this(new EmbeddingsMatrix());
+    }
+
+    private EmbeddingsIndex(EmbeddingsMatrix matrix)
+    {
+        this.matrix = matrix;
+    }
+
+    /**
+     * Index of quantized embeddings only, where looked up embeddings are dequantized
+     * @param quantized Quantized embeddings
+     * @return Embeddings index without exact embeddings
+     */
+    public static <C> EmbeddingsIndex<C> quantizedOnly(QuantizedEmbeddings quantized)
+    {
+        EmbeddingsIndex<C> index = new EmbeddingsIndex<>();
+        index.quantized = quantized;
+        index.quantizedOnly = true;
+        return index;
+    }
+
     @Override
     public void insert(Id key, List<Double> value)
     {
-        this.embeddingsMap.put(key, value);
+        if (this.quantizedOnly)
+        {
+            throw new UnsupportedOperationException("Cannot insert into an index of quantized embeddings");
+        }
+
+        this.matrix.insert(key, value);
     }
 
     @Override
     public boolean remove(Id key)
     {
-        return this.embeddingsMap.remove(key) != null;
+        return this.matrix.remove(key);
     }
 
+    /**
+     * Boxed copy of an embedding
+     * Use getMatrix() for primitive access
+     * @param key Entity ID
+     * @return Embedding or null if absent
+     */
     @Override
     public List<Double> find(Id key)
     {
-        return this.embeddingsMap.get(key);
+        float[] vector = findPrimitive(key);
+
+        if (vector == null)
+        {
+            return null;
+        }
+
+        List<Double> embedding = new ArrayList<>(vector.length);
+
+        for (float e : vector)
+        {
+            embedding.add((double) e);
+        }
+
+        return embedding;
+    }
+
+    /**
+     * Primitive copy of an embedding
+     * @param key Entity ID
+     * @return Embedding or null if absent
+     */
+    public float[] findPrimitive(Id key)
+    {
+        return this.quantizedOnly ? this.quantized.vector(key) : this.matrix.vector(key);
     }
 
     @Override
     public boolean contains(Id key)
     {
-        return this.embeddingsMap.containsKey(key);
+        return this.quantizedOnly ? this.quantized.contains(key) : this.matrix.contains(key);
     }
 
     @Override
     public int size()
     {
-        return this.embeddingsMap.size();
+        return this.quantizedOnly ? this.quantized.size() : this.matrix.size();
     }
 
     @Override
     public void clear()
     {
-        this.embeddingsMap.clear();
+        this.matrix.clear();
+        this.quantized = null;
+        this.quantizedOnly = false;
+    }
+
+    /**
+     * Dense matrix holding the embeddings
+     * @return Matrix of embeddings with pre-computed norms, which is empty if the index only holds quantized embeddings
+     */
+    public EmbeddingsMatrix getMatrix()
+    {
+        return this.matrix;
+    }
+
+    /**
+     * @return True if the exact float embeddings are held in the matrix
+     */
+    public boolean hasExactEmbeddings()
+    {
+        return !this.quantizedOnly;
+    }
+
+    /**
+     * @return Quantized embeddings or null if the index holds none
+     */
+    public QuantizedEmbeddings getQuantized()
+    {
+        return this.quantized;
+    }
+
+    public void setQuantized(QuantizedEmbeddings quantized)
+    {
+        this.quantized = quantized;
+    }
+
+    /**
+     * Writes the embeddings matrix to a segment
+     * Clusters are not persisted
+     * @param writer Writer of segment of kind EMBEDDINGS
+     */
+    public void writeSegment(SegmentWriter writer) throws IOException
+    {
+        this.matrix.writeSegment(writer);
+    }
+
+    /**
+     * Reads an embeddings index from a segment
+     * @param reader Reader of segment of kind EMBEDDINGS
+     * @return Embeddings index without clusters
+     */
+    public static <C> EmbeddingsIndex<C> readSegment(SegmentReader reader) throws IOException
+    {
+        return new EmbeddingsIndex<>(EmbeddingsMatrix.readSegment(reader));
     }
 
     @Override
@@ -0,0 +1,298 @@
+package com.thetis.store;
+
+import com.thetis.similarity.SimilarityKernels;
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
+import com.thetis.structures.Id;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dense matrix of entity embeddings indexed by entity ID
+ * Vectors are stored as contiguous rows of primitive floats in fixed-size pages together with their L2 norms
+ * Removed rows are not reclaimed
+ */
+public class EmbeddingsMatrix implements Serializable
+{
+    private static final int PAGE_ROWS = 4096;
+    private static final int NO_ROW = -1;
+
+    private int dimension = -1, rows = 0, size = 0;
+    private float[][] pages = new float[0][];
+    private float[] norms = new float[0];
+    private int[] idToRow = new int[0];
+
+    /**
+     * Inserts or overwrites the embedding of an entity
+     * The first inserted vector determines the dimension of the matrix
+     */
+    public synchronized void insert(Id id, float[] vector)
+    {
+        if (this.dimension == -1)
+        {
+            this.dimension = vector.length;
+        }
+
+        else if (vector.length != this.dimension)
+        {
+            throw new IllegalArgumentException("Embedding of dimension " + vector.length + " does not match matrix dimension " + this.dimension);
+        }
+
+        int row = row(id);
+
+        if (row == NO_ROW)
+        {
+            row = allocateRow(id);
+            this.size++;
+        }
+
+        float[] page = this.pages[row / PAGE_ROWS];
+        int offset = (row % PAGE_ROWS) * this.dimension;
+        double norm = 0.0;
+
+        for (int i = 0; i < this.dimension; i++)
+        {
+            page[offset + i] = vector[i];
+            norm += vector[i] * vector[i];
+        }
+
+        this.norms[row] = (float) Math.sqrt(norm);
+    }
+
+    public void insert(Id id, List<Double> vector)
+    {
+        insert(id, toPrimitive(vector));
+    }
+
+    private int allocateRow(Id id)
+    {
+        int row = this.rows++;
+
+        if (row / PAGE_ROWS >= this.pages.length)
+        {
+            this.pages = Arrays.copyOf(this.pages, this.pages.length + 1);
+            this.pages[this.pages.length - 1] = new float[PAGE_ROWS * this.dimension];
+        }
+
+        if (row >= this.norms.length)
+        {
+            this.norms = Arrays.copyOf(this.norms, Math.max(PAGE_ROWS, this.norms.length * 2));
+        }
+
+        if (id.getId() >= this.idToRow.length)
+        {
+            int oldLength = this.idToRow.length;
+            this.idToRow = Arrays.copyOf(this.idToRow, Math.max(id.getId() + 1, oldLength * 2));
+            Arrays.fill(this.idToRow, oldLength, this.idToRow.length, NO_ROW);
+        }
+
+        this.idToRow[id.getId()] = row;
+        return row;
+    }
+
+    public synchronized boolean remove(Id id)
+    {
+        if (row(id) == NO_ROW)
+        {
+            return false;
+        }
+
+        this.idToRow[id.getId()] = NO_ROW;
+        this.size--;
+        return true;
+    }
+
+    public boolean contains(Id id)
+    {
+        return row(id) != NO_ROW;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public synchronized void clear()
+    {
+        this.dimension = -1;
+        this.rows = 0;
+        this.size = 0;
+        this.pages = new float[0][];
+        this.norms = new float[0];
+        this.idToRow = new int[0];
+    }
+
+    /**
+     * @return Dimension of stored vectors or -1 if no vector has been inserted
+     */
+    public int dimension()
+    {
+        return this.dimension;
+    }
+
+    /**
+     * @return Number of allocated rows including removed rows
+     */
+    int rows()
+    {
+        return this.rows;
+    }
+
+    /**
+     * @return Copy of the mapping from entity ID to row
+     */
+    int[] idToRow()
+    {
+        return Arrays.copyOf(this.idToRow, this.idToRow.length);
+    }
+
+    /**
+     * Row of an entity in the matrix
+     * @return Row index or -1 if the entity has no embedding
+     */
+    public int row(Id id)
+    {
+        int i = id.getId();
+        return i >= 0 && i < this.idToRow.length ? this.idToRow[i] : NO_ROW;
+    }
+
+    /**
+     * Page containing a row
+     * Elements of the row are found from pageOffset(row) to pageOffset(row) + dimension()
+     */
+    public float[] page(int row)
+    {
+        return this.pages[row / PAGE_ROWS];
+    }
+
+    public int pageOffset(int row)
+    {
+        return (row % PAGE_ROWS) * this.dimension;
+    }
+
+    public float norm(int row)
+    {
+        return this.norms[row];
+    }
+
+    /**
+     * Copy of the embedding of an entity
+     * @return Embedding vector or null if the entity has no embedding
+     */
+    public float[] vector(Id id)
+    {
+        int row = row(id);
+
+        if (row == NO_ROW)
+        {
+            return null;
+        }
+
+        int offset = pageOffset(row);
+        return Arrays.copyOfRange(page(row), offset, offset + this.dimension);
+    }
+
+    /**
+     * Cosine similarity between the embeddings of two entities using the pre-computed norms
+     * @return Cosine similarity within [-1, 1], or 0 if an entity has no embedding or a zero vector
+     */
+    public double cosine(Id id1, Id id2)
+    {
+        int row1 = row(id1), row2 = row(id2);
+
+        if (row1 == NO_ROW || row2 == NO_ROW)
+        {
+            return 0.0;
+        }
+
+        double normProduct = (double) this.norms[row1] * this.norms[row2];
+
+        if (normProduct == 0)
+        {
+            return 0.0;
+        }
+
+        double dot = SimilarityKernels.get().dot(page(row1), pageOffset(row1), page(row2), pageOffset(row2), this.dimension);
+        double cosine = dot / normProduct;
+        return cosine <= -1.0 ? -1.0 : Math.min(cosine, 1.0);
+    }
+
+    /**
+     * Dot product between the embedding of an entity and a given vector
+     * @return Dot product or 0 if the entity has no embedding
+     */
+    public double dot(Id id, float[] vector)
+    {
+        int row = row(id);
+
+        if (row == NO_ROW)
+        {
+            return 0.0;
+        }
+
+        return SimilarityKernels.get().dot(page(row), pageOffset(row), vector, 0, this.dimension);
+    }
+
+    /**
+     * Writes the matrix to a segment as the ID to row mapping, the row norms and the rows of the matrix
+     * @param writer Writer of segment of kind EMBEDDINGS
+     */
+    public synchronized void writeSegment(SegmentWriter writer) throws IOException
+    {
+        writer.writeInt(this.dimension);
+        writer.writeInt(this.rows);
+        writer.writeInt(this.size);
+        writer.writeInt(this.idToRow.length);
+        writer.writeInts(this.idToRow, 0, this.idToRow.length);
+        writer.writeFloats(this.norms, 0, this.rows);
+
+        for (int page = 0; page < this.pages.length; page++)
+        {
+            int pageRows = Math.min(PAGE_ROWS, this.rows - page * PAGE_ROWS);
+            writer.writeFloats(this.pages[page], 0, pageRows * this.dimension);
+        }
+    }
+
+    /**
+     * Reads a matrix from a segment using bulk reads of the mapped segment file
+     * @param reader Reader of segment of kind EMBEDDINGS
+     * @return Embeddings matrix
+     */
+    public static EmbeddingsMatrix readSegment(SegmentReader reader) throws IOException
+    {
+        EmbeddingsMatrix matrix = new EmbeddingsMatrix();
+        matrix.dimension = reader.readInt();
+        matrix.rows = reader.readInt();
+        matrix.size = reader.readInt();
+        matrix.idToRow = new int[reader.readInt()];
+        reader.readInts(matrix.idToRow, 0, matrix.idToRow.length);
+        matrix.norms = new float[matrix.rows];
+        reader.readFloats(matrix.norms, 0, matrix.rows);
+        matrix.pages = new float[(matrix.rows + PAGE_ROWS - 1) / PAGE_ROWS][];
+
+        for (int page = 0; page < matrix.pages.length; page++)
+        {
+            int pageRows = Math.min(PAGE_ROWS, matrix.rows - page * PAGE_ROWS);
+            matrix.pages[page] = new float[PAGE_ROWS * matrix.dimension];
+            reader.readFloats(matrix.pages[page], 0, pageRows * matrix.dimension);
+        }
+
+        return matrix;
+    }
+
+    public static float[] toPrimitive(List<Double> vector)
+    {
+        float[] primitive = new float[vector.size()];
+        int i = 0;
+
+        for (double e : vector)
+        {
+            primitive[i++] = (float) e;
+        }
+
+        return primitive;
+    }
+}
@@ -1,8 +1,11 @@
 package com.thetis.store;
 
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
 import com.thetis.structures.Id;
 import com.thetis.structures.IdDictionary;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 
@@ -159,4 +162,84 @@ public class EntityLinking implements Linker<String, String>, Serializable
     {
         return this.kgEntityPrefix;
     }
+
+    /**
+     * Writes the linker to a segment
+     * Dictionaries are written as sorted string blocks followed by the IDs of the strings
+     * @param writer Writer of segment of kind ENTITY_LINKING
+     */
+    public void writeSegment(SegmentWriter writer) throws IOException
+    {
+        writer.writeString(this.inputPrefix);
+        writer.writeString(this.kgEntityPrefix);
+        writeDictionary(writer, this.t1Ids);
+        writeDictionary(writer, this.t2Ids);
+        writeMapping(writer, this.inputToKGEntity);
+        writeMapping(writer, this.kgEntityToInput);
+    }
+
+    private static void writeDictionary(SegmentWriter writer, IdDictionary<String> dictionary) throws IOException
+    {
+        List<String> keys = Collections.list(dictionary.keys());
+        Collections.sort(keys);
+        writer.writeStrings(keys);
+
+        for (String key : keys)
+        {
+            writer.writeInt(dictionary.get(key).getId());
+        }
+    }
+
+    private static void writeMapping(SegmentWriter writer, Map<Id, Id> mapping) throws IOException
+    {
+        writer.writeInt(mapping.size());
+
+        for (Map.Entry<Id, Id> entry : mapping.entrySet())
+        {
+            writer.writeInt(entry.getKey().getId());
+            writer.writeInt(entry.getValue().getId());
+        }
+    }
+
+    /**
+     * Reads a linker from a segment
+     * @param reader Reader of segment of kind ENTITY_LINKING
+     * @return Entity linker
+     */
+    public static EntityLinking readSegment(SegmentReader reader) throws IOException
+    {
+        String inputPrefix = reader.readString(), kgEntityPrefix = reader.readString();
+        EntityLinking linker = new EntityLinking(readDictionary(reader), readDictionary(reader), inputPrefix, kgEntityPrefix);
+        readMapping(reader, linker.inputToKGEntity);
+        readMapping(reader, linker.kgEntityToInput);
+
+        return linker;
+    }
+
+    private static IdDictionary<String> readDictionary(SegmentReader reader) throws IOException
+    {
+        List<String> keys = reader.readStrings();
+        int[] ids = new int[keys.size()];
+        reader.readInts(ids, 0, ids.length);
+
+        IdDictionary<String> dictionary = new IdDictionary<>(false, Math.max(16, keys.size() * 4 / 3 + 1));
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            dictionary.put(keys.get(i), Id.copy(ids[i]));
+        }
+
+        return dictionary;
+    }
+
+    private static void readMapping(SegmentReader reader, Map<Id, Id> mapping) throws IOException
+    {
+        int size = reader.readInt();
+
+        for (int i = 0; i < size; i++)
+        {
+            Id key = Id.copy(reader.readInt());
+            mapping.put(key, Id.copy(reader.readInt()));
+        }
+    }
 }
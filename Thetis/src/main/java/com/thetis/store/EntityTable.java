@@ -1,25 +1,75 @@
 package com.thetis.store;
 
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
 import com.thetis.structures.graph.Entity;
 import com.thetis.structures.Id;
 import com.thetis.structures.graph.Type;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 
 /**
  * Indexing of entities containing types
+ * Types and predicates of inserted entities are interned, so entities can be compared by their sorted type and predicate IDs
  */
 public class EntityTable implements Index<Id, Entity>, Serializable
 {
     private Map<Id, Entity> idx = new HashMap<>();
+    private ElementDictionary types = new ElementDictionary(), predicates = new ElementDictionary();
 
     @Override
     public void insert(Id key, Entity value)
     {
+        intern(value);
         this.idx.put(key, value);
     }
 
+    private void intern(Entity entity)
+    {
+        List<String> typeNames = new ArrayList<>(entity.getTypes().size());
+
+        for (Type type : entity.getTypes())
+        {
+            typeNames.add(type.getType());
+        }
+
+        entity.setTypeIds(this.types.intern(typeNames));
+        entity.setPredicateIds(this.predicates.intern(entity.getPredicates()));
+
+        for (Type type : entity.getTypes())
+        {
+            if (type.getIdf() >= 0)
+                this.types.setWeight(this.types.lookup(type.getType()), type.getIdf());
+        }
+    }
+
+    /**
+     * Interns the types and predicates of all entities again
+     * This must be called when type IDF weights have been assigned after the entities were inserted
+     */
+    public void intern()
+    {
+        for (Entity entity : this.idx.values())
+        {
+            intern(entity);
+        }
+    }
+
+    /**
+     * Dictionary of entity types weighted by their IDF
+     */
+    public ElementDictionary getTypeDictionary()
+    {
+        return this.types;
+    }
+
+    public ElementDictionary getPredicateDictionary()
+    {
+        return this.predicates;
+    }
+
     @Override
     public boolean remove(Id key)
     {
@@ -78,4 +128,107 @@ public class EntityTable implements Index<Id, Entity>, Serializable
     {
         return this.idx.keySet().iterator();
     }
+
+    /**
+     * Writes the type and predicate dictionaries followed by each entity with the dictionary IDs of its types and predicates
+     * Type IDF weights are stored in the type dictionary
+     * @param writer Writer of segment of kind ENTITY_TABLE
+     */
+    public void writeSegment(SegmentWriter writer) throws IOException
+    {
+        writeDictionary(writer, this.types);
+        writeDictionary(writer, this.predicates);
+        writer.writeInt(this.idx.size());
+
+        for (Map.Entry<Id, Entity> entry : this.idx.entrySet())
+        {
+            Entity entity = entry.getValue();
+            writer.writeInt(entry.getKey().getId());
+            writer.writeString(entity.getUri());
+            writer.writeDouble(entity.getIDF());
+            writer.writeVarInt(entity.getTypes().size());
+
+            for (Type type : entity.getTypes())
+            {
+                writer.writeVarInt(this.types.lookup(type.getType()));
+            }
+
+            writer.writeVarInt(entity.getPredicates().size());
+
+            for (String predicate : entity.getPredicates())
+            {
+                writer.writeVarInt(this.predicates.lookup(predicate));
+            }
+        }
+    }
+
+    private static void writeDictionary(SegmentWriter writer, ElementDictionary dictionary) throws IOException
+    {
+        List<String> elements = new ArrayList<>(dictionary.size());
+
+        for (int id = 0; id < dictionary.size(); id++)
+        {
+            elements.add(dictionary.element(id));
+        }
+
+        writer.writeStrings(elements);
+
+        for (int id = 0; id < elements.size(); id++)
+        {
+            writer.writeDouble(dictionary.weight(id));
+        }
+    }
+
+    /**
+     * Reads an entity table from a segment
+     * The dictionaries are read first, so entities keep the type and predicate IDs they were written with
+     * @param reader Reader of segment of kind ENTITY_TABLE
+     */
+    public static EntityTable readSegment(SegmentReader reader) throws IOException
+    {
+        EntityTable table = new EntityTable();
+        List<String> typeNames = readDictionary(reader, table.types), predicateNames = readDictionary(reader, table.predicates);
+        int size = reader.readInt();
+        table.idx = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+
+        for (int i = 0; i < size; i++)
+        {
+            Id id = Id.copy(reader.readInt());
+            String uri = reader.readString();
+            double idf = reader.readDouble();
+            int typeCount = reader.readVarInt();
+            List<Type> types = new ArrayList<>(typeCount);
+
+            for (int type = 0; type < typeCount; type++)
+            {
+                int typeId = reader.readVarInt();
+                types.add(new Type(typeNames.get(typeId), table.types.weight(typeId)));
+            }
+
+            int predicateCount = reader.readVarInt();
+            List<String> predicates = new ArrayList<>(predicateCount);
+
+            for (int predicate = 0; predicate < predicateCount; predicate++)
+            {
+                predicates.add(predicateNames.get(reader.readVarInt()));
+            }
+
+            table.insert(id, new Entity(uri, idf, types, predicates));
+        }
+
+        return table;
+    }
+
+    private static List<String> readDictionary(SegmentReader reader, ElementDictionary dictionary) throws IOException
+    {
+        List<String> elements = reader.readStrings();
+
+        for (int id = 0; id < elements.size(); id++)
+        {
+            dictionary.intern(elements.get(id));
+            dictionary.setWeight(id, reader.readDouble());
+        }
+
+        return elements;
+    }
 }
@@ -1,5 +1,7 @@
 package com.thetis.store;
 
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
 import com.thetis.structures.Id;
 import com.thetis.structures.Pair;
 
@@ -8,18 +10,94 @@ import java.util.*;
 
 /**
  * Inverted indexing of entities' link to table names
- * TODO: We can reduce space by storing a separate structure of table names
- *       The index should point by index to the table name in that separate structure along its location within
- *       This way, we remove duplicating table names
+ * Table names are stored once in a dictionary and postings refer to tables by their integer dictionary ID
+ * Locations of an entity within a table are stored as packed (row, column) integer pairs
+ * A reverse index from tables to the entities linking to them is maintained alongside the postings
  */
 public class EntityTableLink implements Index<Id, List<String>>, Externalizable
 {
-    private Map<Id, Map<String, List<Pair<Integer, Integer>>>> idx;   // Indexing from entity to table file names of locations where the entity is found
+    private static final int[] NO_LOCATIONS = new int[0];
+
+    /**
+     * Posting of an entity
+     * Table IDs are kept sorted, so a table is found by binary search
+     * Element i of locations holds the packed (row, column) pairs of the entity in table tables[i] in its first locationCounts[i] elements
+     */
+    private static final class Posting
+    {
+        private int[] tables = new int[2];
+        private int[][] locations = new int[2][];
+        private int[] locationCounts = new int[2];
+        private int size = 0;
+
+        private int indexOf(int table)
+        {
+            // Table IDs are allocated in loading order, so locations are mostly added to the last table
+            if (this.size > 0 && this.tables[this.size - 1] == table)
+                return this.size - 1;
+
+            int i = Arrays.binarySearch(this.tables, 0, this.size, table);
+            return i >= 0 ? i : -1;
+        }
+
+        private int add(int table, int[] locations)
+        {
+            if (this.size == this.tables.length)
+            {
+                this.tables = Arrays.copyOf(this.tables, this.size * 2);
+                this.locations = Arrays.copyOf(this.locations, this.size * 2);
+                this.locationCounts = Arrays.copyOf(this.locationCounts, this.size * 2);
+            }
+
+            int i = this.size;
+
+            // Tables loaded concurrently may arrive slightly out of order, which only shifts the last few tables
+            if (i > 0 && this.tables[i - 1] > table)
+            {
+                i = -Arrays.binarySearch(this.tables, 0, this.size, table) - 1;
+                System.arraycopy(this.tables, i, this.tables, i + 1, this.size - i);
+                System.arraycopy(this.locations, i, this.locations, i + 1, this.size - i);
+                System.arraycopy(this.locationCounts, i, this.locationCounts, i + 1, this.size - i);
+            }
+
+            this.tables[i] = table;
+            this.locations[i] = locations;
+            this.locationCounts[i] = locations.length;
+            this.size++;
+            return i;
+        }
+
+        private void addLocations(int i, List<Pair<Integer, Integer>> locations)
+        {
+            int offset = this.locationCounts[i], required = offset + locations.size() * 2;
+
+            if (required > this.locations[i].length)
+                this.locations[i] = Arrays.copyOf(this.locations[i], Math.max(required, this.locations[i].length * 2));
+
+            int[] packed = this.locations[i];
+
+            for (Pair<Integer, Integer> location : locations)
+            {
+                packed[offset++] = location.getFirst();
+                packed[offset++] = location.getSecond();
+            }
+
+            this.locationCounts[i] = offset;
+        }
+    }
+
+    private Map<Id, Posting> idx;   // Indexing from entity to tables and locations where the entity is found
+    private List<String> tableNames;
+    private Map<String, Integer> tableIds;
+    private List<List<Id>> tableEntities;   // Reverse index from table ID to entities
     private String dir = null;
 
     public EntityTableLink()
     {
         this.idx = new HashMap<>();
+        this.tableNames = new ArrayList<>();
+        this.tableIds = new HashMap<>();
+        this.tableEntities = new ArrayList<>();
     }
 
     public void setDirectory(String dir)
@@ -32,6 +110,36 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
         return this.dir;
     }
 
+    private int tableId(String fileName)
+    {
+        Integer id = this.tableIds.get(fileName);
+
+        if (id != null)
+            return id;
+
+        id = this.tableNames.size();
+        this.tableNames.add(fileName);
+        this.tableEntities.add(new ArrayList<>());
+        this.tableIds.put(fileName, id);
+        return id;
+    }
+
+    private Posting posting(Id key)
+    {
+        Posting posting = this.idx.get(key);
+
+        if (posting == null)
+            this.idx.put(key, (posting = new Posting()));
+
+        return posting;
+    }
+
+    private int addTable(Id key, Posting posting, int table, int[] locations)
+    {
+        this.tableEntities.get(table).add(key);
+        return posting.add(table, locations);
+    }
+
     /**
      * Insertion of entity mention in table
      * @param key Entity URI ID
@@ -40,20 +148,31 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     @Override
     public void insert(Id key, List<String> fileNames)
     {
-        if (!this.idx.containsKey(key))
-            this.idx.put(key, new HashMap<>());
+        Posting posting = posting(key);
 
         for (String fileName : fileNames)
         {
-            if (!this.idx.get(key).containsKey(fileName))
-                this.idx.get(key).put(fileName, new ArrayList<>());
+            int table = tableId(fileName);
+
+            if (posting.indexOf(table) == -1)
+                addTable(key, posting, table, NO_LOCATIONS);
         }
     }
 
     @Override
     public boolean remove(Id key)
     {
-        return this.idx.remove(key) != null;
+        Posting posting = this.idx.remove(key);
+
+        if (posting == null)
+            return false;
+
+        for (int i = 0; i < posting.size; i++)
+        {
+            this.tableEntities.get(posting.tables[i]).remove(key);
+        }
+
+        return true;
     }
 
     /**
@@ -66,12 +185,52 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     @Override
     public List<String> find(Id key)
     {
-        Map<String, List<Pair<Integer, Integer>>> tablesLocations = this.idx.get(key);
+        Posting posting = this.idx.get(key);
 
-        if (tablesLocations == null)
+        if (posting == null)
             return new ArrayList<>();
 
-        return new ArrayList<>(tablesLocations.keySet());
+        List<String> fileNames = new ArrayList<>(posting.size);
+
+        for (int i = 0; i < posting.size; i++)
+        {
+            fileNames.add(this.tableNames.get(posting.tables[i]));
+        }
+
+        return fileNames;
+    }
+
+    /**
+     * Positions of the tables containing an entity in the table dictionary
+     * Order of positions is not guaranteed
+     * An empty array is returned when ID does not exist
+     */
+    public int[] tablePositions(Id key)
+    {
+        Posting posting = this.idx.get(key);
+        return posting != null ? Arrays.copyOf(posting.tables, posting.size) : NO_LOCATIONS;
+    }
+
+    /**
+     * @return Position of a table in the table dictionary or -1 if the table is unknown
+     */
+    public int tablePosition(String fileName)
+    {
+        Integer position = this.tableIds.get(fileName);
+        return position != null ? position : -1;
+    }
+
+    public String tableName(int position)
+    {
+        return this.tableNames.get(position);
+    }
+
+    /**
+     * @return Number of tables in the table dictionary
+     */
+    public int tableCount()
+    {
+        return this.tableNames.size();
     }
 
     @Override
@@ -94,56 +253,69 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
      */
     public void addLocation(Id key, String fileName, List<Pair<Integer, Integer>> locations)
     {
-        if (this.idx.containsKey(key))
-        {
-            if (!this.idx.get(key).containsKey(fileName))
-                this.idx.get(key).put(fileName, new ArrayList<>(locations.size()));
+        Posting posting = posting(key);
+        int table = tableId(fileName), i = posting.indexOf(table);
 
-            locations.forEach(l -> this.idx.get(key).get(fileName).add(l));
-        }
+        if (i == -1)
+            i = addTable(key, posting, table, NO_LOCATIONS);
 
-        else
-        {
-            Map<String, List<Pair<Integer, Integer>>> fileNamesLocations = new HashMap<>();
-            List<Pair<Integer, Integer>> locationsCopy = new ArrayList<>(locations.size());
-            locationsCopy.addAll(locations);
-            fileNamesLocations.put(fileName, locationsCopy);
-            this.idx.put(key, fileNamesLocations);
-        }
+        posting.addLocations(i, locations);
     }
 
     /**
      * Gets all locations of entity in table file
+     * The returned list is a read-only view over the packed locations
      * @param key Entity ID
      * @param fileName Name of table file
-     * @return List of locations of the given entity in given table file
+     * @return List of locations of the given entity in given table file or null if the entity is not found in the table
      */
     public List<Pair<Integer, Integer>> getLocations(Id key, String fileName)
     {
-        if (!this.idx.containsKey(key))
+        Posting posting = this.idx.get(key);
+        Integer table = this.tableIds.get(fileName);
+
+        if (posting == null || table == null)
+            return null;
+
+        int i = posting.indexOf(table);
+
+        if (i == -1)
             return null;
 
-        return this.idx.get(key).get(fileName);
+        int[] packed = posting.locations[i];
+        int count = posting.locationCounts[i];
+
+        return new AbstractList<>()
+        {
+            @Override
+            public Pair<Integer, Integer> get(int index)
+            {
+                Objects.checkIndex(index * 2, count);
+                return new Pair<>(packed[index * 2], packed[index * 2 + 1]);
+            }
+
+            @Override
+            public int size()
+            {
+                return count / 2;
+            }
+        };
     }
 
     /**
      * Mapping from table file name to set of entities to which the table is linked
-     * This method can be slow
      * This is a substitution for the tableIDTOEntities map
      * @param fileName Table file name
      * @return Set of entities the table links to
      */
     public Set<Id> tableToEntities(String fileName)
     {
-        Set<Id> entities = new HashSet<>();
+        Integer table = this.tableIds.get(fileName);
 
-        for (Map.Entry<Id, Map<String, List<Pair<Integer, Integer>>>> entry : this.idx.entrySet())
-        {
-            if (this.idx.get(entry.getKey()).containsKey(fileName))
-                entities.add(entry.getKey());
-        }
+        if (table == null)
+            return new HashSet<>();
 
-        return entities;
+        return new HashSet<>(this.tableEntities.get(table));
     }
 
     /**
@@ -153,6 +325,114 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     public void clear()
     {
         this.idx.clear();
+        this.tableNames.clear();
+        this.tableIds.clear();
+        this.tableEntities.clear();
+    }
+
+    /**
+     * Writes the index to a segment
+     * Table names are written once as a sorted string block, and postings refer to tables by their position in the block
+     * Each posting is an entity ID followed by varint-encoded table positions in increasing order as deltas and
+     * per table the varint-encoded number of locations and locations
+     * @param writer Writer of segment of kind ENTITY_TABLE_LINK
+     */
+    public void writeSegment(SegmentWriter writer) throws IOException
+    {
+        Integer[] order = new Integer[this.tableNames.size()];
+        int[] positions = new int[order.length];
+
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, Comparator.comparing(this.tableNames::get));
+
+        List<String> sortedNames = new ArrayList<>(order.length);
+
+        for (int i = 0; i < order.length; i++)
+        {
+            positions[order[i]] = i;
+            sortedNames.add(this.tableNames.get(order[i]));
+        }
+
+        writer.writeString(this.dir);
+        writer.writeStrings(sortedNames);
+        writer.writeInt(this.idx.size());
+
+        for (Map.Entry<Id, Posting> entry : this.idx.entrySet())
+        {
+            Posting posting = entry.getValue();
+            long[] sorted = new long[posting.size];    // Table position in the upper half and posting index in the lower half
+
+            for (int i = 0; i < posting.size; i++)
+            {
+                sorted[i] = ((long) positions[posting.tables[i]] << 32) | i;
+            }
+
+            Arrays.sort(sorted);
+            writer.writeInt(entry.getKey().getId());
+            writer.writeVarInt(posting.size);
+
+            int previous = 0;
+
+            for (long tableIndex : sorted)
+            {
+                int position = (int) (tableIndex >>> 32), count = posting.locationCounts[(int) tableIndex];
+                int[] locations = posting.locations[(int) tableIndex];
+                writer.writeVarInt(position - previous);
+                writer.writeVarInt(count / 2);
+
+                for (int l = 0; l < count; l++)
+                {
+                    writer.writeVarInt(locations[l]);
+                }
+
+                previous = position;
+            }
+        }
+    }
+
+    /**
+     * Reads the index from a segment
+     * @param reader Reader of segment of kind ENTITY_TABLE_LINK
+     * @return Entity to tables inverted index
+     */
+    public static EntityTableLink readSegment(SegmentReader reader) throws IOException
+    {
+        EntityTableLink link = new EntityTableLink();
+        link.dir = reader.readString();
+
+        for (String table : reader.readStrings())
+        {
+            link.tableId(table);
+        }
+
+        int entities = reader.readInt();
+        link.idx = new HashMap<>(Math.max(16, entities * 4 / 3 + 1));
+
+        for (int i = 0; i < entities; i++)
+        {
+            Id entity = Id.copy(reader.readInt());
+            Posting posting = link.posting(entity);
+            int tableCount = reader.readVarInt(), table = 0;
+
+            for (int j = 0; j < tableCount; j++)
+            {
+                table += reader.readVarInt();
+                int[] locations = new int[reader.readVarInt() * 2];
+
+                for (int l = 0; l < locations.length; l++)
+                {
+                    locations[l] = reader.readVarInt();
+                }
+
+                link.addTable(entity, posting, table, locations.length > 0 ? locations : NO_LOCATIONS);
+            }
+        }
+
+        return link;
     }
 
     /**
@@ -166,26 +446,32 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     {
         List<Pair<Id, Pair<String, Pair<Integer, Integer>>>> tuples = new ArrayList<>();
 
-        for (Id id : this.idx.keySet())
+        for (Map.Entry<Id, Posting> entry : this.idx.entrySet())
         {
-            for (String fileName : this.idx.get(id).keySet())
+            Posting posting = entry.getValue();
+
+            for (int i = 0; i < posting.size; i++)
             {
-                if (this.idx.get(id).get(fileName).isEmpty())
+                String fileName = this.tableNames.get(posting.tables[i]);
+                int[] locations = posting.locations[i];
+                int count = posting.locationCounts[i];
+
+                if (count == 0)
                 {
-                    tuples.add(new Pair<>(id, new Pair<>(fileName, new Pair<>(-1, -1))));
+                    tuples.add(new Pair<>(entry.getKey(), new Pair<>(fileName, new Pair<>(-1, -1))));
                     continue;
                 }
 
-                for (Pair<Integer, Integer> location : this.idx.get(id).get(fileName))
+                for (int l = 0; l < count; l += 2)
                 {
-                    tuples.add(new Pair<>(id, new Pair<>(fileName, new Pair<>(location.getFirst(), location.getSecond()))));
+                    tuples.add(new Pair<>(entry.getKey(), new Pair<>(fileName, new Pair<>(locations[l], locations[l + 1]))));
                 }
             }
         }
 
         out.writeObject(tuples);
 
-        if (this.idx == null)
+        if (this.dir == null)
             out.writeObject("null");
 
         else
@@ -0,0 +1,135 @@
+package com.thetis.store;
+
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
+import com.thetis.structures.table.LinkedTable;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indexing of table file names to their entity-linked representation
+ * This allows searching tables without parsing the raw table files
+ */
+public class LinkedTableIndex implements Index<String, LinkedTable>, Serializable
+{
+    private final Map<String, LinkedTable> idx = new ConcurrentHashMap<>();
+
+    /**
+     * @param key Table file name excluding the directory
+     * @param value Entity-linked table
+     */
+    @Override
+    public void insert(String key, LinkedTable value)
+    {
+        this.idx.put(key, value);
+    }
+
+    @Override
+    public boolean remove(String key)
+    {
+        return this.idx.remove(key) != null;
+    }
+
+    @Override
+    public LinkedTable find(String key)
+    {
+        return this.idx.get(key);
+    }
+
+    @Override
+    public boolean contains(String key)
+    {
+        return this.idx.containsKey(key);
+    }
+
+    @Override
+    public int size()
+    {
+        return this.idx.size();
+    }
+
+    @Override
+    public void clear()
+    {
+        this.idx.clear();
+    }
+
+    public Iterator<String> tables()
+    {
+        return this.idx.keySet().iterator();
+    }
+
+    /**
+     * Writes the index to a segment
+     * Table names are written as a sorted string block followed by each table in the same order
+     * @param writer Writer of segment of kind LINKED_TABLES
+     */
+    public void writeSegment(SegmentWriter writer) throws IOException
+    {
+        List<String> names = new ArrayList<>(this.idx.keySet());
+        Collections.sort(names);
+        writer.writeStrings(names);
+
+        for (String name : names)
+        {
+            LinkedTable table = this.idx.get(name);
+            List<String> headers = table.getHeaders();
+            writer.writeInt(table.rowCount());
+            writer.writeInt(table.columnCount());
+            writer.writeInt(headers.size());
+
+            for (String header : headers)
+            {
+                writer.writeString(header);
+            }
+
+            writer.writeInt(table.storedRows());
+
+            for (int row = 0; row < table.storedRows(); row++)
+            {
+                writer.writeInt(table.rowSize(row));
+                writer.writeInts(table.row(row), 0, table.rowSize(row));
+            }
+        }
+    }
+
+    /**
+     * Reads the index from a segment
+     * @param reader Reader of segment of kind LINKED_TABLES
+     * @return Index of entity-linked tables
+     */
+    public static LinkedTableIndex readSegment(SegmentReader reader) throws IOException
+    {
+        LinkedTableIndex index = new LinkedTableIndex();
+
+        for (String name : reader.readStrings())
+        {
+            int rows = reader.readInt(), columns = reader.readInt();
+            String[] headers = new String[reader.readInt()];
+
+            for (int i = 0; i < headers.length; i++)
+            {
+                headers[i] = reader.readString();
+            }
+
+            int[][] entities = new int[reader.readInt()][];
+
+            for (int row = 0; row < entities.length; row++)
+            {
+                entities[row] = new int[reader.readInt()];
+                reader.readInts(entities[row], 0, entities[row].length);
+            }
+
+            index.insert(name, new LinkedTable(rows, columns, headers, entities));
+        }
+
+        return index;
+    }
+}
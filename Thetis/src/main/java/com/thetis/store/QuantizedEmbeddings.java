@@ -0,0 +1,243 @@
+package com.thetis.store;
+
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
+import com.thetis.structures.Id;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Entity embeddings quantized to 8-bit integers with a scale per vector
+ * Each element is stored as round(e / scale) where the scale maps the largest absolute element of the vector to 127
+ * Codes take a quarter of the memory of the float matrix, and cosine similarities are computed with integer arithmetic from the codes
+ * Rows are numbered as in the embeddings matrix the codes are quantized from
+ */
+public class QuantizedEmbeddings implements Serializable
+{
+    private static final int PAGE_ROWS = 4096;
+    private static final int NO_ROW = -1;
+    private static final int MAX_CODE = 127;
+
+    private int dimension = -1, rows = 0, size = 0;
+    private byte[][] pages = new byte[0][];
+    private float[] scales = new float[0];
+    private double[] norms = new double[0];    // Norms of the codes
+    private int[] idToRow = new int[0];
+
+    private QuantizedEmbeddings() {}
+
+    /**
+     * Quantizes all rows of an embeddings matrix
+     * @param matrix Matrix of float embeddings
+     * @return Quantized embeddings of the same entities
+     */
+    public static QuantizedEmbeddings quantize(EmbeddingsMatrix matrix)
+    {
+        QuantizedEmbeddings quantized = new QuantizedEmbeddings();
+
+        synchronized (matrix)
+        {
+            quantized.dimension = matrix.dimension();
+            quantized.rows = matrix.rows();
+            quantized.size = matrix.size();
+            quantized.idToRow = matrix.idToRow();
+        }
+
+        quantized.scales = new float[quantized.rows];
+        quantized.norms = new double[quantized.rows];
+        quantized.pages = new byte[(quantized.rows + PAGE_ROWS - 1) / PAGE_ROWS][];
+
+        for (int page = 0; page < quantized.pages.length; page++)
+        {
+            quantized.pages[page] = new byte[PAGE_ROWS * quantized.dimension];
+        }
+
+        for (int row = 0; row < quantized.rows; row++)
+        {
+            quantized.quantizeRow(row, matrix.page(row), matrix.pageOffset(row));
+        }
+
+        return quantized;
+    }
+
+    private void quantizeRow(int row, float[] source, int sourceOffset)
+    {
+        float max = 0;
+
+        for (int i = 0; i < this.dimension; i++)
+        {
+            max = Math.max(max, Math.abs(source[sourceOffset + i]));
+        }
+
+        byte[] page = page(row);
+        int offset = pageOffset(row);
+        float scale = max / MAX_CODE;
+        long norm = 0;
+
+        for (int i = 0; i < this.dimension; i++)
+        {
+            // Rounding half to even is symmetric, so a vector and its negation get negated codes
+            int code = scale == 0 ? 0 : (int) Math.rint(source[sourceOffset + i] / scale);
+            code = Math.max(-MAX_CODE, Math.min(MAX_CODE, code));
+            page[offset + i] = (byte) code;
+            norm += code * code;
+        }
+
+        this.scales[row] = scale;
+        this.norms[row] = Math.sqrt(norm);
+    }
+
+    private int row(Id id)
+    {
+        int i = id.getId();
+        return i >= 0 && i < this.idToRow.length ? this.idToRow[i] : NO_ROW;
+    }
+
+    private byte[] page(int row)
+    {
+        return this.pages[row / PAGE_ROWS];
+    }
+
+    private int pageOffset(int row)
+    {
+        return (row % PAGE_ROWS) * this.dimension;
+    }
+
+    public boolean contains(Id id)
+    {
+        return row(id) != NO_ROW;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public int dimension()
+    {
+        return this.dimension;
+    }
+
+    /**
+     * @return Number of bytes of the codes, scales, norms and ID to row mapping
+     */
+    public long memoryBytes()
+    {
+        return (long) this.pages.length * PAGE_ROWS * Math.max(0, this.dimension) +
+                (long) Float.BYTES * this.scales.length + (long) Double.BYTES * this.norms.length + (long) Integer.BYTES * this.idToRow.length;
+    }
+
+    /**
+     * Dequantized copy of the embedding of an entity
+     * @return Approximate embedding vector or null if the entity has no embedding
+     */
+    public float[] vector(Id id)
+    {
+        int row = row(id);
+
+        if (row == NO_ROW)
+            return null;
+
+        byte[] page = page(row);
+        int offset = pageOffset(row);
+        float[] vector = new float[this.dimension];
+
+        for (int i = 0; i < this.dimension; i++)
+        {
+            vector[i] = page[offset + i] * this.scales[row];
+        }
+
+        return vector;
+    }
+
+    /**
+     * Approximate cosine similarity computed from the codes of two entities
+     * The scales cancel out, so only the integer dot product of the codes and their norms are needed
+     * @return Cosine similarity within [-1, 1], or 0 if an entity has no embedding or a zero vector
+     */
+    public double cosine(Id id1, Id id2)
+    {
+        int row1 = row(id1), row2 = row(id2);
+
+        if (row1 == NO_ROW || row2 == NO_ROW)
+            return 0.0;
+
+        double normProduct = this.norms[row1] * this.norms[row2];
+
+        if (normProduct == 0)
+            return 0.0;
+
+        byte[] page1 = page(row1), page2 = page(row2);
+        int offset1 = pageOffset(row1), offset2 = pageOffset(row2);
+        int dot = 0;
+
+        for (int i = 0; i < this.dimension; i++)
+        {
+            dot += page1[offset1 + i] * page2[offset2 + i];
+        }
+
+        double cosine = dot / normProduct;
+        return cosine <= -1.0 ? -1.0 : Math.min(cosine, 1.0);
+    }
+
+    /**
+     * Writes the codes to a segment as the ID to row mapping, the scales, the norms and the rows of codes
+     * @param writer Writer of segment of kind QUANTIZED_EMBEDDINGS
+     */
+    public void writeSegment(SegmentWriter writer) throws IOException
+    {
+        writer.writeInt(this.dimension);
+        writer.writeInt(this.rows);
+        writer.writeInt(this.size);
+        writer.writeInt(this.idToRow.length);
+        writer.writeInts(this.idToRow, 0, this.idToRow.length);
+        writer.writeFloats(this.scales, 0, this.rows);
+
+        for (int row = 0; row < this.rows; row++)
+        {
+            writer.writeDouble(this.norms[row]);
+        }
+
+        for (int page = 0; page < this.pages.length; page++)
+        {
+            int pageRows = Math.min(PAGE_ROWS, this.rows - page * PAGE_ROWS);
+            writer.writeBytes(this.pages[page], 0, pageRows * this.dimension);
+        }
+    }
+
+    /**
+     * Reads quantized embeddings from a segment
+     * @param reader Reader of segment of kind QUANTIZED_EMBEDDINGS
+     * @return Quantized embeddings
+     */
+    public static QuantizedEmbeddings readSegment(SegmentReader reader) throws IOException
+    {
+        QuantizedEmbeddings quantized = new QuantizedEmbeddings();
+        quantized.dimension = reader.readInt();
+        quantized.rows = reader.readInt();
+        quantized.size = reader.readInt();
+        quantized.idToRow = new int[reader.readInt()];
+        reader.readInts(quantized.idToRow, 0, quantized.idToRow.length);
+        quantized.scales = new float[quantized.rows];
+        reader.readFloats(quantized.scales, 0, quantized.rows);
+        quantized.norms = new double[quantized.rows];
+
+        for (int row = 0; row < quantized.rows; row++)
+        {
+            quantized.norms[row] = reader.readDouble();
+        }
+
+        quantized.pages = new byte[(quantized.rows + PAGE_ROWS - 1) / PAGE_ROWS][];
+
+        for (int page = 0; page < quantized.pages.length; page++)
+        {
+            int pageRows = Math.min(PAGE_ROWS, quantized.rows - page * PAGE_ROWS);
+            quantized.pages[page] = new byte[PAGE_ROWS * quantized.dimension];
+            reader.readBytes(quantized.pages[page], 0, pageRows * quantized.dimension);
+        }
+
+        return quantized;
+    }
+
+}
@@ -10,19 +10,25 @@ import com.thetis.store.EntityTableLink;
 import com.thetis.store.Index;
 import com.thetis.structures.Id;
 import com.thetis.structures.graph.Entity;
+import com.thetis.system.ExecutionService;
 
 import java.nio.file.Path;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 
+/**
+ * HNSW index of entity embeddings that finds the tables containing the nearest neighbors of query entities
+ * Queries do not modify the index, so concurrent queries are safe as long as no entities are inserted or removed at the same time
+ */
 public class HNSW implements Index<String, Set<String>>
 {
-    private transient Function<Entity, List<Double>> embeddingsGen;
+    private transient Function<Entity, float[]> embeddingsGen;
     private com.stepstone.search.hnswlib.jna.Index hnsw;
-    private int embeddingsDim, k, findError = 0;
+    private int embeddingsDim, k;
     private long capacity;
     private EntityLinking linker;
     private EntityTable entityTable;
@@ -30,8 +36,12 @@ public class HNSW implements Index<String, Set<String>>
     private String indexPath;
     private static final int M = 8;
     private static final int EF = 16;
+    private static final int MAX_RETRIES = 10;
 
-    public HNSW(Function<Entity, List<Double>> embeddingsGenerator, int embeddingsDimension, long capacity, int neighborhoodSize,
+    /**
+     * @param embeddingsGenerator Lookup of primitive entity embeddings, returning null for entities without embeddings
+     */
+    public HNSW(Function<Entity, float[]> embeddingsGenerator, int embeddingsDimension, long capacity, int neighborhoodSize,
                 EntityLinking linker, EntityTable entityTable, EntityTableLink entityTableLink, String indexPath)
     {
         this.embeddingsGen = embeddingsGenerator;
@@ -61,7 +71,7 @@ public class HNSW implements Index<String, Set<String>>
         this.entityTableLink = entityTableLink;
     }
 
-    public void setEmbeddingGenerator(Function<Entity, List<Double>> embeddingGenerator)
+    public void setEmbeddingGenerator(Function<Entity, float[]> embeddingGenerator)
     {
         this.embeddingsGen = embeddingGenerator;
     }
@@ -86,19 +96,6 @@ public class HNSW implements Index<String, Set<String>>
         return this.indexPath;
     }
 
-    private static float[] toPrimitiveEmbeddings(List<Double> embedding)
-    {
-        float[] embeddingsArray = new float[embedding.size()];
-        int i = 0;
-
-        for (double e : embedding)
-        {
-            embeddingsArray[i++] = (float) e;
-        }
-
-        return embeddingsArray;
-    }
-
     public void setCapacity(long capacity)
     {
         this.capacity = capacity;
@@ -127,12 +124,11 @@ public class HNSW implements Index<String, Set<String>>
         }
 
         Entity entity = this.entityTable.find(id);
-        List<Double> embedding = this.embeddingsGen.apply(entity);
+        float[] embedding = this.embeddingsGen.apply(entity);
 
         if (embedding != null)
         {
-            float[] primitiveEmbedding = toPrimitiveEmbeddings(embedding);
-            this.hnsw.addItem(primitiveEmbedding, id.getId());
+            this.hnsw.addItem(embedding, id.getId());
         }
     }
 
@@ -163,68 +159,190 @@ public class HNSW implements Index<String, Set<String>>
     @Override
     public Set<String> find(String key)
     {
-        Id id = this.linker.kgUriLookup(key);
+        return find(key, EF);
+    }
 
-        if (id == null)
+    /**
+     * Finds tables containing K-nearest neighbors
+     * @param key Query entity
+     * @param ef Size of the dynamic candidate list of this query
+     * @return Set of tables
+     */
+    public Set<String> find(String key, int ef)
+    {
+        BitSet tables = new BitSet(this.entityTableLink.tableCount());
+        findTables(key, ef, tables);
+        return tableNames(tables);
+    }
+
+    /**
+     * Finds tables containing K-nearest neighbors of each query entity
+     * The kNN queries of the entities run in parallel
+     * @param keys Query entities
+     * @return Union of the tables of each query entity
+     */
+    public Set<String> findAll(Collection<String> keys)
+    {
+        return tableNames(findAllTables(keys));
+    }
+
+    /**
+     * Finds tables containing K-nearest neighbors
+     * @param key Query entity
+     * @return Positions in the table dictionary of the entity-table link index of the tables
+     */
+    public BitSet findTables(String key)
+    {
+        BitSet tables = new BitSet(this.entityTableLink.tableCount());
+        findTables(key, EF, tables);
+        return tables;
+    }
+
+    /**
+     * Finds tables containing K-nearest neighbors of each query entity
+     * @param keys Query entities
+     * @return Positions in the table dictionary of the entity-table link index of the union of the tables of each query entity
+     */
+    public BitSet findAllTables(Collection<String> keys)
+    {
+        BitSet tables = new BitSet(this.entityTableLink.tableCount());
+
+        if (keys.size() <= 1)
         {
-            return Collections.emptySet();
+            keys.forEach(key -> findTables(key, EF, tables));
+            return tables;
         }
 
-        try
+        Executor executor = ExecutionService.compute(ExecutionService.parallelism());
+        List<Future<BitSet>> futures = new ArrayList<>(keys.size());
+
+        for (String key : keys)
         {
-            Entity entity = this.entityTable.find(id);
-            List<Double> embedding = this.embeddingsGen.apply(entity);
+            futures.add(CompletableFuture.supplyAsync(() -> findTables(key), executor));
+        }
 
-            if (embedding == null)
+        try
+        {
+            for (Future<BitSet> future : futures)
             {
-                return Collections.emptySet();
+                tables.or(future.get());
             }
+        }
 
-            float[] primitiveEmbedding = toPrimitiveEmbeddings(embedding);
-            QueryTuple results = this.hnsw.knnQuery(primitiveEmbedding, this.k);
-            Set<String> tables = new HashSet<>();
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw new RuntimeException("Error in multi-threaded HNSW search: " + e.getMessage());
+        }
 
-            for (int resultId : results.getIds())
+        return tables;
+    }
+
+    /**
+     * Adds the tables of the K-nearest neighbors of an entity to a table bitset
+     * When the neighbors are in no tables or the index cannot return enough neighbors, the query is retried with a doubled
+     * candidate list and neighborhood, which only changes the parameters of this query
+     * @return True if any tables were found
+     */
+    private boolean findTables(String key, int ef, BitSet tables)
+    {
+        Id id = this.linker.kgUriLookup(key);
+
+        if (id == null)
+        {
+            return false;
+        }
+
+        float[] embedding = this.embeddingsGen.apply(this.entityTable.find(id));
+
+        if (embedding == null)
+        {
+            return false;
+        }
+
+        int neighbors = this.k;
+
+        for (int attempt = 0; attempt <= MAX_RETRIES; attempt++, ef *= 2, neighbors *= 2)
+        {
+            int size = size();
+
+            if (size == 0)
             {
-                tables.addAll(this.entityTableLink.find(new Id(resultId)));
+                return false;
             }
 
-            if (tables.isEmpty())
+            try
             {
-                this.hnsw.setEf(this.hnsw.getEf() * 2);
-                this.findError++;
+                // hnswlib searches with a candidate list of the larger of ef and the number of requested neighbors
+                int width = Math.min(Math.max(neighbors, ef), size);
+                QueryTuple results = this.hnsw.knnQuery(embedding, width);
+                boolean found = false;
+
+                for (int resultId : nearest(results, neighbors))
+                {
+                    for (int table : this.entityTableLink.tablePositions(new Id(resultId)))
+                    {
+                        tables.set(table);
+                        found = true;
+                    }
+                }
 
-                if (this.findError > 10)
+                if (found || width == size)
                 {
-                    this.findError = 0;
-                    return tables;
+                    return found;
                 }
+            }
+
+            catch (QueryCannotReturnResultsException ignored) {}
 
-                return find(key);
+            catch (OnceIndexIsClearedItCannotBeReusedException e)
+            {
+                return false;
             }
+        }
 
-            this.findError = 0;
-            return tables;
+        return false;
+    }
+
+    // IDs of the given number of results with the smallest distance
+    private static int[] nearest(QueryTuple results, int count)
+    {
+        int[] ids = results.getIds();
+        float[] distances = results.getCoefficients();
+
+        if (ids.length <= count)
+        {
+            return ids;
         }
 
-        catch (QueryCannotReturnResultsException e)
+        Integer[] order = new Integer[ids.length];
+
+        for (int i = 0; i < order.length; i++)
         {
-            this.hnsw.setEf(this.hnsw.getEf() * 2);
-            this.findError++;
+            order[i] = i;
+        }
 
-            if (this.findError > 10)
-            {
-                this.findError = 0;
-                return Collections.emptySet();
-            }
+        Arrays.sort(order, Comparator.comparingDouble(i -> distances[i]));
+
+        int[] nearest = new int[count];
 
-            return find(key);
+        for (int i = 0; i < count; i++)
+        {
+            nearest[i] = ids[order[i]];
         }
 
-        catch (OnceIndexIsClearedItCannotBeReusedException e)
+        return nearest;
+    }
+
+    private Set<String> tableNames(BitSet tables)
+    {
+        Set<String> names = new HashSet<>(tables.cardinality() * 2);
+
+        for (int table = tables.nextSetBit(0); table >= 0; table = tables.nextSetBit(table + 1))
         {
-            return Collections.emptySet();
+            names.add(this.entityTableLink.tableName(table));
         }
+
+        return names;
     }
 
     /**
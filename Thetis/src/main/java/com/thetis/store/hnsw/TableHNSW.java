@@ -0,0 +1,347 @@
+package com.thetis.store.hnsw;
+
+import com.stepstone.search.hnswlib.jna.QueryTuple;
+import com.stepstone.search.hnswlib.jna.SpaceName;
+import com.stepstone.search.hnswlib.jna.exception.OnceIndexIsClearedItCannotBeReusedException;
+import com.stepstone.search.hnswlib.jna.exception.QueryCannotReturnResultsException;
+import com.thetis.store.EntityTableLink;
+import com.thetis.store.LinkedTableIndex;
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
+import com.thetis.structures.Id;
+import com.thetis.structures.table.LinkedTable;
+import com.thetis.system.ExecutionService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * HNSW index of table vectors that retrieves tables directly instead of through the tables of the nearest entities
+ * Each column of a table is represented by the centroid of the embeddings of its entities, and each row optionally by the centroid of its entities
+ * Vectors are labeled by their position in an item array that maps them to the position of their table in the entity-table link index
+ * Queries do not modify the index, so concurrent queries are safe
+ */
+public class TableHNSW
+{
+    private static final int M = 16;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int EF = 64;
+
+    private int dimension;
+    private int[] columnTables, rowTables;
+    private com.stepstone.search.hnswlib.jna.Index columns, rows = null;
+
+    private TableHNSW() {}
+
+    /**
+     * Builds the index from the entity-linked tables
+     * @param tables Entity-linked tables
+     * @param tableLink Entity-table link index whose table dictionary positions identify the tables
+     * @param embeddings Lookup of primitive entity embeddings, returning null for entities without embeddings
+     * @param dimension Dimension of the entity embeddings
+     * @param rowVectors Whether rows are indexed in addition to columns
+     */
+    public static TableHNSW build(LinkedTableIndex tables, EntityTableLink tableLink, Function<Id, float[]> embeddings, int dimension,
+                                  boolean rowVectors)
+    {
+        List<float[]> columnVectors = new ArrayList<>(), rowVectorList = new ArrayList<>();
+        List<Integer> columnTables = new ArrayList<>(), rowTables = new ArrayList<>();
+        Iterator<String> tableIter = tables.tables();
+
+        while (tableIter.hasNext())
+        {
+            String tableName = tableIter.next();
+            int position = tableLink.tablePosition(tableName);
+            LinkedTable table = tables.find(tableName);
+
+            if (position < 0 || table == null)
+                continue;
+
+            float[][] columnSums = new float[table.columnCount()][];
+
+            for (int row = 0; row < table.storedRows(); row++)
+            {
+                float[] rowSum = null;
+
+                for (int column = 0; column < table.rowSize(row); column++)
+                {
+                    int entity = table.entity(row, column);
+                    float[] embedding = entity != LinkedTable.NO_ENTITY ? embeddings.apply(new Id(entity)) : null;
+
+                    if (embedding == null)
+                        continue;
+
+                    if (column < columnSums.length)
+                        columnSums[column] = addNormalized(columnSums[column], embedding, dimension);
+
+                    if (rowVectors)
+                        rowSum = addNormalized(rowSum, embedding, dimension);
+                }
+
+                if (rowSum != null)
+                {
+                    rowVectorList.add(rowSum);
+                    rowTables.add(position);
+                }
+            }
+
+            for (float[] columnSum : columnSums)
+            {
+                if (columnSum != null)
+                {
+                    columnVectors.add(columnSum);
+                    columnTables.add(position);
+                }
+            }
+        }
+
+        TableHNSW index = new TableHNSW();
+        index.dimension = dimension;
+        index.columnTables = columnTables.stream().mapToInt(Integer::intValue).toArray();
+        index.columns = buildIndex(columnVectors, dimension);
+
+        if (rowVectors)
+        {
+            index.rowTables = rowTables.stream().mapToInt(Integer::intValue).toArray();
+            index.rows = buildIndex(rowVectorList, dimension);
+        }
+
+        return index;
+    }
+
+    // The sum of normalized vectors points in the same direction as their centroid, which is all the cosine space depends on
+    private static float[] addNormalized(float[] sum, float[] vector, int dimension)
+    {
+        double norm = 0;
+
+        for (float value : vector)
+        {
+            norm += value * value;
+        }
+
+        if (norm == 0)
+            return sum;
+
+        if (sum == null)
+            sum = new float[dimension];
+
+        float scale = (float) (1 / Math.sqrt(norm));
+
+        for (int i = 0; i < dimension && i < vector.length; i++)
+        {
+            sum[i] += vector[i] * scale;
+        }
+
+        return sum;
+    }
+
+    // hnswlib supports concurrent insertion of distinct labels once the entry point exists, so the first item is inserted before the rest
+    private static com.stepstone.search.hnswlib.jna.Index buildIndex(List<float[]> vectors, int dimension)
+    {
+        com.stepstone.search.hnswlib.jna.Index index = new com.stepstone.search.hnswlib.jna.Index(SpaceName.COSINE, dimension);
+        index.initialize(Math.max(1, vectors.size()), M, EF_CONSTRUCTION, 100);
+        index.setEf(EF);
+
+        if (vectors.isEmpty())
+            return index;
+
+        index.addItem(vectors.get(0), 0);
+
+        int parallelism = ExecutionService.parallelism();
+        int chunkSize = Math.max(1, (vectors.size() - 1 + parallelism - 1) / parallelism);
+        Executor executor = ExecutionService.compute(parallelism);
+        List<Future<?>> futures = new ArrayList<>(parallelism);
+
+        for (int from = 1; from < vectors.size(); from += chunkSize)
+        {
+            int start = from, end = Math.min(vectors.size(), from + chunkSize);
+            futures.add(CompletableFuture.runAsync(() ->
+            {
+                for (int item = start; item < end; item++)
+                {
+                    index.addItem(vectors.get(item), item);
+                }
+            }, executor));
+        }
+
+        try
+        {
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw new RuntimeException("Error in multi-threaded table-level HNSW construction: " + e.getMessage());
+        }
+
+        return index;
+    }
+
+    /**
+     * Centroid of a set of entity embeddings
+     * @return Centroid direction of the embeddings or null if none of the entities have embeddings
+     */
+    public float[] centroid(Collection<Id> entities, Function<Id, float[]> embeddings)
+    {
+        float[] sum = null;
+
+        for (Id entity : entities)
+        {
+            float[] embedding = entity != null ? embeddings.apply(entity) : null;
+
+            if (embedding != null)
+                sum = addNormalized(sum, embedding, this.dimension);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Finds the tables of the columns nearest to a vector
+     * @param vector Query vector, such as the centroid of the entities of a query column
+     * @param n Number of nearest columns
+     * @return Positions in the table dictionary of the entity-table link index of the tables of the nearest columns
+     */
+    public BitSet findColumns(float[] vector, int n)
+    {
+        return find(this.columns, this.columnTables, vector, n);
+    }
+
+    /**
+     * Finds the tables of the rows nearest to a vector
+     * An empty set is returned if rows are not indexed
+     * @param vector Query vector, such as the centroid of the entities of a query row
+     * @param n Number of nearest rows
+     * @return Positions in the table dictionary of the entity-table link index of the tables of the nearest rows
+     */
+    public BitSet findRows(float[] vector, int n)
+    {
+        if (this.rows == null)
+            return new BitSet();
+
+        return find(this.rows, this.rowTables, vector, n);
+    }
+
+    private static BitSet find(com.stepstone.search.hnswlib.jna.Index index, int[] itemTables, float[] vector, int n)
+    {
+        BitSet tables = new BitSet();
+        int k = Math.min(n, itemTables.length);
+
+        if (k <= 0 || vector == null)
+            return tables;
+
+        try
+        {
+            QueryTuple results = index.knnQuery(vector, k);
+
+            for (int item : results.getIds())
+            {
+                tables.set(itemTables[item]);
+            }
+        }
+
+        catch (QueryCannotReturnResultsException | OnceIndexIsClearedItCannotBeReusedException ignored) {}
+
+        return tables;
+    }
+
+    public boolean hasRows()
+    {
+        return this.rows != null;
+    }
+
+    /**
+     * @return Number of indexed columns
+     */
+    public int columnCount()
+    {
+        return this.columnTables.length;
+    }
+
+    /**
+     * @return Number of indexed rows
+     */
+    public int rowCount()
+    {
+        return this.rowTables != null ? this.rowTables.length : 0;
+    }
+
+    /**
+     * Writes the item mapping of the index to a segment
+     * The HNSW graphs are stored separately by save()
+     * @param writer Writer of segment of kind TABLE_HNSW
+     */
+    public void writeSegment(SegmentWriter writer) throws IOException
+    {
+        writer.writeInt(this.dimension);
+        writer.writeInt(this.columnTables.length);
+        writer.writeInts(this.columnTables, 0, this.columnTables.length);
+        writer.writeInt(this.rowTables != null ? this.rowTables.length : -1);
+
+        if (this.rowTables != null)
+            writer.writeInts(this.rowTables, 0, this.rowTables.length);
+    }
+
+    /**
+     * Reads the item mapping of the index from a segment
+     * The HNSW graphs must be loaded by load() before the index is searched
+     * @param reader Reader of segment of kind TABLE_HNSW
+     */
+    public static TableHNSW readSegment(SegmentReader reader) throws IOException
+    {
+        TableHNSW index = new TableHNSW();
+        index.dimension = reader.readInt();
+        index.columnTables = new int[reader.readInt()];
+        reader.readInts(index.columnTables, 0, index.columnTables.length);
+
+        int rows = reader.readInt();
+
+        if (rows >= 0)
+        {
+            index.rowTables = new int[rows];
+            reader.readInts(index.rowTables, 0, rows);
+        }
+
+        return index;
+    }
+
+    /**
+     * Saves the HNSW graphs of the columns and, if rows are indexed, the rows
+     */
+    public void save(Path columnsFile, Path rowsFile)
+    {
+        this.columns.save(columnsFile);
+
+        if (this.rows != null)
+            this.rows.save(rowsFile);
+    }
+
+    /**
+     * Loads the HNSW graphs saved by save()
+     */
+    public void load(Path columnsFile, Path rowsFile)
+    {
+        this.columns = loadIndex(columnsFile, this.columnTables.length);
+
+        if (this.rowTables != null)
+            this.rows = loadIndex(rowsFile, this.rowTables.length);
+    }
+
+    private com.stepstone.search.hnswlib.jna.Index loadIndex(Path file, int capacity)
+    {
+        com.stepstone.search.hnswlib.jna.Index index = new com.stepstone.search.hnswlib.jna.Index(SpaceName.COSINE, this.dimension);
+        index.load(file, Math.max(1, capacity));
+        index.setEf(EF);
+
+        return index;
+    }
+}
@@ -2,38 +2,38 @@ package com.thetis.store.lsh;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * Bucket groups of an LSH index
+ * Each bucket group maps bucket indices to the IDs of the values in the buckets, and values are interned to IDs on insertion
+ */
 public abstract class BucketIndex<K, V> implements Serializable
 {
-    private List<BucketGroup<K, V>> groups;
+    private static final ThreadLocal<VoteCounter> COUNTERS = ThreadLocal.withInitial(VoteCounter::new);
+
+    private final IntBucketMap[] groups;
+    private final int groupBuckets;
+    private final Map<V, Integer> valueIds = new HashMap<>();
+    private final List<V> values = new ArrayList<>();
 
     protected BucketIndex(int groups, int groupBuckets)
     {
-        this.groups = new ArrayList<>(groups);
+        this.groups = new IntBucketMap[groups];
+        this.groupBuckets = groupBuckets;
 
         for (int i = 0; i < groups; i++)
         {
-            this.groups.add(new BucketGroup<>(groupBuckets));
+            this.groups[i] = new IntBucketMap();
         }
     }
 
-    /**
-     * Getter to list of all bucket groups
-     * @return All bucket groups
-     */
-    public List<BucketGroup<K, V>> bucketGroups()
-    {
-        return this.groups;
-    }
-
     /**
      * Getter to number of bucket groups
      * @return Number of bucket groups
      */
     public int size()
     {
-        return this.groups.size();
+        return this.groups.length;
     }
 
     /**
@@ -42,19 +42,66 @@ public abstract class BucketIndex<K, V> implements Serializable
      */
     public int groupSize()
     {
-        return this.groups.get(0).size();
+        return this.groupBuckets;
+    }
+
+    /**
+     * Getter to number of value IDs stored in all buckets of all bucket groups
+     * @return Number of bucket entries
+     */
+    public long entries()
+    {
+        long entries = 0;
+
+        for (IntBucketMap group : this.groups)
+        {
+            entries += group.entries();
+        }
+
+        return entries;
+    }
+
+    /**
+     * Estimated memory of the buckets in bytes, not counting the interned values
+     * @return Estimated memory of all bucket groups
+     */
+    public long memory()
+    {
+        long bytes = 0;
+
+        for (IntBucketMap group : this.groups)
+        {
+            bytes += group.memory();
+        }
+
+        return bytes;
     }
 
     /**
      * Add key-value pair to bucket bucket group
+     * Only the value is stored, as searches return values
      * @param group Group containing bucket to be populated
      * @param bucketIndex Index of bucket within group to be populated
      * @param key Key from key-value pair to be added
      * @param value Value from key-value pair to be added
      */
-    protected void add(int group, int bucketIndex, K key, V value)
+    protected synchronized void add(int group, int bucketIndex, K key, V value)
     {
-        this.groups.get(group).add(bucketIndex, key, value);
+        this.groups[group].add(bucketIndex, intern(value));
+    }
+
+    private int intern(V value)
+    {
+        Integer id = this.valueIds.get(value);
+
+        if (id == null)
+        {
+            id = this.values.size();
+            this.valueIds.put(value, id);
+            this.values.add(value);
+        }
+
+        return id;
     }
 
     /**
@@ -65,47 +112,212 @@ public abstract class BucketIndex<K, V> implements Serializable
      */
     protected Set<V> get(int group, int bucketIndex)
     {
-        return this.groups.get(group).get(bucketIndex);
+        Set<V> bucketValues = new HashSet<>();
+        this.groups[group].forEach(bucketIndex, id -> bucketValues.add(this.values.get(id)));
+
+        return bucketValues;
     }
 
     @Override
     public String toString()
     {
-        return this.groups.toString();
+        StringBuilder builder = new StringBuilder("[");
+
+        for (int group = 0; group < this.groups.length; group++)
+        {
+            builder.append(group > 0 ? ", " : "").append(this.groups[group].buckets()).append(" buckets");
+        }
+
+        return builder.append("]").toString();
     }
 
     /**
-     * Creates keys from bands for each bucket group
-     * @return List of keys, one for each bucket group
+     * Creates keys from bands of a primitive signature for each bucket group
+     * Each band is hashed as a slice of the signature, giving the same keys as hashing the band as a list of integers
+     * @return Array of keys, one for each bucket group
      */
-    protected static List<Integer> createKeys(int permutations, int bandSize, List<Integer> signature,
-                                              int bucketGroupSize, HashFunction hash)
+    protected static int[] createKeys(int bandSize, int[] signature, int bucketGroupSize, HashFunction hash)
     {
-        List<Integer> keys = new ArrayList<>();
+        int[] keys = new int[(signature.length + bandSize - 1) / bandSize];
 
-        for (int idx = 0; idx < permutations; idx += bandSize)
+        for (int band = 0; band < keys.length; band++)
         {
-            int bandEnd = Math.min(idx + bandSize, permutations);
-            List<Integer> subSignature = signature.subList(idx, bandEnd);
-            int key = Math.abs(hash.hash(subSignature, bucketGroupSize));
-            keys.add(key);
+            int bandStart = band * bandSize, bandEnd = Math.min(bandStart + bandSize, signature.length);
+            keys[band] = Math.abs(hash.hash(signature, bandStart, bandEnd, bucketGroupSize));
         }
 
         return keys;
     }
 
-    protected Set<V> search(List<Integer> keys, int vote)
+    /**
+     * Creates multi-probe keys from bands of a primitive signature for each bucket group
+     * Besides the key of the band itself, a bucket group gets a key for each of the <code>probes</code> band positions with the smallest margins,
+     * where the value at the position is replaced by its alternative
+     * @param alternatives Alternative value of each signature position, which similar items are likely to have instead
+     * @param margins Margin of each signature position, where values with small margins are the most likely to differ for similar items
+     *                and positions without an alternative have an infinite margin
+     * @return Keys of each bucket group, starting with the key of the unperturbed band
+     */
+    protected static int[][] createProbeKeys(int bandSize, int[] signature, int[] alternatives, double[] margins, int probes,
+                                             int bucketGroupSize, HashFunction hash)
     {
-        Map<V, Integer> occurrences = new HashMap<>();
+        int[][] keys = new int[(signature.length + bandSize - 1) / bandSize][];
+        int[] band = new int[bandSize];
 
-        for (int group = 0; group < keys.size(); group++)
+        for (int b = 0; b < keys.length; b++)
         {
-            Set<V> bucketTables = get(group, keys.get(group));
-            bucketTables.forEach(t -> occurrences.put(t, occurrences.containsKey(t) ? occurrences.get(t) + 1 : 1));
+            int bandStart = b * bandSize, bandEnd = Math.min(bandStart + bandSize, signature.length), length = bandEnd - bandStart;
+            int[] positions = smallestMargins(margins, bandStart, bandEnd, probes);
+            System.arraycopy(signature, bandStart, band, 0, length);
+            keys[b] = new int[1 + positions.length];
+            keys[b][0] = Math.abs(hash.hash(band, 0, length, bucketGroupSize));
+
+            for (int probe = 0; probe < positions.length; probe++)
+            {
+                int position = positions[probe];
+                band[position - bandStart] = alternatives[position];
+                keys[b][probe + 1] = Math.abs(hash.hash(band, 0, length, bucketGroupSize));
+                band[position - bandStart] = signature[position];
+            }
         }
 
-        return occurrences.entrySet().stream()
-                .filter(e -> e.getValue() >= vote)
-                .map(Map.Entry::getKey).collect(Collectors.toSet());
+        return keys;
+    }
+
+    // Bands are short, so the positions are sorted by insertion
+    private static int[] smallestMargins(double[] margins, int start, int end, int count)
+    {
+        int[] positions = new int[end - start];
+        int found = 0;
+
+        for (int position = start; position < end; position++)
+        {
+            if (Double.isInfinite(margins[position]))
+            {
+                continue;
+            }
+
+            int i = found++;
+
+            for (; i > 0 && margins[positions[i - 1]] > margins[position]; i--)
+            {
+                positions[i] = positions[i - 1];
+            }
+
+            positions[i] = position;
+        }
+
+        return Arrays.copyOf(positions, Math.min(count, found));
+    }
+
+    /**
+     * Finds the values that are in the bucket of the key of at least <code>vote</code> bucket groups
+     * @param keys Keys, one for each bucket group
+     * @param vote Minimum number of bucket groups a value must be found in
+     * @return Values found in at least <code>vote</code> bucket groups
+     */
+    protected Set<V> search(int[] keys, int vote)
+    {
+        VoteCounter counter = COUNTERS.get();
+        counter.reset(this.values.size());
+
+        for (int group = 0; group < keys.length && group < this.groups.length; group++)
+        {
+            int stamp = group + 1;
+            this.groups[group].forEach(keys[group], id -> counter.vote(id, stamp));
+        }
+
+        return collect(counter, vote);
+    }
+
+    /**
+     * Finds the values that are in one of the probed buckets of at least <code>vote</code> bucket groups
+     * A value is counted once per bucket group, regardless of how many probed buckets of the group it is in
+     * @param keys Keys of the buckets to probe, one array for each bucket group
+     * @param vote Minimum number of bucket groups a value must be found in
+     * @return Values found in at least <code>vote</code> bucket groups
+     */
+    protected Set<V> search(int[][] keys, int vote)
+    {
+        VoteCounter counter = COUNTERS.get();
+        counter.reset(this.values.size());
+
+        for (int group = 0; group < keys.length && group < this.groups.length; group++)
+        {
+            int stamp = group + 1;
+
+            for (int key : keys[group])
+            {
+                this.groups[group].forEach(key, id -> counter.vote(id, stamp));
+            }
+        }
+
+        return collect(counter, vote);
+    }
+
+    private Set<V> collect(VoteCounter counter, int vote)
+    {
+        Set<V> found = new HashSet<>();
+
+        for (int i = 0; i < counter.touched; i++)
+        {
+            int id = counter.touchedIds[i];
+
+            if (counter.votes[id] >= vote)
+            {
+                found.add(this.values.get(id));
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Per-thread vote counts of value IDs that are reused across searches
+     * Only the counts of the value IDs touched by a search are cleared by the next search
+     */
+    private static final class VoteCounter
+    {
+        private int[] votes = new int[0], stamps = new int[0], touchedIds = new int[16];
+        private int touched = 0;
+
+        private void reset(int valueCount)
+        {
+            for (int i = 0; i < this.touched; i++)
+            {
+                this.votes[this.touchedIds[i]] = 0;
+                this.stamps[this.touchedIds[i]] = 0;
+            }
+
+            if (this.votes.length < valueCount)
+            {
+                this.votes = new int[valueCount];
+                this.stamps = new int[valueCount];
+            }
+
+            this.touched = 0;
+        }
+
+        // A value is counted once per bucket group, even if its bucket contains it more than once
+        private void vote(int id, int stamp)
+        {
+            if (this.stamps[id] == stamp)
+            {
+                return;
+            }
+
+            else if (this.votes[id] == 0)
+            {
+                if (this.touched == this.touchedIds.length)
+                {
+                    this.touchedIds = Arrays.copyOf(this.touchedIds, this.touched * 2);
+                }
+
+                this.touchedIds[this.touched++] = id;
+            }
+
+            this.stamps[id] = stamp;
+            this.votes[id]++;
+        }
     }
 }
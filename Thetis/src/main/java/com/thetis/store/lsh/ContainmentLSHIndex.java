@@ -0,0 +1,423 @@
+package com.thetis.store.lsh;
+
+import com.thetis.store.EntityTable;
+import com.thetis.store.EntityTableLink;
+import com.thetis.store.LinkedTableIndex;
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
+import com.thetis.structures.Id;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.table.LinkedTable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * LSH Ensemble index of the sets of entities or entity types of table columns for containment search
+ * Columns are sorted by the size of their sets and split into partitions of equally many columns
+ * A query converts the containment threshold into the Jaccard similarity threshold of the largest set of each partition and chooses the bands and rows
+ * that minimize the false positive and false negative probabilities at that threshold, so small and large columns are not searched with the same threshold
+ * False negatives are weighted higher than false positives, as candidates are pruned by the containment estimated from their signatures
+ * Every column is banded with each of the row counts in ROWS, which lets the bands and rows be chosen when querying
+ * Only signatures are stored, and the buckets are rebuilt from them when the index is read
+ * Queries do not modify the index, so concurrent queries are safe
+ */
+public class ContainmentLSHIndex
+{
+    /**
+     * ENTITIES indexes the entities of each column and TYPES the types of these entities
+     */
+    public enum Elements {ENTITIES, TYPES}
+
+    private static final int SIGNATURE_SIZE = 64;
+    private static final int[] ROWS = {1, 2, 4, 8, 16};
+    private static final int PARTITIONS = 16;
+    private static final int THRESHOLD_LEVELS = 100, INTEGRATION_STEPS = 50;
+    private static final double FALSE_NEGATIVE_WEIGHT = 4;         // False positives only cost a signature comparison before they are pruned
+    private static final int[][] PARAMETERS = tuneParameters();     // Bands and index into ROWS of each Jaccard threshold level
+
+    private Elements elements;
+    private int seed;
+    private long[] hashMultipliers, hashOffsets;
+    private int[] columnTables, columnSizes, signatures;   // Columns are sorted by size, and signatures are stored back to back
+    private int[] partitionStarts;                          // Partition p holds columns partitionStarts[p] until partitionStarts[p + 1]
+    private IntBucketMap[][][] buckets;                     // Buckets of each partition, row count, and band
+
+    private ContainmentLSHIndex() {}
+
+    /**
+     * Builds the index from the entity-linked tables
+     * @param tables Entity-linked tables
+     * @param tableLink Entity-table link index whose table dictionary positions identify the tables
+     * @param entityTable Entity table holding the types of the linked entities
+     * @param elements Elements of the indexed sets
+     * @param seed Seed of the min-hash functions
+     */
+    public static ContainmentLSHIndex build(LinkedTableIndex tables, EntityTableLink tableLink, EntityTable entityTable, Elements elements, int seed)
+    {
+        List<int[]> columnSets = new ArrayList<>();
+        List<Integer> columnTables = new ArrayList<>();
+        Iterator<String> tableIter = tables.tables();
+
+        while (tableIter.hasNext())
+        {
+            String tableName = tableIter.next();
+            int position = tableLink.tablePosition(tableName);
+            LinkedTable table = tables.find(tableName);
+
+            if (position < 0 || table == null)
+                continue;
+
+            for (int column = 0; column < table.columnCount(); column++)
+            {
+                List<Id> entities = new ArrayList<>(table.storedRows());
+
+                for (int row = 0; row < table.storedRows(); row++)
+                {
+                    if (column < table.rowSize(row) && table.entity(row, column) != LinkedTable.NO_ENTITY)
+                        entities.add(new Id(table.entity(row, column)));
+                }
+
+                int[] set = elements(entities, entityTable, elements);
+
+                if (set.length > 0)
+                {
+                    columnSets.add(set);
+                    columnTables.add(position);
+                }
+            }
+        }
+
+        Integer[] order = new Integer[columnSets.size()];
+
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, Comparator.comparingInt(column -> columnSets.get(column).length));
+
+        ContainmentLSHIndex index = new ContainmentLSHIndex();
+        index.elements = elements;
+        index.seed = seed;
+        index.createHashFunctions();
+        index.columnTables = new int[order.length];
+        index.columnSizes = new int[order.length];
+        index.signatures = new int[order.length * SIGNATURE_SIZE];
+
+        for (int column = 0; column < order.length; column++)
+        {
+            int[] set = columnSets.get(order[column]);
+            index.columnTables[column] = columnTables.get(order[column]);
+            index.columnSizes[column] = set.length;
+            System.arraycopy(index.signature(set), 0, index.signatures, column * SIGNATURE_SIZE, SIGNATURE_SIZE);
+        }
+
+        int partitions = Math.min(PARTITIONS, Math.max(1, order.length));
+        index.partitionStarts = new int[partitions + 1];
+
+        for (int partition = 0; partition <= partitions; partition++)
+        {
+            index.partitionStarts[partition] = (int) ((long) order.length * partition / partitions);
+        }
+
+        index.buildBuckets();
+        return index;
+    }
+
+    /**
+     * Distinct element keys of a set of entities
+     * @param entities Entities, such as those of a query column
+     * @param entityTable Entity table holding the types of the entities
+     * @return Sorted entity IDs or sorted IDs of the entity types interned by the entity table, depending on the elements of the index
+     */
+    public int[] elements(Collection<Id> entities, EntityTable entityTable)
+    {
+        return elements(entities, entityTable, this.elements);
+    }
+
+    private static int[] elements(Collection<Id> entities, EntityTable entityTable, Elements elements)
+    {
+        Set<Integer> keys = new HashSet<>();
+
+        for (Id entity : entities)
+        {
+            if (elements == Elements.ENTITIES)
+            {
+                keys.add(entity.getId());
+                continue;
+            }
+
+            Entity typedEntity = entityTable.find(entity);
+
+            if (typedEntity != null && typedEntity.getTypeIds() != null)
+            {
+                for (int type : typedEntity.getTypeIds())
+                {
+                    keys.add(type);
+                }
+            }
+        }
+
+        return keys.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    private void createHashFunctions()
+    {
+        Random random = new Random(this.seed);
+        this.hashMultipliers = new long[SIGNATURE_SIZE];
+        this.hashOffsets = new long[SIGNATURE_SIZE];
+
+        for (int i = 0; i < SIGNATURE_SIZE; i++)
+        {
+            this.hashMultipliers[i] = random.nextLong() | 1;
+            this.hashOffsets[i] = random.nextLong();
+        }
+    }
+
+    private int[] signature(int[] set)
+    {
+        int[] signature = new int[SIGNATURE_SIZE];
+
+        for (int i = 0; i < SIGNATURE_SIZE; i++)
+        {
+            long a = this.hashMultipliers[i], b = this.hashOffsets[i];
+            int smallest = Integer.MAX_VALUE;
+
+            for (int key : set)
+            {
+                smallest = Math.min(smallest, (int) ((a * key + b) >>> 33));
+            }
+
+            signature[i] = smallest;
+        }
+
+        return signature;
+    }
+
+    private static int bandKey(int[] signature, int offset, int rows)
+    {
+        int hash = 1;
+
+        for (int i = offset; i < offset + rows; i++)
+        {
+            hash = 31 * hash + signature[i];
+        }
+
+        return (hash ^ (hash >>> 16)) & 0x7fffffff;
+    }
+
+    private void buildBuckets()
+    {
+        int partitions = this.partitionStarts.length - 1;
+        this.buckets = new IntBucketMap[partitions][ROWS.length][];
+
+        for (int partition = 0; partition < partitions; partition++)
+        {
+            int start = this.partitionStarts[partition], end = this.partitionStarts[partition + 1];
+
+            for (int r = 0; r < ROWS.length; r++)
+            {
+                int bands = SIGNATURE_SIZE / ROWS[r];
+                this.buckets[partition][r] = new IntBucketMap[bands];
+
+                for (int band = 0; band < bands; band++)
+                {
+                    IntBucketMap map = new IntBucketMap();
+
+                    for (int column = start; column < end; column++)
+                    {
+                        map.add(bandKey(this.signatures, column * SIGNATURE_SIZE + band * ROWS[r], ROWS[r]), column);
+                    }
+
+                    this.buckets[partition][r][band] = map;
+                }
+            }
+        }
+    }
+
+    // For each Jaccard threshold level, the bands and rows that minimize the weighted sum of the false positive and false negative probabilities
+    private static int[][] tuneParameters()
+    {
+        int[][] parameters = new int[THRESHOLD_LEVELS + 1][];
+
+        for (int level = 0; level <= THRESHOLD_LEVELS; level++)
+        {
+            double threshold = (double) level / THRESHOLD_LEVELS, bestError = Double.MAX_VALUE;
+
+            for (int r = 0; r < ROWS.length; r++)
+            {
+                for (int bands = 1; bands <= SIGNATURE_SIZE / ROWS[r]; bands++)
+                {
+                    double error = falsePositives(threshold, bands, ROWS[r]) + FALSE_NEGATIVE_WEIGHT * falseNegatives(threshold, bands, ROWS[r]);
+
+                    if (error < bestError)
+                    {
+                        bestError = error;
+                        parameters[level] = new int[]{bands, r};
+                    }
+                }
+            }
+        }
+
+        return parameters;
+    }
+
+    // Probability that a set of Jaccard similarity s shares at least one band with the query
+    private static double collision(double s, int bands, int rows)
+    {
+        return 1 - Math.pow(1 - Math.pow(s, rows), bands);
+    }
+
+    private static double falsePositives(double threshold, int bands, int rows)
+    {
+        double step = threshold / INTEGRATION_STEPS, area = 0;
+
+        for (int i = 0; i < INTEGRATION_STEPS; i++)
+        {
+            area += collision((i + 0.5) * step, bands, rows) * step;
+        }
+
+        return area;
+    }
+
+    private static double falseNegatives(double threshold, int bands, int rows)
+    {
+        double step = (1 - threshold) / INTEGRATION_STEPS, area = 0;
+
+        for (int i = 0; i < INTEGRATION_STEPS; i++)
+        {
+            area += (1 - collision(threshold + (i + 0.5) * step, bands, rows)) * step;
+        }
+
+        return area;
+    }
+
+    /**
+     * Finds the tables with a column whose set is estimated to contain at least a fraction of a query set
+     * Partitions whose columns are all too small to reach the threshold are skipped
+     * Candidates found in the buckets are pruned by the containment estimated from the agreement of their signature with the query signature
+     * @param query Element keys of the query set as returned by elements()
+     * @param threshold Containment threshold between 0 and 1
+     * @return Largest estimated containment of the query set in a column of each candidate table, keyed by the position of the table in the
+     *         table dictionary of the entity-table link index
+     */
+    public Map<Integer, Double> search(int[] query, double threshold)
+    {
+        Map<Integer, Double> tables = new HashMap<>();
+
+        if (query.length == 0 || this.columnTables.length == 0)
+            return tables;
+
+        int[] signature = signature(query);
+        double querySize = query.length;
+        BitSet candidates = new BitSet(this.columnTables.length);
+
+        for (int partition = 0; partition < this.partitionStarts.length - 1; partition++)
+        {
+            int start = this.partitionStarts[partition], end = this.partitionStarts[partition + 1];
+
+            if (start == end || this.columnSizes[end - 1] < threshold * querySize)
+                continue;
+
+            // Jaccard similarity of a query with containment equal to the threshold in a set as large as the largest set of the partition
+            double upper = this.columnSizes[end - 1];
+            double jaccard = threshold * querySize / (querySize + upper - threshold * querySize);
+            int[] parameters = PARAMETERS[(int) Math.round(Math.min(1, Math.max(0, jaccard)) * THRESHOLD_LEVELS)];
+            int rows = ROWS[parameters[1]];
+
+            for (int band = 0; band < parameters[0]; band++)
+            {
+                this.buckets[partition][parameters[1]][band].forEach(bandKey(signature, band * rows, rows), candidates::set);
+            }
+        }
+
+        for (int column = candidates.nextSetBit(0); column >= 0; column = candidates.nextSetBit(column + 1))
+        {
+            double containment = containment(signature, column, querySize);
+
+            if (containment >= threshold)
+                tables.merge(this.columnTables[column], containment, Math::max);
+        }
+
+        return tables;
+    }
+
+    // Converts the Jaccard similarity estimated by the signatures into containment, which can at most be the size of the column relative to the query
+    private double containment(int[] signature, int column, double querySize)
+    {
+        int agreements = 0, offset = column * SIGNATURE_SIZE;
+
+        for (int i = 0; i < SIGNATURE_SIZE; i++)
+        {
+            if (signature[i] == this.signatures[offset + i])
+                agreements++;
+        }
+
+        double jaccard = (double) agreements / SIGNATURE_SIZE, size = this.columnSizes[column];
+        return Math.min(Math.min(1, size / querySize), jaccard * (querySize + size) / (querySize * (1 + jaccard)));
+    }
+
+    public Elements elements()
+    {
+        return this.elements;
+    }
+
+    /**
+     * @return Number of indexed columns
+     */
+    public int columnCount()
+    {
+        return this.columnTables.length;
+    }
+
+    /**
+     * @return Number of partitions of columns by the size of their sets
+     */
+    public int partitionCount()
+    {
+        return this.partitionStarts.length - 1;
+    }
+
+    /**
+     * Writes the signatures of the index to a segment
+     * @param writer Writer of segment of kind CONTAINMENT_LSH
+     */
+    public void writeSegment(SegmentWriter writer) throws IOException
+    {
+        writer.writeInt(this.elements.ordinal());
+        writer.writeInt(this.seed);
+        writer.writeInt(this.columnTables.length);
+        writer.writeInts(this.columnTables, 0, this.columnTables.length);
+        writer.writeInts(this.columnSizes, 0, this.columnSizes.length);
+        writer.writeInts(this.signatures, 0, this.signatures.length);
+        writer.writeInt(this.partitionStarts.length);
+        writer.writeInts(this.partitionStarts, 0, this.partitionStarts.length);
+    }
+
+    /**
+     * Reads the index from a segment and rebuilds its buckets
+     * @param reader Reader of segment of kind CONTAINMENT_LSH
+     */
+    public static ContainmentLSHIndex readSegment(SegmentReader reader) throws IOException
+    {
+        ContainmentLSHIndex index = new ContainmentLSHIndex();
+        index.elements = Elements.values()[reader.readInt()];
+        index.seed = reader.readInt();
+        index.createHashFunctions();
+
+        int columns = reader.readInt();
+        index.columnTables = new int[columns];
+        index.columnSizes = new int[columns];
+        index.signatures = new int[columns * SIGNATURE_SIZE];
+        reader.readInts(index.columnTables, 0, columns);
+        reader.readInts(index.columnSizes, 0, columns);
+        reader.readInts(index.signatures, 0, index.signatures.length);
+
+        index.partitionStarts = new int[reader.readInt()];
+        reader.readInts(index.partitionStarts, 0, index.partitionStarts.length);
+        index.buildBuckets();
+
+        return index;
+    }
+}
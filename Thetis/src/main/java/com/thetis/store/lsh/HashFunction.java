@@ -11,4 +11,25 @@ public interface HashFunction extends Serializable
      * @return Hash code key, which must be greater than or equal to zero and less than <code>keys</code>
      */
     int hash(Object obj, int keys);
+
+    /**
+     * Computes hash code key of a slice of a primitive array without boxing the slice
+     * The slice is reduced to the hash code of the slice as a list of integers, so the key is the same as for the list when the hash function only depends on the hash code
+     * @param values Array containing the slice
+     * @param from Start index of slice, inclusive
+     * @param to End index of slice, exclusive
+     * @param keys Number of keys
+     * @return Hash code key, which must be greater than or equal to zero and less than <code>keys</code>
+     */
+    default int hash(int[] values, int from, int to, int keys)
+    {
+        int hashCode = 1;
+
+        for (int i = from; i < to; i++)
+        {
+            hashCode = 31 * hashCode + values[i];
+        }
+
+        return hash(hashCode, keys);
+    }
 }
@@ -0,0 +1,154 @@
+package com.thetis.store.lsh;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Buckets of a bucket group as an open-addressing hash map from bucket index to a list of interned value IDs
+ * Only non-empty buckets take memory, and value IDs are stored as primitive integers
+ * Bucket indices must be non-negative
+ */
+public class IntBucketMap implements Serializable
+{
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] keys;
+    private int[][] values;
+    private int[] sizes;
+    private int count = 0;
+    private long entries = 0;
+
+    public IntBucketMap()
+    {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new int[INITIAL_CAPACITY][];
+        this.sizes = new int[INITIAL_CAPACITY];
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    // The top bits of the Fibonacci hash are the well-mixed ones, so the home slot takes as many of them as the capacity has index bits
+    private int slot(int key)
+    {
+        int mask = this.keys.length - 1, slot = (key * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+
+        while (this.keys[slot] != EMPTY && this.keys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Adds a value ID to a bucket
+     * Adding the value ID most recently added to the bucket again has no effect, as values are mostly added value by value
+     */
+    public void add(int key, int value)
+    {
+        int slot = slot(key);
+
+        if (this.keys[slot] == EMPTY)
+        {
+            if (2 * (this.count + 1) > this.keys.length)
+            {
+                grow();
+                slot = slot(key);
+            }
+
+            this.keys[slot] = key;
+            this.values[slot] = new int[2];
+            this.count++;
+        }
+
+        int size = this.sizes[slot];
+
+        if (size > 0 && this.values[slot][size - 1] == value)
+            return;
+
+        else if (size == this.values[slot].length)
+            this.values[slot] = Arrays.copyOf(this.values[slot], size * 2);
+
+        this.values[slot][size] = value;
+        this.sizes[slot]++;
+        this.entries++;
+    }
+
+    private void grow()
+    {
+        int[] oldKeys = this.keys, oldSizes = this.sizes;
+        int[][] oldValues = this.values;
+        this.keys = new int[oldKeys.length * 2];
+        this.values = new int[oldKeys.length * 2][];
+        this.sizes = new int[oldKeys.length * 2];
+        Arrays.fill(this.keys, EMPTY);
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != EMPTY)
+            {
+                int slot = slot(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+                this.sizes[slot] = oldSizes[i];
+            }
+        }
+    }
+
+    /**
+     * Passes each value ID of a bucket to a consumer
+     * A value ID may be passed more than once
+     */
+    public void forEach(int key, IntConsumer consumer)
+    {
+        int slot = slot(key);
+
+        for (int i = 0; i < this.sizes[slot]; i++)
+        {
+            consumer.accept(this.values[slot][i]);
+        }
+    }
+
+    /**
+     * @return Number of value IDs in a bucket, counting duplicates
+     */
+    public int size(int key)
+    {
+        return this.sizes[slot(key)];
+    }
+
+    /**
+     * @return Number of non-empty buckets
+     */
+    public int buckets()
+    {
+        return this.count;
+    }
+
+    /**
+     * @return Number of value IDs in all buckets
+     */
+    public long entries()
+    {
+        return this.entries;
+    }
+
+    /**
+     * Estimated memory of the map in bytes, assuming 16 byte array headers and 4 byte references
+     */
+    public long memory()
+    {
+        long bytes = 3 * 16 + 12L * this.keys.length;
+
+        for (int[] bucket : this.values)
+        {
+            if (bucket != null)
+            {
+                bytes += 16 + 4L * bucket.length;
+            }
+        }
+
+        return bytes;
+    }
+}
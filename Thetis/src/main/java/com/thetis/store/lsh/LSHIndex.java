@@ -5,9 +5,27 @@ import java.util.Set;
 
 public interface LSHIndex<K, V>
 {
+    /**
+     * LSH indexes of entities that can be built by the IndexWriter and used for pre-filtering
+     * TYPES and PREDICATES are min-hash indexes of entity types and predicates, and EMBEDDINGS is a random projection index of entity embeddings
+     */
+    enum Kind
+    {
+        TYPES, PREDICATES, EMBEDDINGS
+    }
+
     boolean insert(K key, V value);
     Set<V> search(K key);
     Set<V> search(K key, int vote);
+
+    /**
+     * Multi-probe search, which additionally visits up to <code>probes</code> neighbouring buckets per bucket group
+     * @param key Query key
+     * @param vote Minimum number of bucket groups a value must be found in
+     * @param probes Number of extra buckets to probe per bucket group
+     * @return Set of values
+     */
+    Set<V> search(K key, int vote, int probes);
     Set<V> agggregatedSearch(K ... keys);
     Set<V> agggregatedSearch(int vote, K ... keys);
     int size();
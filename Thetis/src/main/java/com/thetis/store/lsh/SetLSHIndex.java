@@ -10,14 +10,16 @@ import com.thetis.structures.graph.Type;
 import com.thetis.structures.table.Aggregator;
 import com.thetis.structures.table.ColumnAggregator;
 import com.thetis.structures.table.Table;
+import com.thetis.system.ExecutionService;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
@@ -31,18 +33,28 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
         TYPES, PREDICATES
     }
 
+    /**
+     * Computation of min-hash signatures
+     * PERMUTATIONS permutes the universe of shingles, so its memory and serialized size grow with the universe
+     * HASHING applies seeded multiply-shift hash functions to hash codes of shingles, so it only stores two seeds per signature element
+     */
+    public enum MinHash
+    {
+        PERMUTATIONS, HASHING
+    }
+
     private EntitySet setType;
     private transient Neo4jSemanticDriver neo4j;
     private int shingles, permutationVectors, bandSize;
-    private List<List<Integer>> permutations;
-    private List<PairNonComparable<Id, List<Integer>>> signature;
+    private MinHash minHash;
+    private int[][] permutations = null;
+    private long[] hashMultipliers = null, hashOffsets = null;
+    private final Map<Id, int[]> signatures = new ConcurrentHashMap<>();    // Min-hash signature of each entity
     private Map<String, Integer> universeElements;
     private HashFunction hash;
     private Random randomGen;
     private transient int threads;
-    private transient final Object lock = new Object();
     private transient EntityLinking linker = null;
-    private final Map<Id, Integer> entityToSigIndex = new HashMap<>();
     private boolean aggregateColumns;
     private Set<String> unimportantElements;
     private static final double UNIMPORTANT_TABLE_PERCENTAGE = 0.5;
@@ -58,6 +70,18 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
                        Set<PairNonComparable<String, Table<String>>> tables, HashFunction hash, int bucketGroups,
                        int bucketCount, int threads, Random randomGenerator, EntityLinking linker,
                        EntityTable entityTable, boolean aggregateColumns)
+    {
+        this(neo4j, set, permutationVectors, bandSize, shingleSize, tables, hash, bucketGroups, bucketCount, threads, randomGenerator,
+                linker, entityTable, aggregateColumns, MinHash.PERMUTATIONS);
+    }
+
+    /**
+     * @param minHash Computation of min-hash signatures
+     */
+    public SetLSHIndex(Neo4jSemanticDriver neo4j, EntitySet set, int permutationVectors, int bandSize, int shingleSize,
+                       Set<PairNonComparable<String, Table<String>>> tables, HashFunction hash, int bucketGroups,
+                       int bucketCount, int threads, Random randomGenerator, EntityLinking linker,
+                       EntityTable entityTable, boolean aggregateColumns, MinHash minHash)
     {
         super(bucketGroups, bucketCount);
 
@@ -75,7 +99,7 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
         this.neo4j = neo4j;
         this.shingles = shingleSize;
         this.permutationVectors = permutationVectors;
-        this.signature = new ArrayList<>();
+        this.minHash = minHash;
         this.bandSize = bandSize;
         this.hash = hash;
         this.threads = threads;
@@ -109,6 +133,16 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
 
     private void loadElements(EntityTable entityTable, Set<Table<String>> linkedTables, EntityLinking linker)
     {
+        this.unimportantElements = new ElementStats(entityTable, this.setType).popularByTable(UNIMPORTANT_TABLE_PERCENTAGE,
+                linkedTables, linker);
+
+        // Hashed shingles do not need element IDs
+        if (this.minHash == MinHash.HASHING)
+        {
+            this.universeElements = null;
+            return;
+        }
+
         int counter = 0;
         this.universeElements = new HashMap<>();
         Iterator<?> elements = this.setType == EntitySet.TYPES ? entityTable.allTypes() : entityTable.allPredicates();
@@ -122,14 +156,11 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
                 this.universeElements.put(element, counter++);
             }
         }
-
-        this.unimportantElements = new ElementStats(entityTable, this.setType).popularByTable(UNIMPORTANT_TABLE_PERCENTAGE,
-                linkedTables, linker);
     }
 
     /**
-     * Instead of storing actual matrix, we only store the smallest index per entity
-     * as this is all we need when computing the signature
+     * Instead of storing actual matrix, we only store the min-hash signature per entity
+     * Signatures are computed in parallel, and only the insertion into buckets is synchronized
      */
     private void build(Set<PairNonComparable<String, Table<String>>> tables) throws IOException
     {
@@ -138,20 +169,29 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
             throw new RuntimeException("No EntityLinker object has been specified");
         }
 
-        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        Executor executor = ExecutionService.compute(this.threads);
         List<Future<?>> futures = new ArrayList<>(tables.size());
-        int elementsDimension = this.universeElements.size();
 
-        for (int i = 1; i < this.shingles; i++)
+        if (this.minHash == MinHash.HASHING)
         {
-            elementsDimension = concat(elementsDimension, this.universeElements.size());
+            createHashFunctions(this.permutationVectors, this.randomGen);
         }
 
-        this.permutations = createPermutations(this.permutationVectors, ++elementsDimension, this.randomGen);
+        else
+        {
+            int elementsDimension = this.universeElements.size();
+
+            for (int i = 1; i < this.shingles; i++)
+            {
+                elementsDimension = concat(elementsDimension, this.universeElements.size());
+            }
+
+            this.permutations = createPermutations(this.permutationVectors, ++elementsDimension, this.randomGen);
+        }
 
         for (PairNonComparable<String, Table<String>> table : tables)
         {
-            futures.add(executor.submit(() -> loadTable(table)));
+            futures.add(CompletableFuture.runAsync(() -> loadTable(table), executor));
         }
 
         try
@@ -171,7 +211,6 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
     private void loadTable(PairNonComparable<String, Table<String>> table)
     {
         String tableName = table.getFirst();
-        List<PairNonComparable<Id, Set<Integer>>> matrix = new ArrayList<>();
         Table<String> t = table.getSecond();
         int rows = t.rowCount();
 
@@ -189,26 +228,19 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
             {
                 String entity = t.getRow(row).get(column);
                 Id entityId = this.linker.kgUriLookup(entity);
-                Set<Integer> entityBitVector = bitVector(entity, this.neo4j);
+                int[] signature = entityId != null ? entitySignature(entityId, entity) : null;
 
-                if (!entityBitVector.isEmpty())
+                if (signature != null)
                 {
-                    matrix.add(new PairNonComparable<>(entityId, entityBitVector));
+                    insertIntoBuckets(entityId, signature, tableName);
                 }
             }
         }
-
-        synchronized (this.lock)
-        {
-            extendSignature(this.signature, matrix, this.permutations, this.entityToSigIndex);
-        }
-
-        insertIntoBuckets(matrix, tableName);
     }
 
+    // Column signatures are only used for bucketing, so they are not stored
     private void loadByColumns(String tableName, Table<String> table)
     {
-        List<PairNonComparable<Id, Set<Integer>>> matrix = new ArrayList<>();
         Aggregator<String> aggregator = new ColumnAggregator<>(table);
         List<Set<String>> aggregatedColumns =
                 aggregator.aggregate(cell -> elements(cell, this.neo4j),
@@ -220,57 +252,82 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
 
         for (Set<String> column : aggregatedColumns)
         {
-            if (!column.isEmpty())
-            {
-                Set<Integer> bitVector = bitVector(column);
+            int[] signature = signature(column);
 
-                if (!bitVector.isEmpty())
-                {
-                    matrix.add(new PairNonComparable<>(Id.alloc(), bitVector));
-                }
+            if (signature != null)
+            {
+                insertIntoBuckets(Id.alloc(), signature, tableName);
             }
         }
+    }
 
-        synchronized (this.lock)
+    private void insertIntoBuckets(Id entityId, int[] signature, String tableName)
+    {
+        int[] keys = createKeys(this.bandSize, signature, groupSize(), this.hash);
+
+        for (int group = 0; group < keys.length; group++)
         {
-            extendSignature(this.signature, matrix, this.permutations, this.entityToSigIndex);
+            add(group, keys[group], entityId, tableName);
         }
-
-        insertIntoBuckets(matrix, tableName);
     }
 
-    private void insertIntoBuckets(List<PairNonComparable<Id, Set<Integer>>> matrix, String tableName)
+    /**
+     * Signature of an entity, which is computed and stored the first time the entity is seen
+     * @return Min-hash signature or null if the entity has no elements
+     */
+    private int[] entitySignature(Id entityId, String entity)
     {
-        Set<Integer> newSignatures = matrix.stream().map(e -> this.entityToSigIndex.get(e.getFirst())).collect(Collectors.toSet());
+        int[] signature = this.signatures.get(entityId);
 
-        for (int entityIdx : newSignatures)
+        if (signature != null)
         {
-            List<Integer> keys = createKeys(this.permutations.size(), this.bandSize,
-                    this.signature.get(entityIdx).getSecond(), groupSize(), this.hash);
-            int keysCount = keys.size();
-            Id entityId = this.signature.get(entityIdx).getFirst();
+            return signature;
+        }
 
-            for (int group = 0; group < keysCount; group++)
-            {
-                synchronized (this.lock)
-                {
-                    add(group, keys.get(group), entityId, tableName);
-                }
-            }
+        signature = signature(elements(entity, this.neo4j));
+
+        if (signature == null)
+        {
+            return null;
         }
+
+        int[] existing = this.signatures.putIfAbsent(entityId, signature);
+        return existing != null ? existing : signature;
     }
 
-    private Set<Integer> bitVector(String entity, Neo4jSemanticDriver neo4j)
+    /**
+     * Min-hash signature of a set of elements
+     * @return Signature or null if the set has no shingles
+     */
+    private int[] signature(Set<String> elements)
     {
-        Set<String> elements = elements(entity, neo4j);
-        return bitVector(elements);
+        return signature(elements, null, null);
     }
 
-    private Set<Integer> bitVector(Set<String> elements)
+    /**
+     * Min-hash signature of a set of elements, which also finds the runner-up of each min-hash value
+     * A similar set that misses the minimum shingle has the runner-up instead, which is the more likely the closer it is to the minimum
+     * @param alternatives Receives the runner-up value of each signature position, or null
+     * @param margins Receives the gap between the minimum and the runner-up of each signature position, infinite if there is no runner-up, or null
+     * @return Signature or null if the set has no shingles
+     */
+    private int[] signature(Set<String> elements, int[] alternatives, double[] margins)
     {
         elements = elements.stream().filter(e -> !this.unimportantElements.contains(e) &&
-                    this.universeElements.containsKey(e)).collect(Collectors.toSet());
+                (this.universeElements == null || this.universeElements.containsKey(e))).collect(Collectors.toSet());
         Set<List<String>> shingles = ElementShingles.shingles(elements, this.shingles);
+
+        if (shingles.isEmpty())
+        {
+            return null;
+        }
+
+        return this.minHash == MinHash.HASHING ? hashSignature(shingles, alternatives, margins) :
+                permutationSignature(bitVector(shingles), alternatives, margins);
+    }
+
+    private Set<Integer> bitVector(Set<List<String>> shingles)
+    {
         Set<Integer> indices = new HashSet<>();
 
         for (List<String> shingle : shingles)
@@ -291,111 +348,154 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
         return indices;
     }
 
-    private synchronized Set<String> elements(String entity, Neo4jSemanticDriver neo4j)
+    // Neo4J connectors open a session per lookup, so lookups of concurrently loaded tables run in parallel without the index monitor
+    private Set<String> elements(String entity, Neo4jSemanticDriver neo4j)
     {
         return new HashSet<>(this.setType == EntitySet.TYPES ? neo4j.searchTypes(entity) : neo4j.searchPredicates(entity));
     }
 
-    private static List<List<Integer>> createPermutations(int vectors, int dimension, Random random)
+    private static int[][] createPermutations(int vectors, int dimension, Random random)
     {
-        List<List<Integer>> permutations = new ArrayList<>();
-        Set<Integer> indices = new HashSet<>(dimension);
-
-        for (int i = 0; i < dimension; i++)
-        {
-            indices.add(i);
-        }
+        int[][] permutations = new int[vectors][];
 
         for (int i = 0; i < vectors; i++)
         {
-            List<Integer> permutation = new ArrayList<>(indices);
-            Collections.shuffle(permutation, random);
-            permutations.add(permutation);
+            int[] permutation = new int[dimension];
+
+            for (int j = 0; j < dimension; j++)
+            {
+                permutation[j] = j;
+            }
+
+            for (int j = dimension - 1; j > 0; j--)
+            {
+                int k = random.nextInt(j + 1), tmp = permutation[j];
+                permutation[j] = permutation[k];
+                permutation[k] = tmp;
+            }
+
+            permutations[i] = permutation;
         }
 
         return permutations;
     }
 
-    private static List<PairNonComparable<Id, List<Integer>>> extendSignature(List<PairNonComparable<Id, List<Integer>>> signature,
-                                                                     List<PairNonComparable<Id, Set<Integer>>> entityMatrix,
-                                                                     List<List<Integer>> permutations,
-                                                                     Map<Id, Integer> entityToSigIdx)
+    private int[] permutationSignature(Set<Integer> bitVector, int[] alternatives, double[] margins)
     {
-        for (PairNonComparable<Id, Set<Integer>> entity : entityMatrix)
+        int[] signature = new int[this.permutations.length];
+
+        for (int i = 0; i < signature.length; i++)
         {
-            List<Integer> entitySignature;
-            Id entityId = entity.getFirst();
+            int[] permutation = this.permutations[i];
+            int smallest = Integer.MAX_VALUE, runnerUp = Integer.MAX_VALUE;
 
-            if (!entityToSigIdx.containsKey(entityId))
+            for (int idx : bitVector)
             {
-                Set<Integer> bitVector = entity.getSecond();
+                int value = permutation[idx];
 
-                if (bitVector.isEmpty())
+                if (value < smallest)
                 {
-                    entitySignature = new ArrayList<>(Collections.nCopies(permutations.size(), 0));
+                    runnerUp = smallest;
+                    smallest = value;
                 }
 
-                else
+                else if (value < runnerUp)
                 {
-                    entitySignature = new ArrayList<>(permutations.size());
-
-                    for (List<Integer> permutation : permutations)
-                    {
-                        int reArrangedMin = reArrangeMin(bitVector, permutation);
-                        entitySignature.add(permutation.get(reArrangedMin));
-                    }
+                    runnerUp = value;
                 }
+            }
 
-                signature.add(new PairNonComparable<>(entity.getFirst(), entitySignature));
-                entityToSigIdx.put(entityId, signature.size() - 1);
+            signature[i] = permutation[smallest];
+
+            if (alternatives != null)
+            {
+                boolean hasRunnerUp = runnerUp != Integer.MAX_VALUE;
+                alternatives[i] = hasRunnerUp ? permutation[runnerUp] : signature[i];
+                margins[i] = hasRunnerUp ? runnerUp - smallest : Double.POSITIVE_INFINITY;
             }
         }
 
         return signature;
     }
 
-    private static int reArrangeMin(Set<Integer> bitVector, List<Integer> permutation)
+    // Multiply-shift hashing of 64-bit keys needs an odd multiplier, and the offset makes the family pairwise independent
+    private void createHashFunctions(int functions, Random random)
     {
-        Iterator<Integer> iter = bitVector.iterator();
-        int smallest = Integer.MAX_VALUE;
+        this.hashMultipliers = new long[functions];
+        this.hashOffsets = new long[functions];
+
+        for (int i = 0; i < functions; i++)
+        {
+            this.hashMultipliers[i] = random.nextLong() | 1;
+            this.hashOffsets[i] = random.nextLong();
+        }
+    }
+
+    private int[] hashSignature(Set<List<String>> shingles, int[] alternatives, double[] margins)
+    {
+        long[] shingleKeys = new long[shingles.size()];
+        int count = 0;
+
+        for (List<String> shingle : shingles)
+        {
+            shingleKeys[count++] = shingleKey(shingle);
+        }
+
+        int[] signature = new int[this.hashMultipliers.length];
 
-        while (iter.hasNext())
+        for (int i = 0; i < signature.length; i++)
         {
-            int idx = iter.next();
-            int permuted = permutation.get(idx);
+            long a = this.hashMultipliers[i], b = this.hashOffsets[i];
+            int smallest = Integer.MAX_VALUE, runnerUp = Integer.MAX_VALUE;
 
-            if (permuted < smallest)
+            for (long key : shingleKeys)
             {
-                smallest = permuted;
+                int value = (int) ((a * key + b) >>> 33);
+
+                if (value < smallest)
+                {
+                    runnerUp = smallest;
+                    smallest = value;
+                }
+
+                else if (value < runnerUp && value != smallest)
+                {
+                    runnerUp = value;
+                }
+            }
+
+            signature[i] = smallest;
+
+            if (alternatives != null)
+            {
+                boolean hasRunnerUp = runnerUp != Integer.MAX_VALUE;
+                alternatives[i] = hasRunnerUp ? runnerUp : smallest;
+                margins[i] = hasRunnerUp ? (double) runnerUp - smallest : Double.POSITIVE_INFINITY;
             }
         }
 
-        return smallest;
+        return signature;
     }
 
-    private int createOrGetSignature(String entity)
+    // Shingles are sets of elements, so the key does not depend on the order of the elements
+    private static long shingleKey(List<String> shingle)
     {
-        Id entityId = this.linker.kgUriLookup(entity);
+        int[] hashes = new int[shingle.size()];
 
-        if (entityId == null)
+        for (int i = 0; i < hashes.length; i++)
         {
-            throw new RuntimeException("Entity does not exist in EntityLinker object");
+            hashes[i] = shingle.get(i).hashCode();
         }
 
-        Set<Integer> entityBitVector = bitVector(entity, this.neo4j);
-        return createOrGetSignature(entityId, entityBitVector);
-    }
+        Arrays.sort(hashes);
+        long key = 0;
 
-    private int createOrGetSignature(Id entityId, Set<Integer> bitVector)
-    {
-        if (bitVector.isEmpty())
+        for (int hash : hashes)
         {
-            return -1;
+            key = (key ^ hash) * 0x9E3779B97F4A7C15L;
         }
 
-        extendSignature(this.signature, List.of(new PairNonComparable<>(entityId, bitVector)),
-                this.permutations, this.entityToSigIndex);
-        return this.entityToSigIndex.get(entityId);
+        return key ^ (key >>> 29);
     }
 
     /**
@@ -421,24 +521,14 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
 
         try
         {
-            int entitySignature = createOrGetSignature(entity);
+            int[] signature = entitySignature(entityId, entity);
 
-            if (entitySignature == -1)
+            if (signature == null)
             {
                 return false;
             }
 
-            List<Integer> bucketKeys = createKeys(this.permutations.size(), this.bandSize,
-                    this.signature.get(entitySignature).getSecond(), groupSize(), this.hash);
-
-            for (int group = 0; group < bucketKeys.size(); group++)
-            {
-                synchronized (this.lock)
-                {
-                    add(group, bucketKeys.get(group), entityId, table);
-                }
-            }
-
+            insertIntoBuckets(entityId, signature, table);
             return true;
         }
 
@@ -458,18 +548,57 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
      * Finds buckets of similar entities and returns tables contained
      * @param entity Query entity
      * @param vote Number of duplicated per table for the table to be included in the result set
-     * @return Set of tables
+     * @return Set of tables, which is empty if the entity is not linked
      */
     @Override
     public Set<String> search(String entity, int vote)
     {
-        int entitySignatureIdx = createOrGetSignature(entity);
+        Id entityId = this.linker.kgUriLookup(entity);
+
+        if (entityId == null)
+        {
+            return new HashSet<>();
+        }
+
+        int[] signature = entitySignature(entityId, entity);
+
+        if (signature != null)
+        {
+            return super.search(createKeys(this.bandSize, signature, groupSize(), this.hash), vote);
+        }
+
+        return new HashSet<>();
+    }
+
+    /**
+     * Multi-probe search that additionally probes the buckets of the bands with the min-hash values closest to their runner-up replaced by the runner-up
+     * The runner-ups are not stored, so the elements of the query entity are looked up again
+     * @param entity Query entity
+     * @param vote Number of duplicated per table for the table to be included in the result set
+     * @param probes Number of extra buckets to probe per bucket group, each replacing one min-hash value of the band
+     * @return Set of tables, which is empty if the entity is not linked
+     */
+    @Override
+    public Set<String> search(String entity, int vote, int probes)
+    {
+        if (probes <= 0)
+        {
+            return search(entity, vote);
+        }
+
+        else if (this.linker.kgUriLookup(entity) == null)
+        {
+            return new HashSet<>();
+        }
+
+        int signatureSize = this.minHash == MinHash.HASHING ? this.hashMultipliers.length : this.permutations.length;
+        int[] alternatives = new int[signatureSize];
+        double[] margins = new double[signatureSize];
+        int[] signature = signature(elements(entity, this.neo4j), alternatives, margins);
 
-        if (entitySignatureIdx != -1)
+        if (signature != null)
         {
-            List<Integer> keys = createKeys(this.permutations.size(), this.bandSize,
-                    this.signature.get(entitySignatureIdx).getSecond(), groupSize(), this.hash);
-            return super.search(keys, vote);
+            return super.search(createProbeKeys(this.bandSize, signature, alternatives, margins, probes, groupSize(), this.hash), vote);
         }
 
         return new HashSet<>();
@@ -502,14 +631,11 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
             mergedTypes.addAll(this.neo4j.searchTypes(key));
         }
 
-        Set<Integer> aggregatedBitVector = bitVector(mergedTypes);
-        int signatureIdx = createOrGetSignature(Id.alloc(), aggregatedBitVector);
+        int[] signature = signature(mergedTypes);
 
-        if (signatureIdx != -1)
+        if (signature != null)
         {
-            List<Integer> bandKeys = createKeys(this.permutations.size(), this.bandSize,
-                    this.signature.get(signatureIdx).getSecond(), groupSize(), this.hash);
-            return super.search(bandKeys, vote);
+            return super.search(createKeys(this.bandSize, signature, groupSize(), this.hash), vote);
         }
 
         return new HashSet<>();
@@ -2,21 +2,23 @@ package com.thetis.store.lsh;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.thetis.similarity.SimilarityKernels;
+import com.thetis.store.EmbeddingsIndex;
+import com.thetis.store.EmbeddingsMatrix;
 import com.thetis.store.EntityLinking;
-import com.thetis.connector.DBDriver;
-import com.thetis.connector.Factory;
 import com.thetis.structures.Id;
 import com.thetis.structures.PairNonComparable;
 import com.thetis.structures.table.Aggregator;
 import com.thetis.structures.table.ColumnAggregator;
 import com.thetis.structures.table.Table;
+import com.thetis.system.ExecutionService;
 import com.thetis.utilities.Utils;
 
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.random.RandomGenerator;
 
@@ -26,26 +28,27 @@ import java.util.random.RandomGenerator;
  */
 public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<String, String>, Serializable
 {
-    private Set<List<Double>> projections;
+    private float[][] projections;
+    private transient double[] projectionNorms = null;
     private int bandSize;
     private boolean aggregateColumns;
     private transient int threads;
-    private transient final Object lock = new Object();
     private transient EntityLinking linker = null;
     private HashFunction hash;
     private RandomGenerator randomGen;
-    private transient DBDriver<List<Double>, String> embeddingsDB;
-    private transient Cache<Id, List<Integer>> cache;
+    private transient EmbeddingsIndex<Id> embeddingsIdx;
+    private transient Cache<Id, int[]> cache;
 
     /**
      * @param bucketCount Number of LSH index buckets
      * @param projections Number of projections, which determines hash size
      * @param tables Set of tables containing entities to be loaded
      * @param hash Hash function applied to bit vector representations of entities
+     * @param embeddingsIdx Index of entity embeddings
      */
     public VectorLSHIndex(int bucketGroups, int bucketCount, int projections, int bandSize,
                           Set<PairNonComparable<String, Table<String>>> tables, int threads, EntityLinking linker,
-                          HashFunction hash, RandomGenerator randomGenerator, DBDriver<List<Double>, String> embeddingsDB, boolean aggregateColumns)
+                          HashFunction hash, RandomGenerator randomGenerator, EmbeddingsIndex<Id> embeddingsIdx, boolean aggregateColumns)
     {
         super(bucketGroups, bucketCount);
         this.bandSize = bandSize;
@@ -53,7 +56,7 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
         this.linker = linker;
         this.hash = hash;
         this.randomGen = randomGenerator;
-        this.embeddingsDB = embeddingsDB;
+        this.embeddingsIdx = embeddingsIdx;
         this.aggregateColumns = aggregateColumns;
         this.cache = CacheBuilder.newBuilder().maximumSize(500).build();
         load(tables, projections);
@@ -64,14 +67,14 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
         this.linker = linker;
     }
 
-    public void useEmbeddingsDB(DBDriver<List<Double>, String> embeddingsDB)
+    public void useEmbeddingsIndex(EmbeddingsIndex<Id> embeddingsIdx)
     {
-        this.embeddingsDB = embeddingsDB;
+        this.embeddingsIdx = embeddingsIdx;
     }
 
     private void load(Set<PairNonComparable<String, Table<String>>> tables, int projections)
     {
-        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        Executor executor = ExecutionService.compute(this.threads);
         List<Future<?>> futures = new ArrayList<>(tables.size());
 
         if (tables.isEmpty())
@@ -79,7 +82,7 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
             throw new RuntimeException("No tables to load LSH index of embeddings");
         }
 
-        int dimension = embeddingsDimension(tables.iterator().next().getSecond(), this.embeddingsDB);
+        int dimension = this.embeddingsIdx.getMatrix().dimension();
 
         if (dimension == -1)
         {
@@ -90,7 +93,7 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
 
         for (PairNonComparable<String, Table<String>> table : tables)
         {
-            futures.add(executor.submit(() -> loadTable(table, this.embeddingsDB)));
+            futures.add(CompletableFuture.runAsync(() -> loadTable(table), executor));
         }
 
         try
@@ -107,15 +110,16 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
         }
     }
 
-    private void loadTable(PairNonComparable<String, Table<String>> table, DBDriver<List<Double>, String> embeddingsDB)
+    private void loadTable(PairNonComparable<String, Table<String>> table)
     {
         String tableName = table.getFirst();
         Table<String> t = table.getSecond();
         int rows = t.rowCount();
+        EmbeddingsMatrix embeddings = this.embeddingsIdx.getMatrix();
 
         if (this.aggregateColumns)
         {
-            loadByColumns(tableName, t, embeddingsDB);
+            loadByColumns(tableName, t);
             return;
         }
 
@@ -124,130 +128,170 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
             for (int column = 0; column < t.getRow(row).size(); column++)
             {
                 String entity = t.getRow(row).get(column);
-                List<Double> embedding;
                 Id entityId = this.linker.kgUriLookup(entity);
-                List<Integer> keys;
+                int[] keys;
 
-                if ((keys = this.cache.getIfPresent(entityId)) != null)
+                if (entityId == null || !embeddings.contains(entityId))
                 {
-                    insertEntity(entityId, keys, tableName);
                     continue;
                 }
 
-                synchronized (this.lock)
+                else if ((keys = this.cache.getIfPresent(entityId)) != null)
                 {
-                    embedding = embeddingsDB.select(entity);
-
-                    if (embedding == null)
-                    {
-                        continue;
-                    }
+                    insertEntity(entityId, keys, tableName);
+                    continue;
                 }
 
-                List<Integer> bitVector = bitVector(embedding);
-                keys = createKeys(this.projections.size(), this.bandSize, bitVector, groupSize(), this.hash);
+                keys = createKeys(this.bandSize, bitVector(entityId), groupSize(), this.hash);
                 this.cache.put(entityId, keys);
                 insertEntity(entityId, keys, tableName);
             }
         }
     }
 
-    private void loadByColumns(String tableName, Table<String> table, DBDriver<List<Double>, String> embeddingsDB)
+    private void loadByColumns(String tableName, Table<String> table)
     {
         Aggregator<String> aggregator = new ColumnAggregator<>(table);
         List<List<Double>> aggregatedColumns =
-                aggregator.aggregate(embeddingsDB::select,
+                aggregator.aggregate(this::embedding,
                         coll -> Utils.averageVector(new ArrayList<>(coll)));
 
         for (List<Double> averageEmbedding : aggregatedColumns)
         {
-            List<Integer> bitVector = bitVector(averageEmbedding);
-            List<Integer> keys = createKeys(this.projections.size(), this.bandSize, bitVector, groupSize(), this.hash);
+            if (averageEmbedding.isEmpty())
+            {
+                continue;
+            }
+
+            int[] keys = createKeys(this.bandSize, bitVector(EmbeddingsMatrix.toPrimitive(averageEmbedding)), groupSize(), this.hash);
             insertEntity(Id.any(), keys, tableName);
         }
     }
 
-    private void insertEntity(Id entityId, List<Integer> keys, String tableName)
+    private void insertEntity(Id entityId, int[] keys, String tableName)
     {
-        for (int group = 0; group < keys.size(); group++)
+        for (int group = 0; group < keys.length; group++)
         {
-            synchronized (this.lock)
-            {
-                add(group, keys.get(group), entityId, tableName);
-            }
+            add(group, keys[group], entityId, tableName);
         }
     }
 
-    private int embeddingsDimension(Table<String> table, DBDriver<List<Double>, String> embeddingsDB)
+    private List<Double> embedding(String entity)
     {
-        int dimension = -1;
-
-        for (int row = 0; row < table.rowCount(); row++)
-        {
-            for (int column = 0; column < table.getRow(row).size(); column++)
-            {
-                List<Double> embedding = embeddingsDB.select(table.getRow(row).get(column));
-
-                if (embedding != null && !embedding.isEmpty())
-                {
-                    return embedding.size();
-                }
-            }
-        }
-
-        return dimension;
+        Id entityId = this.linker.kgUriLookup(entity);
+        return entityId != null ? this.embeddingsIdx.find(entityId) : null;
     }
 
-    private static Set<List<Double>> createProjections(int num, int dimension, RandomGenerator random)
+    private static float[][] createProjections(int num, int dimension, RandomGenerator random)
     {
-        Set<List<Double>> projections = new HashSet<>();
+        float[][] projections = new float[num][dimension];
         double min = -1.0, max = 1.0;
 
         for (int i = 0; i < num; i++)
         {
-            List<Double> projection = new ArrayList<>(dimension);
-
             for (int dim = 0; dim < dimension; dim++)
             {
-                projection.add(min + (max - min) * random.nextDouble());
+                projections[i][dim] = (float) (min + (max - min) * random.nextDouble());
             }
-
-            projections.add(projection);
         }
 
         return projections;
     }
 
-    private static double dot(List<Double> v1, List<Double> v2)
+    private static double dot(float[] v1, float[] v2)
     {
-        if (v1.size() != v2.size())
+        if (v1.length != v2.length)
         {
             throw new IllegalArgumentException("Vectors are not of the same dimension");
         }
 
-        double product = 0;
+        return SimilarityKernels.get().dot(v1, 0, v2, 0, v1.length);
+    }
+
+    private int[] bitVector(float[] vector)
+    {
+        int[] bitVector = new int[this.projections.length];
 
-        for (int i = 0; i < v1.size(); i++)
+        for (int i = 0; i < this.projections.length; i++)
         {
-            product += v1.get(i) * v2.get(i);
+            bitVector[i] = dot(this.projections[i], vector) > 0 ? 1 : 0;
+        }
+
+        return bitVector;
+    }
+
+    /**
+     * Dot products of an entity embedding with the projections
+     * They are computed directly on the embeddings matrix, unless the index only holds quantized embeddings and the matrix is empty
+     */
+    private double[] projectionDots(Id entityId)
+    {
+        double[] dots = new double[this.projections.length];
+
+        if (this.embeddingsIdx.hasExactEmbeddings())
+        {
+            EmbeddingsMatrix embeddings = this.embeddingsIdx.getMatrix();
+
+            for (int i = 0; i < this.projections.length; i++)
+            {
+                dots[i] = embeddings.dot(entityId, this.projections[i]);
+            }
+        }
+
+        else
+        {
+            float[] embedding = this.embeddingsIdx.findPrimitive(entityId);
+
+            for (int i = 0; i < this.projections.length; i++)
+            {
+                dots[i] = dot(this.projections[i], embedding);
+            }
         }
 
-        return product;
+        return dots;
     }
 
-    private List<Integer> bitVector(List<Double> vector)
+    private int[] bitVector(Id entityId)
     {
-        List<Integer> bitVector = new ArrayList<>(this.projections.size());
+        double[] dots = projectionDots(entityId);
+        int[] bitVector = new int[dots.length];
 
-        for (List<Double> projection : this.projections)
+        for (int i = 0; i < dots.length; i++)
         {
-            double dotProduct = dot(projection, vector);
-            bitVector.add(dotProduct > 0 ? 1 : 0);
+            bitVector[i] = dots[i] > 0 ? 1 : 0;
         }
 
         return bitVector;
     }
 
+    /**
+     * Signed Euclidean distances of an entity embedding to the hyperplanes of the projections
+     * The sign determines the bit of each projection, and the bits with the smallest distances are the most likely to differ for similar entities
+     */
+    private double[] hyperplaneDistances(Id entityId)
+    {
+        double[] distances = projectionDots(entityId);
+
+        if (this.projectionNorms == null)
+        {
+            double[] norms = new double[this.projections.length];
+
+            for (int i = 0; i < norms.length; i++)
+            {
+                norms[i] = Math.sqrt(dot(this.projections[i], this.projections[i]));
+            }
+
+            this.projectionNorms = norms;
+        }
+
+        for (int i = 0; i < this.projections.length; i++)
+        {
+            distances[i] /= this.projectionNorms[i];
+        }
+
+        return distances;
+    }
+
     @Override
     public boolean insert(String entity, String table)
     {
@@ -263,16 +307,12 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
             throw new RuntimeException("Entity does not exist in specified EntityLinker object");
         }
 
-        List<Double> embedding = this.embeddingsDB.select(entity);
-        this.embeddingsDB.close();
-
-        if (embedding == null)
+        if (!this.embeddingsIdx.contains(entityId))
         {
             return false;
         }
 
-        List<Integer> bitVector = bitVector(embedding);
-        List<Integer> keys = createKeys(this.projections.size(), this.bandSize, bitVector, groupSize(), this.hash);
+        int[] keys = createKeys(this.bandSize, bitVector(entityId), groupSize(), this.hash);
         insertEntity(entityId, keys, table);
 
         return true;
@@ -287,19 +327,52 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
     @Override
     public Set<String> search(String entity, int vote)
     {
-        List<Double> embedding = this.embeddingsDB.select(entity);
-        this.embeddingsDB.close();
+        Id entityId = this.linker.kgUriLookup(entity);
 
-        if (embedding == null)
+        if (entityId == null || !this.embeddingsIdx.contains(entityId))
         {
             return new HashSet<>();
         }
 
-        List<Integer> searchBitVector = bitVector(embedding);
-        List<Integer> keys = createKeys(this.projections.size(), this.bandSize, searchBitVector, groupSize(), this.hash);
+        int[] keys = createKeys(this.bandSize, bitVector(entityId), groupSize(), this.hash);
         return super.search(keys, vote);
     }
 
+    /**
+     * Multi-probe search that additionally probes the buckets of the bands with the bits of the smallest projection margins flipped
+     * @param entity Query entity
+     * @param vote Minimum number of bucket groups a table must be found in
+     * @param probes Number of extra buckets to probe per bucket group, each flipping one bit of the band
+     * @return Set of tables
+     */
+    @Override
+    public Set<String> search(String entity, int vote, int probes)
+    {
+        if (probes <= 0)
+        {
+            return search(entity, vote);
+        }
+
+        Id entityId = this.linker.kgUriLookup(entity);
+
+        if (entityId == null || !this.embeddingsIdx.contains(entityId))
+        {
+            return new HashSet<>();
+        }
+
+        double[] distances = hyperplaneDistances(entityId), margins = new double[distances.length];
+        int[] bitVector = new int[distances.length], flipped = new int[distances.length];
+
+        for (int i = 0; i < distances.length; i++)
+        {
+            bitVector[i] = distances[i] > 0 ? 1 : 0;
+            flipped[i] = 1 - bitVector[i];
+            margins[i] = Math.abs(distances[i]);
+        }
+
+        return super.search(createProbeKeys(this.bandSize, bitVector, flipped, margins, probes, groupSize(), this.hash), vote);
+    }
+
     @Override
     public Set<String> agggregatedSearch(String ... keys)
     {
@@ -313,7 +386,7 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
 
         for (String key : keys)
         {
-            List<Double> embedding = this.embeddingsDB.select(key);
+            List<Double> embedding = embedding(key);
 
             if (embedding != null)
             {
@@ -321,9 +394,13 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
             }
         }
 
+        if (keyEmbeddings.isEmpty())
+        {
+            return new HashSet<>();
+        }
+
         List<Double> averageEmbedding = Utils.averageVector(keyEmbeddings);
-        List<Integer> bitVector = bitVector(averageEmbedding);
-        List<Integer> bandKeys = createKeys(this.projections.size(), this.bandSize, bitVector, groupSize(), this.hash);
+        int[] bandKeys = createKeys(this.bandSize, bitVector(EmbeddingsMatrix.toPrimitive(averageEmbedding)), groupSize(), this.hash);
         return super.search(bandKeys, vote);
     }
 }
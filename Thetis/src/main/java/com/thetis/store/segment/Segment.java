@@ -0,0 +1,26 @@
+package com.thetis.store.segment;
+
+/**
+ * Versioned binary segment format of on-disk indexes, which replaces Java serialization but is decoded into heap structures when read
+ * A segment file starts with a header of a magic number, the format version and the kind of index stored in the segment
+ * The remaining file is index specific and consists of integers, varints, floats and front-coded blocks of sorted strings
+ */
+public final class Segment
+{
+    public static final int MAGIC = 0x54485347;    // "THSG"
+    public static final int VERSION = 3;
+
+    /**
+     * Number of strings in a string block
+     * The first string of a block is stored in full, and the remaining strings only store the suffix not shared with the previous string
+     * Each string is preceded by the varint lengths of the shared prefix and the suffix
+     */
+    public static final int STRING_BLOCK_SIZE = 16;
+
+    public enum Kind
+    {
+        ENTITY_LINKING, ENTITY_TABLE_LINK, EMBEDDINGS, LINKED_TABLES, QUANTIZED_EMBEDDINGS, TABLE_HNSW, CONTAINMENT_LSH, ENTITY_TABLE
+    }
+
+    private Segment() {}
+}
@@ -0,0 +1,248 @@
+package com.thetis.store.segment;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sequential reader of a segment file memory mapped with FileChannel.map
+ * The file is mapped in windows, so segments larger than what a single mapping can hold are supported
+ * Indexes are decoded from the mapping into heap structures, so the mapping only avoids Java deserialization and is released when the reader is closed
+ */
+public class SegmentReader implements Closeable
+{
+    /**
+     * Decoding of an index from a segment
+     */
+    @FunctionalInterface
+    public interface Decoder<T>
+    {
+        T decode(SegmentReader reader) throws IOException;
+    }
+
+    private static final long DEFAULT_WINDOW = 1L << 30;
+
+    private final FileChannel channel;
+    private final long fileSize, window;
+    private long windowStart = 0;
+    private MappedByteBuffer buffer;
+
+    /**
+     * Maps the segment file and validates the segment header
+     * @param file Segment file
+     * @param kind Expected kind of index in the segment
+     * @throws IOException If the file is not a segment of the expected kind and version
+     */
+    public SegmentReader(File file, Segment.Kind kind) throws IOException
+    {
+        this(file, kind, DEFAULT_WINDOW);
+    }
+
+    SegmentReader(File file, Segment.Kind kind, long window) throws IOException
+    {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileSize = this.channel.size();
+        this.window = window;
+
+        try
+        {
+            map(0);
+
+            if (readInt() != Segment.MAGIC)
+            {
+                throw new IOException("'" + file + "' is not an index segment");
+            }
+
+            int version = readInt();
+
+            if (version != Segment.VERSION)
+            {
+                throw new IOException("Segment '" + file + "' has version " + version + " but version " + Segment.VERSION + " is expected");
+            }
+
+            int kindOrdinal = readInt();
+
+            if (kindOrdinal != kind.ordinal())
+            {
+                throw new IOException("Segment '" + file + "' does not contain an index of kind " + kind);
+            }
+        }
+
+        catch (IOException e)
+        {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a segment and closes it after decoding
+     */
+    public static <T> T read(File file, Segment.Kind kind, Decoder<T> decoder) throws IOException
+    {
+        try (SegmentReader reader = new SegmentReader(file, kind))
+        {
+            return decoder.decode(reader);
+        }
+    }
+
+    private void map(long position) throws IOException
+    {
+        this.windowStart = position;
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(this.window, this.fileSize - position));
+    }
+
+    private void require(int bytes) throws IOException
+    {
+        if (this.buffer.remaining() < bytes)
+        {
+            long position = this.windowStart + this.buffer.position();
+
+            if (this.fileSize - position < bytes)
+            {
+                throw new EOFException("Segment ended earlier than expected");
+            }
+
+            map(position);
+        }
+    }
+
+    public int readInt() throws IOException
+    {
+        require(Integer.BYTES);
+        return this.buffer.getInt();
+    }
+
+    public int readVarInt() throws IOException
+    {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            require(1);
+            byte b = this.buffer.get();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint in segment");
+    }
+
+    /**
+     * Bulk read of integers into an array
+     */
+    public void readInts(int[] values, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            require(Integer.BYTES);
+            int count = Math.min(length, this.buffer.remaining() / Integer.BYTES);
+            this.buffer.asIntBuffer().get(values, offset, count);
+            this.buffer.position(this.buffer.position() + count * Integer.BYTES);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    public float readFloat() throws IOException
+    {
+        require(Float.BYTES);
+        return this.buffer.getFloat();
+    }
+
+    public double readDouble() throws IOException
+    {
+        require(Double.BYTES);
+        return this.buffer.getDouble();
+    }
+
+    /**
+     * Bulk read of floats into an array
+     */
+    public void readFloats(float[] values, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            require(Float.BYTES);
+            int count = Math.min(length, this.buffer.remaining() / Float.BYTES);
+            this.buffer.asFloatBuffer().get(values, offset, count);
+            this.buffer.position(this.buffer.position() + count * Float.BYTES);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Bulk read of bytes into an array
+     */
+    public void readBytes(byte[] bytes, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            require(1);
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads a single string
+     * @return String which may be null
+     */
+    public String readString() throws IOException
+    {
+        int length = readInt();
+
+        if (length == -1)
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        readBytes(bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a front-coded block of strings
+     * @return Strings in the order they were written
+     */
+    public List<String> readStrings() throws IOException
+    {
+        int count = readInt();
+        List<String> strings = new ArrayList<>(count);
+        byte[] previous = new byte[0];
+
+        for (int i = 0; i < count; i++)
+        {
+            int shared = readVarInt(), suffix = readVarInt();
+            byte[] bytes = new byte[shared + suffix];
+            System.arraycopy(previous, 0, bytes, 0, shared);
+            readBytes(bytes, shared, suffix);
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+            previous = bytes;
+        }
+
+        return strings;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.buffer = null;
+        this.channel.close();
+    }
+}
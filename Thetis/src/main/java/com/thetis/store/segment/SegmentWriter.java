@@ -0,0 +1,186 @@
+package com.thetis.store.segment;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Sequential writer of a segment file
+ * Data is staged in a buffer and written to the file channel when the buffer is full
+ */
+public class SegmentWriter implements Closeable
+{
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Creates or truncates the segment file and writes the segment header
+     * @param file Segment file
+     * @param kind Kind of index stored in the segment
+     */
+    public SegmentWriter(File file, Segment.Kind kind) throws IOException
+    {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeInt(Segment.MAGIC);
+        writeInt(Segment.VERSION);
+        writeInt(kind.ordinal());
+    }
+
+    private void require(int bytes) throws IOException
+    {
+        if (this.buffer.remaining() < bytes)
+        {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException
+    {
+        this.buffer.flip();
+
+        while (this.buffer.hasRemaining())
+        {
+            this.channel.write(this.buffer);
+        }
+
+        this.buffer.clear();
+    }
+
+    public void writeInt(int value) throws IOException
+    {
+        require(Integer.BYTES);
+        this.buffer.putInt(value);
+    }
+
+    /**
+     * Writes a non-negative integer in 7-bit groups, least significant group first
+     * Small integers such as deltas of sorted postings only take one or two bytes
+     */
+    public void writeVarInt(int value) throws IOException
+    {
+        require(5);
+
+        while ((value & ~0x7F) != 0)
+        {
+            this.buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        this.buffer.put((byte) value);
+    }
+
+    public void writeInts(int[] values, int offset, int length) throws IOException
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            writeInt(values[i]);
+        }
+    }
+
+    public void writeFloat(float value) throws IOException
+    {
+        require(Float.BYTES);
+        this.buffer.putFloat(value);
+    }
+
+    public void writeDouble(double value) throws IOException
+    {
+        require(Double.BYTES);
+        this.buffer.putDouble(value);
+    }
+
+    public void writeFloats(float[] values, int offset, int length) throws IOException
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            writeFloat(values[i]);
+        }
+    }
+
+    /**
+     * Bulk write of bytes from an array
+     */
+    public void writeBytes(byte[] bytes, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            require(1);
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes a single string which may be null
+     */
+    public void writeString(String str) throws IOException
+    {
+        if (str == null)
+        {
+            writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes a block of strings with front coding
+     * Strings should be sorted for shared prefixes to be removed
+     * @param strings Non-null strings, preferably sorted
+     */
+    public void writeStrings(List<String> strings) throws IOException
+    {
+        byte[] previous = new byte[0];
+        int i = 0;
+        writeInt(strings.size());
+
+        for (String str : strings)
+        {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+
+            if (i++ % Segment.STRING_BLOCK_SIZE != 0)
+            {
+                int max = Math.min(previous.length, bytes.length);
+
+                while (shared < max && previous[shared] == bytes[shared])
+                {
+                    shared++;
+                }
+            }
+
+            writeVarInt(shared);
+            writeVarInt(bytes.length - shared);
+            writeBytes(bytes, shared, bytes.length - shared);
+            previous = bytes;
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+            this.channel.force(false);
+        }
+
+        finally
+        {
+            this.channel.close();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.thetis.structures;
 import com.thetis.system.Configuration;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ID of entities
@@ -11,25 +12,58 @@ import java.io.Serializable;
  */
 public class Id implements Serializable, Comparable<Id>
 {
+    /**
+     * IDs are reserved in blocks, and only the end of the reserved block is stored in the configuration file
+     * On shutdown, the largest allocated ID is stored instead, so unused IDs of the last block are not lost
+     */
     private static class IdAllocator
     {
-        private static int allocatedId = -1;
+        private static final int BLOCK_SIZE = 1 << 16;
+        private static final AtomicInteger nextId;
+        private static volatile int reservedId;     // Exclusive end of the reserved block
+        private static final int initialId;
+
+        static
+        {
+            String id = Configuration.getLargestId();
+            initialId = id == null ? 0 : Integer.parseInt(id) + 1;
+            nextId = new AtomicInteger(initialId);
+            reservedId = initialId;
+            Runtime.getRuntime().addShutdownHook(new Thread(IdAllocator::persist));
+        }
 
-        public Id allocId()
+        public static Id allocId()
         {
-            if (allocatedId == -1)
-            {
-                String id = Configuration.getLargestId();
+            int id = nextId.getAndIncrement();
+
+            if (id >= reservedId)
+                reserve(id);
 
-                if (id == null)
-                    allocatedId = 0;
+            return new Id(id);
+        }
 
-                else
-                    allocatedId = Integer.parseInt(id) + 1;
-            }
+        private static synchronized void reserve(int id)
+        {
+            if (id < reservedId)
+                return;
+
+            reservedId = (id / BLOCK_SIZE + 1) * BLOCK_SIZE;
+            Configuration.setLargestId(String.valueOf(reservedId - 1));
+        }
+
+        // IDs given to the constructor are taken, as they may have been allocated by another run
+        private static void observe(int id)
+        {
+            if (id >= nextId.get())
+                nextId.accumulateAndGet(id + 1, Math::max);
+        }
+
+        private static synchronized void persist()
+        {
+            int largestId = nextId.get() - 1;
 
-            Configuration.setLargestId(String.valueOf(allocatedId));
-            return Id.copy(allocatedId++);
+            if (largestId >= initialId)
+                Configuration.setLargestId(String.valueOf(largestId));
         }
     }
 
@@ -46,7 +80,7 @@ public class Id implements Serializable, Comparable<Id>
      */
     public static Id alloc()
     {
-        return new IdAllocator().allocId();
+        return IdAllocator.allocId();
     }
 
     /**
@@ -61,7 +95,7 @@ public class Id implements Serializable, Comparable<Id>
     public Id(int id)
     {
         this.id = id;
-        IdAllocator.allocatedId = id + 1;
+        IdAllocator.observe(id);
     }
 
     public int getId()
@@ -15,6 +15,7 @@ public class Entity implements Comparable<Entity>, Serializable
     private List<Type> types;
     private List<String> predicates;
     private double idf = -1;
+    private int[] typeIds = null, predicateIds = null;
 
     public Entity(String uri)
     {
@@ -49,6 +50,32 @@ public class Entity implements Comparable<Entity>, Serializable
         return this.predicates;
     }
 
+    /**
+     * @return Sorted IDs of the entity types interned by the EntityTable, or null if the entity has not been inserted into an EntityTable
+     */
+    public int[] getTypeIds()
+    {
+        return this.typeIds;
+    }
+
+    public void setTypeIds(int[] typeIds)
+    {
+        this.typeIds = typeIds;
+    }
+
+    /**
+     * @return Sorted IDs of the entity predicates interned by the EntityTable, or null if the entity has not been inserted into an EntityTable
+     */
+    public int[] getPredicateIds()
+    {
+        return this.predicateIds;
+    }
+
+    public void setPredicateIds(int[] predicateIds)
+    {
+        this.predicateIds = predicateIds;
+    }
+
     public double getIDF()
     {
         return this.idf;
@@ -0,0 +1,123 @@
+package com.thetis.structures.table;
+
+import com.thetis.store.EntityLinking;
+import com.thetis.structures.Id;
+import com.thetis.tables.JsonTable;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact representation of a table where each cell holds the ID of the KG entity it links to
+ * Cells not linking to a known entity hold NO_ENTITY
+ */
+public class LinkedTable implements Serializable
+{
+    public static final int NO_ENTITY = -1;
+
+    private final int rows, columns;
+    private final String[] headers;
+    private final int[][] entities;
+
+    /**
+     * @param rows Number of data rows as reported by the table
+     * @param columns Number of columns as reported by the table
+     * @param headers Column header texts
+     * @param entities Entity IDs per cell, indexed by row and then column
+     */
+    public LinkedTable(int rows, int columns, String[] headers, int[][] entities)
+    {
+        this.rows = rows;
+        this.columns = columns;
+        this.headers = headers;
+        this.entities = entities;
+    }
+
+    /**
+     * Constructs a linked table from a parsed JSON table
+     * Each cell is linked to the first of its links that maps to a known KG entity
+     * @param table Parsed JSON table
+     * @param linker Mapping from links to KG entities
+     * @return Linked table of entity IDs
+     */
+    public static LinkedTable fromJson(JsonTable table, EntityLinking linker)
+    {
+        String[] headers = table.headers == null ? new String[0] :
+                table.headers.stream().map(cell -> cell.text).toArray(String[]::new);
+        int[][] entities = new int[table.rows.size()][];
+
+        for (int row = 0; row < entities.length; row++)
+        {
+            List<JsonTable.TableCell> tableRow = table.rows.get(row);
+            entities[row] = new int[tableRow.size()];
+
+            for (int column = 0; column < tableRow.size(); column++)
+            {
+                entities[row][column] = NO_ENTITY;
+
+                for (String link : tableRow.get(column).links)
+                {
+                    String uri = linker.mapTo(link);
+                    Id id = uri != null ? linker.kgUriLookup(uri) : null;
+
+                    if (id != null)
+                    {
+                        entities[row][column] = id.getId();
+                        break;
+                    }
+                }
+            }
+        }
+
+        return new LinkedTable(table.numDataRows, table.numCols, headers, entities);
+    }
+
+    /**
+     * Number of data rows as reported by the table
+     */
+    public int rowCount()
+    {
+        return this.rows;
+    }
+
+    /**
+     * Number of columns as reported by the table
+     */
+    public int columnCount()
+    {
+        return this.columns;
+    }
+
+    /**
+     * Number of rows with stored cells
+     */
+    public int storedRows()
+    {
+        return this.entities.length;
+    }
+
+    public int rowSize(int row)
+    {
+        return this.entities[row].length;
+    }
+
+    public List<String> getHeaders()
+    {
+        return Arrays.asList(this.headers);
+    }
+
+    /**
+     * Entity ID of a cell
+     * @return ID of linked entity or NO_ENTITY if the cell does not link to a known entity
+     */
+    public int entity(int row, int column)
+    {
+        return this.entities[row][column];
+    }
+
+    public int[] row(int row)
+    {
+        return this.entities[row];
+    }
+}
@@ -5,6 +5,8 @@ import java.util.Properties;
 
 /**
  * Container of system configuration as well as serialization and de-serialization of system configuration
+ * The configuration is read from file once into an in-memory snapshot, which is replaced when a property is set or the configuration is reloaded
+ * Changes made to the configuration file by other processes are therefore only seen after a reload
  */
 public class Configuration
 {
@@ -60,32 +62,42 @@ public class Configuration
     }
 
     private static final File CONF_FILE = new File(".config.conf");
+    private static volatile Properties snapshot;
 
     static
     {
         addDefaults();
     }
 
+    /**
+     * Replaces the in-memory configuration by the configuration file
+     */
     public static void reloadConfiguration()
     {
         addDefaults();
     }
 
-    private static void addDefaults()
+    private static synchronized void addDefaults()
     {
         Properties props = readProperties();
 
         if (!props.contains("EntityTable"))
-            props.setProperty("EntityTable", "entity_table.ser");
+            props.setProperty("EntityTable", "entity_table.seg");
 
         if (!props.contains("EntityLinker"))
-            props.setProperty("EntityLinker", "entity_linker.ser");
+            props.setProperty("EntityLinker", "entity_linker.seg");
 
         if (!props.contains("EntityToTables"))
-            props.setProperty("EntityToTables", "entity_to_tables.ser");
+            props.setProperty("EntityToTables", "entity_to_tables.seg");
 
         if (!props.contains("EmbeddingsIndex"))
-            props.setProperty("EmbeddingsIndex", "embeddings_idx.ser");
+            props.setProperty("EmbeddingsIndex", "embeddings_idx.seg");
+
+        if (!props.contains("QuantizedEmbeddingsIndex"))
+            props.setProperty("QuantizedEmbeddingsIndex", "embeddings_int8.seg");
+
+        if (!props.contains("LinkedTables"))
+            props.setProperty("LinkedTables", "linked_tables.seg");
 
         if (!props.contains("TableToEntities"))
             props.setProperty("TableToEntities", "tableIDToEntities.ttl");
@@ -114,7 +126,32 @@ public class Configuration
         if (!props.contains("HNSW"))
             props.setProperty("HNSW", "hnsw.ser");
 
+        if (!props.contains("TableHNSW"))
+            props.setProperty("TableHNSW", "table_hnsw.seg");
+
+        if (!props.contains("TableHNSWColumns"))
+            props.setProperty("TableHNSWColumns", "table_hnsw_columns.bin");
+
+        if (!props.contains("TableHNSWRows"))
+            props.setProperty("TableHNSWRows", "table_hnsw_rows.bin");
+
+        if (!props.contains("TypesLSH"))
+            props.setProperty("TypesLSH", "types_lsh.ser");
+
+        if (!props.contains("PredicatesLSH"))
+            props.setProperty("PredicatesLSH", "predicates_lsh.ser");
+
+        if (!props.contains("EmbeddingsLSH"))
+            props.setProperty("EmbeddingsLSH", "embeddings_lsh.ser");
+
+        if (!props.contains("EntityContainment"))
+            props.setProperty("EntityContainment", "entity_containment.seg");
+
+        if (!props.contains("TypeContainment"))
+            props.setProperty("TypeContainment", "type_containment.seg");
+
         writeProperties(props);
+        snapshot = props;
     }
 
     private static synchronized Properties readProperties()
@@ -140,11 +177,19 @@ public class Configuration
         catch (FileNotFoundException e) {}
     }
 
-    private static void addProperty(String key, String value)
+    // Published snapshots are never modified, so a copy is written and then published
+    private static synchronized void addProperty(String key, String value)
     {
-        Properties properties = readProperties();
+        Properties properties = new Properties();
+        properties.putAll(snapshot);
         properties.setProperty(key, value);
         writeProperties(properties);
+        snapshot = properties;
+    }
+
+    private static String getProperty(String key)
+    {
+        return snapshot.getProperty(key);
     }
 
     public static void setDB(String db)
@@ -154,7 +199,7 @@ public class Configuration
 
     public static String getDB()
     {
-        return readProperties().getProperty("db");
+        return getProperty("db");
     }
 
     public static void setDBPath(String path)
@@ -164,7 +209,7 @@ public class Configuration
 
     public static String getDBPath()
     {
-        return readProperties().getProperty("DBPath");
+        return getProperty("DBPath");
     }
 
     public static void setDBName(String name)
@@ -174,7 +219,7 @@ public class Configuration
 
     public static String getDBName()
     {
-        return readProperties().getProperty("DBName");
+        return getProperty("DBName");
     }
 
     public static void setDBHost(String host)
@@ -184,7 +229,7 @@ public class Configuration
 
     public static String getDBHost()
     {
-        return readProperties().getProperty("DBHost");
+        return getProperty("DBHost");
     }
 
     public static void setDBPort(int port)
@@ -194,7 +239,7 @@ public class Configuration
 
     public static int getDBPort()
     {
-        return Integer.parseInt(readProperties().getProperty("DBPort"));
+        return Integer.parseInt(getProperty("DBPort"));
     }
 
     public static void setEmbeddingsDimension(int dimension)
@@ -204,7 +249,7 @@ public class Configuration
 
     public static int getEmbeddingsDimension()
     {
-        return Integer.parseInt(readProperties().getProperty("EmbeddingsDim"));
+        return Integer.parseInt(getProperty("EmbeddingsDim"));
     }
 
     public static void setDBUsername(String username)
@@ -214,7 +259,7 @@ public class Configuration
 
     public static String getDBUsername()
     {
-        return readProperties().getProperty("DBUsername");
+        return getProperty("DBUsername");
     }
 
     public static void setDBPassword(String password)
@@ -224,7 +269,7 @@ public class Configuration
 
     public static String getDBPassword()
     {
-        return readProperties().getProperty("DBPassword");
+        return getProperty("DBPassword");
     }
 
     public static void setLargestId(String id)
@@ -234,52 +279,62 @@ public class Configuration
 
     public static String getLargestId()
     {
-        return readProperties().getProperty("LargestID");
+        return getProperty("LargestID");
     }
 
     public static String getEntityTableFile()
     {
-        return readProperties().getProperty("EntityTable");
+        return getProperty("EntityTable");
     }
 
     public static String getEntityLinkerFile()
     {
-        return readProperties().getProperty("EntityLinker");
+        return getProperty("EntityLinker");
     }
 
     public static String getEntityToTablesFile()
     {
-        return readProperties().getProperty("EntityToTables");
+        return getProperty("EntityToTables");
     }
 
     public static String getEmbeddingsIndexFile()
     {
-        return readProperties().getProperty("EmbeddingsIndex");
+        return getProperty("EmbeddingsIndex");
+    }
+
+    public static String getQuantizedEmbeddingsIndexFile()
+    {
+        return getProperty("QuantizedEmbeddingsIndex");
+    }
+
+    public static String getLinkedTablesFile()
+    {
+        return getProperty("LinkedTables");
     }
 
     public static String getTableToEntitiesFile()
     {
-        return readProperties().getProperty("TableToEntities");
+        return getProperty("TableToEntities");
     }
 
     public static String getTableToTypesFile()
     {
-        return readProperties().getProperty("TableToTypes");
+        return getProperty("TableToTypes");
     }
 
     public static String getWikiLinkToEntitiesFrequencyFile()
     {
-        return readProperties().getProperty("WikiLinkToEntitiesFrequency");
+        return getProperty("WikiLinkToEntitiesFrequency");
     }
 
     public static String getCellToNumLinksFrequencyFile()
     {
-        return readProperties().getProperty("CellToNumLinksFrequency");
+        return getProperty("CellToNumLinksFrequency");
     }
 
     public static String getTableStatsFile()
     {
-        return readProperties().getProperty("TableStats");
+        return getProperty("TableStats");
     }
 
     public static void setLogLevel(Logger.Level level)
@@ -289,7 +344,7 @@ public class Configuration
 
     public static String getLogLevel()
     {
-        return readProperties().getProperty("LogLevel");
+        return getProperty("LogLevel");
     }
 
     public static void setLuceneDir(String dir)
@@ -299,16 +354,56 @@ public class Configuration
 
     public static String getLuceneDir()
     {
-        return readProperties().getProperty("LuceneDir");
+        return getProperty("LuceneDir");
     }
 
     public static String getHNSWParamsFile()
     {
-        return readProperties().getProperty("HNSWParams");
+        return getProperty("HNSWParams");
     }
 
     public static String getHNSWFile()
     {
-        return readProperties().getProperty("HNSW");
+        return getProperty("HNSW");
+    }
+
+    public static String getTableHNSWFile()
+    {
+        return getProperty("TableHNSW");
+    }
+
+    public static String getTableHNSWColumnsFile()
+    {
+        return getProperty("TableHNSWColumns");
+    }
+
+    public static String getTableHNSWRowsFile()
+    {
+        return getProperty("TableHNSWRows");
+    }
+
+    public static String getTypesLSHFile()
+    {
+        return getProperty("TypesLSH");
+    }
+
+    public static String getPredicatesLSHFile()
+    {
+        return getProperty("PredicatesLSH");
+    }
+
+    public static String getEmbeddingsLSHFile()
+    {
+        return getProperty("EmbeddingsLSH");
+    }
+
+    public static String getEntityContainmentFile()
+    {
+        return getProperty("EntityContainment");
+    }
+
+    public static String getTypeContainmentFile()
+    {
+        return getProperty("TypeContainment");
     }
 }
@@ -0,0 +1,215 @@
+package com.thetis.system;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide executors shared by search, index building, and index loading
+ * The compute executor runs CPU-bound tasks, and the I/O executor runs tasks that mostly wait on disk, Neo4j, or the embeddings database
+ * Executors returned by compute(int) and io(int) queue at most QUEUE_CAPACITY pending tasks each, and tasks submitted to a full queue run in the
+ * submitting thread, which throttles the submitter
+ * Tasks must not block on tasks of the same executor, as the number of threads is bounded
+ */
+public class ExecutionService
+{
+    private static final int QUEUE_CAPACITY = 1 << 12;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+    private static boolean virtualThreads = false;
+    private static ExecutorService compute = null, io = null;
+
+    /**
+     * Configures the executors, which are shut down and created again on next use if they are already running
+     * @param parallelism Number of threads of the compute executor, and the minimum number of threads of the I/O executor
+     * @param useVirtualThreads Whether the I/O executor uses a virtual thread per task when the JVM supports virtual threads
+     */
+    public static synchronized void configure(int parallelism, boolean useVirtualThreads)
+    {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be positive");
+
+        shutdown();
+        ExecutionService.parallelism = parallelism;
+        virtualThreads = useVirtualThreads;
+    }
+
+    public static synchronized int parallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * @return Shared executor of CPU-bound tasks
+     */
+    public static synchronized ExecutorService compute()
+    {
+        if (compute == null)
+            compute = boundedPool("thetis-compute-", parallelism);
+
+        return compute;
+    }
+
+    /**
+     * @return Shared executor of I/O-bound tasks
+     */
+    public static synchronized ExecutorService io()
+    {
+        if (io == null)
+        {
+            io = virtualThreads ? virtualThreadPool() : null;
+
+            // Threads waiting on I/O do not occupy a core, so the I/O executor has at least a thread per core
+            if (io == null)
+                io = boundedPool("thetis-io-", Math.max(parallelism, Runtime.getRuntime().availableProcessors()));
+        }
+
+        return io;
+    }
+
+    /**
+     * Executor of CPU-bound tasks that runs at most the given number of tasks at a time on the shared compute executor
+     * This bounds the share of the compute threads a single query or index build can use
+     */
+    public static Executor compute(int maxParallelism)
+    {
+        return new BoundedExecutor(compute(), maxParallelism);
+    }
+
+    /**
+     * Executor of I/O-bound tasks that runs at most the given number of tasks at a time on the shared I/O executor
+     */
+    public static Executor io(int maxParallelism)
+    {
+        return new BoundedExecutor(io(), maxParallelism);
+    }
+
+    /**
+     * Shuts down the executors and waits for running tasks to complete
+     */
+    public static synchronized void shutdown()
+    {
+        for (ExecutorService executor : new ExecutorService[]{compute, io})
+        {
+            if (executor == null)
+                continue;
+
+            executor.shutdown();
+
+            try
+            {
+                if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                    executor.shutdownNow();
+            }
+
+            catch (InterruptedException e)
+            {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        compute = null;
+        io = null;
+    }
+
+    private static ExecutorService boundedPool(String threadPrefix, int threads)
+    {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        ThreadFactory factory = task ->
+        {
+            Thread thread = new Thread(task, threadPrefix + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    // Virtual threads are only available from Java 21, and the project targets Java 17
+    private static ExecutorService virtualThreadPool()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+
+        catch (ReflectiveOperationException e)
+        {
+            Logger.logNewLine(Logger.Level.INFO, "Virtual threads are not supported by this JVM, so platform threads are used for I/O");
+            return null;
+        }
+    }
+
+    /**
+     * Runs at most a fixed number of tasks at a time on an underlying executor
+     * Tasks are queued here, and each running worker takes queued tasks until none are left
+     * At most QUEUE_CAPACITY tasks are pending, and further tasks run in the submitting thread until workers have taken queued tasks
+     */
+    private static class BoundedExecutor implements Executor
+    {
+        private final Executor executor;
+        private final int maxParallelism;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger workers = new AtomicInteger(0), pending = new AtomicInteger(0);
+
+        BoundedExecutor(Executor executor, int maxParallelism)
+        {
+            this.executor = executor;
+            this.maxParallelism = Math.max(1, maxParallelism);
+        }
+
+        @Override
+        public void execute(Runnable task)
+        {
+            if (this.pending.incrementAndGet() > QUEUE_CAPACITY)
+            {
+                this.pending.decrementAndGet();
+                task.run();
+                return;
+            }
+
+            this.tasks.add(task);
+            startWorkers();
+        }
+
+        private void startWorkers()
+        {
+            while (!this.tasks.isEmpty())
+            {
+                int running = this.workers.get();
+
+                if (running >= this.maxParallelism)
+                    return;
+
+                else if (this.workers.compareAndSet(running, running + 1))
+                    this.executor.execute(this::work);
+            }
+        }
+
+        private void work()
+        {
+            try
+            {
+                Runnable task;
+
+                while ((task = this.tasks.poll()) != null)
+                {
+                    this.pending.decrementAndGet();
+                    task.run();
+                }
+            }
+
+            finally
+            {
+                // A task queued after the last poll may have seen all workers running, so it is picked up here
+                this.workers.decrementAndGet();
+                startWorkers();
+            }
+        }
+    }
+}
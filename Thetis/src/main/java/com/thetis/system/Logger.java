@@ -64,10 +64,26 @@ public class Logger
 
     private static int prevLength = 0;
     private static boolean prevWasNewLine = false;
+    private static volatile String configuredLevelName = null;
+    private static volatile Level configuredLevel = null;
+
+    // The configured level is only parsed again when the configured level name has changed
+    private static Level configuredLevel()
+    {
+        String levelName = Configuration.getLogLevel();
+
+        if (levelName != configuredLevelName)
+        {
+            configuredLevel = levelName != null ? Level.parse(levelName) : null;
+            configuredLevelName = levelName;
+        }
+
+        return configuredLevel;
+    }
 
     public static void log(Level level, String message)
     {
-        Level configuredLevel = Level.parse(Configuration.getLogLevel());
+        Level configuredLevel = configuredLevel();
 
         if (configuredLevel != null && level.getLevel() >= configuredLevel.getLevel())
         {
@@ -86,7 +102,7 @@ public class Logger
 
     public static void logNewLine(Level level, String message)
     {
-        Level configuredLevel = Level.parse(Configuration.getLogLevel());
+        Level configuredLevel = configuredLevel();
 
         if (configuredLevel != null && level.getLevel() >= configuredLevel.getLevel())
         {
@@ -0,0 +1,139 @@
+package com.thetis.system;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress tracking of a fixed number of tasks
+ * Tasks increment an atomic counter when they complete, and progress is logged every time the counter passes a multiple
+ * of the report interval, so callers can block on the returned futures instead of polling them
+ */
+public class Progress
+{
+    private final int total, reportInterval;
+    private final String message;
+    private final Logger.Level level;
+    private final AtomicInteger completed = new AtomicInteger(0), failed = new AtomicInteger(0);
+    private final long start = System.nanoTime();
+    private int reported = 0;
+
+    /**
+     * @param total Number of tasks to track
+     * @param reportInterval Number of completed tasks between progress reports
+     * @param message Format of progress reports given the number of completed tasks and the total number of tasks
+     */
+    public Progress(int total, int reportInterval, String message)
+    {
+        this(total, reportInterval, message, Logger.Level.INFO);
+    }
+
+    public Progress(int total, int reportInterval, String message, Logger.Level level)
+    {
+        this.total = total;
+        this.reportInterval = Math.max(1, reportInterval);
+        this.message = message;
+        this.level = level;
+    }
+
+    /**
+     * Submits a task to an executor and counts it as complete once it terminates, also when it fails
+     * @param executor Executor running the task
+     * @param task Task to track
+     * @return Future of the task result
+     */
+    public <T> CompletableFuture<T> submit(Executor executor, Callable<T> task)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() ->
+        {
+            T result = null;
+            Throwable error = null;
+
+            try
+            {
+                result = task.call();
+            }
+
+            catch (Throwable t)
+            {
+                this.failed.incrementAndGet();
+                error = t;
+            }
+
+            // Counted before the future completes, so progress is up to date once the caller observes the result
+            complete();
+
+            if (error != null)
+                future.completeExceptionally(error);
+
+            else
+                future.complete(result);
+        });
+
+        return future;
+    }
+
+    /**
+     * Runs a task in the calling thread and counts it as complete
+     */
+    public void run(Runnable task)
+    {
+        try
+        {
+            task.run();
+        }
+
+        catch (RuntimeException e)
+        {
+            this.failed.incrementAndGet();
+            throw e;
+        }
+
+        finally
+        {
+            complete();
+        }
+    }
+
+    /**
+     * Counts a task as complete
+     */
+    public void complete()
+    {
+        int done = this.completed.incrementAndGet();
+
+        if (done % this.reportInterval == 0 || done == this.total)
+        {
+            synchronized (this)
+            {
+                if (done > this.reported)     // Skip reports overtaken by a concurrently completed task
+                {
+                    this.reported = done;
+                    Logger.log(this.level, String.format(this.message, done, this.total));
+                }
+            }
+        }
+    }
+
+    public int completed()
+    {
+        return this.completed.get();
+    }
+
+    public int failed()
+    {
+        return this.failed.get();
+    }
+
+    public int total()
+    {
+        return this.total;
+    }
+
+    public long elapsedNanoSeconds()
+    {
+        return System.nanoTime() - this.start;
+    }
+}
@@ -141,12 +141,14 @@ public class Utils {
      * Returns the weighted Euclidean Distance between two lists
      * 
      * Assumes that the sizes of `vectorA`, `vectorB` and `weightVector` are all the same
+     * Boxed inputs are summed in a scalar loop, as copying them into arrays for SimilarityKernels costs more than it saves
      */
     public static double euclideanDistance(List<Double> vectorA, List<Double> vectorB, List<Double> weightVector) {
         double sum = 0.0;
 
         for (int i = 0; i < vectorA.size(); i++) {
-            sum += Math.pow((vectorA.get(i) - vectorB.get(i)), 2.0) * weightVector.get(i);
+            double difference = vectorA.get(i) - vectorB.get(i);
+            sum += difference * difference * weightVector.get(i);
         }
 
         return Math.sqrt(sum);
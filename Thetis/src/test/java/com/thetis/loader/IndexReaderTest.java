@@ -5,9 +5,12 @@ import com.thetis.connector.*;
 import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
+import com.thetis.store.LinkedTableIndex;
 import com.thetis.structures.Id;
+import com.thetis.structures.Pair;
 import com.thetis.structures.graph.Entity;
 import com.thetis.structures.graph.Type;
+import com.thetis.structures.table.LinkedTable;
 import com.thetis.system.Configuration;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -158,4 +161,20 @@ public class IndexReaderTest
         assertEquals("table-0782-820.json", entityTableLink.find(linking.kgUriLookup("http://dbpedia.org/resource/Windows_Phone_7")).get(0));
         assertEquals(2, entityTableLink.getLocations(linking.kgUriLookup("http://dbpedia.org/resource/Windows_Phone_7"), "table-0782-820.json").size());
     }
+
+    @Test
+    public void testLinkedTables()
+    {
+        LinkedTableIndex linkedTables = reader.getLinkedTables();
+        Id entity = reader.getLinker().kgUriLookup("http://dbpedia.org/resource/Windows_Phone_7");
+        LinkedTable table = linkedTables.find("table-0782-820.json");
+
+        assertEquals(5, linkedTables.size());
+        assertNotNull(table);
+
+        for (Pair<Integer, Integer> location : reader.getEntityTableLink().getLocations(entity, "table-0782-820.json"))
+        {
+            assertEquals(entity.getId(), table.entity(location.getFirst(), location.getSecond()));
+        }
+    }
 }
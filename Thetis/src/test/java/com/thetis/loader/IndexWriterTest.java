@@ -5,9 +5,12 @@ import com.thetis.connector.*;
 import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
+import com.thetis.store.LinkedTableIndex;
 import com.thetis.structures.Id;
+import com.thetis.structures.Pair;
 import com.thetis.structures.graph.Entity;
 import com.thetis.structures.graph.Type;
+import com.thetis.structures.table.LinkedTable;
 import com.thetis.system.Configuration;
 import org.junit.*;
 
@@ -164,4 +167,22 @@ public class IndexWriterTest
         assertEquals("table-0782-820.json", entityTableLink.find(linking.kgUriLookup("http://dbpedia.org/resource/Windows_Phone_7")).get(0));
         assertEquals(2, entityTableLink.getLocations(linking.kgUriLookup("http://dbpedia.org/resource/Windows_Phone_7"), "table-0782-820.json").size());
     }
+
+    @Test
+    public synchronized void testLinkedTables()
+    {
+        LinkedTableIndex linkedTables = writer.getLinkedTables();
+        EntityTableLink entityTableLink = writer.getEntityTableLinker();
+        Id entity = writer.getEntityLinker().kgUriLookup("http://dbpedia.org/resource/Windows_Phone_7");
+        LinkedTable table = linkedTables.find("table-0782-820.json");
+
+        assertEquals(5, linkedTables.size());
+        assertNotNull(table);
+        assertFalse(table.getHeaders().isEmpty());
+
+        for (Pair<Integer, Integer> location : entityTableLink.getLocations(entity, "table-0782-820.json"))
+        {
+            assertEquals(entity.getId(), table.entity(location.getFirst(), location.getSecond()));
+        }
+    }
 }
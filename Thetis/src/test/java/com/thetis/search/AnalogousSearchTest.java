@@ -5,6 +5,10 @@ import com.thetis.connector.*;
 import com.thetis.loader.IndexWriter;
 import com.thetis.loader.MockLinker;
 import com.thetis.loader.WikiLinker;
+import com.thetis.store.ElementTableLink;
+import com.thetis.store.EmbeddingsIndex;
+import com.thetis.store.QuantizedEmbeddings;
+import com.thetis.structures.Id;
 import com.thetis.structures.Pair;
 import com.thetis.structures.table.SimpleTable;
 import com.thetis.structures.table.Table;
@@ -22,11 +26,13 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class AnalogousSearchTest
 {
     private AnalogousSearch search;
+    private IndexWriter indexWriter;
     private final File outDir = new File("testing/output");
 
     @Before
@@ -42,12 +48,12 @@ public class AnalogousSearchTest
                     Path.of("table-0782-820.json"), Path.of("table-1019-555.json"),
                     Path.of("table-1260-258.json"), Path.of("table-0001-1.json"));
             paths = paths.stream().map(t -> Path.of("testing/data/" + t.toString())).collect(Collectors.toList());
-            IndexWriter indexWriter = new IndexWriter(paths, this.outDir, new MockLinker(), endpoint,
+            this.indexWriter = new IndexWriter(paths, this.outDir, new MockLinker(), endpoint,
                     1, embeddingsDB, "http://www.wikipedia.org/", "http://dbpedia.org/");
-            indexWriter.performIO();
+            this.indexWriter.performIO();
 
-            this.search = new AnalogousSearch(indexWriter.getEntityLinker(), indexWriter.getEntityTable(), indexWriter.getEntityTableLinker(),
-                    indexWriter.getEmbeddingsIndex(), 5, 1, AnalogousSearch.EntitySimilarity.JACCARD_TYPES,
+            this.search = new AnalogousSearch(this.indexWriter.getEntityLinker(), this.indexWriter.getEntityTable(), this.indexWriter.getEntityTableLinker(),
+                    this.indexWriter.getEmbeddingsIndex(), 5, 1, AnalogousSearch.EntitySimilarity.JACCARD_TYPES,
                     false, false, true, false,
                     false, AnalogousSearch.SimilarityMeasure.EUCLIDEAN);
         }
@@ -135,4 +141,113 @@ public class AnalogousSearchTest
         assertEquals("table-0782-820.json", resultList.get(0).getFirst());
         assertEquals(1.0, resultList.get(0).getSecond(), 0.01);    // Score should be 0.923
     }
+
+    @Test
+    public void testLinkedTables()
+    {
+        Table<String> query = new SimpleTable<>(List.of(List.of("http://dbpedia.org/resource/1971_Formula_One_season",
+                "http://dbpedia.org/resource/North_American_Racing_Team"),
+                List.of("http://dbpedia.org/resource/St._Louis_Blues", "http://dbpedia.org/resource/California_Golden_Seals")));
+        Iterator<Pair<String, Double>> parsedResults = this.search.search(query).getResults();
+
+        this.search.setLinkedTables(this.indexWriter.getLinkedTables());
+        Iterator<Pair<String, Double>> linkedResults = this.search.search(query).getResults();
+        assertEquals(6, this.search.getParsedTables());
+
+        while (parsedResults.hasNext())
+        {
+            Pair<String, Double> parsed = parsedResults.next(), linked = linkedResults.next();
+            assertEquals(parsed.getFirst(), linked.getFirst());
+            assertEquals(parsed.getSecond(), linked.getSecond(), 0.000001);
+        }
+
+        assertFalse(linkedResults.hasNext());
+    }
+
+    @Test
+    public void testCandidatePruning()
+    {
+        Table<String> query = new SimpleTable<>(List.of(List.of("http://dbpedia.org/resource/Windows_Mobile"),
+                List.of("http://dbpedia.org/resource/Maemo"), List.of("http://dbpedia.org/resource/BlackBerry_10")));
+        AnalogousSearch search = new AnalogousSearch(this.indexWriter.getEntityLinker(), this.indexWriter.getEntityTable(),
+                this.indexWriter.getEntityTableLinker(), this.indexWriter.getEmbeddingsIndex(), 1, 1, AnalogousSearch.EntitySimilarity.JACCARD_TYPES,
+                false, false, true, false, false, AnalogousSearch.SimilarityMeasure.EUCLIDEAN);
+        Result result = search.search(query);
+        assertEquals(6, search.getParsedTables());
+
+        search.setCandidateIndex(ElementTableLink.build(this.indexWriter.getEntityTable(), this.indexWriter.getEntityTableLinker(), true));
+        Result prunedResult = search.search(query);
+        assertTrue(search.getParsedTables() < 6);
+        assertEquals(result.getSize(), prunedResult.getSize());
+        assertEquals(result.getTable(0), prunedResult.getTable(0));
+        assertEquals(result.getScore(0), prunedResult.getScore(0), 0.000001);
+    }
+
+    @Test
+    public void testBatchSearch()
+    {
+        List<Table<String>> queries = List.of(
+                new SimpleTable<>(List.of(List.of("http://dbpedia.org/resource/Windows_Mobile", "http://dbpedia.org/resource/Cosworth"))),
+                new SimpleTable<>(List.of(List.of("http://dbpedia.org/resource/1963_Formula_One_season", "http://dbpedia.org/resource/Team_Lotus"))),
+                new SimpleTable<>(List.of(List.of("http://dbpedia.org/resource/Windows_Mobile"),
+                        List.of("http://dbpedia.org/resource/Maemo"), List.of("http://dbpedia.org/resource/BlackBerry_10"))));
+        this.search.setCandidateIndex(ElementTableLink.build(this.indexWriter.getEntityTable(), this.indexWriter.getEntityTableLinker(), true));
+        List<AnalogousSearch.QueryState> states = this.search.searchBatch(queries);
+        assertEquals(queries.size(), states.size());
+
+        for (int i = 0; i < queries.size(); i++)
+        {
+            Result batchResult = states.get(i).getResult(), result = this.search.search(queries.get(i));
+            assertEquals(queries.get(i), states.get(i).getQuery());
+            assertEquals(result.getSize(), batchResult.getSize());
+
+            for (int rank = 0; rank < result.getSize(); rank++)
+            {
+                assertEquals(result.getTable(rank), batchResult.getTable(rank));
+                assertEquals(result.getScore(rank), batchResult.getScore(rank), 0.000001);
+            }
+        }
+    }
+
+    @Test
+    public void testSearchBudget()
+    {
+        Table<String> query = new SimpleTable<>(List.of(List.of("http://dbpedia.org/resource/Windows_Mobile"),
+                List.of("http://dbpedia.org/resource/Maemo"), List.of("http://dbpedia.org/resource/BlackBerry_10")));
+        AnalogousSearch.QueryState state = this.search.searchBatch(List.of(query)).get(0);
+        assertFalse(state.isPartial());
+        assertEquals(6, state.getScoredTables());
+
+        this.search.setBudget(0, 2);
+        AnalogousSearch.QueryState partialState = this.search.searchBatch(List.of(query)).get(0);
+        assertTrue(partialState.isPartial());
+        assertEquals(2, partialState.getScoredTables());
+        assertTrue(partialState.getResult().getSize() <= 2);
+        assertEquals(1 - 2.0 / 6, partialState.getScoredReduction(), 0.000001);
+    }
+
+    @Test
+    public void testQuantizedSimilarity()
+    {
+        Table<String> query = new SimpleTable<>(List.of(List.of("http://dbpedia.org/resource/1971_Formula_One_season",
+                "http://dbpedia.org/resource/North_American_Racing_Team")));
+        EmbeddingsIndex<Id> embeddings = this.indexWriter.getEmbeddingsIndex();
+        embeddings.setQuantized(QuantizedEmbeddings.quantize(embeddings.getMatrix()));
+
+        AnalogousSearch search = new AnalogousSearch(this.indexWriter.getEntityLinker(), this.indexWriter.getEntityTable(),
+                this.indexWriter.getEntityTableLinker(), embeddings, 2, 1, AnalogousSearch.EntitySimilarity.EMBEDDINGS_ANG,
+                false, false, false, false, false, AnalogousSearch.SimilarityMeasure.EUCLIDEAN);
+        Result exactResult = search.search(query);
+
+        search.setQuantizedSimilarity(3, 1.0);   // All tables are re-ranked, so the result is exact
+        AnalogousSearch.QueryState state = search.searchBatch(List.of(query)).get(0);
+        Result rerankedResult = state.getResult();
+        assertTrue(state.getRerankedTables() > 0);
+        assertEquals(exactResult.getSize(), rerankedResult.getSize());
+
+        for (int rank = 0; rank < exactResult.getSize(); rank++)
+        {
+            assertEquals(exactResult.getScore(rank), rerankedResult.getScore(rank), 0.000001);
+        }
+    }
 }
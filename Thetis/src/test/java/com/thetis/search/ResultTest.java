@@ -0,0 +1,74 @@
+package com.thetis.search;
+
+import com.thetis.structures.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResultTest
+{
+    @Test
+    public void testRanking()
+    {
+        Result result = new Result(3, new Pair<>("t1", 0.1), new Pair<>("t2", 0.9), new Pair<>("t3", 0.5),
+                new Pair<>("t4", 0.9), new Pair<>("t5", Double.NaN), new Pair<>("t6", 0.7));
+        assertEquals(3, result.getK());
+        assertEquals(3, result.getSize());
+        assertEquals("t2", result.getTable(0));
+        assertEquals("t4", result.getTable(1));
+        assertEquals("t6", result.getTable(2));
+        assertEquals(0.7, result.getScore(2), 0);
+
+        // Iterating twice gives the same ranking
+        List<Pair<String, Double>> first = new ArrayList<>(), second = new ArrayList<>();
+        result.getResults().forEachRemaining(first::add);
+        result.forEach(second::add);
+        assertEquals(first, second);
+        assertEquals(List.of(new Pair<>("t2", 0.9), new Pair<>("t4", 0.9), new Pair<>("t6", 0.7)), first);
+    }
+
+    @Test
+    public void testFewerThanK()
+    {
+        Result result = new Result(10, List.of(new Pair<>("t1", 1.0), new Pair<>("t2", 2.0)));
+        Iterator<Pair<String, Double>> iter = result.getResults();
+        assertEquals(2, result.getSize());
+        assertEquals("t2", iter.next().getFirst());
+        assertEquals("t1", iter.next().getFirst());
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testMergedHeaps()
+    {
+        TopK heap1 = new TopK(4), heap2 = new TopK(4), merged = new TopK(4);
+        List<Pair<String, Double>> all = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++)
+        {
+            double score = (i * 37) % 11;
+            all.add(new Pair<>("t" + i, score));
+            (i % 2 == 0 ? heap1 : heap2).offer("t" + i, score, i);
+        }
+
+        merged.merge(heap1);
+        merged.merge(heap2);
+
+        Result expected = new Result(4, all), actual = merged.toResult();
+        assertEquals(100, merged.offered());
+        assertEquals(4, actual.getSize());
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertEquals(expected.getTable(i), actual.getTable(i));
+            assertEquals(expected.getScore(i), actual.getScore(i), 0);
+        }
+
+        assertEquals("t8", actual.getTable(0));
+        assertEquals(10.0, actual.getScore(0), 0);
+    }
+}
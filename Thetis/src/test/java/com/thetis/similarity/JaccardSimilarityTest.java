@@ -36,4 +36,26 @@ public class JaccardSimilarityTest
         assertEquals((double) 1 / 3, JaccardSimilarity.make(this.ts1, ts3).similarity(), 0.0001);
         assertEquals((double) 1 / 7, JaccardSimilarity.make(this.ts2, this.ts3).similarity(), 0.0001);
     }
+
+    @Test
+    public void testInternedIds()
+    {
+        int[] ids1 = {0, 2, 4, 6}, ids2 = {1, 2, 3, 6}, ids3 = {7, 8};
+
+        assertEquals(1.0, JaccardSimilarity.similarity(ids1, ids1), 0.0);
+        assertEquals((double) 2 / 6, JaccardSimilarity.similarity(ids1, ids2), 0.0001);
+        assertEquals(0.0, JaccardSimilarity.similarity(ids1, ids3), 0.0);
+        assertEquals(0.0, JaccardSimilarity.similarity(new int[0], new int[0]), 0.0);
+    }
+
+    @Test
+    public void testWeightedInternedIds()
+    {
+        int[] ids1 = {0, 1, 2}, ids2 = {1, 2, 3};
+        double[] weights = {1.0, 2.0, 3.0, -1};
+
+        assertEquals(5.0 / 6.0, JaccardSimilarity.similarity(ids1, ids2, weights), 0.0001);
+        assertEquals(1.0, JaccardSimilarity.similarity(ids2, ids2, weights), 0.0);
+        assertEquals(0.0, JaccardSimilarity.similarity(new int[]{3}, new int[]{3}, weights), 0.0);
+    }
 }
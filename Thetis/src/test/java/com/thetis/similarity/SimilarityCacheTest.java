@@ -0,0 +1,91 @@
+package com.thetis.similarity;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SimilarityCacheTest
+{
+    @Test
+    public void testCapacity()
+    {
+        assertEquals(0, new SimilarityCache(0).capacity());
+        assertEquals(1, new SimilarityCache(1).capacity());
+        assertEquals(8, new SimilarityCache(5).capacity());
+        assertEquals(1024, new SimilarityCache(1024).capacity());
+    }
+
+    @Test
+    public void testHitAndMiss()
+    {
+        SimilarityCache cache = new SimilarityCache(64);
+        AtomicInteger computations = new AtomicInteger(0);
+
+        assertEquals(0.5, cache.computeIfAbsent(1, 2, () -> {computations.incrementAndGet(); return 0.5;}), 0.0);
+        assertEquals(0.5, cache.computeIfAbsent(1, 2, () -> {computations.incrementAndGet(); return 0.9;}), 0.0);
+        assertEquals(1, computations.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testSymmetric()
+    {
+        SimilarityCache cache = new SimilarityCache(64);
+        cache.computeIfAbsent(3, 7, () -> 0.25);
+
+        assertEquals(0.25, cache.computeIfAbsent(7, 3, () -> 1.0), 0.0);
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testBounded()
+    {
+        SimilarityCache cache = new SimilarityCache(16);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            int id = i;
+            assertEquals(id, cache.computeIfAbsent(id, id + 1, () -> id), 0.0);
+        }
+
+        int hits = 0;
+
+        for (int i = 0; i < 1000; i++)
+        {
+            int id = i;
+
+            if (cache.computeIfAbsent(id, id + 1, () -> -1) == id)
+                hits++;
+        }
+
+        assertTrue(hits <= cache.capacity());
+        assertEquals(hits, cache.hits());
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        SimilarityCache cache = new SimilarityCache(0);
+        cache.computeIfAbsent(1, 2, () -> 0.5);
+
+        assertEquals(0.7, cache.computeIfAbsent(1, 2, () -> 0.7), 0.0);
+        assertEquals(0, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void testClear()
+    {
+        SimilarityCache cache = new SimilarityCache(64);
+        cache.computeIfAbsent(1, 2, () -> 0.5);
+        cache.computeIfAbsent(1, 2, () -> 0.5);
+        cache.clear();
+
+        assertEquals(0, cache.hits());
+        assertEquals(0, cache.misses());
+        assertEquals(0.7, cache.computeIfAbsent(1, 2, () -> 0.7), 0.0);
+    }
+}
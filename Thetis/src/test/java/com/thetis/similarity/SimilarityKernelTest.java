@@ -0,0 +1,93 @@
+package com.thetis.similarity;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class SimilarityKernelTest
+{
+    private static final int[] LENGTHS = {0, 1, 3, 7, 16, 33, 200};
+
+    @Test
+    public void testScalarKernel()
+    {
+        SimilarityKernel kernel = SimilarityKernels.scalar();
+        double[] v1 = {1.0, 2.0, 3.0}, v2 = {3.0, 2.0, 1.0}, zero = {0.0, 0.0, 0.0}, weights = {0.5, 0.25, 0.25};
+        float[] f1 = {0.0f, 1.0f, 2.0f, 3.0f}, f2 = {3.0f, 2.0f, 1.0f};
+
+        assertEquals(10.0, kernel.dot(v1, v2, 3), 0.000001);
+        assertEquals(0.7142, kernel.cosine(v1, v2, 3), 0.001);
+        assertEquals(0.0, kernel.cosine(v1, zero, 3), 0.0);
+        assertEquals(Math.sqrt(0.5 * 4 + 0.25 * 4), kernel.weightedEuclidean(v1, v2, weights, 3), 0.000001);
+        assertEquals(10.0, kernel.dot(f1, 1, f2, 0, 3), 0.000001);
+        assertEquals(0.7142, kernel.cosine(f1, 1, f2, 0, 3), 0.001);
+    }
+
+    @Test
+    public void testKernelsAgree()
+    {
+        SimilarityKernel scalar = SimilarityKernels.scalar(), vector = SimilarityKernels.vector();
+        assertNotNull("The tests run with the jdk.incubator.vector module", vector);
+
+        Random random = new Random(7);
+
+        for (int length : LENGTHS)
+        {
+            float[] f1 = floats(random, length + 2), f2 = floats(random, length);
+            double[] d1 = doubles(random, length), d2 = doubles(random, length), weights = doubles(random, length);
+            double tolerance = 0.0001 * (length + 1);
+
+            assertEquals(scalar.dot(f1, 2, f2, 0, length), vector.dot(f1, 2, f2, 0, length), tolerance);
+            assertEquals(scalar.cosine(f1, 2, f2, 0, length), vector.cosine(f1, 2, f2, 0, length), 0.0001);
+            assertEquals(scalar.dot(d1, d2, length), vector.dot(d1, d2, length), 0.000001);
+            assertEquals(scalar.cosine(d1, d2, length), vector.cosine(d1, d2, length), 0.000001);
+            assertEquals(scalar.weightedEuclidean(d1, d2, weights, length), vector.weightedEuclidean(d1, d2, weights, length), 0.000001);
+        }
+    }
+
+    @Test
+    public void testCosineBatch()
+    {
+        Random random = new Random(7);
+        int dimension = 37, count = 5;
+        float[] query = floats(random, dimension), block = floats(random, 3 + dimension * count);
+        double[] scalarSimilarities = new double[count], vectorSimilarities = new double[count];
+
+        SimilarityKernels.scalar().cosineBatch(query, 0, block, 3, count, dimension, scalarSimilarities);
+        SimilarityKernels.get().cosineBatch(query, 0, block, 3, count, dimension, vectorSimilarities);
+
+        for (int i = 0; i < count; i++)
+        {
+            double expected = SimilarityKernels.scalar().cosine(query, 0, block, 3 + i * dimension, dimension);
+            assertEquals(expected, scalarSimilarities[i], 0.000001);
+            assertEquals(expected, vectorSimilarities[i], 0.0001);
+        }
+    }
+
+    private static float[] floats(Random random, int length)
+    {
+        float[] vector = new float[length];
+
+        for (int i = 0; i < length; i++)
+        {
+            vector[i] = (float) random.nextGaussian();
+        }
+
+        return vector;
+    }
+
+    private static double[] doubles(Random random, int length)
+    {
+        double[] vector = new double[length];
+
+        for (int i = 0; i < length; i++)
+        {
+            vector[i] = random.nextDouble();
+        }
+
+        return vector;
+    }
+}
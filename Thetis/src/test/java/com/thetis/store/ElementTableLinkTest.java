@@ -0,0 +1,64 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ElementTableLinkTest
+{
+    private final EntityTable entityTable = new EntityTable();
+    private final EntityTableLink tableLink = new EntityTableLink();
+    private final Id id1 = Id.alloc(), id2 = Id.alloc(), id3 = Id.alloc();
+
+    @Before
+    public void init()
+    {
+        this.entityTable.insert(this.id1, new Entity("uri1", List.of(new Type("type1"), new Type("type2")), List.of("pred1")));
+        this.entityTable.insert(this.id2, new Entity("uri2", List.of(new Type("type2")), List.of("pred1", "pred2")));
+        this.entityTable.insert(this.id3, new Entity("uri3", List.of(new Type("type3")), List.of()));
+        this.tableLink.insert(this.id1, List.of("table1", "table2"));
+        this.tableLink.insert(this.id2, List.of("table2", "table3"));
+    }
+
+    private int[] positions(String... tables)
+    {
+        int[] positions = new int[tables.length];
+
+        for (int i = 0; i < tables.length; i++)
+        {
+            positions[i] = this.tableLink.tablePosition(tables[i]);
+        }
+
+        return positions;
+    }
+
+    @Test
+    public void testTypes()
+    {
+        ElementTableLink typeTables = ElementTableLink.build(this.entityTable, this.tableLink, true);
+        ElementDictionary types = this.entityTable.getTypeDictionary();
+
+        assertTrue(typeTables.isTypes());
+        assertArrayEquals(positions("table1", "table2"), typeTables.tables(types.lookup("type1")));
+        assertArrayEquals(positions("table1", "table2", "table3"), typeTables.tables(types.lookup("type2")));
+        assertEquals(0, typeTables.tables(types.lookup("type3")).length);
+        assertEquals(0, typeTables.tables(-1).length);
+    }
+
+    @Test
+    public void testPredicates()
+    {
+        ElementTableLink predicateTables = ElementTableLink.build(this.entityTable, this.tableLink, false);
+        ElementDictionary predicates = this.entityTable.getPredicateDictionary();
+
+        assertFalse(predicateTables.isTypes());
+        assertArrayEquals(positions("table1", "table2", "table3"), predicateTables.tables(predicates.lookup("pred1")));
+        assertArrayEquals(positions("table2", "table3"), predicateTables.tables(predicates.lookup("pred2")));
+    }
+}
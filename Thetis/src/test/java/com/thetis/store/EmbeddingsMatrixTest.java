@@ -0,0 +1,76 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+import com.thetis.utilities.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EmbeddingsMatrixTest
+{
+    private final EmbeddingsMatrix matrix = new EmbeddingsMatrix();
+
+    @Before
+    public void load()
+    {
+        this.matrix.insert(new Id(0), List.of(1.0, 2.0, 3.0));
+        this.matrix.insert(new Id(1), List.of(3.0, 2.0, 1.0));
+        this.matrix.insert(new Id(2), List.of(-1.0, -2.0, -3.0));
+        this.matrix.insert(new Id(5000), List.of(0.0, 0.0, 0.0));
+    }
+
+    @Test
+    public void testSize()
+    {
+        assertEquals(4, this.matrix.size());
+        assertEquals(3, this.matrix.dimension());
+        assertTrue(this.matrix.contains(new Id(5000)));
+        assertFalse(this.matrix.contains(new Id(3)));
+    }
+
+    @Test
+    public void testVector()
+    {
+        assertArrayEquals(new float[]{3, 2, 1}, this.matrix.vector(new Id(1)), 0);
+        assertNull(this.matrix.vector(new Id(3)));
+    }
+
+    @Test
+    public void testCosine()
+    {
+        double expected = Utils.cosineSimilarity(List.of(1.0, 2.0, 3.0), List.of(3.0, 2.0, 1.0));
+        assertEquals(expected, this.matrix.cosine(new Id(0), new Id(1)), 0.00001);
+        assertEquals(1.0, this.matrix.cosine(new Id(0), new Id(0)), 0.00001);
+        assertEquals(-1.0, this.matrix.cosine(new Id(0), new Id(2)), 0.00001);
+        assertEquals(0.0, this.matrix.cosine(new Id(0), new Id(5000)), 0);
+        assertEquals(0.0, this.matrix.cosine(new Id(0), new Id(3)), 0);
+    }
+
+    @Test
+    public void testOverwriteAndRemove()
+    {
+        this.matrix.insert(new Id(1), List.of(2.0, 4.0, 6.0));
+        assertEquals(4, this.matrix.size());
+        assertEquals(1.0, this.matrix.cosine(new Id(0), new Id(1)), 0.00001);
+
+        assertTrue(this.matrix.remove(new Id(1)));
+        assertFalse(this.matrix.remove(new Id(1)));
+        assertFalse(this.matrix.contains(new Id(1)));
+        assertEquals(3, this.matrix.size());
+    }
+
+    @Test
+    public void testDimensionMismatch()
+    {
+        try
+        {
+            this.matrix.insert(new Id(3), List.of(1.0, 2.0));
+            fail();
+        }
+
+        catch (IllegalArgumentException ignored) {}
+    }
+}
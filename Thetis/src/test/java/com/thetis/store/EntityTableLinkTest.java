@@ -1,6 +1,9 @@
 package com.thetis.store;
 
 import com.thetis.store.EntityTableLink;
+import com.thetis.store.segment.Segment;
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
 import com.thetis.structures.Id;
 import com.thetis.structures.Pair;
 import com.thetis.system.Configuration;
@@ -82,6 +85,36 @@ public class EntityTableLinkTest
         assertEquals(loc3, locations3);
     }
 
+    @Test
+    public void testManyTablesAndLocations()
+    {
+        Id id4 = Id.alloc();
+
+        // Table IDs are allocated by id1, so id4 receives its tables in decreasing order
+        for (int table = 0; table < 1000; table++)
+        {
+            this.tableLink.insert(this.id1, List.of("table" + table));
+        }
+
+        for (int table = 999; table >= 0; table--)
+        {
+            for (int row = 0; row < 3; row++)
+            {
+                this.tableLink.addLocation(id4, "table" + table, List.of(new Pair<>(row, table)));
+            }
+        }
+
+        assertEquals(1000, this.tableLink.find(id4).size());
+        assertEquals(1000, this.tableLink.tablePositions(id4).length);
+
+        for (int table = 0; table < 1000; table++)
+        {
+            assertEquals(List.of(new Pair<>(0, table), new Pair<>(1, table), new Pair<>(2, table)),
+                    this.tableLink.getLocations(id4, "table" + table));
+            assertEquals(Set.of(this.id1, id4), this.tableLink.tableToEntities("table" + table));
+        }
+    }
+
     @Test
     public void testTableToEntities()
     {
@@ -96,6 +129,47 @@ public class EntityTableLinkTest
         assertTrue(entities3.contains(this.id1) && entities3.contains(this.id3));
     }
 
+    @Test
+    public void testTableToEntitiesUpdates()
+    {
+        Id id4 = Id.alloc();
+        this.tableLink.addLocation(id4, "file1", List.of(new Pair<>(0, 1)));
+        this.tableLink.addLocation(id4, "file1", List.of(new Pair<>(2, 1)));
+        this.tableLink.remove(this.id1);
+
+        Set<Id> entities1 = this.tableLink.tableToEntities("file1"), entities3 = this.tableLink.tableToEntities("file3");
+        assertEquals(Set.of(this.id2, id4), entities1);
+        assertEquals(Set.of(this.id3), entities3);
+        assertTrue(this.tableLink.tableToEntities("file5").isEmpty());
+        assertEquals(2, this.tableLink.getLocations(id4, "file1").size());
+        assertNull(this.tableLink.getLocations(id4, "file2"));
+    }
+
+    @Test
+    public void testSegment() throws IOException
+    {
+        File segmentFile = new File("test_index.seg");
+        this.tableLink.setDirectory("dir/");
+        this.tableLink.addLocation(this.id1, "file2", List.of(new Pair<>(0, 0), new Pair<>(1000, 3)));
+
+        try (SegmentWriter writer = new SegmentWriter(segmentFile, Segment.Kind.ENTITY_TABLE_LINK))
+        {
+            this.tableLink.writeSegment(writer);
+        }
+
+        EntityTableLink index = SegmentReader.read(segmentFile, Segment.Kind.ENTITY_TABLE_LINK, EntityTableLink::readSegment);
+        segmentFile.delete();
+
+        assertEquals(3, index.size());
+        assertEquals("dir/", index.getDirectory());
+        assertEquals(Set.copyOf(this.files1), Set.copyOf(index.find(this.id1)));
+        assertEquals(Set.copyOf(this.files2), Set.copyOf(index.find(this.id2)));
+        assertEquals(Set.copyOf(this.files3), Set.copyOf(index.find(this.id3)));
+        assertEquals(List.of(new Pair<>(0, 0), new Pair<>(1000, 3)), index.getLocations(this.id1, "file2"));
+        assertTrue(index.getLocations(this.id2, "file1").isEmpty());
+        assertEquals(Set.of(this.id1, this.id3), index.tableToEntities("file3"));
+    }
+
     @Test
     public void testSerialization()
     {
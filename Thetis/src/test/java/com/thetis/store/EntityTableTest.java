@@ -1,12 +1,17 @@
 package com.thetis.store;
 
 import com.thetis.store.EntityTable;
+import com.thetis.store.segment.Segment;
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
 import com.thetis.structures.Id;
 import com.thetis.structures.graph.Entity;
 import com.thetis.structures.graph.Type;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -53,4 +58,51 @@ public class EntityTableTest
         assertEquals(this.ent2, this.entTable.find(this.id2));
         assertEquals(this.ent3, this.entTable.find(this.id3));
     }
+
+    @Test
+    public void testInternedTypes()
+    {
+        ElementDictionary types = this.entTable.getTypeDictionary();
+        int type1 = types.lookup("type1"), type2 = types.lookup("type2"), type3 = types.lookup("type3");
+
+        assertEquals(3, types.size());
+        assertArrayEquals(new int[]{type1, type2, type3}, this.ent1.getTypeIds());
+        assertArrayEquals(new int[]{type2, type3}, this.ent2.getTypeIds());
+        assertArrayEquals(new int[]{type1, type2}, this.ent3.getTypeIds());
+        assertEquals(0, this.ent1.getPredicateIds().length);
+        assertEquals(-1, types.weight(type1), 0.0);
+    }
+
+    @Test
+    public void testInternedTypeWeights()
+    {
+        this.ent1.getTypes().get(0).setIdf(2.5);
+        this.entTable.intern();
+
+        assertEquals(2.5, this.entTable.getTypeDictionary().weight(this.entTable.getTypeDictionary().lookup("type1")), 0.0);
+    }
+
+    @Test
+    public void testSegment() throws IOException
+    {
+        File segmentFile = new File("test_entity_table.seg");
+        this.ent1.getTypes().get(0).setIdf(2.5);
+        this.entTable.insert(Id.alloc(), new Entity("uri4", 1.5, List.of(new Type("type3")), List.of("predicate1", "predicate2")));
+        this.entTable.intern();
+
+        try (SegmentWriter writer = new SegmentWriter(segmentFile, Segment.Kind.ENTITY_TABLE))
+        {
+            this.entTable.writeSegment(writer);
+        }
+
+        EntityTable table = SegmentReader.read(segmentFile, Segment.Kind.ENTITY_TABLE, EntityTable::readSegment);
+        segmentFile.delete();
+
+        assertEquals(this.entTable.size(), table.size());
+        assertEquals(this.ent1, table.find(this.id1));
+        assertArrayEquals(this.ent1.getTypeIds(), table.find(this.id1).getTypeIds());
+        assertEquals(2.5, table.find(this.id1).getTypes().get(0).getIdf(), 0.0);
+        assertEquals(2.5, table.getTypeDictionary().weight(table.getTypeDictionary().lookup("type1")), 0.0);
+        assertEquals(this.entTable.getPredicateDictionary().size(), table.getPredicateDictionary().size());
+    }
 }
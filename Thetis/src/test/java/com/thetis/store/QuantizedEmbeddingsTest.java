@@ -0,0 +1,101 @@
+package com.thetis.store;
+
+import com.thetis.store.segment.Segment;
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
+import com.thetis.structures.Id;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantizedEmbeddingsTest
+{
+    private final EmbeddingsMatrix matrix = new EmbeddingsMatrix();
+    private QuantizedEmbeddings quantized;
+
+    @Before
+    public void load()
+    {
+        Random random = new Random(42);
+        this.matrix.insert(new Id(0), List.of(1.0, 2.0, 3.0, 4.0));
+        this.matrix.insert(new Id(1), List.of(4.0, 3.0, 2.0, 1.0));
+        this.matrix.insert(new Id(2), List.of(-1.0, -2.0, -3.0, -4.0));
+        this.matrix.insert(new Id(5000), List.of(0.0, 0.0, 0.0, 0.0));
+
+        for (int id = 10; id < 20; id++)
+        {
+            this.matrix.insert(new Id(id), List.of(random.nextGaussian(), random.nextGaussian(), random.nextGaussian(), random.nextGaussian()));
+        }
+
+        this.quantized = QuantizedEmbeddings.quantize(this.matrix);
+    }
+
+    @Test
+    public void testSize()
+    {
+        assertEquals(this.matrix.size(), this.quantized.size());
+        assertEquals(4, this.quantized.dimension());
+        assertTrue(this.quantized.contains(new Id(5000)));
+        assertFalse(this.quantized.contains(new Id(3)));
+    }
+
+    @Test
+    public void testVector()
+    {
+        assertArrayEquals(new float[]{4, 3, 2, 1}, this.quantized.vector(new Id(1)), 0.02f);
+        assertArrayEquals(new float[]{0, 0, 0, 0}, this.quantized.vector(new Id(5000)), 0);
+        assertNull(this.quantized.vector(new Id(3)));
+    }
+
+    @Test
+    public void testCosine()
+    {
+        for (int id1 = 10; id1 < 20; id1++)
+        {
+            for (int id2 = 10; id2 < 20; id2++)
+            {
+                assertEquals(this.matrix.cosine(new Id(id1), new Id(id2)), this.quantized.cosine(new Id(id1), new Id(id2)), 0.02);
+            }
+        }
+
+        assertEquals(1.0, this.quantized.cosine(new Id(0), new Id(0)), 0.00001);
+        assertEquals(-1.0, this.quantized.cosine(new Id(0), new Id(2)), 0.00001);
+        assertEquals(0.0, this.quantized.cosine(new Id(0), new Id(5000)), 0);
+        assertEquals(0.0, this.quantized.cosine(new Id(0), new Id(3)), 0);
+    }
+
+    @Test
+    public void testQuantizedOnlyIndex()
+    {
+        EmbeddingsIndex<String> index = EmbeddingsIndex.quantizedOnly(this.quantized);
+        assertFalse(index.hasExactEmbeddings());
+        assertTrue(index.contains(new Id(1)));
+        assertEquals(this.matrix.size(), index.size());
+        assertEquals(4.0, index.find(new Id(1)).get(0), 0.02);
+    }
+
+    @Test
+    public void testSegment() throws IOException
+    {
+        File segmentFile = new File("test_quantized.seg");
+
+        try (SegmentWriter writer = new SegmentWriter(segmentFile, Segment.Kind.QUANTIZED_EMBEDDINGS))
+        {
+            this.quantized.writeSegment(writer);
+        }
+
+        QuantizedEmbeddings read = SegmentReader.read(segmentFile, Segment.Kind.QUANTIZED_EMBEDDINGS, QuantizedEmbeddings::readSegment);
+        segmentFile.delete();
+
+        assertEquals(this.quantized.size(), read.size());
+        assertArrayEquals(this.quantized.vector(new Id(15)), read.vector(new Id(15)), 0);
+        assertEquals(this.quantized.cosine(new Id(11), new Id(12)), read.cosine(new Id(11), new Id(12)), 0);
+        assertFalse(read.contains(new Id(3)));
+    }
+}
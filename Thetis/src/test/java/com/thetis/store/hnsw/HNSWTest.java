@@ -14,6 +14,9 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -61,7 +64,7 @@ public class HNSWTest
             }
 
             Iterator<Id> idIterator = this.linker.kgUriIds();
-            this.hnsw = new HNSW(entity -> this.embeddingsIndex.find(this.linker.kgUriLookup(entity.getUri())),
+            this.hnsw = new HNSW(entity -> this.embeddingsIndex.findPrimitive(this.linker.kgUriLookup(entity.getUri())),
                     200, 2000, 10, this.linker, this.entityTable, this.tableLinks, "");
 
             while (idIterator.hasNext())
@@ -100,4 +103,48 @@ public class HNSWTest
         this.hnsw.clear();
         assertEquals(0, this.hnsw.find("http://dbpedia.org/resource/Joe_Pigott").size());
     }
+
+    @Test
+    public void testFindWithEf()
+    {
+        assertEquals(3, this.hnsw.find("http://dbpedia.org/resource/Joe_Pigott", 200).size());
+        assertEquals(0, this.hnsw.find("http://dbpedia.org/resource/Unknown", 200).size());
+    }
+
+    @Test
+    public void testFindAll()
+    {
+        List<String> entities = List.of("http://dbpedia.org/resource/Joe_Pigott", "http://dbpedia.org/resource/Unknown");
+        Set<String> tables = this.hnsw.findAll(entities);
+        assertEquals(Set.of("file1", "file2", "file3"), tables);
+        assertEquals(3, this.hnsw.findAllTables(entities).cardinality());
+        assertEquals(0, this.hnsw.findAll(List.of()).size());
+    }
+
+    @Test
+    public void testConcurrentFind() throws Exception
+    {
+        List<String> entities = new ArrayList<>();
+        Iterator<Id> idIterator = this.linker.kgUriIds();
+
+        while (idIterator.hasNext() && entities.size() < 100)
+        {
+            entities.add(this.linker.kgUriLookup(idIterator.next()));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Set<String>>> results = new ArrayList<>();
+
+        for (String entity : entities)
+        {
+            results.add(executor.submit(() -> this.hnsw.find(entity)));
+        }
+
+        for (Future<Set<String>> result : results)
+        {
+            assertEquals(3, result.get().size());
+        }
+
+        executor.shutdown();
+    }
 }
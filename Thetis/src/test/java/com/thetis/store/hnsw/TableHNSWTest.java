@@ -0,0 +1,124 @@
+package com.thetis.store.hnsw;
+
+import com.thetis.store.EntityTableLink;
+import com.thetis.store.LinkedTableIndex;
+import com.thetis.store.segment.Segment;
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
+import com.thetis.structures.Id;
+import com.thetis.structures.table.LinkedTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TableHNSWTest
+{
+    private final File segmentFile = new File("test_table_hnsw.seg"), columnsFile = new File("test_table_hnsw_columns.bin"),
+            rowsFile = new File("test_table_hnsw_rows.bin");
+    private final Map<Id, float[]> embeddings = new HashMap<>();
+    private final EntityTableLink tableLink = new EntityTableLink();
+    private TableHNSW index;
+
+    @Before
+    public void setup()
+    {
+        // Entities 1 and 2 point in direction 0, entities 3 and 4 in direction 1, and so on
+        for (int entity = 1; entity <= 8; entity++)
+        {
+            float[] embedding = new float[4];
+            embedding[(entity - 1) / 2] = 1;
+            embedding[(entity + 1) % 4] = 0.1f * entity;
+            this.embeddings.put(new Id(entity), embedding);
+        }
+
+        LinkedTableIndex tables = new LinkedTableIndex();
+        tables.insert("table1", new LinkedTable(2, 2, new String[]{"a", "b"}, new int[][]{{1, 3}, {2, 4}}));
+        tables.insert("table2", new LinkedTable(2, 2, new String[]{"a", "b"}, new int[][]{{5, 7}, {6, LinkedTable.NO_ENTITY}}));
+        tables.insert("table3", new LinkedTable(1, 1, new String[]{"a"}, new int[][]{{LinkedTable.NO_ENTITY}}));
+
+        for (int entity = 1; entity <= 8; entity++)
+        {
+            this.tableLink.insert(new Id(entity), List.of(entity <= 4 ? "table1" : "table2"));
+        }
+
+        this.index = TableHNSW.build(tables, this.tableLink, this.embeddings::get, 4, true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.segmentFile.delete();
+        this.columnsFile.delete();
+        this.rowsFile.delete();
+    }
+
+    private BitSet tables(String ... tableNames)
+    {
+        BitSet tables = new BitSet();
+
+        for (String tableName : tableNames)
+        {
+            tables.set(this.tableLink.tablePosition(tableName));
+        }
+
+        return tables;
+    }
+
+    @Test
+    public void testSize()
+    {
+        assertEquals(4, this.index.columnCount());
+        assertEquals(4, this.index.rowCount());
+        assertTrue(this.index.hasRows());
+    }
+
+    @Test
+    public void testFindColumns()
+    {
+        float[] centroid = this.index.centroid(List.of(new Id(1), new Id(2)), this.embeddings::get);
+        assertEquals(tables("table1"), this.index.findColumns(centroid, 1));
+
+        centroid = this.index.centroid(List.of(new Id(7)), this.embeddings::get);
+        assertEquals(tables("table2"), this.index.findColumns(centroid, 1));
+        assertEquals(tables("table1", "table2"), this.index.findColumns(centroid, 100));
+
+        assertNull(this.index.centroid(List.of(new Id(9)), this.embeddings::get));
+        assertTrue(this.index.findColumns(null, 1).isEmpty());
+    }
+
+    @Test
+    public void testFindRows()
+    {
+        float[] centroid = this.index.centroid(List.of(new Id(5), new Id(7)), this.embeddings::get);
+        assertEquals(tables("table2"), this.index.findRows(centroid, 1));
+    }
+
+    @Test
+    public void testSegment() throws IOException
+    {
+        try (SegmentWriter writer = new SegmentWriter(this.segmentFile, Segment.Kind.TABLE_HNSW))
+        {
+            this.index.writeSegment(writer);
+        }
+
+        this.index.save(this.columnsFile.toPath(), this.rowsFile.toPath());
+
+        TableHNSW read = SegmentReader.read(this.segmentFile, Segment.Kind.TABLE_HNSW, TableHNSW::readSegment);
+        read.load(this.columnsFile.toPath(), this.rowsFile.toPath());
+        float[] centroid = read.centroid(List.of(new Id(3), new Id(4)), this.embeddings::get);
+
+        assertEquals(this.index.columnCount(), read.columnCount());
+        assertEquals(this.index.rowCount(), read.rowCount());
+        assertEquals(tables("table1"), read.findColumns(centroid, 1));
+        assertEquals(this.index.findRows(centroid, 2), read.findRows(centroid, 2));
+    }
+}
@@ -0,0 +1,83 @@
+package com.thetis.store.lsh;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BucketIndexTest
+{
+    private static final HashFunction HASH = (obj, keys) -> Math.floorMod(obj.hashCode(), keys);
+
+    private static BucketIndex<String, String> create()
+    {
+        BucketIndex<String, String> index = new BucketIndex<>(3, 10) {};
+        index.add(0, 1, "e1", "table1");
+        index.add(1, 2, "e1", "table1");
+        index.add(2, 3, "e1", "table1");
+        index.add(0, 1, "e2", "table2");
+        index.add(0, 1, "e3", "table2");
+        index.add(1, 2, "e3", "table2");
+        index.add(2, 4, "e4", "table3");
+
+        return index;
+    }
+
+    @Test
+    public void testSearch()
+    {
+        BucketIndex<String, String> index = create();
+        assertEquals(Set.of("table1", "table2"), index.search(new int[]{1, 2, 3}, 1));
+        assertEquals(Set.of("table1", "table2"), index.search(new int[]{1, 2, 3}, 2));
+        assertEquals(Set.of("table1"), index.search(new int[]{1, 2, 3}, 3));
+        assertEquals(Set.of("table3"), index.search(new int[]{0, 0, 4}, 1));
+        assertEquals(Set.of(), index.search(new int[]{5, 5, 5}, 1));
+    }
+
+    @Test
+    public void testGet()
+    {
+        BucketIndex<String, String> index = create();
+        assertEquals(Set.of("table1", "table2"), index.get(0, 1));
+        assertEquals(Set.of(), index.get(0, 2));
+    }
+
+    @Test
+    public void testCreateKeys()
+    {
+        int[] signature = {4, 8, 15, 16, 23};
+        int[] keys = BucketIndex.createKeys(2, signature, 100, HASH);
+
+        assertEquals(3, keys.length);
+        assertEquals(HASH.hash(List.of(4, 8), 100), keys[0]);
+        assertEquals(HASH.hash(List.of(15, 16), 100), keys[1]);
+        assertEquals(HASH.hash(List.of(23), 100), keys[2]);
+    }
+
+    @Test
+    public void testCreateProbeKeys()
+    {
+        int[] signature = {1, 0, 1, 1}, alternatives = {0, 1, 0, 0};
+        double[] margins = {0.5, 0.1, Double.POSITIVE_INFINITY, 0.3};
+        int[][] keys = BucketIndex.createProbeKeys(2, signature, alternatives, margins, 2, 100, HASH);
+
+        // The second band has a single position with an alternative, so it only gets one probe
+        assertArrayEquals(new int[]{HASH.hash(List.of(1, 0), 100), HASH.hash(List.of(1, 1), 100), HASH.hash(List.of(0, 0), 100)}, keys[0]);
+        assertArrayEquals(new int[]{HASH.hash(List.of(1, 1), 100), HASH.hash(List.of(1, 0), 100)}, keys[1]);
+    }
+
+    @Test
+    public void testProbeSearch()
+    {
+        BucketIndex<String, String> index = create();
+        assertEquals(Set.of("table1"), index.search(new int[][]{{0}, {0}, {3}}, 1));
+        assertEquals(Set.of("table1", "table3"), index.search(new int[][]{{0}, {0}, {3, 4}}, 1));
+
+        // A value in several probed buckets of a group is only counted once for the group
+        assertEquals(Set.of(), index.search(new int[][]{{1, 1}, {0}, {0}}, 2));
+        assertEquals(Set.of("table1", "table2"), index.search(new int[][]{{1, 1}, {2}, {0}}, 2));
+    }
+}
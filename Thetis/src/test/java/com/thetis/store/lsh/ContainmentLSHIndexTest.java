@@ -0,0 +1,130 @@
+package com.thetis.store.lsh;
+
+import com.thetis.store.EntityTable;
+import com.thetis.store.EntityTableLink;
+import com.thetis.store.LinkedTableIndex;
+import com.thetis.store.segment.Segment;
+import com.thetis.store.segment.SegmentReader;
+import com.thetis.store.segment.SegmentWriter;
+import com.thetis.structures.Id;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import com.thetis.structures.table.LinkedTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ContainmentLSHIndexTest
+{
+    private final File segmentFile = new File("test_containment.seg");
+    private final LinkedTableIndex tables = new LinkedTableIndex();
+    private final EntityTableLink tableLink = new EntityTableLink();
+    private final EntityTable entityTable = new EntityTable();
+
+    @Before
+    public void setup()
+    {
+        // table1 holds entities 1 to 20, table2 entities 1 to 200, and table3 entities 1001 to 1020 with their own types
+        insertTable("table1", 1, 20);
+        insertTable("table2", 1, 200);
+        insertTable("table3", 1001, 20);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.segmentFile.delete();
+    }
+
+    private void insertTable(String tableName, int firstEntity, int rows)
+    {
+        int[][] entities = new int[rows][1];
+
+        for (int row = 0; row < rows; row++)
+        {
+            int entity = firstEntity + row;
+            entities[row][0] = entity;
+            this.tableLink.insert(new Id(entity), List.of(tableName));
+            this.entityTable.insert(new Id(entity), new Entity("http://dbpedia.org/resource/" + entity,
+                    List.of(new Type("http://dbpedia.org/ontology/Type" + (entity % 10 + (entity > 1000 ? 10 : 0)))), List.of()));
+        }
+
+        this.tables.insert(tableName, new LinkedTable(rows, 1, new String[]{"a"}, entities));
+    }
+
+    private static List<Id> entities(int firstEntity, int count)
+    {
+        List<Id> entities = new ArrayList<>(count);
+
+        for (int entity = firstEntity; entity < firstEntity + count; entity++)
+        {
+            entities.add(new Id(entity));
+        }
+
+        return entities;
+    }
+
+    @Test
+    public void testSize()
+    {
+        ContainmentLSHIndex index = ContainmentLSHIndex.build(this.tables, this.tableLink, this.entityTable, ContainmentLSHIndex.Elements.ENTITIES, 1);
+        assertEquals(3, index.columnCount());
+        assertEquals(3, index.partitionCount());
+    }
+
+    @Test
+    public void testSearchEntities()
+    {
+        ContainmentLSHIndex index = ContainmentLSHIndex.build(this.tables, this.tableLink, this.entityTable, ContainmentLSHIndex.Elements.ENTITIES, 1);
+        Map<Integer, Double> found = index.search(index.elements(entities(1, 20), this.entityTable), 0.8);
+
+        // The query is contained in table2 although their Jaccard similarity is only 0.1
+        assertTrue(found.containsKey(this.tableLink.tablePosition("table1")));
+        assertTrue(found.containsKey(this.tableLink.tablePosition("table2")));
+        assertFalse(found.containsKey(this.tableLink.tablePosition("table3")));
+        assertTrue(found.values().stream().allMatch(containment -> containment >= 0.8 && containment <= 1));
+
+        // table1 is too small to contain most of the query
+        found = index.search(index.elements(entities(1, 100), this.entityTable), 0.8);
+        assertFalse(found.containsKey(this.tableLink.tablePosition("table1")));
+        assertTrue(index.search(index.elements(entities(5000, 10), this.entityTable), 0.5).isEmpty());
+    }
+
+    @Test
+    public void testSearchTypes()
+    {
+        ContainmentLSHIndex index = ContainmentLSHIndex.build(this.tables, this.tableLink, this.entityTable, ContainmentLSHIndex.Elements.TYPES, 1);
+        Map<Integer, Double> found = index.search(index.elements(entities(1, 5), this.entityTable), 0.9);
+
+        assertTrue(found.containsKey(this.tableLink.tablePosition("table1")));
+        assertTrue(found.containsKey(this.tableLink.tablePosition("table2")));
+        assertFalse(found.containsKey(this.tableLink.tablePosition("table3")));
+    }
+
+    @Test
+    public void testSegment() throws IOException
+    {
+        ContainmentLSHIndex index = ContainmentLSHIndex.build(this.tables, this.tableLink, this.entityTable, ContainmentLSHIndex.Elements.ENTITIES, 1);
+
+        try (SegmentWriter writer = new SegmentWriter(this.segmentFile, Segment.Kind.CONTAINMENT_LSH))
+        {
+            index.writeSegment(writer);
+        }
+
+        ContainmentLSHIndex read = SegmentReader.read(this.segmentFile, Segment.Kind.CONTAINMENT_LSH, ContainmentLSHIndex::readSegment);
+        int[] query = read.elements(entities(3, 15), this.entityTable);
+
+        assertEquals(ContainmentLSHIndex.Elements.ENTITIES, read.elements());
+        assertEquals(index.columnCount(), read.columnCount());
+        assertEquals(index.partitionCount(), read.partitionCount());
+        assertEquals(index.search(query, 0.7), read.search(query, 0.7));
+    }
+}
@@ -0,0 +1,77 @@
+package com.thetis.store.lsh;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntBucketMapTest
+{
+    private static List<Integer> values(IntBucketMap map, int key)
+    {
+        List<Integer> values = new ArrayList<>();
+        map.forEach(key, values::add);
+
+        return values;
+    }
+
+    @Test
+    public void testAdd()
+    {
+        IntBucketMap map = new IntBucketMap();
+        map.add(3, 1);
+        map.add(3, 1);
+        map.add(3, 2);
+        map.add(7, 1);
+
+        assertEquals(List.of(1, 2), values(map, 3));
+        assertEquals(List.of(1), values(map, 7));
+        assertEquals(List.of(), values(map, 5));
+        assertEquals(2, map.buckets());
+    }
+
+    @Test
+    public void testGrow()
+    {
+        IntBucketMap map = new IntBucketMap();
+
+        for (int key = 0; key < 1000; key++)
+        {
+            for (int value = 0; value < key % 5; value++)
+            {
+                map.add(key * 16, value);
+            }
+        }
+
+        for (int key = 0; key < 1000; key++)
+        {
+            assertEquals(key % 5, map.size(key * 16));
+        }
+
+        assertEquals(800, map.buckets());
+    }
+
+    @Test
+    public void testManyBuckets()
+    {
+        IntBucketMap map = new IntBucketMap();
+        int buckets = 200000;
+
+        // Home slots must spread over the whole capacity beyond 65536 slots, or linear probing degrades to scanning clusters
+        for (int key = 0; key < buckets; key++)
+        {
+            map.add(key, key);
+            map.add(key, key + 1);
+        }
+
+        for (int key = 0; key < buckets; key++)
+        {
+            assertEquals(List.of(key, key + 1), values(map, key));
+        }
+
+        assertEquals(buckets, map.buckets());
+        assertEquals(List.of(), values(map, buckets));
+    }
+}
@@ -1,4 +1,118 @@
 package com.thetis.store.lsh;
 
-public class TypesLSHIndexTest {
+import com.thetis.connector.MockNeo4jEndpoint;
+import com.thetis.store.EntityLinking;
+import com.thetis.store.EntityTable;
+import com.thetis.structures.PairNonComparable;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.Table;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TypesLSHIndexTest
+{
+    private static final HashFunction HASH = (obj, keys) -> Math.floorMod(obj.hashCode(), keys);
+    private static final int SIGNATURE_SIZE = 32, BAND_SIZE = 8, GROUPS = SIGNATURE_SIZE / BAND_SIZE;
+    private final Map<String, List<String>> entityTypes = new HashMap<>();
+    private final EntityLinking linker = new EntityLinking("http://www.wikipedia.org/", "http://dbpedia.org/");
+    private final EntityTable entityTable = new EntityTable();
+    private final Set<PairNonComparable<String, Table<String>>> tables = new HashSet<>();
+    private final MockNeo4jEndpoint neo4j = new MockNeo4jEndpoint()
+    {
+        @Override
+        public List<String> searchTypes(String entity)
+        {
+            return entityTypes.getOrDefault(entity, List.of());
+        }
+    };
+
+    @Before
+    public void setup()
+    {
+        List<List<String>> typeGroups = List.of(List.of("A", "B", "C"), List.of("D", "E", "F"), List.of("G", "H", "I"));
+
+        for (int table = 0; table < typeGroups.size(); table++)
+        {
+            List<String> entities = new ArrayList<>();
+
+            for (int entity = 0; entity < 2; entity++)
+            {
+                String uri = "http://dbpedia.org/resource/Entity_" + table + "_" + entity;
+                List<String> types = typeGroups.get(table);
+                this.linker.addMapping("http://www.wikipedia.org/wiki/Entity_" + table + "_" + entity, uri);
+                this.entityTable.insert(this.linker.kgUriLookup(uri), new Entity(uri, types.stream().map(Type::new).toList(), List.of()));
+                this.entityTypes.put(uri, types);
+                entities.add(uri);
+            }
+
+            this.tables.add(new PairNonComparable<>("table" + table, new DynamicTable<>(List.of(entities))));
+        }
+    }
+
+    private SetLSHIndex index(SetLSHIndex.MinHash minHash)
+    {
+        return new SetLSHIndex(this.neo4j, SetLSHIndex.EntitySet.TYPES, SIGNATURE_SIZE, BAND_SIZE, 2, this.tables, HASH, GROUPS,
+                10007, 2, new Random(42), this.linker, this.entityTable, false, minHash);
+    }
+
+    private void testSearch(SetLSHIndex index)
+    {
+        // Entities with the same types have the same signature and share buckets in every bucket group
+        Set<String> tables = index.search("http://dbpedia.org/resource/Entity_1_0", GROUPS);
+        assertTrue(tables.contains("table1"));
+        assertFalse(tables.contains("table0"));
+        assertFalse(tables.contains("table2"));
+    }
+
+    @Test
+    public void testPermutationSearch()
+    {
+        testSearch(index(SetLSHIndex.MinHash.PERMUTATIONS));
+    }
+
+    @Test
+    public void testHashingSearch()
+    {
+        testSearch(index(SetLSHIndex.MinHash.HASHING));
+    }
+
+    @Test
+    public void testHashingInsert()
+    {
+        SetLSHIndex index = index(SetLSHIndex.MinHash.HASHING);
+        assertTrue(index.insert("http://dbpedia.org/resource/Entity_2_0", "table3"));
+        assertTrue(index.search("http://dbpedia.org/resource/Entity_2_1", GROUPS).contains("table3"));
+    }
+
+    @Test
+    public void testMultiProbeSearch()
+    {
+        for (SetLSHIndex.MinHash minHash : SetLSHIndex.MinHash.values())
+        {
+            SetLSHIndex index = index(minHash);
+            String entity = "http://dbpedia.org/resource/Entity_1_0";
+            Set<String> tables = index.search(entity, 1), probedTables = index.search(entity, 1, 2);
+            assertTrue(probedTables.containsAll(tables));
+            assertEquals(tables, index.search(entity, 1, 0));
+            assertTrue(index.search(entity, GROUPS, 2).contains("table1"));
+        }
+    }
+
+    @Test
+    public void testUnknownEntity()
+    {
+        for (SetLSHIndex.MinHash minHash : SetLSHIndex.MinHash.values())
+        {
+            SetLSHIndex index = index(minHash);
+            String entity = "http://dbpedia.org/resource/Unknown";
+            assertTrue(index.search(entity).isEmpty());
+            assertTrue(index.search(entity, 1, 2).isEmpty());
+        }
+    }
 }
@@ -1,5 +1,81 @@
 package com.thetis.store.lsh;
 
+import com.thetis.store.EmbeddingsIndex;
+import com.thetis.store.EntityLinking;
+import com.thetis.store.QuantizedEmbeddings;
+import com.thetis.structures.Id;
+import com.thetis.structures.PairNonComparable;
+import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.Table;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
 public class VectorLSHIndexTest
 {
+    private static final HashFunction HASH = (obj, keys) -> Math.floorMod(obj.hashCode(), keys);
+    private static final int PROJECTIONS = 32, BAND_SIZE = 8, GROUPS = PROJECTIONS / BAND_SIZE;
+    private final EntityLinking linker = new EntityLinking("http://www.wikipedia.org/", "http://dbpedia.org/");
+    private final EmbeddingsIndex<Id> embeddings = new EmbeddingsIndex<>();
+    private final Set<PairNonComparable<String, Table<String>>> tables = new HashSet<>();
+
+    @Before
+    public void setup()
+    {
+        // Entities of each table share a direction, and the directions of the tables are orthogonal
+        for (int table = 0; table < 3; table++)
+        {
+            List<String> entities = new ArrayList<>();
+
+            for (int entity = 0; entity < 2; entity++)
+            {
+                String uri = "http://dbpedia.org/resource/Entity_" + table + "_" + entity;
+                List<Double> embedding = new ArrayList<>(Collections.nCopies(3, 0.0));
+                embedding.set(table, 1.0 + entity * 0.01);
+                this.linker.addMapping("http://www.wikipedia.org/wiki/Entity_" + table + "_" + entity, uri);
+                this.embeddings.insert(this.linker.kgUriLookup(uri), embedding);
+                entities.add(uri);
+            }
+
+            this.tables.add(new PairNonComparable<>("table" + table, new DynamicTable<>(List.of(entities))));
+        }
+    }
+
+    private VectorLSHIndex index()
+    {
+        return new VectorLSHIndex(GROUPS, 10007, PROJECTIONS, BAND_SIZE, this.tables, 2, this.linker, HASH, new Random(42),
+                this.embeddings, false);
+    }
+
+    @Test
+    public void testSearch()
+    {
+        Set<String> tables = index().search("http://dbpedia.org/resource/Entity_1_0", GROUPS);
+        assertTrue(tables.contains("table1"));
+        assertFalse(tables.contains("table0"));
+        assertFalse(tables.contains("table2"));
+    }
+
+    @Test
+    public void testUnknownEntity()
+    {
+        assertTrue(index().search("http://dbpedia.org/resource/Unknown").isEmpty());
+    }
+
+    @Test
+    public void testQuantizedOnlySearch()
+    {
+        VectorLSHIndex index = index();
+        String entity = "http://dbpedia.org/resource/Entity_1_0";
+        Set<String> tables = index.search(entity, GROUPS), probedTables = index.search(entity, GROUPS, 2);
+
+        // Signatures of a quantized-only index are computed from the dequantized embeddings instead of the empty matrix
+        index.useEmbeddingsIndex(EmbeddingsIndex.quantizedOnly(QuantizedEmbeddings.quantize(this.embeddings.getMatrix())));
+        assertEquals(tables, index.search(entity, GROUPS));
+        assertEquals(probedTables, index.search(entity, GROUPS, 2));
+        assertFalse(index.search("http://dbpedia.org/resource/Entity_0_0", GROUPS).contains("table1"));
+    }
 }
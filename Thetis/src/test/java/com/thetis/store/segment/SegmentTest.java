@@ -0,0 +1,146 @@
+package com.thetis.store.segment;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SegmentTest
+{
+    private final File file = new File("segment_test.seg");
+
+    @After
+    public void tearDown()
+    {
+        this.file.delete();
+    }
+
+    private void write() throws IOException
+    {
+        try (SegmentWriter writer = new SegmentWriter(this.file, Segment.Kind.EMBEDDINGS))
+        {
+            float[] floats = new float[100];
+            int[] ints = new int[100];
+
+            for (int i = 0; i < 100; i++)
+            {
+                floats[i] = i / 2.0f;
+                ints[i] = i * 3;
+            }
+
+            writer.writeString("prefix");
+            writer.writeString(null);
+            writer.writeStrings(List.of("http://dbpedia.org/resource/A", "http://dbpedia.org/resource/AB",
+                    "http://dbpedia.org/resource/B", "\u00C6ble", "\u00C6bler"));
+            writer.writeInts(ints, 0, ints.length);
+            writer.writeFloats(floats, 0, floats.length);
+            writer.writeVarInt(0);
+            writer.writeVarInt(300);
+            writer.writeVarInt(Integer.MAX_VALUE);
+            writer.writeInt(42);
+        }
+    }
+
+    private void read(SegmentReader reader) throws IOException
+    {
+        assertEquals("prefix", reader.readString());
+        assertNull(reader.readString());
+        assertEquals(List.of("http://dbpedia.org/resource/A", "http://dbpedia.org/resource/AB",
+                "http://dbpedia.org/resource/B", "\u00C6ble", "\u00C6bler"), reader.readStrings());
+
+        int[] ints = new int[100];
+        float[] floats = new float[100];
+        reader.readInts(ints, 0, ints.length);
+        reader.readFloats(floats, 0, floats.length);
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(i * 3, ints[i]);
+            assertEquals(i / 2.0f, floats[i], 0);
+        }
+
+        assertEquals(0, reader.readVarInt());
+        assertEquals(300, reader.readVarInt());
+        assertEquals(Integer.MAX_VALUE, reader.readVarInt());
+        assertEquals(42, reader.readInt());
+    }
+
+    @Test
+    public void testReadWrite() throws IOException
+    {
+        write();
+
+        try (SegmentReader reader = new SegmentReader(this.file, Segment.Kind.EMBEDDINGS))
+        {
+            read(reader);
+        }
+    }
+
+    @Test
+    public void testSmallMappingWindow() throws IOException
+    {
+        write();
+
+        try (SegmentReader reader = new SegmentReader(this.file, Segment.Kind.EMBEDDINGS, 10))
+        {
+            read(reader);
+        }
+    }
+
+    @Test
+    public void testFrontCodingSize() throws IOException
+    {
+        List<String> strings = new ArrayList<>();
+
+        for (int i = 10; i < 10 + Segment.STRING_BLOCK_SIZE; i++)
+        {
+            strings.add("http://dbpedia.org/resource/Entity_" + i);
+        }
+
+        try (SegmentWriter writer = new SegmentWriter(this.file, Segment.Kind.EMBEDDINGS))
+        {
+            writer.writeStrings(strings);
+        }
+
+        // Header and count, then the first string in full and the other strings as one-byte lengths and a short suffix
+        assertTrue(this.file.length() <= 16 + 2 + strings.get(0).length() + 4L * (strings.size() - 1));
+
+        try (SegmentReader reader = new SegmentReader(this.file, Segment.Kind.EMBEDDINGS))
+        {
+            assertEquals(strings, reader.readStrings());
+        }
+    }
+
+    @Test
+    public void testWrongKind() throws IOException
+    {
+        write();
+
+        try (SegmentReader reader = new SegmentReader(this.file, Segment.Kind.ENTITY_LINKING))
+        {
+            fail();
+        }
+
+        catch (IOException ignored) {}
+    }
+
+    @Test
+    public void testEndOfSegment() throws IOException
+    {
+        write();
+
+        try (SegmentReader reader = new SegmentReader(this.file, Segment.Kind.EMBEDDINGS))
+        {
+            read(reader);
+            reader.readInt();
+            fail();
+        }
+
+        catch (IOException ignored) {}
+    }
+}
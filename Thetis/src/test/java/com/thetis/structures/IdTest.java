@@ -0,0 +1,53 @@
+package com.thetis.structures;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class IdTest
+{
+    @Test
+    public void testIncrementing()
+    {
+        Id id1 = Id.alloc(), id2 = Id.alloc();
+        assertTrue(id1.compareTo(id2) < 0);
+    }
+
+    @Test
+    public void testAfterCopy()
+    {
+        Id copy = Id.copy(Id.alloc().getId() + 100000);
+        assertTrue(Id.alloc().compareTo(copy) > 0);
+    }
+
+    @Test
+    public void testConcurrentAllocation() throws InterruptedException
+    {
+        Set<Id> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++)
+        {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 50000; j++)
+                {
+                    ids.add(Id.alloc());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(200000, ids.size());
+    }
+}
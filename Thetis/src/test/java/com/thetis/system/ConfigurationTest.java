@@ -8,6 +8,7 @@ import java.io.File;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class ConfigurationTest
 {
@@ -15,6 +16,7 @@ public class ConfigurationTest
     public void reset()
     {
         (new File(".config.conf")).delete();
+        Configuration.reloadConfiguration();
     }
 
     @Test
@@ -78,4 +80,22 @@ public class ConfigurationTest
         Configuration.setEmbeddingsDimension(100);
         assertEquals(100, Configuration.getEmbeddingsDimension());
     }
+
+    @Test
+    public void testSnapshot()
+    {
+        Configuration.setDBHost("host");
+        assertTrue((new File(".config.conf")).delete());
+        assertEquals("host", Configuration.getDBHost());
+    }
+
+    @Test
+    public void testReload()
+    {
+        Configuration.setDBHost("host");
+        (new File(".config.conf")).delete();
+        Configuration.reloadConfiguration();
+        assertNull(Configuration.getDBHost());
+        assertEquals("INFO", Configuration.getLogLevel());
+    }
 }
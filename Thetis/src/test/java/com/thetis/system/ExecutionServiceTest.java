@@ -0,0 +1,110 @@
+package com.thetis.system;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ExecutionServiceTest
+{
+    @Test
+    public void testSharedExecutors()
+    {
+        assertSame(ExecutionService.compute(), ExecutionService.compute());
+        assertSame(ExecutionService.io(), ExecutionService.io());
+        assertTrue(ExecutionService.compute() != ExecutionService.io());
+    }
+
+    @Test
+    public void testBoundedParallelism()
+    {
+        Executor executor = ExecutionService.io(2);
+        AtomicInteger running = new AtomicInteger(0), maxRunning = new AtomicInteger(0), completed = new AtomicInteger(0);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++)
+        {
+            futures.add(CompletableFuture.runAsync(() ->
+            {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+
+                try
+                {
+                    Thread.sleep(2);
+                }
+
+                catch (InterruptedException ignored) {}
+
+                running.decrementAndGet();
+                completed.incrementAndGet();
+            }, executor));
+        }
+
+        futures.forEach(CompletableFuture::join);
+        assertEquals(50, completed.get());
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testFullQueueRunsInSubmitter() throws InterruptedException
+    {
+        Executor executor = ExecutionService.compute(1);
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        AtomicInteger submitterRuns = new AtomicInteger(0), completed = new AtomicInteger(0);
+        Thread submitter = Thread.currentThread();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        // The only worker is blocked, so tasks beyond the queue capacity must run in this thread
+        futures.add(CompletableFuture.runAsync(() ->
+        {
+            started.countDown();
+
+            try
+            {
+                release.await();
+            }
+
+            catch (InterruptedException ignored) {}
+        }, executor));
+        started.await();
+
+        for (int i = 0; i < 5000; i++)
+        {
+            futures.add(CompletableFuture.runAsync(() ->
+            {
+                if (Thread.currentThread() == submitter)
+                    submitterRuns.incrementAndGet();
+
+                completed.incrementAndGet();
+            }, executor));
+        }
+
+        assertTrue(submitterRuns.get() > 0);
+        release.countDown();
+        futures.forEach(CompletableFuture::join);
+        assertEquals(5000, completed.get());
+    }
+
+    @Test
+    public void testConfigure()
+    {
+        int parallelism = ExecutionService.parallelism();
+        ExecutionService.configure(3, false);
+        assertEquals(3, ExecutionService.parallelism());
+        ExecutionService.configure(parallelism, false);
+
+        try
+        {
+            ExecutionService.configure(0, false);
+            fail();
+        }
+
+        catch (IllegalArgumentException ignored) {}
+    }
+}
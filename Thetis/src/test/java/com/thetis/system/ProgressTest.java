@@ -0,0 +1,60 @@
+package com.thetis.system;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ProgressTest
+{
+    @Test
+    public void testSubmit() throws InterruptedException, ExecutionException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Progress progress = new Progress(100, 10, "Processed %d/%d tasks");
+        List<Future<Integer>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++)
+        {
+            final int task = i;
+            futures.add(progress.submit(executor, () -> task * 2));
+        }
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(i * 2, (int) futures.get(i).get());
+        }
+
+        executor.shutdown();
+        assertEquals(100, progress.completed());
+        assertEquals(0, progress.failed());
+    }
+
+    @Test
+    public void testFailure() throws InterruptedException
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Progress progress = new Progress(2, 1, "Processed %d/%d tasks");
+        Future<Integer> success = progress.submit(executor, () -> 1),
+                failure = progress.submit(executor, () -> {throw new IllegalStateException("failure");});
+
+        try
+        {
+            assertEquals(1, (int) success.get());
+            failure.get();
+            fail();
+        }
+
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        executor.shutdown();
+        assertEquals(2, progress.completed());
+        assertEquals(1, progress.failed());
+    }
+}